@@ -0,0 +1,56 @@
+package de.sdsd.projekt.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import de.sdsd.projekt.api.Parser;
+import de.sdsd.projekt.api.ParserAPI;
+
+/**
+ * Antrag NRW parser service, for parsing inside the SDSD server.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ * @see MainParser
+ */
+public class ParserService implements Parser {
+
+	/**
+	 * Supports.
+	 *
+	 * @param command the command
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean supports(String command) {
+		return "parse".equalsIgnoreCase(command) || "test".equalsIgnoreCase(command);
+	}
+
+	/**
+	 * Parses the.
+	 *
+	 * @param command the command
+	 * @param input   the input
+	 * @param api     the api
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void parse(String command, InputStream input, ParserAPI api) throws IOException {
+		if (!"parse".equalsIgnoreCase(command))
+			throw new IllegalArgumentException("Unsupported command: " + command);
+		MainParser.parse(input, api);
+	}
+
+	/**
+	 * Test.
+	 *
+	 * @param input the input
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean test(InputStream input) {
+		return MainParser.test(input, new ByteArrayOutputStream());
+	}
+
+}
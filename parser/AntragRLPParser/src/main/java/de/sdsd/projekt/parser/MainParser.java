@@ -66,12 +66,23 @@ public class MainParser {
 	private static final GeometryJSON geojson = new GeometryJSON(7);
 
 	/**
-	 * Parses the.
+	 * Parses the input and writes the results as zip to the output.
 	 *
 	 * @param input  the input
 	 * @param output the output
+	 * @see #parse(InputStream, ParserAPI)
 	 */
 	public static void parse(InputStream input, OutputStream output) {
+		parse(input, new ParserAPI(output));
+	}
+
+	/**
+	 * Parses the.
+	 *
+	 * @param input  the input
+	 * @param target the parser api to write the results to, closed after parsing
+	 */
+	public static void parse(InputStream input, ParserAPI target) {
 		Validation errors = new Validation();
 		Model model = null;
 		List<JSONObject> features = null;
@@ -126,7 +137,7 @@ public class MainParser {
 			errors.fatal(e.toString());
 		}
 
-		try (ParserAPI api = new ParserAPI(output)) {
+		try (ParserAPI api = target) {
 			api.setParseTime((System.nanoTime() - t1) / 1000000);
 			api.setErrors(errors);
 
@@ -11,7 +11,6 @@ import java.time.Instant;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -25,6 +24,8 @@ import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import javax.annotation.CheckForNull;
+
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
 import org.apache.jena.rdf.model.Model;
@@ -36,10 +37,10 @@ import org.json.JSONObject;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 
+import de.sdsd.projekt.api.DdiSnapshot;
 import de.sdsd.projekt.api.ParserAPI;
 import de.sdsd.projekt.api.ParserAPI.Validation;
 import de.sdsd.projekt.api.ParserAPI.ValueInfo;
-import de.sdsd.projekt.api.ServiceAPI.JsonRpcException;
 import de.sdsd.projekt.api.ServiceResult.WikiInstance;
 import de.sdsd.projekt.api.Util;
 import de.sdsd.projekt.api.Util.WikiAttr;
@@ -78,24 +79,6 @@ public class EfdiParser {
 	/** The infos. */
 	private final Map<ValueKey, ValueInfo> infos = new HashMap<>();
 
-	/** The ddi map. */
-	private static Map<String, WikiInstance> ddiMap = null;
-
-	/** The Constant DDI. */
-	private static final Resource DDI = Util.UNKNOWN.res("ddi");
-
-	/**
-	 * Inits the ddi map.
-	 */
-	public static void initDdiMap() {
-		try {
-			ddiMap = ParserAPI.getWikinormiaInstances(DDI, true); // TODO: local
-		} catch (JsonRpcException e) {
-			ddiMap = Collections.emptyMap();
-			System.err.println(e.getMessage());
-		}
-	}
-
 	/**
 	 * Instantiates a new efdi parser.
 	 *
@@ -212,10 +195,9 @@ public class EfdiParser {
 	 * @param ddi the ddi
 	 * @return the wiki instance
 	 */
+	@CheckForNull
 	public static WikiInstance ddi(int ddi) {
-		if (ddiMap == null)
-			initDdiMap();
-		return ddiMap.get(Integer.toString(ddi));
+		return DdiSnapshot.getDefault().get(ddi);
 	}
 
 	/**
@@ -69,13 +69,24 @@ public class MainParser {
 	}
 
 	/**
-	 * Parses the.
+	 * Parses the input and writes the results as zip to the output.
 	 *
 	 * @param input  the input
 	 * @param output the output
+	 * @see #parse(InputStream, ParserAPI)
 	 */
 	public static void parse(InputStream input, OutputStream output) {
-		try (ParserAPI api = new ParserAPI(output)) {
+		parse(input, new ParserAPI(output));
+	}
+
+	/**
+	 * Parses the.
+	 *
+	 * @param input  the input
+	 * @param target the parser api to write the results to, closed after parsing
+	 */
+	public static void parse(InputStream input, ParserAPI target) {
+		try (ParserAPI api = target) {
 			Validation errors = new Validation();
 			long t1 = System.nanoTime();
 
@@ -85,6 +85,17 @@ public class MainParser {
 	/** The Constant INFO. */
 	private static final WikiType LOG = FORMAT.res("log"), INFO = FORMAT.res("info");
 
+	/**
+	 * Parses the input and writes the results as zip to the output.
+	 *
+	 * @param input  the input
+	 * @param output the output
+	 * @see #parse(InputStream, ParserAPI)
+	 */
+	public static void parse(InputStream input, OutputStream output) {
+		parse(input, new ParserAPI(output));
+	}
+
 	/**
 	 * The parse method reads a raw input stream pointing to a file's contents and
 	 * builds (parses) a Jena RDF {@code Model} object. The aforementioned RDF model
@@ -98,10 +109,10 @@ public class MainParser {
 	 * written to the triple store.
 	 * 
 	 * @param input  The input stream to be parsed.
-	 * @param output The output stream containing the parsed RDF model information.
+	 * @param target the parser api to write the results to, closed after parsing
 	 */
-	public static void parse(InputStream input, OutputStream output) {
-		try (ParserAPI api = new ParserAPI(output)) {
+	public static void parse(InputStream input, ParserAPI target) {
+		try (ParserAPI api = target) {
 			Validation errors = new Validation();
 			long t1 = System.nanoTime();
 
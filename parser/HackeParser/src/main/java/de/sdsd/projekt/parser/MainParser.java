@@ -79,6 +79,17 @@ public class MainParser {
 		return Math.round(val / SCALE);
 	}
 	
+	/**
+	 * Parses the input and writes the results as zip to the output.
+	 *
+	 * @param input  the input
+	 * @param output the output
+	 * @see #parse(InputStream, ParserAPI)
+	 */
+	public static void parse(InputStream input, OutputStream output) {
+		parse(input, new ParserAPI(output));
+	}
+
 	/**
 	 * This function parses HackeData from input Stream and writes included TimeLogs
 	 * to TimeLog store of SDSD. The included mocot and dicot values are written as
@@ -89,11 +100,11 @@ public class MainParser {
 	 * 
 	 * 
 	 * @param input  used input stream for parse function
-	 * @param output used output type, written by TimeLogWriter
+	 * @param target the parser api to write the results to, closed after parsing
 	 */
-	public static void parse(InputStream input, OutputStream output) {
+	public static void parse(InputStream input, ParserAPI target) {
 
-		try (ParserAPI api = new ParserAPI(output)) {
+		try (ParserAPI api = target) {
 			Validation errors = new Validation();
 			long t1 = System.nanoTime();
 
@@ -122,6 +122,9 @@ public final class HelmParser {
 	 * @see #writeRdfModel(RdfModel, OutputStream)
 	 */
 	static void parse(InputStream input, OutputStream output) {
+		// reset the state of previous files, the parser may run more than once per process
+		HELM_IDS.clear();
+		ERRORS = new Validation();
 		Map<Class<?>, List<String>> csvEntities = csvSplitEntities(input);
 		Map<Class<?>, List<?>> parsedCsvEntities = new HashMap<Class<?>, List<?>>();
 
@@ -8,6 +8,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -17,6 +18,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -27,15 +30,13 @@ import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
 import agrirouter.technicalmessagetype.Gps.GPSList;
+import de.sdsd.projekt.api.DdiSnapshot;
 import de.sdsd.projekt.api.ParserAPI;
 import de.sdsd.projekt.api.ParserAPI.GeoWriter;
 import de.sdsd.projekt.api.ParserAPI.GridWriter;
 import de.sdsd.projekt.api.ParserAPI.TimeLogWriter;
 import de.sdsd.projekt.api.ParserAPI.Validation;
 import de.sdsd.projekt.api.ServiceAPI.ElementType;
-import de.sdsd.projekt.api.ServiceAPI.JsonRpcException;
-import de.sdsd.projekt.api.ServiceResult.WikiInstance;
-import de.sdsd.projekt.api.Util;
 import de.sdsd.projekt.parser.isoxml.Attribute.DatetimeAttr;
 import de.sdsd.projekt.parser.isoxml.Attribute.ULongAttr;
 import de.sdsd.projekt.parser.isoxml.Geo;
@@ -60,37 +61,73 @@ import efdi.GrpcEfdi;
 public class MainParser {
 
 	/**
-	 * The main method.
+	 * The main method. The parse and efdi commands read the entries of the zip
+	 * file on demand, accept an unpacked isoxml directory as filepath and an
+	 * optional time range of the timelogs as ISO-8601 instants.
 	 *
 	 * @param args the arguments
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public static void main(String[] args) throws IOException {
 		if (args.length > 0) {
-			InputStream in = args.length > 1 ? FileUtils.openInputStream(new File(args[1])) : System.in;
+			File file = args.length > 1 ? new File(args[1]) : null;
+			Instant from = args.length > 3 && !args[3].equals("-") ? Instant.parse(args[3]) : null;
+			Instant until = args.length > 4 && !args[4].equals("-") ? Instant.parse(args[4]) : null;
+			IsoxmlSource source = file != null ? () -> new ISOXMLParser(file.toPath())
+					: () -> new ISOXMLParser(System.in);
 			OutputStream out = args.length > 2 ? FileUtils.openOutputStream(new File(args[2])) : System.out;
 			switch (args[0].toLowerCase()) {
 			case "parse":
-				isoxml(in, out);
+				isoxml(source, new ParserAPI(out), from, until);
 				break;
 			case "validate":
-				validate(in, out);
+				validate(open(file), out);
 				break;
 			case "efdi":
-				efdi(in, out);
+				efdi(source, out, from, until);
 				break;
 			case "gps":
-				gps(in, out);
+				gps(open(file), out);
 				break;
 			case "test":
-				System.exit(testIsoxml(in, out) ? 0 : 1);
+				System.exit(testIsoxml(open(file), out) ? 0 : 1);
 				break;
 			default:
 				System.err.println("No parser specified ('parse', 'validate', 'efdi', 'gps', 'test')");
 				break;
 			}
 		} else
-			System.err.println("USAGE: java -jar parser.jar parse|validate|efdi|gps|test filepath");
+			System.err.println("USAGE: java -jar parser.jar parse|validate|efdi|gps|test filepath [output [from [until]]]");
+	}
+
+	/**
+	 * Opens the input file.
+	 *
+	 * @param file the file or null for the standard input
+	 * @return the input stream
+	 * @throws IOException if the file can't be opened or is a directory
+	 */
+	private static InputStream open(@Nullable File file) throws IOException {
+		if (file == null)
+			return System.in;
+		if (file.isDirectory())
+			throw new IOException("Only 'parse' and 'efdi' accept an isoxml directory");
+		return FileUtils.openInputStream(file);
+	}
+
+	/**
+	 * Opens the isoxml to parse.
+	 */
+	@FunctionalInterface
+	private static interface IsoxmlSource {
+
+		/**
+		 * Opens the isoxml.
+		 *
+		 * @return the isoxml parser
+		 * @throws Exception the exception
+		 */
+		ISOXMLParser open() throws Exception;
 	}
 
 	/** The Constant NS_WIKI. */
@@ -140,9 +177,6 @@ public class MainParser {
 		}
 	}
 
-	/** The ddi map. */
-	private static Map<String, WikiInstance> ddiMap = null;
-
 	/**
 	 * Gets the ddi designator.
 	 *
@@ -150,16 +184,8 @@ public class MainParser {
 	 * @return the ddi designator
 	 */
 	public static String getDdiDesignator(int ddi) {
-		try {
-			if (ddiMap == null)
-				ddiMap = ParserAPI.getWikinormiaInstances(Util.UNKNOWN.res("ddi"), true);
-			WikiInstance wikiddi = ddiMap.get(Integer.toString(ddi));
-			if (wikiddi != null)
-				return wikiddi.label;
-		} catch (JsonRpcException e) {
-			System.err.println(e.getMessage());
-		}
-		return String.format("%04X", ddi);
+		String label = DdiSnapshot.getDefault().getLabel(ddi);
+		return label != null ? label : String.format("%04X", ddi);
 	}
 
 	/**
@@ -204,21 +230,78 @@ public class MainParser {
 	}
 
 	/**
-	 * Isoxml.
+	 * Parses the input and writes the results as zip to the output.
 	 *
 	 * @param input  the input
 	 * @param output the output
+	 * @see #isoxml(InputStream, ParserAPI)
 	 */
 	public static void isoxml(InputStream input, OutputStream output) {
+		isoxml(input, new ParserAPI(output));
+	}
+
+	/**
+	 * Isoxml.
+	 *
+	 * @param input  the input
+	 * @param target the parser api to write the results to, closed after parsing
+	 */
+	public static void isoxml(InputStream input, ParserAPI target) {
+		isoxml(input, target, null, null);
+	}
+
+	/**
+	 * Parses the input and only writes the timelog entries in the given time
+	 * range.
+	 *
+	 * @param input  the input
+	 * @param target the parser api to write the results to, closed after parsing
+	 * @param from   the start of the time range or null for all entries from the
+	 *               beginning
+	 * @param until  the end of the time range or null for all entries to the end
+	 */
+	public static void isoxml(InputStream input, ParserAPI target, @Nullable Instant from,
+			@Nullable Instant until) {
+		isoxml(() -> new ISOXMLParser(input), target, from, until);
+	}
+
+	/**
+	 * Parses an isoxml zip file or an unpacked isoxml directory and only writes
+	 * the timelog entries in the given time range. The entries of a zip file are
+	 * read on demand. The timelog binaries of a directory are memory-mapped and
+	 * only the records around the time range are decoded using the timelog
+	 * indexes, that are stored alongside the binaries.
+	 *
+	 * @param path   the zip file or the directory, that contains the taskdata.xml
+	 * @param target the parser api to write the results to, closed after parsing
+	 * @param from   the start of the time range or null for all entries from the
+	 *               beginning
+	 * @param until  the end of the time range or null for all entries to the end
+	 */
+	public static void isoxml(Path path, ParserAPI target, @Nullable Instant from, @Nullable Instant until) {
+		isoxml(() -> new ISOXMLParser(path), target, from, until);
+	}
+
+	/**
+	 * Isoxml.
+	 *
+	 * @param source the isoxml to parse
+	 * @param target the parser api to write the results to, closed after parsing
+	 * @param from   the start of the time range or null
+	 * @param until  the end of the time range or null
+	 */
+	private static void isoxml(IsoxmlSource source, ParserAPI target, @Nullable Instant from,
+			@Nullable Instant until) {
 		Validation errors = new Validation();
 		Model model = null;
 		List<GeoObject> features = new ArrayList<>();
 		List<TimeLog> timelogs = new ArrayList<>();
 		List<Grid> grids = new ArrayList<>();
+		// numbers the value uris of this parse, independent of earlier parses in the same JVM
+		Map<String, Integer> valueUriCounts = new HashMap<>();
 		long t1 = System.nanoTime();
 
-		try {
-			ISOXMLParser isoxml = new ISOXMLParser(input);
+		try (ISOXMLParser isoxml = source.open()) {
 			IsoXmlElement taskdata = isoxml.readTaskData();
 			isoxml.resolveAllXFR(taskdata, errors);
 			errors.addAll(taskdata.getAllErrors());
@@ -229,7 +312,7 @@ public class MainParser {
 				for (IsoXmlElement child : tsk.getChildren()) {
 					try {
 						if (child.getTag().equals("TLG")) {
-							TimeLog timelog = isoxml.getTimeLog(child);
+							TimeLog timelog = isoxml.getTimeLog(child, from, until);
 							if (!timelog.isEmpty()) {
 								timelog.findReferences();
 								timelog.getTimeLog().writeTo(model, ISOXMLParser.FORMAT.res("TLG"));
@@ -297,7 +380,7 @@ public class MainParser {
 
 					for (IsoXmlElement dlv : tim.findChildren("DLV")) {
 						try {
-							ValueDescription vd = ValueDescription.create(dlv, tlg, true);
+							ValueDescription vd = ValueDescription.create(dlv, tlg, valueUriCounts);
 							if (tlg != null)
 								vd.writeTo(model, ISOXMLParser.FORMAT.res("DLV"));
 							else
@@ -324,7 +407,7 @@ public class MainParser {
 			errors.fatal(e.getMessage());
 		}
 
-		try (ParserAPI api = new ParserAPI(output)) {
+		try (ParserAPI api = target) {
 			api.setParseTime((System.nanoTime() - t1) / 1000000);
 			api.setErrors(errors);
 			api.writeTriples(model);
@@ -459,9 +542,35 @@ public class MainParser {
 	 * @param output the output
 	 */
 	public static void efdi(InputStream input, OutputStream output) {
-		try {
-			ISOXMLParser isoxml = new ISOXMLParser(input);
+		efdi(() -> new ISOXMLParser(input), output, null, null);
+	}
 
+	/**
+	 * Converts the timelog entries of an isoxml zip file or an unpacked isoxml
+	 * directory in the given time range to EFDI. Only the records around the time
+	 * range are decoded.
+	 *
+	 * @param path   the zip file or the directory, that contains the taskdata.xml
+	 * @param output the output
+	 * @param from   the start of the time range or null for all entries from the
+	 *               beginning
+	 * @param until  the end of the time range or null for all entries to the end
+	 */
+	public static void efdi(Path path, OutputStream output, @Nullable Instant from, @Nullable Instant until) {
+		efdi(() -> new ISOXMLParser(path), output, from, until);
+	}
+
+	/**
+	 * Efdi.
+	 *
+	 * @param source the isoxml to convert
+	 * @param output the output
+	 * @param from   the start of the time range or null
+	 * @param until  the end of the time range or null
+	 */
+	private static void efdi(IsoxmlSource source, OutputStream output, @Nullable Instant from,
+			@Nullable Instant until) {
+		try (ISOXMLParser isoxml = source.open()) {
 			IsoXmlElement taskdata = isoxml.readTaskData();
 			isoxml.resolveAllXFR(taskdata, null);
 
@@ -469,7 +578,7 @@ public class MainParser {
 			List<TimeLog> timelogs = new ArrayList<>(tlgs.size());
 			for (IsoXmlElement tlg : tlgs) {
 				try {
-					timelogs.add(isoxml.getTimeLog(tlg));
+					timelogs.add(isoxml.getTimeLog(tlg, from, until));
 				} catch (IOException e) {
 				}
 			}
@@ -0,0 +1,89 @@
+package de.sdsd.projekt.parser.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The command line arguments of the ISOXML benchmarks and the measurements they
+ * share.
+ *
+ * <pre>
+ * [-i iterations] taskdata.zip isoxml/
+ * </pre>
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+class BenchmarkArgs {
+
+	/** The measured iterations. */
+	public final int iterations;
+
+	/** The ISOXML zip files, directories are searched recursively. */
+	public final List<File> zips;
+
+	/**
+	 * Instantiates new benchmark args.
+	 *
+	 * @param iterations the iterations
+	 * @param zips       the zip files
+	 */
+	private BenchmarkArgs(int iterations, List<File> zips) {
+		this.iterations = iterations;
+		this.zips = Collections.unmodifiableList(zips);
+	}
+
+	/**
+	 * Parses the command line arguments and prints the usage if there are no
+	 * samples.
+	 *
+	 * @param benchmark the name of the benchmark for the usage
+	 * @param args      the arguments
+	 * @return the benchmark args or null if there are no samples
+	 */
+	@CheckForNull
+	public static BenchmarkArgs parse(String benchmark, String[] args) {
+		int iterations = 5;
+		List<String> samples = new ArrayList<>();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-i") && i + 1 < args.length)
+				iterations = Integer.parseInt(args[++i]);
+			else
+				samples.add(args[i]);
+		}
+		if (samples.isEmpty()) {
+			System.err.println("USAGE: " + benchmark + " [-i iterations] isoxml-zips...");
+			return null;
+		}
+
+		List<File> zips = new ArrayList<>();
+		for (String sample : samples) {
+			File file = new File(sample);
+			if (file.isDirectory())
+				zips.addAll(FileUtils.listFiles(file, new String[] { "zip" }, true));
+			else
+				zips.add(file);
+		}
+		return new BenchmarkArgs(iterations, zips);
+	}
+
+	/**
+	 * Gets the allocated bytes of the current thread.
+	 *
+	 * @return the allocated bytes or 0 if the JVM doesn't support it
+	 */
+	@SuppressWarnings("restriction")
+	public static long allocated() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+}
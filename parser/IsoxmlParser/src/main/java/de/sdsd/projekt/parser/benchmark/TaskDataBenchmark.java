@@ -0,0 +1,124 @@
+package de.sdsd.projekt.parser.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import de.sdsd.projekt.parser.isoxml.ISOXMLParser;
+import de.sdsd.projekt.parser.isoxml.IsoXmlElement;
+
+/**
+ * Compares the parse time, allocation and peak heap usage of reading the
+ * TASKDATA.XML of ISOXML zip files as DOM and as stream. The allocation is
+ * measured with the per thread allocation counter of the HotSpot JVM, the peak
+ * heap usage with the peak usage of the heap memory pools.
+ *
+ * <pre>
+ * java -cp isoxml.jar de.sdsd.projekt.parser.benchmark.TaskDataBenchmark [-i iterations] taskdata.zip isoxml/
+ * </pre>
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public class TaskDataBenchmark {
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchmarkArgs benchmark = BenchmarkArgs.parse("TaskDataBenchmark", args);
+		if (benchmark == null)
+			return;
+
+		for (File zip : benchmark.zips) {
+			System.out.format("%s (%d bytes)\n", zip.getName(), zip.length());
+			run(zip, false, benchmark.iterations);
+			run(zip, true, benchmark.iterations);
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one zip file. The first iteration is a warm up and
+	 * isn't measured.
+	 *
+	 * @param zip        the zip file
+	 * @param streaming  true to stream the xml files, false to read them as DOM
+	 * @param iterations the iterations
+	 * @throws Exception the exception
+	 */
+	private static void run(File zip, boolean streaming, int iterations) throws Exception {
+		long nanos = 0, bytes = 0, peak = 0;
+		int elements = 0;
+		for (int i = 0; i <= iterations; ++i) {
+			System.gc();
+			long base = resetPeakHeap();
+			long a1 = BenchmarkArgs.allocated(), t1 = System.nanoTime();
+			IsoXmlElement taskdata;
+			try (ISOXMLParser isoxml = new ISOXMLParser(zip.toPath())) {
+				isoxml.setStreaming(streaming);
+				taskdata = isoxml.readTaskData();
+				isoxml.resolveAllXFR(taskdata, null);
+			}
+			long t2 = System.nanoTime(), a2 = BenchmarkArgs.allocated();
+			long used = peakHeap() - base;
+			if (i == 0)
+				continue;
+			elements = count(taskdata);
+			nanos += t2 - t1;
+			bytes += a2 - a1;
+			peak = Math.max(peak, used);
+		}
+		System.out.format("  %-6s %8.1f ms  %10.1f KB allocated  %10.1f KB peak heap  %d elements\n",
+				streaming ? "stream" : "dom", nanos / 1e6 / iterations, bytes / 1024. / iterations, peak / 1024.,
+				elements);
+	}
+
+	/**
+	 * Counts the elements of a tree.
+	 *
+	 * @param element the root element
+	 * @return the element count
+	 */
+	private static int count(IsoXmlElement element) {
+		int count = 1;
+		for (IsoXmlElement child : element.getChildren()) {
+			count += count(child);
+		}
+		return count;
+	}
+
+	/**
+	 * Resets the peak usage of the heap memory pools.
+	 *
+	 * @return the current heap usage in bytes
+	 */
+	private static long resetPeakHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * Gets the sum of the peak usages of the heap memory pools since the last
+	 * reset.
+	 *
+	 * @return the peak heap usage in bytes
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+}
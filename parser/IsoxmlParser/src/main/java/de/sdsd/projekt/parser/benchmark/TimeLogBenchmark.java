@@ -0,0 +1,94 @@
+package de.sdsd.projekt.parser.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.time.Instant;
+
+import de.sdsd.projekt.parser.isoxml.ISOXMLParser;
+import de.sdsd.projekt.parser.isoxml.IsoXmlElement;
+import de.sdsd.projekt.parser.isoxml.TimeLog;
+import de.sdsd.projekt.parser.isoxml.TimeLogEntry;
+
+/**
+ * Measures the decode throughput and allocation rate of the ISOXML timelogs.
+ * Every timelog of the given ISOXML zip files is decoded and then read row by
+ * row like the parser does. The allocation is measured with the per thread
+ * allocation counter of the HotSpot JVM.
+ *
+ * <pre>
+ * java -cp isoxml.jar de.sdsd.projekt.parser.benchmark.TimeLogBenchmark [-i iterations] taskdata.zip isoxml/
+ * </pre>
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public class TimeLogBenchmark {
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchmarkArgs benchmark = BenchmarkArgs.parse("TimeLogBenchmark", args);
+		if (benchmark == null)
+			return;
+
+		for (File zip : benchmark.zips) {
+			ISOXMLParser isoxml;
+			try (InputStream in = new FileInputStream(zip)) {
+				isoxml = new ISOXMLParser(in);
+			}
+			for (IsoXmlElement tlg : isoxml.getAllTimeLogs()) {
+				run(isoxml, tlg, zip.getName(), benchmark.iterations);
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmark for one timelog. The first iteration is a warm up and
+	 * isn't measured.
+	 *
+	 * @param isoxml     the isoxml
+	 * @param tlg        the TLG element
+	 * @param name       the name of the zip file
+	 * @param iterations the iterations
+	 * @throws Exception the exception
+	 */
+	private static void run(ISOXMLParser isoxml, IsoXmlElement tlg, String name, int iterations) throws Exception {
+		long decodeNanos = 0, readNanos = 0, decodeBytes = 0, readBytes = 0, checksum = 0;
+		int rows = 0;
+		for (int i = 0; i <= iterations; ++i) {
+			long a1 = BenchmarkArgs.allocated(), t1 = System.nanoTime();
+			TimeLog timelog = isoxml.getTimeLog(tlg);
+			long t2 = System.nanoTime(), a2 = BenchmarkArgs.allocated();
+			for (TimeLogEntry entry : timelog) {
+				Instant time = entry.getHead(0, Instant.class);
+				Double latitude = entry.getHead(1, Double.class);
+				if (time != null && latitude != null)
+					checksum += time.toEpochMilli() + latitude.longValue();
+				for (int v = 0; v < entry.size(); ++v) {
+					if (entry.hasValue(v))
+						checksum += entry.getValue(v);
+				}
+			}
+			long t3 = System.nanoTime(), a3 = BenchmarkArgs.allocated();
+			if (i == 0)
+				continue;
+			rows = timelog.size();
+			decodeNanos += t2 - t1;
+			readNanos += t3 - t2;
+			decodeBytes += a2 - a1;
+			readBytes += a3 - a2;
+		}
+		double count = rows * (double) iterations;
+		System.out.format("%s %s: %d rows (%x)\n", name, tlg.getAttribute("filename").getStringValue(), rows,
+				checksum);
+		System.out.format("  decode %10.0f rows/s  %8.1f B/row allocated\n", count / (decodeNanos / 1e9),
+				decodeBytes / count);
+		System.out.format("  read   %10.0f rows/s  %8.1f B/row allocated\n", count / (readNanos / 1e9),
+				readBytes / count);
+	}
+}
@@ -1,13 +1,20 @@
 package de.sdsd.projekt.parser.isoxml;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -15,8 +22,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.annotation.CheckForNull;
@@ -25,6 +34,10 @@ import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.jena.rdf.model.Model;
@@ -34,7 +47,6 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -52,10 +64,11 @@ import de.sdsd.projekt.parser.isoxml.Link.LinkEntry;
 
 /**
  * Base class of the isoxml parser. It represents a complete isoxml taskdata zip file.
+ * The xml files are streamed into {@link IsoXmlElement} trees without building a DOM.
  * 
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
  */
-public class ISOXMLParser {
+public class ISOXMLParser implements Closeable {
 	
 	/** The Constant FORMAT. */
 	public static final WikiFormat FORMAT = Util.format("isoxml");
@@ -75,11 +88,40 @@ public class ISOXMLParser {
 		}
 	}
 
+	/** The factory for the streaming xml readers. */
+	private static final XMLInputFactory XML_INPUT = XMLInputFactory.newInstance();
+	static {
+		XML_INPUT.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		// use the qualified names and xmlns attributes like the DOM
+		if(XML_INPUT.isPropertySupported(XMLInputFactory.IS_NAMESPACE_AWARE))
+			XML_INPUT.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+	}
+
 	/** The content. */
 	private final HashMap<String, byte[]> content = new HashMap<>();
 	
+	/** The directory of an unpacked isoxml or null for a zip file. */
+	@Nullable
+	private final Path directory;
+	
+	/** The files of an unpacked isoxml by lower case file name. */
+	private final HashMap<String, Path> files = new HashMap<>();
+	
+	/** The zip file, whose entries are read on demand, or null. */
+	@Nullable
+	private final ZipFile zip;
+	
+	/** The entries of the zip file by lower case file name. */
+	private final HashMap<String, ZipEntry> entries = new HashMap<>();
+	
+	/** The timelog indexes by lower case binary file name. */
+	private final HashMap<String, TimeLogIndex> indexes = new HashMap<>();
+	
 	/** The builder. */
 	private final DocumentBuilder builder;
+	
+	/** Whether the xml files are streamed or read as DOM. */
+	private boolean streaming = true;
 
 	/** The idref. */
 	private final HashMap<String, IsoXmlElement> idref = new HashMap<>();
@@ -95,6 +137,8 @@ public class ISOXMLParser {
 	 */
 	public ISOXMLParser(InputStream isoxmlzip) throws IOException, ParserConfigurationException, ZipException {
 		this.builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		this.directory = null;
+		this.zip = null;
 		try(ZipInputStream stream = new ZipInputStream(isoxmlzip, Charset.forName("Cp437"))) {
 			ZipEntry entry;
 			while((entry = stream.getNextEntry()) != null) {
@@ -104,6 +148,106 @@ public class ISOXMLParser {
 		}
 	}
 
+	/**
+	 * Open an isoxml zip file or an unpacked isoxml directory.
+	 * The entries of a zip file are read on demand and must be closed with {@link #close()}.
+	 * The binary files of a directory are memory-mapped and the timelog indexes are stored alongside the binaries.
+	 * If the file is no zip file, an {@link ZipException} is thrown.
+	 * 
+	 * @param path the isoxml zip file or the directory, that contains the taskdata.xml
+	 * @throws IOException error while listing the directory or reading the zip file
+	 * @throws ParserConfigurationException error while creating the document builder
+	 * @throws ZipException error while reading the zip file content
+	 */
+	public ISOXMLParser(Path path) throws IOException, ParserConfigurationException, ZipException {
+		this.builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		if(Files.isDirectory(path)) {
+			this.directory = path;
+			this.zip = null;
+			try(Stream<Path> stream = Files.walk(path)) {
+				stream.filter(Files::isRegularFile)
+						.forEach(file -> files.put(file.getFileName().toString().toLowerCase(), file));
+			}
+		} else {
+			this.directory = null;
+			this.zip = new ZipFile(path.toFile(), Charset.forName("Cp437"));
+			zip.stream()
+					.filter(entry -> !entry.isDirectory())
+					.forEach(entry -> entries.put(new File(entry.getName()).getName().toLowerCase(), entry));
+		}
+	}
+
+	/**
+	 * Closes the zip file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(zip != null)
+			zip.close();
+	}
+
+	/**
+	 * Sets whether the xml files are streamed, which is the default, or read as DOM.
+	 *
+	 * @param streaming true to stream the xml files, false to read them as DOM
+	 * @return this object for method chaining
+	 */
+	public ISOXMLParser setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * Opens a file of the isoxml.
+	 *
+	 * @param name the name
+	 * @return the input stream
+	 * @throws FileNotFoundException the file not found exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Nonnull
+	private InputStream open(String name) throws FileNotFoundException, IOException {
+		if(directory != null)
+			return Files.newInputStream(getPath(name));
+		if(zip != null)
+			return zip.getInputStream(getEntry(name));
+		byte[] bin = content.get(name.toLowerCase());
+		if(bin == null) throw new FileNotFoundException("Couldn't find " + name);
+		return new ByteArrayInputStream(bin);
+	}
+
+	/**
+	 * Reads a xml file into an element tree.
+	 *
+	 * @param name the name
+	 * @param formats the formats
+	 * @return the root element
+	 * @throws SAXException if the file is no valid xml
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	@Nonnull
+	private IsoXmlElement readXml(String name, JSONObject formats) throws SAXException, IOException, FileNotFoundException {
+		if(!streaming)
+			return new IsoXmlElement(this, formats, null, getXml(name).getDocumentElement());
+		try(InputStream in = open(name)) {
+			XMLStreamReader reader = XML_INPUT.createXMLStreamReader(in, "UTF-8");
+			try {
+				while(reader.hasNext()) {
+					if(reader.next() == XMLStreamConstants.START_ELEMENT)
+						return new IsoXmlElement(this, formats, null, reader);
+				}
+				throw new SAXException(name + ": No root element");
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new SAXException(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Gets the xml.
 	 *
@@ -115,11 +259,39 @@ public class ISOXMLParser {
 	 */
 	@Nonnull
 	private Document getXml(String name) throws SAXException, IOException, FileNotFoundException {
-		byte[] bin = content.get(name.toLowerCase());
-		if(bin == null) throw new FileNotFoundException("Couldn't find " + name);
-		InputSource is = new InputSource(new ByteArrayInputStream(bin));
-		is.setEncoding("UTF-8");
-		return builder.parse(is);
+		try(InputStream in = open(name)) {
+			InputSource is = new InputSource(in);
+			is.setEncoding("UTF-8");
+			return builder.parse(is);
+		}
+	}
+	
+	/**
+	 * Gets the path of a file in an unpacked isoxml.
+	 *
+	 * @param name the name
+	 * @return the path
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	@Nonnull
+	private Path getPath(String name) throws FileNotFoundException {
+		Path file = files.get(name.toLowerCase());
+		if(file == null) throw new FileNotFoundException("Couldn't find " + name);
+		return file;
+	}
+	
+	/**
+	 * Gets the entry of a file in the zip file.
+	 *
+	 * @param name the name
+	 * @return the entry
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	@Nonnull
+	private ZipEntry getEntry(String name) throws FileNotFoundException {
+		ZipEntry entry = entries.get(name.toLowerCase());
+		if(entry == null) throw new FileNotFoundException("Couldn't find " + name);
+		return entry;
 	}
 
 	/**
@@ -130,12 +302,37 @@ public class ISOXMLParser {
 	 * @throws FileNotFoundException the file not found exception
 	 */
 	@Nonnull
-	private byte[] getBin(String name) throws FileNotFoundException {
+	private byte[] getBin(String name) throws FileNotFoundException, IOException {
+		if(directory != null)
+			return Files.readAllBytes(getPath(name));
+		if(zip != null) {
+			try(InputStream in = zip.getInputStream(getEntry(name))) {
+				return IOUtils.toByteArray(in);
+			}
+		}
 		byte[] bin = content.get(name.toLowerCase());
 		if(bin == null) throw new FileNotFoundException("Couldn't find " + name);
 		return bin;
 	}
 
+	/**
+	 * Gets the bin as buffer.
+	 * The binaries of an unpacked isoxml are memory-mapped.
+	 *
+	 * @param name the name
+	 * @return the bin
+	 * @throws FileNotFoundException the file not found exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Nonnull
+	private ByteBuffer getBinBuffer(String name) throws FileNotFoundException, IOException {
+		if(directory == null)
+			return ByteBuffer.wrap(getBin(name));
+		try(FileChannel channel = FileChannel.open(getPath(name), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
 	/** The taskdata. */
 	private IsoXmlElement taskdata = null;
 	
@@ -151,7 +348,7 @@ public class ISOXMLParser {
 	@Nonnull
 	public IsoXmlElement readTaskData() throws SAXException, IOException, FileNotFoundException {
 		if(taskdata == null)
-			taskdata = new IsoXmlElement(this, TASKDATA, null, getXml("taskdata.xml").getDocumentElement());
+			taskdata = readXml("taskdata.xml", TASKDATA);
 		return taskdata;
 	}
 
@@ -173,8 +370,7 @@ public class ISOXMLParser {
 			throw new IllegalArgumentException("Given element doesn't have a filename attribute");
 		if(attr.hasError())
 			throw new IllegalArgumentException(attr.getError());
-		Element xml = getXml(attr.getValue() + ".xml").getDocumentElement();
-		return new IsoXmlElement(this, TASKDATA, null, xml);
+		return readXml(attr.getValue() + ".xml", TASKDATA);
 	}
 
 	/**
@@ -212,6 +408,62 @@ public class ISOXMLParser {
 	 */
 	public TimeLog getTimeLog(IsoXmlElement tlg) 
 			throws IllegalArgumentException, FileNotFoundException, SAXException, IOException {
+		return getTimeLog(tlg, null, null);
+	}
+	
+	/**
+	 * Gets the entries of a time log in a time range.
+	 * Only the records around the time range are decoded using the {@link TimeLogIndex} of the timelog.
+	 *
+	 * @param tlg the tlg
+	 * @param from the start of the time range or null for all entries from the beginning
+	 * @param until the end of the time range or null for all entries to the end
+	 * @return the time log
+	 * @throws IllegalArgumentException the illegal argument exception
+	 * @throws FileNotFoundException the file not found exception
+	 * @throws SAXException the SAX exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TimeLog getTimeLog(IsoXmlElement tlg, @Nullable Instant from, @Nullable Instant until) 
+			throws IllegalArgumentException, FileNotFoundException, SAXException, IOException {
+		String name = getTimeLogName(tlg);
+		IsoXmlElement tim = readXml(name + ".xml", TIMELOG);
+		ByteBuffer content = getBinBuffer(name + ".bin");
+		TimeLogIndex index = from != null || until != null ? getTimeLogIndex(name, tim, content) : null;
+		TimeLog timelog = new TimeLog(tlg, name, tim, content, index, from, until);
+		if(index == null && timelog.getIndex() != null)
+			putTimeLogIndex(name, timelog.getIndex());
+		return timelog;
+	}
+	
+	/**
+	 * Gets the record offset index of a time log.
+	 * For an unpacked isoxml the index is read from or written to a file alongside the binary.
+	 *
+	 * @param tlg the tlg
+	 * @return the time log index
+	 * @throws IllegalArgumentException the illegal argument exception
+	 * @throws FileNotFoundException the file not found exception
+	 * @throws SAXException the SAX exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TimeLogIndex getTimeLogIndex(IsoXmlElement tlg) 
+			throws IllegalArgumentException, FileNotFoundException, SAXException, IOException {
+		String name = getTimeLogName(tlg);
+		TimeLogIndex index = indexes.get(name.toLowerCase());
+		if(index != null) return index;
+		IsoXmlElement tim = readXml(name + ".xml", TIMELOG);
+		return getTimeLogIndex(name, tim, getBinBuffer(name + ".bin"));
+	}
+	
+	/**
+	 * Gets the filename of a time log.
+	 *
+	 * @param tlg the tlg
+	 * @return the filename without extension
+	 * @throws IllegalArgumentException the illegal argument exception
+	 */
+	private static String getTimeLogName(IsoXmlElement tlg) throws IllegalArgumentException {
 		if(!tlg.getTag().equals("TLG"))
 			throw new IllegalArgumentException("Given element is no TLG");
 		StringAttr attr = tlg.getAttribute("filename", StringAttr.class);
@@ -219,9 +471,82 @@ public class ISOXMLParser {
 			throw new IllegalArgumentException("Given element doesn't have a filename attribute");
 		if(attr.hasError())
 			throw new IllegalArgumentException(attr.getError());
-		IsoXmlElement tim = new IsoXmlElement(this, TIMELOG, null, getXml(attr.getValue() + ".xml").getDocumentElement());
-		byte[] content = getBin(attr.getValue() + ".bin");
-		return new TimeLog(tlg, attr.getValue(), tim, content);
+		return attr.getValue();
+	}
+	
+	/**
+	 * Gets the record offset index of a time log.
+	 * It is read from the index file of an unpacked isoxml or built by scanning the binary.
+	 *
+	 * @param name the filename of the time log without extension
+	 * @param tim the timelog header
+	 * @param content the binary
+	 * @return the time log index
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	private TimeLogIndex getTimeLogIndex(String name, IsoXmlElement tim, ByteBuffer content) throws FileNotFoundException {
+		TimeLogIndex index = indexes.get(name.toLowerCase());
+		if(index != null) return index;
+		long modified = directory != null ? binModified(name) : -1;
+		if(modified >= 0) {
+			Path sidecar = indexPath(name);
+			index = TimeLogIndex.read(sidecar, content.limit(), modified, TimeLogIndex.DEFAULT_INTERVAL);
+			if(index != null) {
+				indexes.put(name.toLowerCase(), index);
+				return index;
+			}
+		}
+		index = TimeLogIndex.build(new TimeLogConfig(tim, null), content, TimeLogIndex.DEFAULT_INTERVAL);
+		putTimeLogIndex(name, index);
+		return index;
+	}
+	
+	/**
+	 * Caches the record offset index of a time log.
+	 * For an unpacked isoxml the index is stored alongside the binary.
+	 *
+	 * @param name the filename of the time log without extension
+	 * @param index the time log index
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	private void putTimeLogIndex(String name, TimeLogIndex index) throws FileNotFoundException {
+		indexes.put(name.toLowerCase(), index);
+		if(directory == null) return;
+		long modified = binModified(name);
+		if(modified < 0) return;
+		Path sidecar = indexPath(name);
+		if(TimeLogIndex.read(sidecar, index.getSize(), modified, index.getInterval()) != null) return;
+		try {
+			index.write(sidecar, modified);
+		} catch (IOException e) {
+			System.err.println(sidecar + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Gets the last modified time of the binary of a time log in an unpacked isoxml.
+	 *
+	 * @param name the filename of the time log without extension
+	 * @return the last modified time in milliseconds or -1 if it can't be read
+	 */
+	private long binModified(String name) {
+		try {
+			return Files.getLastModifiedTime(getPath(name + ".bin")).toMillis();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Gets the path of the index file of a time log in an unpacked isoxml.
+	 *
+	 * @param name the filename of the time log without extension
+	 * @return the index file
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	private Path indexPath(String name) throws FileNotFoundException {
+		Path bin = getPath(name + ".bin");
+		return bin.resolveSibling(bin.getFileName() + TimeLogIndex.EXTENSION);
 	}
 	
 	/**
@@ -362,7 +687,7 @@ public class ISOXMLParser {
 			throws IllegalArgumentException, FileNotFoundException, SAXException, IOException {
 		if(!LinkListFilename.equalsIgnoreCase(afe.getAttribute("filenameWithExtension", StringAttr.class).getValue()))
 			throw new IllegalArgumentException("Given element doesn't describe an attached linklist");
-		return new IsoXmlElement(this, LINKLIST, null, getXml(LinkListFilename).getDocumentElement());
+		return readXml(LinkListFilename, LINKLIST);
 	}
 	
 	/**
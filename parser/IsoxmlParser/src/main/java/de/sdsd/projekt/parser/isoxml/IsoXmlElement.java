@@ -12,6 +12,9 @@ import java.util.Map.Entry;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.jena.rdf.model.Model;
@@ -95,8 +98,93 @@ public class IsoXmlElement {
 	 * @param element the element
 	 */
 	public IsoXmlElement(ISOXMLParser root, JSONObject formats, @Nullable IsoXmlElement parent, Element element) {
+		this(root, formats, parent, element.getTagName(), attributes(element));
+		for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if(child instanceof Element) {
+				children.add(new IsoXmlElement(root, formats, this, (Element) child));
+			}
+		}
+		checkContent();
+	}
+
+	/**
+	 * Instantiates a new iso xml element from a stream.
+	 * The reader must be positioned at the start of the element and is positioned at its end afterwards.
+	 *
+	 * @param root the root
+	 * @param formats the formats
+	 * @param parent the parent
+	 * @param reader the reader
+	 * @throws XMLStreamException error while reading the xml
+	 */
+	IsoXmlElement(ISOXMLParser root, JSONObject formats, @Nullable IsoXmlElement parent, XMLStreamReader reader) 
+			throws XMLStreamException {
+		this(root, formats, parent, qname(reader.getPrefix(), reader.getLocalName()), attributes(reader));
+		while(reader.hasNext()) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+				children.add(new IsoXmlElement(root, formats, this, reader));
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				break;
+		}
+		checkContent();
+	}
+
+	/**
+	 * Gets the attributes of a DOM element.
+	 *
+	 * @param element the element
+	 * @return the attribute values by name
+	 */
+	private static Map<String, String> attributes(Element element) {
+		NamedNodeMap attrMap = element.getAttributes();
+		Map<String, String> attributes = new LinkedHashMap<>(attrMap.getLength());
+		for (int i = 0; i < attrMap.getLength(); ++i) {
+			Attr attr = (Attr) attrMap.item(i);
+			attributes.put(attr.getName(), attr.getValue());
+		}
+		return attributes;
+	}
+
+	/**
+	 * Gets the attributes of the current element of a stream.
+	 *
+	 * @param reader the reader
+	 * @return the attribute values by name
+	 */
+	private static Map<String, String> attributes(XMLStreamReader reader) {
+		Map<String, String> attributes = new LinkedHashMap<>(reader.getAttributeCount());
+		for (int i = 0; i < reader.getAttributeCount(); ++i) {
+			attributes.put(qname(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), 
+					reader.getAttributeValue(i));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Gets the qualified name like in the DOM.
+	 *
+	 * @param prefix the prefix
+	 * @param localName the local name
+	 * @return the qualified name
+	 */
+	private static String qname(@Nullable String prefix, String localName) {
+		return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+	}
+
+	/**
+	 * Instantiates a new iso xml element without children.
+	 *
+	 * @param root the root
+	 * @param formats the formats
+	 * @param parent the parent
+	 * @param tag the tag
+	 * @param attrValues the attribute values by name
+	 */
+	private IsoXmlElement(ISOXMLParser root, JSONObject formats, @Nullable IsoXmlElement parent, 
+			String tag, Map<String, String> attrValues) {
 		this.root = root;
-		this.tag = element.getTagName();
+		this.tag = tag;
 		this.format = formats.optJSONObject(tag);
 		this.parent = parent;
 		this.uri = Util.createRandomUri();
@@ -113,7 +201,7 @@ public class IsoXmlElement {
 				attributes = new LinkedHashMap<>(attrib.length());
 				for(String k : attrib.keySet()) {
 					JSONObject f = attrib.getJSONObject(k);
-					Attribute<?> attr = Attribute.parseAttribute(this, k, f, element.hasAttribute(k) ? element.getAttribute(k) : null);
+					Attribute<?> attr = Attribute.parseAttribute(this, k, f, attrValues.get(k));
 					attributes.put(attr.getName(), attr);
 					if(attr.hasValue()) {
 						switch(attr.getType()) {
@@ -140,22 +228,18 @@ public class IsoXmlElement {
 						}
 					}
 				}
-				NamedNodeMap attrMap = element.getAttributes();
-				for (int i = 0; i < attrMap.getLength(); ++i) {
-					Attr attr = (Attr) attrMap.item(i);
-					if(!attrib.has(attr.getName()))
-						attributes.put(attr.getName(), Attribute.createUnknownAttribute(this, attr.getName(), attr.getValue()));
+				for (Entry<String, String> attr : attrValues.entrySet()) {
+					if(!attrib.has(attr.getKey()))
+						attributes.put(attr.getKey(), Attribute.createUnknownAttribute(this, attr.getKey(), attr.getValue()));
 				}
 			}
 			else
 				attributes = Collections.emptyMap();
 		}
 		else {
-			NamedNodeMap attrMap = element.getAttributes();
-			attributes = new LinkedHashMap<>(attrMap.getLength());
-			for (int i = 0; i < attrMap.getLength(); ++i) {
-				Attr attr = (Attr) attrMap.item(i);
-				attributes.put(attr.getName(), Attribute.createUnknownAttribute(this, attr.getName(), attr.getValue()));
+			attributes = new LinkedHashMap<>(attrValues.size());
+			for (Entry<String, String> attr : attrValues.entrySet()) {
+				attributes.put(attr.getKey(), Attribute.createUnknownAttribute(this, attr.getKey(), attr.getValue()));
 			}
 		}
 
@@ -178,13 +262,6 @@ public class IsoXmlElement {
 				: oid != null ? String.format("%s(%d)", tag, oid.getValue()) 
 						: String.format("%s(%s)", tag, label);
 		this.prefix = parent != null ? parent.prefix + '.' + prefix : prefix;
-
-		for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
-			if(child instanceof Element) {
-				children.add(new IsoXmlElement(root, formats, this, (Element) child));
-			}
-		}
-		checkContent();
 	}
 
 	/**
@@ -7,13 +7,15 @@ import java.nio.ByteOrder;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.AbstractList;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.RandomAccess;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.CheckForNull;
@@ -37,16 +39,16 @@ import de.sdsd.projekt.parser.isoxml.RefAttr.IDRef;
 import de.sdsd.projekt.parser.isoxml.RefAttr.OIDRef;
 
 /**
- * Class for reading binary timelogs.
+ * Class for reading binary timelogs. The entries are decoded into primitive
+ * columns: the times, one column for every header value, that is read from the
+ * binary, and one column with a presence bitmap for every data log value. The
+ * {@link TimeLogEntry} objects are views on a row of the columns.
  * 
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
  *         Klose</a>
  */
 public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess {
 
-	/** The entries. */
-	private final ArrayList<TimeLogEntry> entries = new ArrayList<>();
-
 	/** The config. */
 	private final TimeLogConfig config;
 
@@ -56,6 +58,43 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	/** The timelog. */
 	private final ParserAPI.TimeLog timelog;
 
+	/** The index of the binary or null if the entries of a time range were decoded without index. */
+	@CheckForNull
+	private final TimeLogIndex index;
+
+	/** The header types by header index. */
+	private final AttrType[] types;
+
+	/** The constant header values by header index, for headers that aren't read from the binary. */
+	private final Object[] constants;
+
+	/** The row count. */
+	private int rows = 0;
+
+	/** The times of the rows in milliseconds of the day. */
+	private int[] timeMs;
+
+	/** The times of the rows in days since 1980-01-01. */
+	private char[] timeDays;
+
+	/** The header columns by header index, null for constant headers and the time. */
+	private final int[][] heads;
+
+	/** The days of the date time header columns by header index. */
+	private final char[][] headDays;
+
+	/** The value columns by data log value index. */
+	private final int[][] values;
+
+	/** The presence bitmaps of the value columns. */
+	private final long[][] present;
+
+	/** The errors by row. */
+	private final TreeMap<Integer, String> errors = new TreeMap<>();
+
+	/** The count of decoded header values of incomplete rows. */
+	private final HashMap<Integer, Integer> incomplete = new HashMap<>();
+
 	/**
 	 * Checks if is header read.
 	 *
@@ -96,42 +135,62 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	}
 
 	/**
-	 * Header read.
+	 * Reads a header value from the binary.
 	 *
-	 * @param attr the attr
+	 * @param type the attribute type
 	 * @param head the head
-	 * @return the object
+	 * @return the raw value, date times contain the days in the upper 32 bits
 	 * @throws BufferUnderflowException the buffer underflow exception
 	 * @throws IllegalArgumentException the illegal argument exception
 	 */
-	static Object headerRead(Attribute<?> attr, ByteBuffer head)
-			throws BufferUnderflowException, IllegalArgumentException {
-		if (isHeaderRead(attr)) {
-			switch (attr.getType()) {
-			case BYTE:
-			case ENUM:
-				return head.get();
-			case INT:
-				return head.getInt();
-			case ULONG:
-				return Integer.toUnsignedLong(head.getInt());
-			case USHORT:
-			case DDI:
-				return Short.toUnsignedInt(head.getShort());
-			case DOUBLE:
-				return head.getInt() * 1e-7;
-			case DECIMAL:
-				return head.getShort() * 1e-1F;
-			case DATETIME: {
-				int ms = head.getInt();
-				int days = Short.toUnsignedInt(head.getShort());
-				return new GpsTime(ms, days).toLocalInstant();
-			}
-			default:
-				throw new IllegalArgumentException("No specific length for the given attribute");
-			}
-		} else
-			return attr.getType() == AttrType.ENUM ? ((EnumAttr) attr).number() : attr.getValue();
+	static long headerRead(AttrType type, ByteBuffer head) throws BufferUnderflowException, IllegalArgumentException {
+		switch (type) {
+		case BYTE:
+		case ENUM:
+			return head.get();
+		case INT:
+		case ULONG:
+		case DOUBLE:
+			return head.getInt();
+		case USHORT:
+		case DDI:
+			return Short.toUnsignedInt(head.getShort());
+		case DECIMAL:
+			return head.getShort();
+		case DATETIME: {
+			int ms = head.getInt();
+			int days = Short.toUnsignedInt(head.getShort());
+			return (long) days << 32 | Integer.toUnsignedLong(ms);
+		}
+		default:
+			throw new IllegalArgumentException("No specific length for the given attribute");
+		}
+	}
+
+	/**
+	 * Converts a raw header value to its object.
+	 *
+	 * @param type the attribute type
+	 * @param raw  the raw value
+	 * @param days the days of date times
+	 * @return the object
+	 */
+	static Object headerValue(AttrType type, int raw, int days) {
+		switch (type) {
+		case BYTE:
+		case ENUM:
+			return (byte) raw;
+		case ULONG:
+			return Integer.toUnsignedLong(raw);
+		case DOUBLE:
+			return raw * 1e-7;
+		case DECIMAL:
+			return raw * 1e-1F;
+		case DATETIME:
+			return new GpsTime(raw, days).toLocalInstant();
+		default:
+			return raw;
+		}
 	}
 
 	/**
@@ -174,6 +233,28 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 		public Instant toLocalInstant() {
 			return toInstant(ZoneId.systemDefault());
 		}
+
+		/**
+		 * Converts an instant to the GPS time of the local time zone.
+		 *
+		 * @param instant the instant
+		 * @return the gps time
+		 */
+		public static GpsTime fromLocalInstant(Instant instant) {
+			LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+			int days = (int) ChronoUnit.DAYS.between(gpsTimeStart.toLocalDate(), time.toLocalDate());
+			return new GpsTime((int) (time.toLocalTime().toNanoOfDay() / 1000000), days);
+		}
+
+		/**
+		 * Gets the raw time, that is used by the {@link TimeLogIndex}.
+		 *
+		 * @return the days in the upper 32 bits and the milliseconds in the lower 32
+		 *         bits
+		 */
+		public long raw() {
+			return (long) days << 32 | Integer.toUnsignedLong(ms);
+		}
 	}
 
 	/**
@@ -185,21 +266,35 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	 * @throws BufferUnderflowException the buffer underflow exception
 	 */
 	public static GpsTime findNextValidTime(ByteBuffer data, @Nullable GpsTime last) throws BufferUnderflowException {
-		if (last == null) {
+		long time = last != null ? nextValidTime(data, last.ms, last.days) : nextValidTime(data, 0, -1);
+		return new GpsTime((int) time, (int) (time >>> 32));
+	}
+
+	/**
+	 * Find next valid time without allocation.
+	 *
+	 * @param data     the data
+	 * @param lastMs   the milliseconds of the last time
+	 * @param lastDays the days of the last time or -1 if there is no last time
+	 * @return the time with the days in the upper 32 bits
+	 * @throws BufferUnderflowException the buffer underflow exception
+	 */
+	static long nextValidTime(ByteBuffer data, int lastMs, int lastDays) throws BufferUnderflowException {
+		if (lastDays < 0) {
 			int ms = data.getInt();
 			int days = Short.toUnsignedInt(data.getShort());
-			return new GpsTime(ms, days);
+			return (long) days << 32 | Integer.toUnsignedLong(ms);
 		}
 
 		for (int index = data.position(); index < data.limit() - 5; ++index) {
 			int days = Short.toUnsignedInt(data.getShort(index + 4));
-			if (days < last.days || days > last.days + 3)
+			if (days < lastDays || days > lastDays + 3)
 				continue;
 			int ms = data.getInt(index);
-			if (days == last.days && ms < last.ms - 3600000)
+			if (days == lastDays && ms < lastMs - 3600000)
 				continue;
 			data.position(index + 6);
-			return new GpsTime(ms, days);
+			return (long) days << 32 | Integer.toUnsignedLong(ms);
 		}
 
 		throw new BufferUnderflowException();
@@ -215,18 +310,167 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public TimeLog(IsoXmlElement tlg, String name, IsoXmlElement tim, byte[] content) throws IOException {
+		this(tlg, name, tim, ByteBuffer.wrap(content), null, null, null);
+	}
+
+	/**
+	 * Instantiates a new time log with the entries of a time range. If there is
+	 * an index, only the records around the time range are decoded, otherwise all
+	 * records are decoded and filtered.
+	 *
+	 * @param tlg     the tlg
+	 * @param name    the name
+	 * @param tim     the tim
+	 * @param content the content, e.g. a memory-mapped binary
+	 * @param index   the index of the content or null
+	 * @param from    the start of the time range or null for all entries from the
+	 *                beginning
+	 * @param until   the end of the time range or null for all entries to the end
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TimeLog(IsoXmlElement tlg, String name, IsoXmlElement tim, ByteBuffer content,
+			@Nullable TimeLogIndex index, @Nullable Instant from, @Nullable Instant until) throws IOException {
 		this.tlg = tlg;
 		this.config = new TimeLogConfig(tim, this::getTimeLog);
 
-		TimeLogEntry entry = null;
-		ByteBuffer data = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+		boolean filter = from != null || until != null;
+		long fromRaw = from != null ? GpsTime.fromLocalInstant(from).raw() : Long.MIN_VALUE;
+		long untilRaw = until != null ? GpsTime.fromLocalInstant(until).raw() : Long.MAX_VALUE;
+		ByteBuffer data = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		data.position(0);
+		if (filter && index != null) {
+			int[] range = index.range(fromRaw, untilRaw);
+			data.limit(range[1]);
+			data.position(range[0]);
+		}
+		TimeLogIndex.Builder builder = filter ? null : new TimeLogIndex.Builder(data.limit(), 
+				index != null ? index.getInterval() : TimeLogIndex.DEFAULT_INTERVAL);
+
+		List<Attribute<?>> header = config.getHeader();
+		int columns = config.getDlvs().size();
+		this.types = new AttrType[header.size()];
+		this.constants = new Object[header.size()];
+		this.heads = new int[header.size()][];
+		this.headDays = new char[header.size()][];
+		this.values = new int[columns][];
+		this.present = new long[columns][];
+
+		// lower estimate of the row count, that is reached if every row contains all values
+		int capacity = Math.max(16, data.remaining() / (Math.max(config.getHeaderLength(), 6) + 1 + 5 * columns));
+		this.timeMs = new int[capacity];
+		this.timeDays = new char[capacity];
+		for (int i = 1; i < header.size(); ++i) {
+			Attribute<?> attr = header.get(i);
+			types[i] = attr.getType();
+			if (isHeaderRead(attr)) {
+				heads[i] = new int[capacity];
+				if (types[i] == AttrType.DATETIME)
+					headDays[i] = new char[capacity];
+			} else
+				constants[i] = attr.getType() == AttrType.ENUM ? ((EnumAttr) attr).number() : attr.getValue();
+		}
+		for (int i = 0; i < columns; ++i) {
+			values[i] = new int[capacity];
+			present[i] = new long[(capacity + 63) >>> 6];
+		}
+
+		int lastMs = 0, lastDays = -1;
 		while (data.hasRemaining()) {
-			entry = new TimeLogEntry(config, data, entry);
-			entries.add(entry);
+			int row = rows++;
+			if (row == timeMs.length)
+				resize(timeMs.length + (timeMs.length >>> 1));
+			String error = null;
+			int headCount = 0;
+			try {
+				int startpos = data.position();
+				long time = nextValidTime(data, lastMs, lastDays);
+				int ms = (int) time, days = (int) (time >>> 32);
+				timeMs[row] = ms;
+				timeDays[row] = (char) days;
+				headCount = 1;
+				if (builder != null)
+					builder.add(row, data.position() - 6, time);
+				if (data.position() > startpos + 6)
+					error = "Invalid entry found";
+				else if (lastDays >= 0) {
+					if (ms == lastMs && days == lastDays)
+						error = "Same timestamp as before";
+					else if (ms < lastMs && days == lastDays)
+						error = (lastMs - ms) + "ms earlier timestamp than before";
+				}
+				lastMs = ms;
+				lastDays = days;
+
+				for (int i = 1; i < heads.length; ++i) {
+					if (heads[i] != null) {
+						long raw = headerRead(types[i], data);
+						heads[i][row] = (int) raw;
+						if (headDays[i] != null)
+							headDays[i][row] = (char) (raw >>> 32);
+					}
+					headCount = i + 1;
+				}
+
+				int dlvs = Byte.toUnsignedInt(data.get());
+				for (int i = 0; i < dlvs; ++i) {
+					int column = Byte.toUnsignedInt(data.get());
+					int value = data.getInt();
+					if (column >= columns)
+						throw new IndexOutOfBoundsException("Data log value index " + column);
+					values[column][row] = value;
+					present[column][row >>> 6] |= 1L << row;
+				}
+			} catch (BufferUnderflowException e) {
+				error = "Input data incomplete";
+				data.position(data.limit());
+				if (headCount == 0)
+					lastDays = -1;
+			} catch (IndexOutOfBoundsException e) {
+				error = "Input data invalid";
+			}
+			if (filter) {
+				long raw = (long) timeDays[row] << 32 | Integer.toUnsignedLong(timeMs[row]);
+				if (headCount == 0 || raw < fromRaw || raw > untilRaw) {
+					for (long[] bits : present) {
+						bits[row >>> 6] &= ~(1L << row);
+					}
+					--rows;
+					continue;
+				}
+			}
+			if (headCount < heads.length)
+				incomplete.put(row, headCount);
+			if (error != null)
+				errors.put(row, error);
 		}
+		resize(rows);
+		this.index = builder != null ? builder.build(rows) : index;
+
+		if (rows == 0 && filter)
+			this.timelog = new ParserAPI.TimeLog(tlg.getUris().get(0), name, from, until, 0);
+		else
+			this.timelog = new ParserAPI.TimeLog(tlg.getUris().get(0), name, get(0).getHead(0, Instant.class),
+					getLastValid().getHead(0, Instant.class), rows);
+	}
 
-		this.timelog = new ParserAPI.TimeLog(tlg.getUris().get(0), name, entries.get(0).getHead(0, Instant.class),
-				getLastValid().getHead(0, Instant.class), entries.size());
+	/**
+	 * Resizes all columns.
+	 *
+	 * @param capacity the new capacity
+	 */
+	private void resize(int capacity) {
+		timeMs = Arrays.copyOf(timeMs, capacity);
+		timeDays = Arrays.copyOf(timeDays, capacity);
+		for (int i = 1; i < heads.length; ++i) {
+			if (heads[i] != null)
+				heads[i] = Arrays.copyOf(heads[i], capacity);
+			if (headDays[i] != null)
+				headDays[i] = Arrays.copyOf(headDays[i], capacity);
+		}
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = Arrays.copyOf(values[i], capacity);
+			present[i] = Arrays.copyOf(present[i], (capacity + 63) >>> 6);
+		}
 	}
 
 	/**
@@ -258,6 +502,17 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 		return timelog;
 	}
 
+	/**
+	 * Gets the index of the binary. It is created while decoding all records.
+	 *
+	 * @return the index or null if only the entries of a time range were decoded
+	 *         without index
+	 */
+	@CheckForNull
+	public TimeLogIndex getIndex() {
+		return index;
+	}
+
 	/**
 	 * Gets the header names.
 	 *
@@ -289,12 +544,13 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 		 *
 		 * @param dlv     the dlv
 		 * @param timelog the timelog
-		 * @param counted the counted
+		 * @param counts  the counts of the value uris of the current parse to
+		 *                number the value uri or null for an unnumbered value uri
 		 * @return the value description
 		 * @throws SAXException the SAX exception
 		 */
-		public static ValueDescription create(IsoXmlElement dlv, @Nullable ParserAPI.TimeLog timelog, boolean counted)
-				throws SAXException {
+		public static ValueDescription create(IsoXmlElement dlv, @Nullable ParserAPI.TimeLog timelog,
+				@Nullable Map<String, Integer> counts) throws SAXException {
 			DDIAttr ddiattr = dlv.getAttribute("processDataDdi", DDIAttr.class);
 			IDRef detref = dlv.getAttribute("deviceElementIdRef", IDRef.class);
 			if (!ddiattr.hasValue())
@@ -310,7 +566,7 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 			if (!det.getTag().equals("DET"))
 				throw new SAXException("Referenced Device Element is a " + det.getName());
 
-			return new ValueDescription(dlv, ddi, det, timelog, counted);
+			return new ValueDescription(dlv, ddi, det, timelog, counts);
 		}
 
 		/**
@@ -327,19 +583,17 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 					det.getAttribute("deviceElementNumber", UShortAttr.class).getValue(), ddi);
 		}
 
-		/** The counted value uris. */
-		private static ConcurrentHashMap<String, Integer> COUNTED_VALUE_URIS = new ConcurrentHashMap<>();
-
 		/**
 		 * Creates the counted value uri.
 		 *
-		 * @param det the det
-		 * @param ddi the ddi
+		 * @param det    the det
+		 * @param ddi    the ddi
+		 * @param counts the counts of the value uris of the current parse
 		 * @return the string
 		 */
-		public static String createCountedValueUri(IsoXmlElement det, int ddi) {
+		public static String createCountedValueUri(IsoXmlElement det, int ddi, Map<String, Integer> counts) {
 			String vuri = createValueUri(det, ddi);
-			Integer num = COUNTED_VALUE_URIS.compute(vuri, (k, v) -> v != null ? v + 1 : 1);
+			Integer num = counts.merge(vuri, 1, Integer::sum);
 			return vuri + ':' + num.toString();
 		}
 
@@ -350,12 +604,12 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 		 * @param ddi     the ddi
 		 * @param det     the det
 		 * @param timelog the timelog
-		 * @param counted the counted
+		 * @param counts  the counts of the value uris of the current parse or null
 		 * @throws SAXException the SAX exception
 		 */
 		private ValueDescription(IsoXmlElement dlv, int ddi, IsoXmlElement det, @Nullable ParserAPI.TimeLog timelog,
-				boolean counted) throws SAXException {
-			super(counted ? createCountedValueUri(det, ddi) : createValueUri(det, ddi));
+				@Nullable Map<String, Integer> counts) throws SAXException {
+			super(counts != null ? createCountedValueUri(det, ddi, counts) : createValueUri(det, ddi));
 			dlv.setLinks(Arrays.asList(new Link(valueUri)));
 			if (timelog != null)
 				addTimeLog(timelog);
@@ -495,10 +749,8 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 			errors.error(timelog.name + ": " + e.getMessage());
 		}
 
-		for (int i = 0; i < entries.size(); ++i) {
-			TimeLogEntry tle = entries.get(i);
-			if (tle.hasError())
-				errors.error("%s [%d]: %s", timelog.name, i, tle.getError());
+		for (Map.Entry<Integer, String> e : this.errors.entrySet()) {
+			errors.error("%s [%d]: %s", timelog.name, e.getKey(), e.getValue());
 		}
 
 		return errors;
@@ -512,7 +764,9 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	 */
 	@Override
 	public TimeLogEntry get(int index) {
-		return entries.get(index);
+		if (index < 0 || index >= rows)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows);
+		return new TimeLogEntry(this, index);
 	}
 
 	/**
@@ -521,10 +775,9 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	 * @return the last valid
 	 */
 	public TimeLogEntry getLastValid() {
-		for (int i = entries.size() - 1; i >= 0; --i) {
-			TimeLogEntry entry = entries.get(i);
-			if (entry.getHead(0, Instant.class) != null)
-				return entry;
+		for (int i = rows - 1; i >= 0; --i) {
+			if (getHeadCount(i) > 0)
+				return new TimeLogEntry(this, i);
 		}
 		throw new IndexOutOfBoundsException("No valid entry found");
 	}
@@ -536,7 +789,91 @@ public class TimeLog extends AbstractList<TimeLogEntry> implements RandomAccess
 	 */
 	@Override
 	public int size() {
-		return entries.size();
+		return rows;
+	}
+
+	/**
+	 * Gets the config.
+	 *
+	 * @return the config
+	 */
+	TimeLogConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Gets the count of decoded header values of a row.
+	 *
+	 * @param row the row
+	 * @return the header count, smaller than the header size for incomplete rows
+	 */
+	int getHeadCount(int row) {
+		if (!incomplete.isEmpty()) {
+			Integer count = incomplete.get(row);
+			if (count != null)
+				return count;
+		}
+		return heads.length;
+	}
+
+	/**
+	 * Gets a header value of a row.
+	 *
+	 * @param row   the row
+	 * @param index the header index
+	 * @return the header value, the time as {@link GpsTime}, or null if it wasn't decoded
+	 */
+	@CheckForNull
+	Object getHead(int row, int index) {
+		if (index < 0 || index >= getHeadCount(row))
+			return null;
+		if (index == 0)
+			return new GpsTime(timeMs[row], timeDays[row]);
+		if (heads[index] == null)
+			return constants[index];
+		return headerValue(types[index], heads[index][row], headDays[index] != null ? headDays[index][row] : 0);
+	}
+
+	/**
+	 * Gets the value column count.
+	 *
+	 * @return the value column count
+	 */
+	int getValueCount() {
+		return values.length;
+	}
+
+	/**
+	 * Checks if a row has a value.
+	 *
+	 * @param row    the row
+	 * @param column the data log value index
+	 * @return true, if the row has a value in the column
+	 */
+	boolean hasValue(int row, int column) {
+		return column >= 0 && column < values.length && (present[column][row >>> 6] & 1L << row) != 0;
+	}
+
+	/**
+	 * Gets the value of a row.
+	 *
+	 * @param row    the row
+	 * @param column the data log value index
+	 * @return the value, 0 if the row has no value in the column
+	 */
+	int getValue(int row, int column) {
+		return values[column][row];
+	}
+
+	/**
+	 * Gets the error of a row.
+	 *
+	 * @param row the row
+	 * @return the error or null if the row is valid
+	 */
+	@CheckForNull
+	String getError(int row) {
+		return errors.isEmpty() ? null : errors.get(row);
 	}
 
 }
@@ -105,7 +105,7 @@ class TimeLogConfig {
 		ParserAPI.TimeLog tlg = timelog.get();
 		List<ValueDescription> valueDescriptions = new ArrayList<>(dlvs.size());
 		for (IsoXmlElement dlv : dlvs) {
-			valueDescriptions.add(ValueDescription.create(dlv, tlg, false));
+			valueDescriptions.add(ValueDescription.create(dlv, tlg, null));
 		}
 		this.valueDescriptions = Collections.unmodifiableList(valueDescriptions);
 	}
@@ -1,13 +1,10 @@
 package de.sdsd.projekt.parser.isoxml;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.List;
 
 import javax.annotation.CheckForNull;
-import javax.annotation.Nullable;
 
 import org.xml.sax.SAXException;
 
@@ -15,7 +12,8 @@ import de.sdsd.projekt.parser.isoxml.TimeLog.GpsTime;
 import de.sdsd.projekt.parser.isoxml.TimeLog.ValueDescription;
 
 /**
- * Represents a single row of a isoxml timelog.
+ * Represents a single row of a isoxml timelog. It is a view on a row of the
+ * columns of the {@link TimeLog}.
  * 
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
  *         Klose</a>
@@ -23,61 +21,21 @@ import de.sdsd.projekt.parser.isoxml.TimeLog.ValueDescription;
  */
 public class TimeLogEntry {
 
-	/** The config. */
-	private final TimeLogConfig config;
+	/** The timelog. */
+	private final TimeLog timelog;
 
-	/** The header. */
-	private final Object[] header;
-
-	/** The values. */
-	private final Integer[] values;
-
-	/** The error. */
-	private String error = null;
+	/** The row. */
+	private final int row;
 
 	/**
 	 * Instantiates a new time log entry.
 	 *
-	 * @param config the config
-	 * @param data   the data
-	 * @param last   the last
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @param timelog the timelog
+	 * @param row     the row
 	 */
-	public TimeLogEntry(TimeLogConfig config, ByteBuffer data, @Nullable TimeLogEntry last) throws IOException {
-		this.config = config;
-		List<Attribute<?>> headerlist = config.getHeader();
-		this.header = new Object[headerlist.size()];
-		this.values = new Integer[config.getDlvs().size()];
-
-		try {
-			int startpos = data.position();
-			GpsTime lasttime = last != null ? (GpsTime) last.header[0] : null;
-			GpsTime thistime = TimeLog.findNextValidTime(data, lasttime);
-			header[0] = thistime;
-			if (data.position() > startpos + 6)
-				error = "Invalid entry found";
-			else if (lasttime != null) {
-				if (thistime.ms == lasttime.ms && thistime.days == lasttime.days)
-					error = "Same timestamp as before";
-				else if (thistime.ms < lasttime.ms && thistime.days == lasttime.days)
-					error = (lasttime.ms - thistime.ms) + "ms earlier timestamp than before";
-			}
-			for (int i = 1; i < header.length; ++i) {
-				Attribute<?> attr = headerlist.get(i);
-				header[i] = TimeLog.headerRead(attr, data);
-			}
-
-			int dlvs = Byte.toUnsignedInt(data.get());
-			for (int i = 0; i < dlvs; ++i) {
-				int index = Byte.toUnsignedInt(data.get());
-				values[index] = data.getInt();
-			}
-		} catch (BufferUnderflowException e) {
-			error = "Input data incomplete";
-			data.position(data.limit());
-		} catch (IndexOutOfBoundsException e) {
-			error = "Input data invalid";
-		}
+	TimeLogEntry(TimeLog timelog, int row) {
+		this.timelog = timelog;
+		this.row = row;
 	}
 
 	/**
@@ -86,7 +44,7 @@ public class TimeLogEntry {
 	 * @return the config
 	 */
 	TimeLogConfig getConfig() {
-		return config;
+		return timelog.getConfig();
 	}
 
 	/**
@@ -95,7 +53,7 @@ public class TimeLogEntry {
 	 * @return the header count
 	 */
 	public int getHeaderCount() {
-		return header.length;
+		return getConfig().getHeader().size();
 	}
 
 	/**
@@ -108,7 +66,7 @@ public class TimeLogEntry {
 	 */
 	@CheckForNull
 	public <T> T getHead(String name, Class<T> cls) {
-		List<Attribute<?>> list = config.getHeader();
+		List<Attribute<?>> list = getConfig().getHeader();
 		for (int i = 0; i < list.size(); ++i) {
 			if (list.get(i).getName().equalsIgnoreCase(name))
 				return getHead(i, cls);
@@ -125,10 +83,11 @@ public class TimeLogEntry {
 	 * @return the head
 	 */
 	public <T> T getHead(int index, Class<T> cls) {
-		if (index == 0 && header[index] != null && cls.isAssignableFrom(Instant.class))
-			return cls.cast(((GpsTime) header[index]).toLocalInstant());
-		if (index >= 0 && index < header.length && cls.isInstance(header[index]))
-			return cls.cast(header[index]);
+		Object head = timelog.getHead(row, index);
+		if (index == 0 && head != null && cls.isAssignableFrom(Instant.class))
+			return cls.cast(((GpsTime) head).toLocalInstant());
+		if (cls.isInstance(head))
+			return cls.cast(head);
 		else
 			return null;
 	}
@@ -139,7 +98,7 @@ public class TimeLogEntry {
 	 * @return the int
 	 */
 	public int size() {
-		return values.length;
+		return timelog.getValueCount();
 	}
 
 	/**
@@ -149,17 +108,17 @@ public class TimeLogEntry {
 	 * @return true, if successful
 	 */
 	public boolean hasValue(int index) {
-		return index >= 0 && index < values.length && values[index] != null;
+		return timelog.hasValue(row, index);
 	}
 
 	/**
 	 * Gets the value.
 	 *
 	 * @param index the index
-	 * @return the value
+	 * @return the value, 0 if there is no value
 	 */
 	public int getValue(int index) {
-		return values[index].intValue();
+		return timelog.getValue(row, index);
 	}
 
 	/**
@@ -170,7 +129,7 @@ public class TimeLogEntry {
 	 * @throws SAXException the SAX exception
 	 */
 	public ValueDescription getValueDescription(int index) throws SAXException {
-		return config.getValueDescriptions().get(index);
+		return getConfig().getValueDescriptions().get(index);
 	}
 
 	/**
@@ -184,9 +143,9 @@ public class TimeLogEntry {
 	public double getScaledValue(int index) throws IOException, SAXException {
 		ValueDescription vd = getValueDescription(index);
 		if (vd != null)
-			return vd.translateValue(values[index].longValue());
+			return vd.translateValue(getValue(index));
 		else
-			return values[index].doubleValue();
+			return getValue(index);
 	}
 
 	/**
@@ -208,7 +167,7 @@ public class TimeLogEntry {
 	 * @return true, if successful
 	 */
 	public boolean hasError() {
-		return error != null;
+		return getError() != null;
 	}
 
 	/**
@@ -216,7 +175,8 @@ public class TimeLogEntry {
 	 *
 	 * @return the error
 	 */
+	@CheckForNull
 	public String getError() {
-		return error;
+		return timelog.getError(row);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,385 @@
+package de.sdsd.projekt.parser.isoxml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Sparse index of the records of a binary timelog. It contains the byte offset
+ * and the time of every n-th record, so that a time range can be decoded
+ * without reading the binary from the beginning. The index can be stored
+ * alongside the binary together with the size and last modified time of the
+ * binary, so that it isn't used for a rewritten binary. The index is only used
+ * for time ranges given on the command line, imports of the server decode the
+ * timelogs completely.
+ *
+ * <pre>
+ * "SDTI" version:u8 size:i64 modified:i64 interval:i32 records:i32 entries:i32 (offset:i32 time:i64)*
+ * </pre>
+ *
+ * The times are the raw GPS times of the records with the days in the upper 32
+ * bits and the milliseconds in the lower 32 bits.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public class TimeLogIndex {
+
+	/** The magic bytes at the beginning of the format. */
+	private static final byte[] MAGIC = { 'S', 'D', 'T', 'I' };
+
+	/** The Constant VERSION. */
+	public static final int VERSION = 2;
+
+	/** The file extension. */
+	public static final String EXTENSION = ".idx";
+
+	/** The default count of records between two index entries. */
+	public static final int DEFAULT_INTERVAL = 256;
+
+	/** The max time, a record can be earlier than the previous record. */
+	private static final long MAX_BACKWARD_MS = 3600000;
+
+	/** The size of the binary in bytes. */
+	private final long size;
+
+	/** The last modified time of the binary in milliseconds or 0 if unknown. */
+	private final long modified;
+
+	/** The count of records between two index entries. */
+	private final int interval;
+
+	/** The record count. */
+	private int records;
+
+	/** The entry count. */
+	private int count = 0;
+
+	/** The byte offsets of the indexed records. */
+	private int[] offsets;
+
+	/** The raw times of the indexed records. */
+	private long[] times;
+
+	/**
+	 * Instantiates a new empty time log index.
+	 *
+	 * @param size     the size of the binary in bytes
+	 * @param modified the last modified time of the binary or 0 if unknown
+	 * @param interval the count of records between two index entries
+	 * @param records  the record count
+	 * @param capacity the entry capacity
+	 */
+	private TimeLogIndex(long size, long modified, int interval, int records, int capacity) {
+		this.size = size;
+		this.modified = modified;
+		this.interval = interval;
+		this.records = records;
+		this.offsets = new int[Math.max(capacity, 1)];
+		this.times = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Helper to create an index while the records are decoded.
+	 */
+	static class Builder {
+
+		/** The index. */
+		private final TimeLogIndex index;
+
+		/** The record number of the next indexed record. */
+		private int next = 0;
+
+		/**
+		 * Instantiates a new builder.
+		 *
+		 * @param size     the size of the binary in bytes
+		 * @param interval the count of records between two index entries
+		 */
+		Builder(long size, int interval) {
+			this.index = new TimeLogIndex(size, 0, interval, 0, 16);
+		}
+
+		/**
+		 * Adds a record with a valid time. Only every n-th record is indexed.
+		 *
+		 * @param record the record number
+		 * @param offset the byte offset of the time of the record
+		 * @param time   the raw time of the record
+		 */
+		void add(int record, int offset, long time) {
+			if (record < next)
+				return;
+			index.add(offset, time);
+			next = record + index.interval;
+		}
+
+		/**
+		 * Builds the index.
+		 *
+		 * @param records the record count
+		 * @return the time log index
+		 */
+		TimeLogIndex build(int records) {
+			index.records = records;
+			index.offsets = Arrays.copyOf(index.offsets, index.count);
+			index.times = Arrays.copyOf(index.times, index.count);
+			return index;
+		}
+	}
+
+	/**
+	 * Adds an entry.
+	 *
+	 * @param offset the byte offset
+	 * @param time   the raw time
+	 */
+	private void add(int offset, long time) {
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, count * 2);
+			times = Arrays.copyOf(times, count * 2);
+		}
+		offsets[count] = offset;
+		times[count] = time;
+		++count;
+	}
+
+	/**
+	 * Creates the index of a binary timelog by scanning the records without
+	 * decoding their values.
+	 *
+	 * @param config   the config of the timelog
+	 * @param content  the binary timelog
+	 * @param interval the count of records between two index entries
+	 * @return the time log index
+	 */
+	static TimeLogIndex build(TimeLogConfig config, ByteBuffer content, int interval) {
+		ByteBuffer data = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		data.position(0);
+		List<Attribute<?>> header = config.getHeader();
+		int headerBytes = 0;
+		for (int i = 1; i < header.size(); ++i) {
+			if (TimeLog.isHeaderRead(header.get(i)))
+				headerBytes += TimeLog.headerByteCount(header.get(i));
+		}
+		int columns = config.getDlvs().size();
+
+		Builder builder = new Builder(data.limit(), interval);
+		int record = 0, lastMs = 0, lastDays = -1;
+		while (data.hasRemaining()) {
+			try {
+				long time = TimeLog.nextValidTime(data, lastMs, lastDays);
+				lastMs = (int) time;
+				lastDays = (int) (time >>> 32);
+				builder.add(record, data.position() - 6, time);
+				data.position(data.position() + headerBytes);
+				int dlvs = Byte.toUnsignedInt(data.get());
+				for (int i = 0; i < dlvs; ++i) {
+					int index = Byte.toUnsignedInt(data.get());
+					data.getInt();
+					if (index >= columns)
+						break;
+				}
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				data.position(data.limit());
+			}
+			++record;
+		}
+		return builder.build(record);
+	}
+
+	/**
+	 * Reads an index, that was stored alongside a binary timelog.
+	 *
+	 * @param file     the index file
+	 * @param size     the size of the binary in bytes
+	 * @param modified the last modified time of the binary in milliseconds
+	 * @param interval the expected count of records between two index entries
+	 * @return the time log index or null if the file is missing, invalid or
+	 *         belongs to another binary
+	 */
+	@CheckForNull
+	static TimeLogIndex read(Path file, long size, long modified, int interval) {
+		if (!Files.isRegularFile(file))
+			return null;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			TimeLogIndex index = read(in);
+			return index.size == size && index.modified == modified && index.interval == interval ? index : null;
+		} catch (IOException e) {
+			System.err.println(file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the index to a file alongside the binary timelog.
+	 *
+	 * @param file     the index file
+	 * @param modified the last modified time of the binary in milliseconds
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void write(Path file, long modified) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+			write(out, modified);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Writes the index.
+	 *
+	 * @param output the output, isn't closed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void write(OutputStream output) throws IOException {
+		write(output, modified);
+	}
+
+	/**
+	 * Writes the index with the given last modified time of the binary.
+	 *
+	 * @param output   the output, isn't closed
+	 * @param modified the last modified time of the binary in milliseconds
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(OutputStream output, long modified) throws IOException {
+		DataOutputStream out = new DataOutputStream(output);
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.writeLong(size);
+		out.writeLong(modified);
+		out.writeInt(interval);
+		out.writeInt(records);
+		out.writeInt(count);
+		for (int i = 0; i < count; ++i) {
+			out.writeInt(offsets[i]);
+			out.writeLong(times[i]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads an index.
+	 *
+	 * @param input the input, isn't closed
+	 * @return the time log index
+	 * @throws IOException if the input isn't a valid index
+	 */
+	public static TimeLogIndex read(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(input);
+		for (byte b : MAGIC) {
+			if (in.readByte() != b)
+				throw new IOException("No timelog index");
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported timelog index version: " + version);
+		long size = in.readLong();
+		long modified = in.readLong();
+		int interval = in.readInt();
+		int records = in.readInt();
+		int count = in.readInt();
+		TimeLogIndex index = new TimeLogIndex(size, modified, interval, records, count);
+		for (int i = 0; i < count; ++i) {
+			index.add(in.readInt(), in.readLong());
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the byte range of the records in a time range. The range starts one
+	 * index entry earlier and ends one hour later than necessary for timelogs
+	 * with times that run backwards, so it contains records outside of the time
+	 * range, that must be filtered.
+	 *
+	 * @param from  the raw start time
+	 * @param until the raw end time
+	 * @return the start and end byte offset
+	 */
+	int[] range(long from, long until) {
+		if (count == 0)
+			return new int[] { 0, (int) size };
+		int start = Math.max(search(from) - 1, 0);
+		long end = until > Long.MAX_VALUE - MAX_BACKWARD_MS ? Long.MAX_VALUE : until + MAX_BACKWARD_MS;
+		int stop = search(end) + 1;
+		return new int[] { offsets[start], stop < count ? offsets[stop] : (int) size };
+	}
+
+	/**
+	 * Finds the last entry with a time before or equal to the given time.
+	 *
+	 * @param time the raw time
+	 * @return the entry or -1 if all entries are later
+	 */
+	private int search(long time) {
+		int low = 0, high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
+	}
+
+	/**
+	 * Gets the size of the binary in bytes.
+	 *
+	 * @return the size
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the last modified time of the binary.
+	 *
+	 * @return the last modified time in milliseconds or 0 if unknown
+	 */
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * Gets the count of records between two index entries.
+	 *
+	 * @return the interval
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Gets the record count.
+	 *
+	 * @return the record count
+	 */
+	public int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Gets the entry count.
+	 *
+	 * @return the entry count
+	 */
+	public int size() {
+		return count;
+	}
+}
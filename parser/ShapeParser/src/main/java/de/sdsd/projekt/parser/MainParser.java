@@ -93,6 +93,17 @@ public class MainParser {
 	private static final WikiAttr GEO_ATTR = GEO.prop("attr"), ATTR_NAME = ATTR.prop("name"),
 			ATTR_VALUE = ATTR.prop("value");
 
+	/**
+	 * Parses the input and writes the results as zip to the output.
+	 *
+	 * @param input  the input
+	 * @param output the output
+	 * @see #shape(InputStream, ParserAPI)
+	 */
+	public static void shape(InputStream input, OutputStream output) {
+		shape(input, new ParserAPI(output));
+	}
+
 	/**
 	 * The {@code shape} method represents the {@code parse} method seen in other
 	 * parser implementations. In this case the {@code input} contains shape data
@@ -104,9 +115,9 @@ public class MainParser {
 	 * method provided by the SDSD Parser API.
 	 *
 	 * @param input  the input
-	 * @param output the output
+	 * @param target the parser api to write the results to, closed after parsing
 	 */
-	public static void shape(InputStream input, OutputStream output) {
+	public static void shape(InputStream input, ParserAPI target) {
 		Validation errors = new Validation();
 		List<SimpleFeature> features = new ArrayList<>();
 		long t1 = System.nanoTime();
@@ -122,7 +133,7 @@ public class MainParser {
 			errors.fatal(e.getMessage());
 		}
 
-		try (ParserAPI api = new ParserAPI(output)) {
+		try (ParserAPI api = target) {
 			api.setParseTime((System.nanoTime() - t1) / 1000000);
 			api.setErrors(errors);
 
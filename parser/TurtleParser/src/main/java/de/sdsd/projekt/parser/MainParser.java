@@ -56,6 +56,18 @@ public class MainParser {
 			System.err.println("USAGE: java -jar parser.jar parse|test filepath");
 	}
 
+	/**
+	 * Parses the input and writes the results as zip to the output.
+	 *
+	 * @param input  the input
+	 * @param output the output
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see #parse(InputStream, ParserAPI)
+	 */
+	public static void parse(InputStream input, OutputStream output) throws IOException {
+		parse(input, new ParserAPI(output));
+	}
+
 	/**
 	 * The parse method reads a raw input stream pointing to a file's contents and
 	 * builds (parses) a Jena RDF {@code Model} object. In this case, the input
@@ -69,10 +81,10 @@ public class MainParser {
 	 *
 	 * @param input  The input stream in TTL format to be converted into a Jena RDF
 	 *               model.
-	 * @param output The Jena RDF model representing the TTL {@code input}.
+	 * @param target the parser api to write the results to, closed after parsing
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public static void parse(final InputStream input, final OutputStream output) throws IOException {
+	public static void parse(InputStream input, ParserAPI target) throws IOException {
 		long t1 = System.nanoTime();
 		Model model = ModelFactory.createDefaultModel();
 		Validation errors = new Validation();
@@ -81,7 +93,7 @@ public class MainParser {
 		} catch (Throwable e) {
 			errors.fatal(e.getMessage());
 		}
-		try (ParserAPI api = new ParserAPI(output)) {
+		try (ParserAPI api = target) {
 			api.setParseTime((System.nanoTime() - t1) / 1000000);
 			api.setErrors(errors);
 			api.writeTriples(model);
@@ -0,0 +1,745 @@
+package de.sdsd.projekt.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Versioned binary columnar timelog format, used by the {@link ParserAPI} for
+ * timelog results instead of CSV.
+ *
+ * <pre>
+ * header: "SDTL" version:u8 uri:utf columns:varint (valueUri:utf)*
+ * block:  rows:varint length:varint payload
+ * end:    0:varint
+ * </pre>
+ *
+ * The payload of a block contains the columns one after another: the
+ * timestamps in epoch milliseconds, the latitudes and longitudes with a
+ * presence bitmap, the altitudes with a presence bitmap and every value column
+ * with a presence bitmap. Numbers are zigzag varints of the difference to the
+ * previous number of the column in the block. Positions are fixed-point
+ * integers with 7 decimal places, altitudes with 3, the same as in the
+ * timelog tables of the SDSD server.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public final class BinaryTimeLog {
+
+	/** The magic bytes at the beginning of the format. */
+	private static final byte[] MAGIC = { 'S', 'D', 'T', 'L' };
+
+	/** The Constant VERSION. */
+	public static final int VERSION = 1;
+
+	/** The file extension. */
+	public static final String EXTENSION = ".tlb";
+
+	/** The max rows of a block. */
+	public static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Instantiates a new binary time log.
+	 */
+	private BinaryTimeLog() {
+	}
+
+	/**
+	 * Checks if the stream starts with the binary timelog format. The stream must
+	 * support mark and reset and is reset to its position.
+	 *
+	 * @param in the input
+	 * @return true, if the stream contains a binary timelog
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static boolean isBinary(InputStream in) throws IOException {
+		if (!in.markSupported())
+			throw new IOException("Mark is not supported by the input stream");
+		in.mark(MAGIC.length);
+		try {
+			for (byte b : MAGIC) {
+				if (in.read() != b)
+					return false;
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Converts a latitude or longitude to fixed-point.
+	 *
+	 * @param pos the position in degrees
+	 * @return the fixed-point position
+	 */
+	public static int pos(double pos) {
+		return (int) (pos * 1e7);
+	}
+
+	/**
+	 * Converts a fixed-point latitude or longitude to degrees.
+	 *
+	 * @param pos the fixed-point position
+	 * @return the position in degrees
+	 */
+	public static double pos(int pos) {
+		return pos * 1e-7;
+	}
+
+	/**
+	 * Converts an altitude to fixed-point.
+	 *
+	 * @param altitude the altitude in meters
+	 * @return the fixed-point altitude
+	 */
+	public static int alt(double altitude) {
+		return (int) (altitude * 1e3);
+	}
+
+	/**
+	 * Converts a fixed-point altitude to meters.
+	 *
+	 * @param altitude the fixed-point altitude
+	 * @return the altitude in meters
+	 */
+	public static double alt(int altitude) {
+		return altitude * 1e-3;
+	}
+
+	/**
+	 * Writes a timelog in the binary format. Rows are buffered and written in
+	 * blocks.
+	 */
+	public static class Writer implements AutoCloseable {
+
+		/** The out. */
+		private final OutputStream out;
+
+		/** The column count. */
+		private final int columns;
+
+		/** The row count of the current block. */
+		private int rows = 0;
+
+		/** The times. */
+		private final long[] times = new long[BLOCK_SIZE];
+
+		/** The positions. */
+		private final int[] latitudes = new int[BLOCK_SIZE], longitudes = new int[BLOCK_SIZE],
+				altitudes = new int[BLOCK_SIZE];
+
+		/** The position and altitude presence. */
+		private final boolean[] hasPosition = new boolean[BLOCK_SIZE], hasAltitude = new boolean[BLOCK_SIZE];
+
+		/** The values by column. */
+		private final long[][] values;
+
+		/** The value presence by column. */
+		private final boolean[][] hasValue;
+
+		/** The block buffer. */
+		private final Buffer block = new Buffer();
+
+		/** The finished. */
+		private boolean finished = false;
+
+		/**
+		 * Instantiates a new writer and writes the header.
+		 *
+		 * @param out       the output, isn't closed by the writer
+		 * @param uri       the timelog uri
+		 * @param valueUris the value uris of the value columns
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public Writer(OutputStream out, String uri, List<String> valueUris) throws IOException {
+			this.out = out;
+			this.columns = valueUris.size();
+			this.values = new long[columns][BLOCK_SIZE];
+			this.hasValue = new boolean[columns][BLOCK_SIZE];
+
+			Buffer header = new Buffer();
+			header.write(MAGIC);
+			header.write(VERSION);
+			DataOutputStream data = new DataOutputStream(header);
+			data.writeUTF(uri);
+			header.writeVarint(columns);
+			for (String valueUri : valueUris)
+				data.writeUTF(valueUri);
+			header.writeTo(out);
+		}
+
+		/**
+		 * Writes a row.
+		 *
+		 * @param time      the time
+		 * @param latitude  the latitude or NaN
+		 * @param longitude the longitude or NaN
+		 * @param altitude  the altitude or NaN
+		 * @param values    the values, null for missing values
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void write(Instant time, double latitude, double longitude, double altitude, Long[] values)
+				throws IOException {
+			if (finished)
+				throw new IOException("Binary timelog is already finished");
+			if (values.length != columns)
+				throw new IOException("Values count must match the column count: " + columns);
+			int r = rows;
+			times[r] = time.toEpochMilli();
+			hasPosition[r] = Double.isFinite(latitude) && Double.isFinite(longitude);
+			latitudes[r] = hasPosition[r] ? pos(latitude) : 0;
+			longitudes[r] = hasPosition[r] ? pos(longitude) : 0;
+			hasAltitude[r] = Double.isFinite(altitude);
+			altitudes[r] = hasAltitude[r] ? alt(altitude) : 0;
+			for (int c = 0; c < columns; ++c) {
+				Long v = values[c];
+				hasValue[c][r] = v != null;
+				this.values[c][r] = v != null ? v : 0;
+			}
+			if (++rows == BLOCK_SIZE)
+				writeBlock();
+		}
+
+		/**
+		 * Writes the buffered rows as block.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void writeBlock() throws IOException {
+			if (rows == 0)
+				return;
+			block.reset();
+			long last = 0;
+			for (int r = 0; r < rows; ++r) {
+				block.writeZigzag(times[r] - last);
+				last = times[r];
+			}
+			writeColumn(hasPosition, latitudes);
+			writeColumn(hasPosition, longitudes, false);
+			writeColumn(hasAltitude, altitudes);
+			for (int c = 0; c < columns; ++c) {
+				block.writeBitmap(hasValue[c], rows);
+				last = 0;
+				for (int r = 0; r < rows; ++r) {
+					if (hasValue[c][r]) {
+						block.writeZigzag(values[c][r] - last);
+						last = values[c][r];
+					}
+				}
+			}
+
+			Buffer head = new Buffer();
+			head.writeVarint(rows);
+			head.writeVarint(block.size());
+			head.writeTo(out);
+			block.writeTo(out);
+			rows = 0;
+		}
+
+		/**
+		 * Writes an int column with its presence bitmap.
+		 *
+		 * @param present the presence
+		 * @param column  the column
+		 */
+		private void writeColumn(boolean[] present, int[] column) {
+			writeColumn(present, column, true);
+		}
+
+		/**
+		 * Writes an int column.
+		 *
+		 * @param present the presence
+		 * @param column  the column
+		 * @param bitmap  whether to write the presence bitmap
+		 */
+		private void writeColumn(boolean[] present, int[] column, boolean bitmap) {
+			if (bitmap)
+				block.writeBitmap(present, rows);
+			long last = 0;
+			for (int r = 0; r < rows; ++r) {
+				if (present[r]) {
+					block.writeZigzag(column[r] - last);
+					last = column[r];
+				}
+			}
+		}
+
+		/**
+		 * Writes the remaining rows and the end marker. The output isn't closed.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (finished)
+				return;
+			writeBlock();
+			out.write(0);
+			out.flush();
+			finished = true;
+		}
+	}
+
+	/**
+	 * Byte buffer with varint encoding.
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+
+		/**
+		 * Instantiates a new buffer.
+		 */
+		public Buffer() {
+			super(0x10000);
+		}
+
+		/**
+		 * Writes an unsigned varint.
+		 *
+		 * @param value the value
+		 */
+		public void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		/**
+		 * Writes a signed zigzag varint.
+		 *
+		 * @param value the value
+		 */
+		public void writeZigzag(long value) {
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+
+		/**
+		 * Writes a bitmap.
+		 *
+		 * @param bits  the bits
+		 * @param count the bit count
+		 */
+		public void writeBitmap(boolean[] bits, int count) {
+			for (int i = 0; i < count; i += 8) {
+				int b = 0;
+				for (int j = 0; j < 8 && i + j < count; ++j) {
+					if (bits[i + j])
+						b |= 1 << j;
+				}
+				write(b);
+			}
+		}
+
+		/**
+		 * Write.
+		 *
+		 * @param b the b
+		 */
+		@Override
+		public void write(byte[] b) {
+			write(b, 0, b.length);
+		}
+	}
+
+	/**
+	 * Reads a timelog in the binary format block by block. The columns of the
+	 * current block are decoded into reused primitive arrays, so the rows can be
+	 * accessed without creating objects. A reader on a {@link ByteBuffer} decodes
+	 * directly from the buffer.
+	 */
+	public static class Reader {
+
+		/** The input or null if reading from a buffer. */
+		private final InputStream in;
+
+		/** The input buffer, or the buffer of the current block when reading from a stream. */
+		private ByteBuffer buf;
+
+		/** The block bytes when reading from a stream. */
+		private byte[] blockBytes = new byte[0];
+
+		/** The uri. */
+		private final String uri;
+
+		/** The value uris. */
+		private final List<String> valueUris;
+
+		/** The column count. */
+		private final int columns;
+
+		/** The row count of the current block. */
+		private int rows = 0;
+
+		/** The end. */
+		private boolean end = false;
+
+		/** The times. */
+		private final long[] times = new long[BLOCK_SIZE];
+
+		/** The positions. */
+		private final int[] latitudes = new int[BLOCK_SIZE], longitudes = new int[BLOCK_SIZE],
+				altitudes = new int[BLOCK_SIZE];
+
+		/** The position and altitude presence bitmaps. */
+		private final byte[] hasPosition = new byte[BLOCK_SIZE / 8], hasAltitude = new byte[BLOCK_SIZE / 8];
+
+		/** The values by column. */
+		private final long[][] values;
+
+		/** The value presence bitmaps by column. */
+		private final byte[][] hasValue;
+
+		/**
+		 * Instantiates a new reader on a stream and reads the header.
+		 *
+		 * @param in the input, positioned at the magic bytes
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public Reader(InputStream in) throws IOException {
+			this.in = in;
+			DataInputStream data = new DataInputStream(in);
+			byte[] magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("No binary timelog");
+			int version = data.readUnsignedByte();
+			if (version != VERSION)
+				throw new IOException("Unsupported binary timelog version " + version);
+			this.uri = data.readUTF();
+			this.columns = (int) readVarint(in);
+			List<String> uris = new ArrayList<>(columns);
+			for (int c = 0; c < columns; ++c)
+				uris.add(data.readUTF());
+			this.valueUris = Collections.unmodifiableList(uris);
+			this.values = new long[columns][BLOCK_SIZE];
+			this.hasValue = new byte[columns][BLOCK_SIZE / 8];
+		}
+
+		/**
+		 * Instantiates a new reader on a buffer and reads the header. The blocks are
+		 * decoded directly from the buffer.
+		 *
+		 * @param buf the buffer, positioned at the magic bytes
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public Reader(ByteBuffer buf) throws IOException {
+			this.in = null;
+			this.buf = buf;
+			try {
+				for (byte b : MAGIC) {
+					if (buf.get() != b)
+						throw new IOException("No binary timelog");
+				}
+				int version = buf.get() & 0xFF;
+				if (version != VERSION)
+					throw new IOException("Unsupported binary timelog version " + version);
+				this.uri = readUTF(buf);
+				this.columns = (int) readVarint(buf);
+				List<String> uris = new ArrayList<>(columns);
+				for (int c = 0; c < columns; ++c)
+					uris.add(readUTF(buf));
+				this.valueUris = Collections.unmodifiableList(uris);
+			} catch (BufferUnderflowException e) {
+				throw new EOFException("Unexpected end of binary timelog");
+			}
+			this.values = new long[columns][BLOCK_SIZE];
+			this.hasValue = new byte[columns][BLOCK_SIZE / 8];
+		}
+
+		/**
+		 * Gets the timelog uri.
+		 *
+		 * @return the uri
+		 */
+		public String getUri() {
+			return uri;
+		}
+
+		/**
+		 * Gets the value uris of the value columns.
+		 *
+		 * @return the value uris
+		 */
+		public List<String> getValueUris() {
+			return valueUris;
+		}
+
+		/**
+		 * Decodes the next block.
+		 *
+		 * @return true, if there is a next block, false at the end of the timelog
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public boolean nextBlock() throws IOException {
+			if (end)
+				return false;
+			try {
+				int count = (int) (in != null ? readVarint(in) : readVarint(buf));
+				if (count == 0) {
+					end = true;
+					rows = 0;
+					return false;
+				}
+				if (count < 0 || count > BLOCK_SIZE)
+					throw new IOException("Invalid binary timelog block size: " + count);
+				int length = (int) (in != null ? readVarint(in) : readVarint(buf));
+				ByteBuffer block;
+				if (in != null) {
+					if (blockBytes.length < length)
+						blockBytes = new byte[Math.max(length, blockBytes.length * 2)];
+					new DataInputStream(in).readFully(blockBytes, 0, length);
+					block = buf = ByteBuffer.wrap(blockBytes, 0, length);
+				} else {
+					block = buf.slice();
+					block.limit(length);
+					buf.position(buf.position() + length);
+				}
+				decode(block, count);
+				rows = count;
+				return true;
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				throw new EOFException("Unexpected end of binary timelog");
+			}
+		}
+
+		/**
+		 * Decodes the columns of a block.
+		 *
+		 * @param block the block payload
+		 * @param count the row count
+		 */
+		private void decode(ByteBuffer block, int count) {
+			long last = 0;
+			for (int r = 0; r < count; ++r)
+				times[r] = last += readZigzag(block);
+			readBitmap(block, hasPosition, count);
+			readColumn(block, hasPosition, latitudes, count);
+			readColumn(block, hasPosition, longitudes, count);
+			readBitmap(block, hasAltitude, count);
+			readColumn(block, hasAltitude, altitudes, count);
+			for (int c = 0; c < columns; ++c) {
+				byte[] present = hasValue[c];
+				long[] column = values[c];
+				readBitmap(block, present, count);
+				last = 0;
+				for (int r = 0; r < count; ++r) {
+					if (isSet(present, r))
+						column[r] = last += readZigzag(block);
+				}
+			}
+		}
+
+		/**
+		 * Reads an int column.
+		 *
+		 * @param block   the block
+		 * @param present the presence bitmap
+		 * @param column  the column
+		 * @param count   the row count
+		 */
+		private static void readColumn(ByteBuffer block, byte[] present, int[] column, int count) {
+			long last = 0;
+			for (int r = 0; r < count; ++r) {
+				if (isSet(present, r))
+					column[r] = (int) (last += readZigzag(block));
+			}
+		}
+
+		/**
+		 * Gets the row count of the current block.
+		 *
+		 * @return the row count
+		 */
+		public int rows() {
+			return rows;
+		}
+
+		/**
+		 * Gets the time of a row in epoch milliseconds.
+		 *
+		 * @param row the row of the current block
+		 * @return the time
+		 */
+		public long time(int row) {
+			return times[row];
+		}
+
+		/**
+		 * Checks if the row has a position.
+		 *
+		 * @param row the row of the current block
+		 * @return true, if the row has latitude and longitude
+		 */
+		public boolean hasPosition(int row) {
+			return isSet(hasPosition, row);
+		}
+
+		/**
+		 * Gets the fixed-point latitude of a row.
+		 *
+		 * @param row the row of the current block
+		 * @return the latitude
+		 * @see BinaryTimeLog#pos(int)
+		 */
+		public int latitude(int row) {
+			return latitudes[row];
+		}
+
+		/**
+		 * Gets the fixed-point longitude of a row.
+		 *
+		 * @param row the row of the current block
+		 * @return the longitude
+		 * @see BinaryTimeLog#pos(int)
+		 */
+		public int longitude(int row) {
+			return longitudes[row];
+		}
+
+		/**
+		 * Checks if the row has an altitude.
+		 *
+		 * @param row the row of the current block
+		 * @return true, if the row has an altitude
+		 */
+		public boolean hasAltitude(int row) {
+			return isSet(hasAltitude, row);
+		}
+
+		/**
+		 * Gets the fixed-point altitude of a row.
+		 *
+		 * @param row the row of the current block
+		 * @return the altitude
+		 * @see BinaryTimeLog#alt(int)
+		 */
+		public int altitude(int row) {
+			return altitudes[row];
+		}
+
+		/**
+		 * Checks if the row has a value in the column.
+		 *
+		 * @param column the value column
+		 * @param row    the row of the current block
+		 * @return true, if the value is present
+		 */
+		public boolean hasValue(int column, int row) {
+			return isSet(hasValue[column], row);
+		}
+
+		/**
+		 * Gets a value.
+		 *
+		 * @param column the value column
+		 * @param row    the row of the current block
+		 * @return the value
+		 */
+		public long value(int column, int row) {
+			return values[column][row];
+		}
+	}
+
+	/**
+	 * Checks if a bit is set.
+	 *
+	 * @param bitmap the bitmap
+	 * @param i      the bit index
+	 * @return true, if set
+	 */
+	private static boolean isSet(byte[] bitmap, int i) {
+		return (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+	}
+
+	/**
+	 * Reads a bitmap.
+	 *
+	 * @param buf    the buffer
+	 * @param bitmap the bitmap
+	 * @param count  the bit count
+	 */
+	private static void readBitmap(ByteBuffer buf, byte[] bitmap, int count) {
+		buf.get(bitmap, 0, (count + 7) >>> 3);
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 *
+	 * @param buf the buffer
+	 * @return the value
+	 */
+	private static long readVarint(ByteBuffer buf) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buf.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 *
+	 * @param in the input
+	 * @return the value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException("Unexpected end of binary timelog");
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Reads a signed zigzag varint.
+	 *
+	 * @param buf the buffer
+	 * @return the value
+	 */
+	private static long readZigzag(ByteBuffer buf) {
+		long v = readVarint(buf);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Reads a string written by {@link DataOutputStream#writeUTF(String)}.
+	 *
+	 * @param buf the buffer
+	 * @return the string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String readUTF(ByteBuffer buf) throws IOException {
+		int length = buf.getShort() & 0xFFFF;
+		byte[] bytes = new byte[length + 2];
+		bytes[0] = (byte) (length >>> 8);
+		bytes[1] = (byte) length;
+		buf.get(bytes, 2, length);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+}
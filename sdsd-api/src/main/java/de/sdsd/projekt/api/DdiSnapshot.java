@@ -0,0 +1,411 @@
+package de.sdsd.projekt.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.jena.rdf.model.Resource;
+
+import de.sdsd.projekt.api.ServiceAPI.JsonRpcException;
+import de.sdsd.projekt.api.ServiceResult.WikiInstance;
+
+/**
+ * Versioned snapshot of the DDI dictionary of the wikinormia, that is written
+ * by the SDSD server and memory-mapped by the parsers.
+ *
+ * <pre>
+ * header: "SDDI" version:u8 created:i64 count:i32
+ * index:  (ddi:i32 offset:i32)*  sorted by ddi
+ * data:   (uri:str label:str)*   str = length:u16 utf-8
+ * </pre>
+ *
+ * The offsets are relative to the start of the data section. Parsers use the
+ * snapshot at {@link #path()} and only request the DDIs from the SDSD server,
+ * if there is no valid snapshot.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public final class DdiSnapshot {
+
+	/** The magic bytes at the beginning of the format. */
+	private static final byte[] MAGIC = { 'S', 'D', 'D', 'I' };
+
+	/** The Constant VERSION. */
+	public static final int VERSION = 1;
+
+	/** The system property and environment variable for the snapshot file. */
+	public static final String PROPERTY = "sdsd.ddiSnapshot", ENVIRONMENT = "SDSD_DDI_SNAPSHOT";
+
+	/** The default snapshot file, relative to the working directory of the server. */
+	public static final String DEFAULT_FILE = "parser/ddi.snapshot";
+
+	/** The wikinormia type of the DDIs. */
+	public static final Resource DDI = Util.UNKNOWN.res("ddi");
+
+	/** The header size. */
+	private static final int HEADER_SIZE = MAGIC.length + 1 + 8 + 4;
+
+	/** The index entry size. */
+	private static final int INDEX_ENTRY_SIZE = 8;
+
+	/** The snapshot content. */
+	private final ByteBuffer buffer;
+
+	/** The creation time. */
+	private final Instant created;
+
+	/** The DDI count. */
+	private final int count;
+
+	/** The start of the data section. */
+	private final int data;
+
+	/**
+	 * Instantiates a new ddi snapshot and checks the header.
+	 *
+	 * @param buffer the snapshot content
+	 * @throws IOException if the content isn't a valid snapshot
+	 */
+	private DdiSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		try {
+			for (int i = 0; i < MAGIC.length; ++i) {
+				if (buffer.get(i) != MAGIC[i])
+					throw new IOException("No DDI snapshot");
+			}
+			int version = buffer.get(MAGIC.length) & 0xFF;
+			if (version != VERSION)
+				throw new IOException("Unsupported DDI snapshot version: " + version);
+			this.created = Instant.ofEpochMilli(buffer.getLong(MAGIC.length + 1));
+			this.count = buffer.getInt(MAGIC.length + 9);
+			this.data = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+			if (count < 0 || data > buffer.limit())
+				throw new IOException("Truncated DDI snapshot");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Truncated DDI snapshot", e);
+		}
+	}
+
+	/**
+	 * Gets the snapshot file. It is taken from the system property
+	 * {@value #PROPERTY}, the environment variable {@value #ENVIRONMENT} or
+	 * {@value #DEFAULT_FILE}. The environment variable is inherited by the parser
+	 * processes of the server.
+	 *
+	 * @return the snapshot file
+	 */
+	public static Path path() {
+		String file = System.getProperty(PROPERTY);
+		if (file == null)
+			file = System.getenv(ENVIRONMENT);
+		return Paths.get(file != null ? file : DEFAULT_FILE);
+	}
+
+	/**
+	 * Memory-maps a snapshot file.
+	 *
+	 * @param file the snapshot file
+	 * @return the snapshot
+	 * @throws IOException if the file can't be read or isn't a valid snapshot
+	 */
+	public static DdiSnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new DdiSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Creates a snapshot in memory.
+	 *
+	 * @param ddis the wikinormia instances of the DDIs by identifier
+	 * @return the snapshot
+	 */
+	public static DdiSnapshot of(Map<String, WikiInstance> ddis) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			write(out, ddis, Instant.now());
+			return new DdiSnapshot(ByteBuffer.wrap(out.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot file. The snapshot is written to a temporary file, that
+	 * replaces the file afterwards, so that parsers never read a partial snapshot.
+	 *
+	 * @param file the snapshot file
+	 * @param ddis the wikinormia instances of the DDIs by identifier
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void write(Path file, Map<String, WikiInstance> ddis) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				write(out, ddis, Instant.now());
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Writes a snapshot. Identifiers, that aren't DDI numbers, are skipped.
+	 *
+	 * @param out     the output, isn't closed
+	 * @param ddis    the wikinormia instances of the DDIs by identifier
+	 * @param created the creation time
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void write(OutputStream out, Map<String, WikiInstance> ddis, Instant created) throws IOException {
+		SortedMap<Integer, WikiInstance> sorted = new TreeMap<>();
+		for (Entry<String, WikiInstance> e : ddis.entrySet()) {
+			try {
+				sorted.put(Integer.parseInt(e.getKey()), e.getValue());
+			} catch (NumberFormatException ex) {
+				System.err.println("Skipped DDI with invalid identifier: " + e.getKey());
+			}
+		}
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(content);
+		DataOutputStream index = new DataOutputStream(out);
+		index.write(MAGIC);
+		index.write(VERSION);
+		index.writeLong(created.toEpochMilli());
+		index.writeInt(sorted.size());
+		for (Entry<Integer, WikiInstance> e : sorted.entrySet()) {
+			index.writeInt(e.getKey());
+			index.writeInt(data.size());
+			writeString(data, e.getValue().getUri());
+			writeString(data, e.getValue().label);
+		}
+		data.flush();
+		content.writeTo(index);
+		index.flush();
+	}
+
+	/**
+	 * Writes a length prefixed UTF-8 string.
+	 *
+	 * @param out the output
+	 * @param str the string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF)
+			throw new IOException("String is too long for a DDI snapshot: " + str.length());
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a length prefixed UTF-8 string.
+	 *
+	 * @param offset the absolute offset of the string
+	 * @return the string
+	 */
+	private String readString(int offset) {
+		int length = buffer.getShort(offset) & 0xFFFF;
+		byte[] bytes = new byte[length];
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(offset + 2);
+		dup.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the data offset of a DDI with a binary search in the index.
+	 *
+	 * @param ddi the DDI number
+	 * @return the absolute data offset or -1 if the DDI is unknown
+	 */
+	private int find(int ddi) {
+		int low = 0, high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int pos = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+			int cur = buffer.getInt(pos);
+			if (cur < ddi)
+				low = mid + 1;
+			else if (cur > ddi)
+				high = mid - 1;
+			else
+				return data + buffer.getInt(pos + 4);
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the wikinormia instance of a DDI.
+	 *
+	 * @param ddi the DDI number
+	 * @return the wikinormia instance or null if the DDI is unknown
+	 */
+	@CheckForNull
+	public WikiInstance get(int ddi) {
+		try {
+			int offset = find(ddi);
+			if (offset < 0)
+				return null;
+			String uri = readString(offset);
+			String label = readString(offset + 2 + (buffer.getShort(offset) & 0xFFFF));
+			return new WikiInstance(uri, label);
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			System.err.println("Corrupt DDI snapshot entry: " + ddi);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the label of a DDI.
+	 *
+	 * @param ddi the DDI number
+	 * @return the label or null if the DDI is unknown
+	 */
+	@CheckForNull
+	public String getLabel(int ddi) {
+		WikiInstance inst = get(ddi);
+		return inst != null ? inst.label : null;
+	}
+
+	/**
+	 * Gets the DDI count.
+	 *
+	 * @return the DDI count
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the creation time.
+	 *
+	 * @return the creation time
+	 */
+	public Instant getCreated() {
+		return created;
+	}
+
+	/** The milliseconds between two checks of the snapshot file. */
+	private static final long CHECK_INTERVAL = 1000;
+
+	/** The current DDI dictionary of the process or null before the first use. */
+	@CheckForNull
+	private static volatile Loaded current = null;
+
+	/**
+	 * Gets the DDI dictionary of the process. It is memory-mapped from the
+	 * snapshot file and mapped again, when the file was replaced. The file is
+	 * checked at most once per second, because parsers that run inside the server
+	 * share this dictionary with the daemon, that rewrites the file. The DDIs are
+	 * only requested from the local SDSD server, if there was never a valid
+	 * snapshot file.
+	 *
+	 * @return the DDI dictionary, empty if no DDIs are available
+	 */
+	public static DdiSnapshot getDefault() {
+		Loaded loaded = current;
+		if (loaded != null && System.currentTimeMillis() - loaded.checked < CHECK_INTERVAL)
+			return loaded.snapshot;
+		synchronized (DdiSnapshot.class) {
+			loaded = current;
+			long now = System.currentTimeMillis();
+			if (loaded == null || now - loaded.checked >= CHECK_INTERVAL)
+				current = loaded = reload(loaded, now);
+			return loaded.snapshot;
+		}
+	}
+
+	/**
+	 * Loads the DDI dictionary again, if the snapshot file changed.
+	 *
+	 * @param loaded the current DDI dictionary or null before the first use
+	 * @param now    the current time in milliseconds
+	 * @return the DDI dictionary
+	 */
+	private static Loaded reload(@Nullable Loaded loaded, long now) {
+		Path file = path();
+		FileTime modified = null;
+		try {
+			if (Files.isRegularFile(file))
+				modified = Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			System.err.println(file + ": " + e.getMessage());
+		}
+		if (loaded != null && Objects.equals(modified, loaded.modified))
+			return new Loaded(loaded.snapshot, modified, now);
+		if (modified != null) {
+			try {
+				return new Loaded(open(file), modified, now);
+			} catch (IOException e) {
+				System.err.println(file + ": " + e.getMessage());
+			}
+		}
+		if (loaded != null)
+			return new Loaded(loaded.snapshot, modified, now);
+
+		try {
+			Map<String, WikiInstance> ddis = ParserAPI.getWikinormiaInstances(DDI, true);
+			if (ddis != null)
+				return new Loaded(of(ddis), modified, now);
+		} catch (JsonRpcException e) {
+			System.err.println(e.getMessage());
+		}
+		return new Loaded(of(new TreeMap<>()), modified, now);
+	}
+
+	/**
+	 * A loaded DDI dictionary and the state of its snapshot file.
+	 */
+	private static class Loaded {
+
+		/** The snapshot. */
+		final DdiSnapshot snapshot;
+
+		/** The modification time of the snapshot file or null if it was missing. */
+		@CheckForNull
+		final FileTime modified;
+
+		/** The time of the last check of the snapshot file in milliseconds. */
+		final long checked;
+
+		/**
+		 * Instantiates a new loaded DDI dictionary.
+		 *
+		 * @param snapshot the snapshot
+		 * @param modified the modification time of the snapshot file or null
+		 * @param checked  the time of the check of the snapshot file
+		 */
+		Loaded(DdiSnapshot snapshot, @Nullable FileTime modified, long checked) {
+			this.snapshot = snapshot;
+			this.modified = modified;
+			this.checked = checked;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package de.sdsd.projekt.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Service interface for parsers, that can run inside the SDSD server instead
+ * of a separate process. Implementations are registered in
+ * {@code META-INF/services/de.sdsd.projekt.api.Parser} of the parser jar and
+ * must not call System.exit or rely on System.in and System.out.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ * @see ParserAPI#ParserAPI(ParserAPI.ResultHandler)
+ */
+public interface Parser {
+
+	/**
+	 * Checks if the parser supports the given command, e.g. "parse" or "test".
+	 * The "test" command is executed with {@link #test(InputStream)}, all other
+	 * commands with {@link #parse(String, InputStream, ParserAPI)}.
+	 *
+	 * @param command the command
+	 * @return true, if supported
+	 */
+	boolean supports(String command);
+
+	/**
+	 * Parses the input and writes the results to the given api. The api is closed
+	 * by the parser.
+	 *
+	 * @param command the command
+	 * @param input   the input
+	 * @param api     the api
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void parse(String command, InputStream input, ParserAPI api) throws IOException;
+
+	/**
+	 * Tests if the input can be parsed by this parser.
+	 *
+	 * @param input the input
+	 * @return true, if the input is supported
+	 */
+	boolean test(InputStream input);
+
+}
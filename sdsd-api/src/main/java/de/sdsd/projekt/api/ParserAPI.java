@@ -1,6 +1,7 @@
 package de.sdsd.projekt.api;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.math.BigDecimal;
@@ -76,6 +77,12 @@ public class ParserAPI implements AutoCloseable {
 	/** The Constant CSV_LINEEND. */
 	private static final String CSV_LINEEND = "\r\n";
 
+	/**
+	 * The extension of the grid entries of the parser result. Timelog entries are
+	 * recognized by the {@link BinaryTimeLog} format.
+	 */
+	public static final String GRID_EXTENSION = ".grid.csv";
+
 	/** The Constant format. */
 	private static final NumberFormat format;
 	static {
@@ -85,22 +92,155 @@ public class ParserAPI implements AutoCloseable {
 		format.setMaximumFractionDigits(7);
 	}
 
-	/** The zip. */
+	/** The zip, null if the results are given to a result handler. */
+	@Nullable
 	private final ZipOutputStream zip;
 
+	/** The result handler, null if the results are written to the zip. */
+	@Nullable
+	private final ResultHandler handler;
+
 	/** The meta. */
 	private final JSONObject meta = new JSONObject();
 
 	/** The current entry. */
 	private ParserEntryWriter currentEntry = null;
 
+	/** The cancelled. */
+	private volatile boolean cancelled = false;
+
 	/**
-	 * Instantiates a new parser API.
+	 * Instantiates a new parser API, that writes the results as zip to the given
+	 * output stream.
 	 *
 	 * @param out the out
 	 */
 	public ParserAPI(OutputStream out) {
 		this.zip = new ZipOutputStream(out, Charset.forName("Cp437"));
+		this.handler = null;
+	}
+
+	/**
+	 * Instantiates a new parser API, that gives the results directly to the given
+	 * handler. Used for parsers, that run in the same JVM as the SDSD server.
+	 *
+	 * @param handler the handler
+	 * @see Parser
+	 */
+	public ParserAPI(ResultHandler handler) {
+		this.zip = null;
+		this.handler = handler;
+	}
+
+	/**
+	 * Receiver for parser results, that are processed directly instead of being
+	 * serialized to a zip.
+	 */
+	public interface ResultHandler {
+
+		/**
+		 * Receives the triples of the parsed file.
+		 *
+		 * @param model the model
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void triples(Model model) throws IOException;
+
+		/**
+		 * Receives a GeoJSON feature including "id", "label" and "elementType".
+		 *
+		 * @param feature the feature
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void geoFeature(JSONObject feature) throws IOException;
+
+		/**
+		 * Starts a new timelog.
+		 *
+		 * @param timelog    the timelog
+		 * @param valueInfos the value infos of the value columns
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void startTimeLog(TimeLog timelog, List<? extends ValueInfo> valueInfos) throws IOException;
+
+		/**
+		 * Receives an entry of the current timelog.
+		 *
+		 * @param time      the time
+		 * @param latitude  the latitude
+		 * @param longitude the longitude
+		 * @param altitude  the altitude or NaN
+		 * @param values    the values in the order of the value infos
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void timeLogEntry(Instant time, double latitude, double longitude, double altitude, Long[] values)
+				throws IOException;
+
+		/**
+		 * Ends the current timelog.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void endTimeLog() throws IOException;
+
+		/**
+		 * Starts a new grid.
+		 *
+		 * @param grid        the grid
+		 * @param rowCount    the row count
+		 * @param columnCount the column count
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void startGrid(Grid grid, int rowCount, int columnCount) throws IOException;
+
+		/**
+		 * Starts a new value of the current grid.
+		 *
+		 * @param info the value info
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void startGridValue(ValueInfo info) throws IOException;
+
+		/**
+		 * Receives a row of the current grid value.
+		 *
+		 * @param values the values
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void gridRow(Long[] values) throws IOException;
+
+		/**
+		 * Ends the current grid.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void endGrid() throws IOException;
+
+		/**
+		 * Receives the meta information, containing "parseTime" and "errors", after
+		 * all other results.
+		 *
+		 * @param meta the meta
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void finish(JSONObject meta) throws IOException;
+	}
+
+	/**
+	 * Cancels the parser. Every following write throws an exception.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Checks if the parser was cancelled.
+	 *
+	 * @throws IOException if the parser was cancelled
+	 */
+	protected void checkCancelled() throws IOException {
+		if (cancelled)
+			throw new InterruptedIOException("Parser cancelled");
 	}
 
 	/**
@@ -410,8 +550,12 @@ public class ParserAPI implements AutoCloseable {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	protected void writeMeta() throws IOException {
-		try (MetaWriter mw = new MetaWriter()) {
-			mw.write(meta);
+		if (handler != null)
+			handler.finish(meta);
+		else {
+			try (MetaWriter mw = new MetaWriter()) {
+				mw.write(meta);
+			}
 		}
 	}
 
@@ -478,11 +622,13 @@ public class ParserAPI implements AutoCloseable {
 	@Override
 	public void close() throws IOException {
 		writeMeta();
-		zip.close();
+		if (zip != null)
+			zip.close();
 	}
 
 	/**
-	 * The Class ParserEntryWriter.
+	 * The Class ParserEntryWriter. If the results are given to a result handler,
+	 * only the typed write methods of the subclasses have an effect.
 	 */
 	public abstract class ParserEntryWriter extends Writer {
 
@@ -501,8 +647,10 @@ public class ParserAPI implements AutoCloseable {
 
 			if (currentEntry != null)
 				throw new IOException("Close '" + currentEntry.name + "' writer before starting a new entry");
+			checkCancelled();
 			ZipEntry entry = new ZipEntry(name + extension);
-			zip.putNextEntry(entry);
+			if (zip != null)
+				zip.putNextEntry(entry);
 			addToMeta(entry.getName());
 			currentEntry = this;
 		}
@@ -524,6 +672,8 @@ public class ParserAPI implements AutoCloseable {
 		 */
 		@Override
 		public void write(char[] cbuf, int off, int len) throws IOException {
+			if (zip == null)
+				return;
 			ByteBuffer b = StandardCharsets.UTF_8.encode(CharBuffer.wrap(cbuf, off, len));
 			zip.write(b.array(), 0, b.limit());
 		}
@@ -536,6 +686,8 @@ public class ParserAPI implements AutoCloseable {
 		 */
 		@Override
 		public void write(String str) throws IOException {
+			if (zip == null)
+				return;
 			zip.write(str.getBytes(StandardCharsets.UTF_8));
 		}
 
@@ -546,7 +698,8 @@ public class ParserAPI implements AutoCloseable {
 		 */
 		@Override
 		public void flush() throws IOException {
-			zip.flush();
+			if (zip != null)
+				zip.flush();
 		}
 
 		/**
@@ -556,7 +709,8 @@ public class ParserAPI implements AutoCloseable {
 		 */
 		@Override
 		public void close() throws IOException {
-			zip.closeEntry();
+			if (zip != null)
+				zip.closeEntry();
 			currentEntry = null;
 		}
 
@@ -655,7 +809,11 @@ public class ParserAPI implements AutoCloseable {
 				stmtit.close();
 			}
 
-			model.write(this, "TTL");
+			checkCancelled();
+			if (handler != null)
+				handler.triples(model);
+			else
+				model.write(this, "TTL");
 			return this;
 		}
 
@@ -734,9 +892,14 @@ public class ParserAPI implements AutoCloseable {
 			if (type != ElementType.Other)
 				geojson.put("elementType", type.name());
 			geojson.put("label", label);
-			if (count > 0)
-				write(",");
-			write(geojson.toString());
+			checkCancelled();
+			if (handler != null)
+				handler.geoFeature(geojson);
+			else {
+				if (count > 0)
+					write(",");
+				write(geojson.toString());
+			}
 			++count;
 			return this;
 		}
@@ -1260,6 +1423,10 @@ public class ParserAPI implements AutoCloseable {
 		/** The value infos. */
 		private final List<? extends ValueInfo> valueInfos;
 
+		/** The binary timelog writer or null if results are given to the handler. */
+		@Nullable
+		private final BinaryTimeLog.Writer binary;
+
 		/**
 		 * Instantiates a new time log writer.
 		 *
@@ -1268,17 +1435,15 @@ public class ParserAPI implements AutoCloseable {
 		 * @throws IOException Signals that an I/O exception has occurred.
 		 */
 		TimeLogWriter(TimeLog timelog, List<? extends ValueInfo> valueInfos) throws IOException {
-			super(timelog.name, ".csv");
+			super(timelog.name, BinaryTimeLog.EXTENSION);
 			this.valueInfos = valueInfos;
+			if (handler != null)
+				handler.startTimeLog(timelog, valueInfos);
 
-			write(timelog.uri + CSV_LINEEND);
-
-			write("time" + CSV_SEPARATOR + "latitude" + CSV_SEPARATOR + "longitude" + CSV_SEPARATOR + "altitude");
-			for (ValueInfo desc : valueInfos) {
-				write(CSV_SEPARATOR);
-				write(desc.valueUri);
-			}
-			write(CSV_LINEEND);
+			List<String> valueUris = new ArrayList<>(valueInfos.size());
+			for (ValueInfo desc : valueInfos)
+				valueUris.add(desc.valueUri);
+			this.binary = zip != null ? new BinaryTimeLog.Writer(zip, timelog.uri, valueUris) : null;
 		}
 
 		/**
@@ -1309,28 +1474,30 @@ public class ParserAPI implements AutoCloseable {
 				throws IOException {
 			if (values.length != valueInfos.size())
 				throw new IOException("Values count must match the count valueInfos: " + valueInfos.size());
-			write(Long.toString(time.getEpochSecond()));
-			write(CSV_SEPARATOR);
-			format.setMaximumFractionDigits(7);
-			write(format.format(latitude));
-			write(CSV_SEPARATOR);
-			write(format.format(longitude));
-			write(CSV_SEPARATOR);
-			if (Double.isFinite(altitude)) {
-				format.setMaximumFractionDigits(3);
-				write(format.format(altitude));
-			}
-
-			for (int i = 0; i < values.length; ++i) {
-				write(CSV_SEPARATOR);
-				if (values[i] != null) {
-					write(values[i].toString());
-				}
+			checkCancelled();
+			if (handler != null) {
+				handler.timeLogEntry(time, latitude, longitude, altitude, values);
+				return this;
 			}
-			write(CSV_LINEEND);
+			if (binary != null)
+				binary.write(time, latitude, longitude, altitude, values);
 			return this;
 		}
 
+		/**
+		 * Close.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (binary != null)
+				binary.close();
+			if (handler != null)
+				handler.endTimeLog();
+			super.close();
+		}
+
 	}
 
 	/**
@@ -1353,10 +1520,12 @@ public class ParserAPI implements AutoCloseable {
 		 * @throws IOException Signals that an I/O exception has occurred.
 		 */
 		GridWriter(Grid grid, int rowCount, int columnCount) throws IOException {
-			super(grid.name, ".csv");
+			super(grid.name, GRID_EXTENSION);
 			this.rowCount = rowCount;
 			this.columnCount = columnCount;
 			this.writtenRows = rowCount;
+			if (handler != null)
+				handler.startGrid(grid, rowCount, columnCount);
 
 			format.setMaximumFractionDigits(7);
 			write(Integer.toString(rowCount));
@@ -1397,6 +1566,8 @@ public class ParserAPI implements AutoCloseable {
 			if (writtenRows < rowCount)
 				throw new IOException(
 						"The last grid value is not completed, please add " + (rowCount - writtenRows) + " rows");
+			if (handler != null)
+				handler.startGridValue(info);
 			write(info.valueUri);
 			write(CSV_LINEEND);
 			writtenRows = 0;
@@ -1415,6 +1586,12 @@ public class ParserAPI implements AutoCloseable {
 				throw new IOException("Values count must match the column count");
 			if (writtenRows >= rowCount)
 				throw new IOException("The current grid value is completed, start a new one");
+			checkCancelled();
+			if (handler != null) {
+				handler.gridRow(values);
+				++writtenRows;
+				return this;
+			}
 			for (int i = 0; i < columnCount; ++i) {
 				if (i > 0)
 					write(CSV_SEPARATOR);
@@ -1427,6 +1604,18 @@ public class ParserAPI implements AutoCloseable {
 			return this;
 		}
 
+		/**
+		 * Close.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (handler != null)
+				handler.endGrid();
+			super.close();
+		}
+
 	}
 
 }
@@ -0,0 +1,438 @@
+package de.sdsd.projekt.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Long-lived parser process, that executes many parse jobs one after another.
+ * This avoids the JVM startup, class loading and JIT warm-up for every parsed
+ * file. The worker is started with the parser jar on the classpath and calls
+ * the main method of the jar for every job, with the job content as System.in
+ * and System.out redirected to the job result.
+ *
+ * <pre>
+ * java -cp parser.jar de.sdsd.projekt.api.ParserWorker parser.jar
+ * </pre>
+ *
+ * Protocol on stdin: int argument count (negative to shut down), the arguments
+ * as modified UTF-8, content chunks, each an int length followed by the bytes,
+ * terminated by a zero length.<br>
+ * Protocol on stdout: result chunks, each an int length followed by the bytes,
+ * terminated by a zero length, followed by int status, long used heap and the
+ * error message as modified UTF-8.<br>
+ * Parser main methods that call System.exit can't be used in a worker.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian
+ *         Klose</a>
+ */
+public class ParserWorker {
+
+	/** The Constant STATUS_FATAL. */
+	public static final int STATUS_OK = 0, STATUS_ERROR = 1, STATUS_FATAL = 2;
+
+	/** The Constant CHUNK_SIZE. */
+	private static final int CHUNK_SIZE = 0x10000;
+
+	/** The Constant MAX_ERROR_LENGTH. */
+	private static final int MAX_ERROR_LENGTH = 0x1000;
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("USAGE: java -cp parser.jar " + ParserWorker.class.getName() + " parser.jar");
+			return;
+		}
+		String mainClass;
+		try (JarFile jar = new JarFile(args[0])) {
+			Manifest manifest = jar.getManifest();
+			mainClass = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS) : null;
+		}
+		if (mainClass == null)
+			throw new IOException("No Main-Class specified in " + args[0]);
+		Method main = Class.forName(mainClass).getMethod("main", String[].class);
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), CHUNK_SIZE + 4));
+		PrintStream log = System.err;
+		System.setOut(log);
+
+		while (true) {
+			int argc;
+			try {
+				argc = in.readInt();
+			} catch (EOFException e) {
+				break;
+			}
+			if (argc < 0)
+				break;
+			String[] jobArgs = new String[argc];
+			for (int i = 0; i < argc; ++i)
+				jobArgs[i] = in.readUTF();
+			byte[] content = readChunks(in);
+
+			int status = STATUS_OK;
+			String error = "";
+			PrintStream jobOut = new PrintStream(new ChunkedOutputStream(out), false);
+			System.setIn(new ByteArrayInputStream(content));
+			System.setOut(jobOut);
+			try {
+				main.invoke(null, (Object) jobArgs);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				cause.printStackTrace(log);
+				status = cause instanceof Error ? STATUS_FATAL : STATUS_ERROR;
+				error = cause.toString();
+			} catch (Throwable e) {
+				e.printStackTrace(log);
+				status = STATUS_FATAL;
+				error = e.toString();
+			} finally {
+				System.setOut(log);
+				System.setIn(new ByteArrayInputStream(new byte[0]));
+			}
+			jobOut.close();
+
+			Runtime rt = Runtime.getRuntime();
+			out.writeInt(0);
+			out.writeInt(status);
+			out.writeLong(rt.totalMemory() - rt.freeMemory());
+			out.writeUTF(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads the chunks of the job content.
+	 *
+	 * @param in the input of the worker
+	 * @return the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static byte[] readChunks(DataInputStream in) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[CHUNK_SIZE];
+		int length;
+		while ((length = in.readInt()) > 0) {
+			while (length > 0) {
+				int n = Math.min(length, buffer.length);
+				in.readFully(buffer, 0, n);
+				content.write(buffer, 0, n);
+				length -= n;
+			}
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * Writes a parse job to the input of a worker. The content is copied in
+	 * chunks, so the caller never holds it completely in memory.
+	 *
+	 * @param out     the input of the worker process
+	 * @param args    the arguments for the main method of the parser
+	 * @param content the content to parse, isn't closed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeJob(DataOutputStream out, List<String> args, InputStream content) throws IOException {
+		out.writeInt(args.size());
+		for (String arg : args)
+			out.writeUTF(arg);
+		try (OutputStream chunks = new ChunkedOutputStream(out)) {
+			byte[] buffer = new byte[CHUNK_SIZE];
+			int n;
+			while ((n = content.read(buffer)) >= 0) {
+				chunks.write(buffer, 0, n);
+			}
+		}
+		out.writeInt(0);
+		out.flush();
+	}
+
+	/**
+	 * Tells the worker to exit.
+	 *
+	 * @param out the input of the worker process
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void writeShutdown(DataOutputStream out) throws IOException {
+		out.writeInt(-1);
+		out.flush();
+	}
+
+	/**
+	 * Writes the job result as length prefixed chunks. Closing the stream only
+	 * flushes the last chunk, the underlying stream stays open for the next job.
+	 */
+	private static class ChunkedOutputStream extends OutputStream {
+
+		/** The out. */
+		private final DataOutputStream out;
+
+		/** The buffer. */
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+
+		/** The count. */
+		private int count = 0;
+
+		/**
+		 * Instantiates a new chunked output stream.
+		 *
+		 * @param out the out
+		 */
+		public ChunkedOutputStream(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * Write.
+		 *
+		 * @param b the b
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length)
+				writeChunk();
+			buffer[count++] = (byte) b;
+		}
+
+		/**
+		 * Write.
+		 *
+		 * @param b   the b
+		 * @param off the off
+		 * @param len the len
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buffer.length)
+					writeChunk();
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Write chunk.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void writeChunk() throws IOException {
+			if (count > 0) {
+				out.writeInt(count);
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+
+		/**
+		 * Flush.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void flush() throws IOException {
+			writeChunk();
+			out.flush();
+		}
+
+		/**
+		 * Close.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/**
+	 * Reads the result of one job from the output of a worker. The stream ends
+	 * after the last chunk of the job. Closing the stream skips the rest of the
+	 * result and reads the job status, the underlying stream stays open.
+	 */
+	public static class ResultInputStream extends InputStream {
+
+		/** The in. */
+		private final DataInputStream in;
+
+		/** The remaining bytes of the current chunk. */
+		private int remaining = 0;
+
+		/** The end. */
+		private boolean end = false;
+
+		/** The status. */
+		private int status = STATUS_OK;
+
+		/** The used heap. */
+		private long usedHeap = 0;
+
+		/** The error. */
+		private String error = "";
+
+		/**
+		 * Instantiates a new result input stream.
+		 *
+		 * @param in the output of the worker process
+		 */
+		public ResultInputStream(DataInputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Reads the next chunk header if necessary.
+		 *
+		 * @return true, if there is data left
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private boolean nextChunk() throws IOException {
+			while (!end && remaining == 0) {
+				remaining = in.readInt();
+				if (remaining == 0) {
+					status = in.readInt();
+					usedHeap = in.readLong();
+					error = in.readUTF();
+					end = true;
+				} else if (remaining < 0)
+					throw new IOException("Invalid chunk length: " + remaining);
+			}
+			return !end;
+		}
+
+		/**
+		 * Read.
+		 *
+		 * @return the int
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk())
+				return -1;
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException("Parser worker terminated");
+			--remaining;
+			return b;
+		}
+
+		/**
+		 * Read.
+		 *
+		 * @param b   the b
+		 * @param off the off
+		 * @param len the len
+		 * @return the int
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!nextChunk())
+				return -1;
+			int n = in.read(b, off, Math.min(len, remaining));
+			if (n < 0)
+				throw new EOFException("Parser worker terminated");
+			remaining -= n;
+			return n;
+		}
+
+		/**
+		 * Available.
+		 *
+		 * @return the int
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public int available() throws IOException {
+			return end ? 0 : Math.min(remaining, in.available());
+		}
+
+		/**
+		 * Skips the rest of the result.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			while (nextChunk()) {
+				int n = (int) in.skip(remaining);
+				if (n <= 0) {
+					if (in.read() < 0)
+						throw new EOFException("Parser worker terminated");
+					n = 1;
+				}
+				remaining -= n;
+			}
+		}
+
+		/**
+		 * Checks if the end of the result is reached.
+		 *
+		 * @return true, if is end
+		 */
+		public boolean isEnd() {
+			return end;
+		}
+
+		/**
+		 * Gets the status. Only valid after the stream is closed.
+		 *
+		 * @return the status
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * Gets the used heap of the worker after the job. Only valid after the stream
+		 * is closed.
+		 *
+		 * @return the used heap in bytes
+		 */
+		public long getUsedHeap() {
+			return usedHeap;
+		}
+
+		/**
+		 * Gets the error message. Only valid after the stream is closed.
+		 *
+		 * @return the error message or an empty string
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+
+}
@@ -4,12 +4,19 @@ import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
@@ -35,9 +42,14 @@ import de.sdsd.projekt.api.ServiceResult.SDSDFileMeta;
 import de.sdsd.projekt.api.ServiceResult.SDSDObject;
 import de.sdsd.projekt.api.ServiceResult.TimeInterval;
 import de.sdsd.projekt.api.ServiceResult.TimeLog;
+import de.sdsd.projekt.api.ServiceResult.TimeLogEntry;
 import de.sdsd.projekt.api.ServiceResult.TimeLogKey;
 import de.sdsd.projekt.api.ServiceResult.TimeLogKeyDdi;
 import de.sdsd.projekt.api.ServiceResult.TimeLogKeys;
+import de.sdsd.projekt.api.ServiceResult.TimeLogRollup;
+import de.sdsd.projekt.api.ServiceResult.TimedPosition;
+import de.sdsd.projekt.api.ServiceResult.TimedValue;
+import de.sdsd.projekt.api.ServiceResult.TimedValuePage;
 import de.sdsd.projekt.api.ServiceResult.Total;
 import de.sdsd.projekt.api.ServiceResult.ValueInfo;
 import de.sdsd.projekt.api.ServiceResult.WikiInstance;
@@ -468,6 +480,40 @@ public class ServiceAPI implements AutoCloseable {
 					timeFilter != null ? timeFilter.toJson() : null, limit));
 		}
 
+		/**
+		 * Gets a page of the positions, newest first.
+		 *
+		 * @param fileUri    the file uri
+		 * @param timelog    the timelog
+		 * @param timeFilter the time filter
+		 * @param pageSize   the page size
+		 * @param next       the continuation token of the previous page or null for
+		 *                   the first page
+		 * @return the page of positions
+		 * @throws JsonRpcException the json rpc exception
+		 */
+		public TimedValuePage<TimedPosition> getPositionPage(String fileUri, String timelog,
+				@Nullable TimeInterval timeFilter, int pageSize, @Nullable String next) throws JsonRpcException {
+			return new TimedValuePage<>(execute("getPositionPage", token, fileUri, timelog,
+					timeFilter != null ? timeFilter.toJson() : null, pageSize, next), "positions", TimedPosition::new);
+		}
+
+		/**
+		 * Iterates over all positions, newest first. The positions are read page by
+		 * page, the next page is requested while the current page is consumed.
+		 *
+		 * @param fileUri    the file uri
+		 * @param timelog    the timelog
+		 * @param timeFilter the time filter
+		 * @param pageSize   the page size
+		 * @return the iterator, that throws {@link UncheckedJsonRpcException} on
+		 *         errors
+		 */
+		public Iterator<TimedPosition> iteratePositions(String fileUri, String timelog,
+				@Nullable TimeInterval timeFilter, int pageSize) {
+			return new PageIterator<>(next -> getPositionPage(fileUri, timelog, timeFilter, pageSize, next));
+		}
+
 		/**
 		 * Gets the time log.
 		 *
@@ -500,6 +546,55 @@ public class ServiceAPI implements AutoCloseable {
 					timeFilter != null ? timeFilter.toJson() : null, limit));
 		}
 
+		/**
+		 * Gets a page of the time log, newest first.
+		 *
+		 * @param key        the key
+		 * @param timeFilter the time filter
+		 * @param pageSize   the page size
+		 * @param next       the continuation token of the previous page or null for
+		 *                   the first page
+		 * @return the page of the time log
+		 * @throws JsonRpcException the json rpc exception
+		 */
+		public TimedValuePage<TimeLogEntry> getTimeLogPage(TimeLogKey key, @Nullable TimeInterval timeFilter,
+				int pageSize, @Nullable String next) throws JsonRpcException {
+			return new TimedValuePage<>(execute("getTimeLogPage", token, key.getFileUri(), key.getName(),
+					key.getValueUri(), timeFilter != null ? timeFilter.toJson() : null, pageSize, next), "timelog",
+					TimeLogEntry::new);
+		}
+
+		/**
+		 * Iterates over the whole time log, newest first. The time log is read page by
+		 * page, the next page is requested while the current page is consumed.
+		 *
+		 * @param key        the key
+		 * @param timeFilter the time filter
+		 * @param pageSize   the page size
+		 * @return the iterator, that throws {@link UncheckedJsonRpcException} on
+		 *         errors
+		 */
+		public Iterator<TimeLogEntry> iterateTimeLog(TimeLogKey key, @Nullable TimeInterval timeFilter,
+				int pageSize) {
+			return new PageIterator<>(next -> getTimeLogPage(key, timeFilter, pageSize, next));
+		}
+
+		/**
+		 * Gets the aggregated time log values, newest first.
+		 * The server chooses the finest resolution that fits into the given count of intervals.
+		 *
+		 * @param key        the key
+		 * @param timeFilter the time filter
+		 * @param maxPoints  the max count of intervals
+		 * @return the time log rollup
+		 * @throws JsonRpcException the json rpc exception
+		 */
+		public TimeLogRollup getTimeLogRollup(TimeLogKey key, @Nullable TimeInterval timeFilter, int maxPoints)
+				throws JsonRpcException {
+			return new TimeLogRollup(execute("getTimeLogRollup", token, key.getFileUri(), key.getName(), 
+					key.getValueUri(), timeFilter != null ? timeFilter.toJson() : null, maxPoints));
+		}
+
 		/**
 		 * Gets the value info.
 		 *
@@ -914,6 +1009,141 @@ public class ServiceAPI implements AutoCloseable {
 		return map;
 	}
 
+	/** The executor for prefetching pages. */
+	private static final ExecutorService PREFETCH = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "sdsd-api-prefetch");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Loads a page of a paged read.
+	 *
+	 * @param <T> the generic type
+	 */
+	@FunctionalInterface
+	interface PageLoader<T extends TimedValue> {
+
+		/**
+		 * Loads the page.
+		 *
+		 * @param next the continuation token or null for the first page
+		 * @return the page
+		 * @throws JsonRpcException the json rpc exception
+		 */
+		TimedValuePage<T> load(@Nullable String next) throws JsonRpcException;
+	}
+
+	/**
+	 * Iterator over all pages of a paged read. Only the current and the next page
+	 * are held in memory, the next page is loaded in the background.
+	 *
+	 * @param <T> the generic type
+	 */
+	static class PageIterator<T extends TimedValue> implements Iterator<T> {
+
+		/** The loader. */
+		private final PageLoader<T> loader;
+
+		/** The current page. */
+		private Iterator<T> current = Collections.emptyIterator();
+
+		/** The next page or null if there are no more pages. */
+		@Nullable
+		private CompletableFuture<TimedValuePage<T>> next;
+
+		/**
+		 * Instantiates a new page iterator and starts loading the first page.
+		 *
+		 * @param loader the loader
+		 */
+		PageIterator(PageLoader<T> loader) {
+			this.loader = loader;
+			this.next = prefetch(null);
+		}
+
+		/**
+		 * Loads the page in the background.
+		 *
+		 * @param token the continuation token
+		 * @return the page
+		 */
+		private CompletableFuture<TimedValuePage<T>> prefetch(@Nullable String token) {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return loader.load(token);
+				} catch (JsonRpcException e) {
+					throw new UncheckedJsonRpcException(e);
+				}
+			}, PREFETCH);
+		}
+
+		/**
+		 * Checks for next.
+		 *
+		 * @return true, if successful
+		 */
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext()) {
+				if (next == null)
+					return false;
+				TimedValuePage<T> page;
+				try {
+					page = next.join();
+				} catch (CompletionException e) {
+					next = null;
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw e;
+				}
+				next = page.next != null ? prefetch(page.next) : null;
+				current = page.iterator();
+			}
+			return true;
+		}
+
+		/**
+		 * Next.
+		 *
+		 * @return the t
+		 */
+		@Override
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return current.next();
+		}
+	}
+
+	/**
+	 * JsonRpcException thrown by iterators.
+	 */
+	public static class UncheckedJsonRpcException extends RuntimeException {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 2812930349150163742L;
+
+		/**
+		 * Instantiates a new unchecked json rpc exception.
+		 *
+		 * @param cause the cause
+		 */
+		public UncheckedJsonRpcException(JsonRpcException cause) {
+			super(cause.getMessage(), cause);
+		}
+
+		/**
+		 * Gets the cause.
+		 *
+		 * @return the json rpc exception
+		 */
+		@Override
+		public synchronized JsonRpcException getCause() {
+			return (JsonRpcException) super.getCause();
+		}
+	}
+
 	/**
 	 * The Class JsonRpcException.
 	 */
@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -859,6 +860,50 @@ public final class ServiceResult {
 
 	}
 
+	/**
+	 * A page of timed values with the continuation token for the next page.
+	 *
+	 * @param <T> the generic type
+	 */
+	public static class TimedValuePage<T extends TimedValue> extends TimedValueList<T> {
+
+		/** The continuation token for the next page or null if this is the last page. */
+		@CheckForNull
+		public final String next;
+
+		/**
+		 * Instantiates a new timed value page.
+		 *
+		 * @param res     the res
+		 * @param key     the key of the values
+		 * @param creator the creator of the values
+		 */
+		TimedValuePage(JSONObject res, String key, Function<JSONObject, T> creator) {
+			super(ServiceAPI.result(res.getJSONArray(key), creator));
+			this.next = res.optString("next", null);
+		}
+
+		/**
+		 * Gets the continuation token for the next page.
+		 *
+		 * @return the continuation token or null if this is the last page
+		 */
+		@CheckForNull
+		public String getNext() {
+			return next;
+		}
+
+		/**
+		 * Checks for a next page.
+		 *
+		 * @return true, if there is a next page
+		 */
+		public boolean hasNext() {
+			return next != null;
+		}
+
+	}
+
 	/**
 	 * The Class AscendingIterator.
 	 *
@@ -1725,6 +1770,148 @@ public final class ServiceResult {
 
 	}
 
+	/**
+	 * The Class TimeLogRollupEntry.
+	 */
+	public static class TimeLogRollupEntry implements TimedValue {
+
+		/** The start of the interval. */
+		public final Instant time;
+
+		/** The count. */
+		public final long count;
+
+		/** The last. */
+		public final long min, max, first, last;
+
+		/** The average. */
+		public final double avg;
+
+		/**
+		 * Instantiates a new time log rollup entry.
+		 *
+		 * @param res the res
+		 */
+		TimeLogRollupEntry(JSONObject res) {
+			this.time = Instant.parse(res.getString("time"));
+			this.count = res.getLong("count");
+			this.min = res.getLong("min");
+			this.max = res.getLong("max");
+			this.avg = res.getDouble("avg");
+			this.first = res.getLong("first");
+			this.last = res.getLong("last");
+		}
+
+		/**
+		 * Gets the start of the interval.
+		 *
+		 * @return the time
+		 */
+		@Override
+		public Instant getTime() {
+			return time;
+		}
+
+		/**
+		 * Gets the count.
+		 *
+		 * @return the count
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the min.
+		 *
+		 * @return the min
+		 */
+		public long getMin() {
+			return min;
+		}
+
+		/**
+		 * Gets the max.
+		 *
+		 * @return the max
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Gets the average.
+		 *
+		 * @return the average
+		 */
+		public double getAvg() {
+			return avg;
+		}
+
+		/**
+		 * Gets the first value.
+		 *
+		 * @return the first value
+		 */
+		public long getFirst() {
+			return first;
+		}
+
+		/**
+		 * Gets the last value.
+		 *
+		 * @return the last value
+		 */
+		public long getLast() {
+			return last;
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 */
+		@Override
+		public String toString() {
+			return "TimeLogRollupEntry [time=" + time + ", count=" + count + ", min=" + min + ", max=" + max 
+					+ ", avg=" + avg + "]";
+		}
+	}
+
+	/**
+	 * The Class TimeLogRollup.
+	 */
+	public static class TimeLogRollup extends TimedValueList<TimeLogRollupEntry> {
+
+		/** The resolution in seconds. */
+		public final int resolution;
+
+		/**
+		 * Instantiates a new time log rollup.
+		 *
+		 * @param res the res
+		 */
+		TimeLogRollup(JSONObject res) {
+			super(new ArrayList<>());
+			this.resolution = res.getInt("resolution");
+			JSONArray tl = res.getJSONArray("rollup");
+			((ArrayList<?>) list).ensureCapacity(tl.length());
+			for (int i = 0; i < tl.length(); ++i) {
+				list.add(new TimeLogRollupEntry(tl.getJSONObject(i)));
+			}
+		}
+
+		/**
+		 * Gets the resolution.
+		 *
+		 * @return the resolution in seconds
+		 */
+		public int getResolution() {
+			return resolution;
+		}
+
+	}
+
 	/**
 	 * The Class ValueInfo.
 	 */
@@ -1961,6 +2148,17 @@ public final class ServiceResult {
 			this.label = res.getString("label");
 		}
 
+		/**
+		 * Instantiates a new wiki instance.
+		 *
+		 * @param uri   the uri
+		 * @param label the label
+		 */
+		public WikiInstance(String uri, String label) {
+			this.res = ResourceFactory.createResource(uri);
+			this.label = label;
+		}
+
 		/**
 		 * Gets the res.
 		 *
@@ -181,11 +181,12 @@ public class WebsocketClient extends Client {
 
 	/**
 	 * Send message.
+	 * Synchronized, because the basic remote doesn't allow concurrent messages.
 	 *
 	 * @param message the message
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public void sendMessage(String message) throws IOException {
+	public synchronized void sendMessage(String message) throws IOException {
 		clientsession.getBasicRemote().sendText(message);
 	}
 
@@ -208,7 +209,7 @@ public class WebsocketClient extends Client {
 
 			CompletableFuture<JSONObject> future = new CompletableFuture<>();
 			requests.put(id, future);
-			clientsession.getBasicRemote().sendText(request.toString());
+			sendMessage(request.toString());
 			JSONObject resp = future.get(10, TimeUnit.SECONDS);
 
 			if (resp.has("error"))
@@ -1,6 +1,7 @@
 package de.sdsd.projekt.prototype;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Map.Entry;
 
@@ -71,6 +72,13 @@ public class Main {
 				FileUtils.readFileToString(new File(settings.getConfigFile()), StandardCharsets.UTF_8));
 		// serverManager.withBasicAdminLogin();
 		ApplicationLogic restApplication = new ApplicationLogic(appSettings);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				restApplication.close();
+			} catch (IOException e) {
+				System.err.println("shutdown: " + e.getMessage());
+			}
+		}));
 
 		serverManager.addREST(restApplication);
 
@@ -1,5 +1,7 @@
 package de.sdsd.projekt.prototype.applogic;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.HashMap;
@@ -47,7 +49,7 @@ import de.sdsd.projekt.prototype.rest.RestResource;
  * @author Markus Schr&ouml;der
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
  */
-public class ApplicationLogic extends ResourceConfig {
+public class ApplicationLogic extends ResourceConfig implements Closeable {
 	
 	/**
 	 * All application settings.
@@ -128,7 +130,7 @@ public class ApplicationLogic extends ResourceConfig {
 	final DuplicateFinderFunctions dedup;
 	
 	/** The parser. */
-	final ParserFunctions parser;
+	public final ParserFunctions parser;
 	
 	/** The file. */
 	public final FileFunctions file;
@@ -266,6 +268,20 @@ public class ApplicationLogic extends ResourceConfig {
 		table.tidyUp(fileIds);
 	}
 	
+	/**
+	 * Stops the parser workers and the thread pool and closes the database clients.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		parser.close();
+		executor.shutdownNow();
+		triple.close();
+		table.close();
+		redis.shutdown();
+	}
+	
 	/**
 	 * Access to session information.
 	 */
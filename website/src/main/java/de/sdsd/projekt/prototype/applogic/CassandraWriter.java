@@ -0,0 +1,323 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.connection.BusyConnectionException;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+/**
+ * Asynchronous writer for cassandra.
+ * Statements are grouped by partition into unlogged batches, that are executed asynchronously
+ * with a limited number of batches in flight over all imports.
+ * Batches that fail because of timeouts or overload are retried with exponential backoff.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class CassandraWriter {
+
+	/** The cassandra. */
+	private final CqlSession cassandra;
+
+	/** The executor for delayed retries. */
+	private final ScheduledExecutorService executor;
+
+	/** The permits for batches in flight. */
+	private final Semaphore window;
+
+	/** The max retries. */
+	private final int batchSize, maxRetries;
+
+	/** The backoff before the first retry. */
+	private final long backoffMillis;
+
+	/**
+	 * Instantiates a new cassandra writer.
+	 *
+	 * @param cassandra the cassandra
+	 * @param executor the executor for delayed retries
+	 * @param settings the writer settings
+	 * @param defaultBatchSize the default max statements per batch
+	 */
+	CassandraWriter(CqlSession cassandra, ScheduledExecutorService executor, JSONObject settings, int defaultBatchSize) {
+		this.cassandra = cassandra;
+		this.executor = executor;
+		this.window = new Semaphore(Math.max(1, settings.optInt("inFlight", 16)), true);
+		this.batchSize = Math.max(1, settings.optInt("batchSize", defaultBatchSize));
+		this.maxRetries = Math.max(0, settings.optInt("retries", 5));
+		this.backoffMillis = Math.max(1, settings.optLong("backoffMs", 100));
+	}
+
+	/**
+	 * Starts a new import.
+	 *
+	 * @return the import
+	 */
+	public Import begin() {
+		return new Import();
+	}
+
+	/**
+	 * Checks if a failed batch can be retried.
+	 *
+	 * @param e the error
+	 * @return true, if the error is temporary
+	 */
+	private static boolean isRetryable(Throwable e) {
+		return e instanceof WriteTimeoutException
+				|| e instanceof UnavailableException
+				|| e instanceof OverloadedException
+				|| e instanceof DriverTimeoutException
+				|| e instanceof BusyConnectionException
+				|| e instanceof AllNodesFailedException;
+	}
+
+	/**
+	 * The writes of one import.
+	 * Statements must be added by one thread, the batches complete in the background.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public class Import {
+
+		/** The pending batches by partition. */
+		private final Map<Object, BatchStatementBuilder> pending = new HashMap<>();
+
+		/** The written rows. */
+		private final AtomicLong written = new AtomicLong();
+
+		/** The batches in flight. */
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		/** The first failure. */
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		/** The completion. */
+		private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+		/** The start. */
+		private final long start = System.nanoTime();
+
+		/** The end or 0 if not completed. */
+		private volatile long end = 0;
+
+		/** The finished. */
+		private volatile boolean finished = false;
+
+		/**
+		 * Instantiates a new import.
+		 */
+		private Import() {}
+
+		/**
+		 * Adds a statement to the batch of its partition.
+		 * The batch is executed when it is full.
+		 *
+		 * @param partition the partition key
+		 * @param statement the statement
+		 * @return true, if a batch was executed
+		 */
+		public boolean add(Object partition, BatchableStatement<?> statement) {
+			if(finished) throw new IllegalStateException("Import is already finished");
+			BatchStatementBuilder batch = pending.computeIfAbsent(partition, p -> new BatchStatementBuilder(BatchType.UNLOGGED));
+			batch.addStatement(statement);
+			if(batch.getStatementsCount() >= batchSize) {
+				flush(partition);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Executes the pending batch of the partition.
+		 *
+		 * @param partition the partition key
+		 * @return the count of executed statements
+		 */
+		public int flush(Object partition) {
+			BatchStatementBuilder batch = pending.remove(partition);
+			if(batch == null || batch.getStatementsCount() == 0) return 0;
+			int size = batch.getStatementsCount();
+			submit(batch.build(), size);
+			return size;
+		}
+
+		/**
+		 * Executes all pending batches.
+		 *
+		 * @return the count of executed statements
+		 */
+		public int flush() {
+			int count = 0;
+			for(Object partition : new ArrayList<>(pending.keySet())) {
+				count += flush(partition);
+			}
+			return count;
+		}
+
+		/**
+		 * Waits for a free slot and executes the batch.
+		 * Batches are dropped after a failure, the failure completes the import.
+		 *
+		 * @param batch the batch
+		 * @param size the statement count
+		 */
+		private void submit(BatchStatement batch, int size) {
+			if(failure.get() != null) return;
+			try {
+				window.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(new CancellationException("Import interrupted"));
+				return;
+			}
+			inFlight.incrementAndGet();
+			send(batch, size, 0);
+		}
+
+		/**
+		 * Sends the batch and handles the result.
+		 *
+		 * @param batch the batch
+		 * @param size the statement count
+		 * @param attempt the attempt
+		 */
+		private void send(BatchStatement batch, int size, int attempt) {
+			cassandra.executeAsync(batch).whenComplete((rs, e) -> {
+				if(e instanceof CompletionException && e.getCause() != null)
+					e = e.getCause();
+				if(e == null) {
+					written.addAndGet(size);
+					done();
+				}
+				else if(attempt < maxRetries && isRetryable(e) && failure.get() == null) {
+					System.err.format("Cassandra batch failed, retry %d/%d: %s\n", attempt + 1, maxRetries, e.getMessage());
+					try {
+						executor.schedule(() -> send(batch, size, attempt + 1),
+								backoffMillis << Math.min(attempt, 16), TimeUnit.MILLISECONDS);
+					} catch(RuntimeException re) {
+						fail(re);
+						done();
+					}
+				}
+				else {
+					fail(e);
+					done();
+				}
+			});
+		}
+
+		/**
+		 * Remembers the first failure.
+		 *
+		 * @param e the error
+		 */
+		private void fail(Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+
+		/**
+		 * Gives the slot of a finished batch back.
+		 */
+		private void done() {
+			window.release();
+			inFlight.decrementAndGet();
+			checkCompletion();
+		}
+
+		/**
+		 * Completes the import if it is finished and no batches are in flight.
+		 */
+		private void checkCompletion() {
+			if(!finished || inFlight.get() > 0 || completion.isDone()) return;
+			end = System.nanoTime();
+			Throwable e = failure.get();
+			if(e != null)
+				completion.completeExceptionally(e);
+			else
+				completion.complete(written.get());
+		}
+
+		/**
+		 * Executes the pending batches and finishes the import.
+		 *
+		 * @return the completion with the count of written rows
+		 */
+		public CompletableFuture<Long> finish() {
+			if(!finished) {
+				flush();
+				finished = true;
+				checkCompletion();
+			}
+			return completion;
+		}
+
+		/**
+		 * Gets the completion.
+		 *
+		 * @return the completion with the count of written rows
+		 */
+		public CompletableFuture<Long> getCompletion() {
+			return completion;
+		}
+
+		/**
+		 * Gets the written rows.
+		 *
+		 * @return the written rows
+		 */
+		public long getWritten() {
+			return written.get();
+		}
+
+		/**
+		 * Gets the elapsed milliseconds until now or the completion.
+		 *
+		 * @return the elapsed milliseconds
+		 */
+		public long getMillis() {
+			long end = this.end;
+			return TimeUnit.NANOSECONDS.toMillis((end != 0 ? end : System.nanoTime()) - start);
+		}
+
+		/**
+		 * Gets the written rows per second.
+		 *
+		 * @return the rows per second
+		 */
+		public double getRowsPerSecond() {
+			long millis = getMillis();
+			return millis > 0 ? written.get() * 1000. / millis : 0.;
+		}
+	}
+
+	/**
+	 * Gets the max statements per batch.
+	 *
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+}
@@ -0,0 +1,449 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.result.UpdateResult;
+
+import de.sdsd.projekt.prototype.data.Codec;
+import de.sdsd.projekt.prototype.data.File;
+import de.sdsd.projekt.prototype.data.FileChunk;
+import de.sdsd.projekt.prototype.data.FileContent;
+import de.sdsd.projekt.prototype.data.SDSDException;
+
+/**
+ * Chunked content store in MongoDB.
+ * A manifest document per file references fixed-size chunks, so appends only write the last chunk and new chunks.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see FileContent
+ * @see FileChunk
+ */
+class ChunkStore {
+
+	/** The manifests. */
+	final MongoCollection<Document> manifests;
+
+	/** The chunks. */
+	final MongoCollection<Document> chunks;
+
+	/**
+	 * Instantiates a new chunk store.
+	 *
+	 * @param manifests the manifest collection
+	 * @param chunks the chunk collection
+	 */
+	ChunkStore(MongoCollection<Document> manifests, MongoCollection<Document> chunks) {
+		this.manifests = manifests;
+		this.chunks = chunks;
+		manifests.createIndex(Indexes.ascending(FileContent.FILEID), new IndexOptions().unique(true));
+		chunks.createIndex(Indexes.ascending(FileChunk.FILEID, FileChunk.INDEX), new IndexOptions().unique(true));
+	}
+
+	/**
+	 * Finds the manifest of the content.
+	 * Content that is still stored in one blob is migrated to chunks.
+	 *
+	 * @param filter the manifest filter
+	 * @param file the file
+	 * @return the manifest or null if there is no content
+	 */
+	@CheckForNull
+	FileContent find(Bson filter, File file) {
+		Document doc = manifests.find(filter).first();
+		if(doc == null) return null;
+		FileContent content = new FileContent(doc);
+		if(content.isLegacy()) { // migrate single blob to chunks
+			byte[] data = content.getLegacyContent();
+			int count = write(file, data, 0, 0, content.getCodec());
+			manifests.updateOne(content.filter(), content.setChunks(data.length, count));
+			System.out.format("Migrated content of file(%s) to %d chunks\n", file.getId().toHexString(), count);
+		}
+		return content;
+	}
+
+	/**
+	 * Stores the content of the file and replaces existing content.
+	 *
+	 * @param file the file
+	 * @param content the content
+	 * @param codec the codec of the chunks
+	 * @return the manifest of the content
+	 */
+	FileContent store(File file, byte[] content, Codec codec) {
+		chunks.deleteMany(FileChunk.filter(file.getId()));
+		int count = write(file, content, 0, 0, codec);
+		Document manifest = FileContent.create(file, content.length, count, codec)
+				.append(FileContent.HASH, DigestUtils.sha256Hex(content));
+		manifests.replaceOne(FileContent.filter(file), manifest, new ReplaceOptions().upsert(true));
+		return new FileContent(manifest);
+	}
+
+	/**
+	 * Appends to the content of the file.
+	 * Only the last chunk is rewritten, if it isn't full, the rest of the new content is written to new chunks.
+	 *
+	 * @param content the manifest of the content
+	 * @param file the file
+	 * @param newContent the new content
+	 * @return the new size of the content
+	 */
+	long append(FileContent content, File file, byte[] newContent) {
+		int count = content.getChunks();
+		int offset = 0;
+		if(count > 0) {
+			// all chunks except the last one are full
+			int lastSize = (int) (content.getSize() - (long) (count - 1) * FileChunk.CHUNK_SIZE);
+			if(lastSize < FileChunk.CHUNK_SIZE) {
+				Document doc = chunks.find(FileChunk.filter(file.getId(), count - 1)).first();
+				byte[] last = doc != null ? new FileChunk(doc).getData() : new byte[0];
+				offset = Math.min(FileChunk.CHUNK_SIZE - lastSize, newContent.length);
+				byte[] data = Arrays.copyOf(last, lastSize + offset);
+				System.arraycopy(newContent, 0, data, lastSize, offset);
+				write(file, data, 0, count - 1, content.getCodec());
+			}
+		}
+		if(offset < newContent.length)
+			count = write(file, newContent, offset, count, content.getCodec());
+		long size = content.getSize() + newContent.length;
+		manifests.updateOne(content.filter(), content.setChunks(size, count));
+		return size;
+	}
+
+	/**
+	 * Stores the content of the file from a stream and replaces existing content.
+	 * The SHA-256 hash is computed while the stream is written to the chunks.
+	 *
+	 * @param file the file
+	 * @param in the content
+	 * @param codec the codec of the chunks
+	 * @param maxSize the max size of the content
+	 * @return the manifest of the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws SDSDException if the content is bigger than the max size, nothing is stored then
+	 */
+	FileContent store(File file, InputStream in, Codec codec, long maxSize) throws IOException, SDSDException {
+		FileContent content = store(file, new byte[0], codec);
+		DigestInputStream digest = new DigestInputStream(in, DigestUtils.getSha256Digest());
+		try {
+			append(content, file, digest, maxSize);
+		} catch(IOException | SDSDException e) {
+			delete(content.filter(), file.getId());
+			throw e;
+		}
+		manifests.updateOne(content.filter(), content.setHash(Hex.encodeHexString(digest.getMessageDigest().digest())));
+		return content;
+	}
+	
+	/**
+	 * Appends a stream to the content of the file.
+	 * The stream is read in pieces of the chunk size, so only one chunk is held in memory.
+	 *
+	 * @param content the manifest of the content
+	 * @param file the file
+	 * @param in the new content
+	 * @param maxSize the max size of the content
+	 * @return the new size of the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws SDSDException if the content gets bigger than the max size, the pieces before are kept
+	 */
+	long append(FileContent content, File file, InputStream in, long maxSize) throws IOException, SDSDException {
+		byte[] buffer = new byte[FileChunk.CHUNK_SIZE];
+		long size = content.getSize();
+		int n;
+		while((n = IOUtils.read(in, buffer)) > 0) {
+			if(size + n > maxSize) 
+				throw new SDSDException("File is too big (max. " + FileUtils.byteCountToDisplaySize(maxSize) + ")");
+			size = append(content, file, n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+		}
+		return size;
+	}
+	
+	/**
+	 * Writes the content into chunks.
+	 * Existing chunks with the same index are replaced.
+	 *
+	 * @param file the file
+	 * @param content the content
+	 * @param offset the offset in the content
+	 * @param index the index of the first chunk
+	 * @param codec the codec of the chunks
+	 * @return the index after the last written chunk
+	 */
+	private int write(File file, byte[] content, int offset, int index, Codec codec) {
+		List<ReplaceOneModel<Document>> writes = new ArrayList<>();
+		for(; offset < content.length; offset += FileChunk.CHUNK_SIZE, ++index) {
+			writes.add(new ReplaceOneModel<>(FileChunk.filter(file.getId(), index),
+					FileChunk.create(file, index, content, offset, Math.min(FileChunk.CHUNK_SIZE, content.length - offset), codec),
+					new ReplaceOptions().upsert(true)));
+		}
+		if(!writes.isEmpty())
+			chunks.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+		return index;
+	}
+
+	/**
+	 * Opens the content.
+	 *
+	 * @param content the manifest of the content
+	 * @param startChunk the index of the first chunk to read
+	 * @return the input stream, must be closed
+	 */
+	InputStream open(FileContent content, int startChunk) {
+		return new ChunkInputStream(content, startChunk);
+	}
+
+	/**
+	 * Opens the content at the given position.
+	 * Only the chunks from the position on are read.
+	 *
+	 * @param content the manifest of the content
+	 * @param offset the position in the content
+	 * @return the input stream, must be closed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	InputStream openAt(FileContent content, long offset) throws IOException {
+		int startChunk = (int) (offset / FileChunk.CHUNK_SIZE);
+		InputStream in = open(content, startChunk);
+		try {
+			IOUtils.skipFully(in, offset - (long) startChunk * FileChunk.CHUNK_SIZE);
+		} catch(IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+	
+	/**
+	 * Gets the SHA-256 hash of the content.
+	 * Computes the hash from the chunks and stores it in the manifest, if it isn't known yet.
+	 *
+	 * @param content the manifest of the content
+	 * @return the hex encoded hash
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	String hash(FileContent content) throws IOException {
+		String hash = content.getHash();
+		if(hash != null) return hash;
+		long size = content.getSize();
+		try(InputStream in = open(content, 0)) {
+			hash = DigestUtils.sha256Hex(in);
+		}
+		// only store the hash, if the content wasn't appended meanwhile
+		manifests.updateOne(Filters.and(content.filter(), Filters.eq(FileContent.SIZE, size), Filters.exists(FileContent.HASH, false)), 
+				content.setHash(hash));
+		return hash;
+	}
+	
+	/**
+	 * Re-encodes the chunks of the content with another codec.
+	 * New chunks are written with the new codec right away.
+	 * A chunk is only replaced, if it wasn't rewritten meanwhile, so the content can be appended at the same time.
+	 *
+	 * @param content the manifest of the content
+	 * @param codec the new codec
+	 * @return the saved bytes
+	 */
+	long recompress(FileContent content, Codec codec) {
+		manifests.updateOne(content.filter(), content.setCodec(codec));
+		long saved = 0;
+		for(Document doc : chunks.find(FileChunk.filter(content.getFile())).sort(Sorts.ascending(FileChunk.INDEX))) {
+			FileChunk chunk = new FileChunk(doc);
+			if(chunk.getCodec() == codec) continue;
+			byte[] data = chunk.getData();
+			Date expires = doc.getDate(FileChunk.EXPIRES);
+			Document replacement = FileChunk.create(content.getFile(), expires != null ? expires.toInstant() : null, 
+					chunk.getIndex(), data, 0, data.length, codec);
+			UpdateResult result = chunks.replaceOne(Filters.and(Filters.eq(doc.getObjectId("_id")), 
+					Filters.eq(FileChunk.DATA, doc.get(FileChunk.DATA))), replacement);
+			if(result.getModifiedCount() > 0)
+				saved += chunk.getStoredSize() - replacement.get(FileChunk.DATA, Binary.class).length();
+		}
+		return saved;
+	}
+	
+	/**
+	 * Deletes the content of the file.
+	 *
+	 * @param filter the manifest filter
+	 * @param fileid the fileid
+	 */
+	void delete(Bson filter, ObjectId fileid) {
+		manifests.deleteOne(filter);
+		chunks.deleteMany(FileChunk.filter(fileid));
+	}
+
+	/**
+	 * Tidy up.
+	 *
+	 * @param fileIds the file ids
+	 */
+	void tidyUp(Set<ObjectId> fileIds) {
+		Set<ObjectId> delete = new HashSet<>();
+		for(Document doc : manifests.find(Filters.nin(FileContent.FILEID, fileIds))) {
+			delete.add(doc.getObjectId(FileContent.FILEID));
+		}
+
+		System.out.println("Delete " + delete.size() + " " + manifests.getNamespace().getCollectionName() + ": " + delete.stream()
+				.map(ObjectId::toHexString).collect(Collectors.joining(", ")));
+
+		if(delete.size() > 0)
+			System.out.println("Success: " + manifests.deleteMany(Filters.in(FileContent.FILEID, delete)).wasAcknowledged());
+
+		delete.clear();
+		for(ObjectId fileid : chunks.distinct(FileChunk.FILEID, Filters.nin(FileChunk.FILEID, fileIds), ObjectId.class)) {
+			delete.add(fileid);
+		}
+
+		System.out.println("Delete " + chunks.getNamespace().getCollectionName() + " of " + delete.size() + " files: " + delete.stream()
+				.map(ObjectId::toHexString).collect(Collectors.joining(", ")));
+
+		if(delete.size() > 0)
+			System.out.println("Success: " + chunks.deleteMany(Filters.in(FileChunk.FILEID, delete)).wasAcknowledged());
+	}
+
+	/**
+	 * Stream over the chunks of a file content.
+	 * Only the manifest and the current chunk are held in memory.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class ChunkInputStream extends InputStream {
+
+		/** The chunks. */
+		private final MongoCursor<Document> cursor;
+
+		/** The file. */
+		private final ObjectId file;
+
+		/** The remaining bytes of the content after the current chunk. */
+		private long remaining;
+
+		/** The index of the next chunk. */
+		private int index;
+
+		/** The current chunk. */
+		private byte[] current = new byte[0];
+
+		/** The position in the current chunk. */
+		private int pos = 0;
+
+		/**
+		 * Instantiates a new chunk input stream.
+		 *
+		 * @param content the manifest of the content
+		 * @param startChunk the index of the first chunk to read
+		 */
+		ChunkInputStream(FileContent content, int startChunk) {
+			this.file = content.getFile();
+			this.index = Math.max(0, Math.min(startChunk, content.getChunks()));
+			this.remaining = Math.max(0, content.getSize() - (long) index * FileChunk.CHUNK_SIZE);
+			this.cursor = chunks.find(Filters.and(FileChunk.filter(file),
+							Filters.gte(FileChunk.INDEX, index), Filters.lt(FileChunk.INDEX, content.getChunks())))
+					.sort(Sorts.ascending(FileChunk.INDEX))
+					.batchSize(4)
+					.iterator();
+		}
+
+		/**
+		 * Loads the next chunk, if the current one is consumed.
+		 *
+		 * @return false, if the end of the content is reached
+		 * @throws IOException if a chunk is missing
+		 */
+		private boolean fill() throws IOException {
+			while(pos >= current.length) {
+				if(remaining <= 0) return false;
+				if(!cursor.hasNext())
+					throw new FileNotFoundException("Missing chunk " + index + " of file " + file.toHexString());
+				FileChunk chunk = new FileChunk(cursor.next());
+				if(chunk.getIndex() != index)
+					throw new FileNotFoundException("Missing chunk " + index + " of file " + file.toHexString());
+				++index;
+				current = chunk.getData();
+				if(current.length > remaining)
+					current = Arrays.copyOf(current, (int) remaining);
+				remaining -= current.length;
+				pos = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * Read.
+		 *
+		 * @return the int
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public int read() throws IOException {
+			return fill() ? current[pos++] & 0xFF : -1;
+		}
+
+		/**
+		 * Read.
+		 *
+		 * @param b the b
+		 * @param off the off
+		 * @param len the len
+		 * @return the int
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			if(!fill()) return -1;
+			int n = Math.min(len, current.length - pos);
+			System.arraycopy(current, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		/**
+		 * Available.
+		 *
+		 * @return the int
+		 */
+		@Override
+		public int available() {
+			return current.length - pos;
+		}
+
+		/**
+		 * Close.
+		 */
+		@Override
+		public void close() {
+			cursor.close();
+		}
+	}
+}
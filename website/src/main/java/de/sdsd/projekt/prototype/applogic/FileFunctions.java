@@ -17,19 +17,26 @@ import de.sdsd.projekt.agrirouter.request.ARListEndpointsRequest;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.QueryResult;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.UtilQuerySolution;
 import de.sdsd.projekt.prototype.data.ARConn;
+import de.sdsd.projekt.prototype.data.Codec;
 import de.sdsd.projekt.prototype.data.DeviceDescription;
 import de.sdsd.projekt.prototype.data.EfdiTimeLog;
 import de.sdsd.projekt.prototype.data.File;
+import de.sdsd.projekt.prototype.data.FileChunk;
 import de.sdsd.projekt.prototype.data.FileContent;
+import de.sdsd.projekt.prototype.data.SDSDException;
 import de.sdsd.projekt.prototype.data.SDSDType;
 import de.sdsd.projekt.prototype.data.StorageTask;
+import de.sdsd.projekt.prototype.data.UploadSession;
 import de.sdsd.projekt.prototype.data.User;
 import de.sdsd.projekt.prototype.jsonrpc.JsonRpcEndpoint;
 import de.sdsd.projekt.prototype.websocket.SDSDEvent;
 import efdi.GrpcEfdi;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -38,6 +45,7 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -61,7 +69,10 @@ import javax.annotation.Nullable;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.query.Query;
 import org.apache.jena.sparql.core.Var;
@@ -88,8 +99,35 @@ public class FileFunctions {
 	/** The mongo file. */
 	final MongoCollection<Document> mongoFile;
 	
-	/** The mongo content. */
-	final MongoCollection<Document> mongoContent;
+	/** The file contents. */
+	private final ChunkStore contents;
+	
+	/** The appended timelog messages, that aren't merged into the file contents yet. */
+	private final SegmentLog timelogs;
+	
+	/** The resumable upload sessions. */
+	private final MongoCollection<Document> uploadSessions;
+	
+	/** The ids of files, whose content is currently uploaded, but that aren't created yet. */
+	private final Set<ObjectId> uploading = ConcurrentHashMap.newKeySet();
+	
+	/** The max size of uploaded files in bytes. */
+	private final long maxUploadSize;
+	
+	/** The duration after that unfinished upload sessions are removed. */
+	private final Duration uploadSessionDuration;
+	
+	/** The codec for uploaded files. */
+	private final Codec fileCodec;
+	
+	/** The codec for telemetry, that is appended often. */
+	private final Codec telemetryCodec;
+	
+	/** The codec for files, that weren't modified for a while. */
+	private final Codec archiveCodec;
+	
+	/** The duration without modification, after that files are recompressed with the archive codec, zero to disable. */
+	private final Duration archiveAfter;
 	
 	/** The data added. */
 	public final SDSDEvent<User, File> dataAdded = new SDSDEvent<>();
@@ -111,14 +149,33 @@ public class FileFunctions {
 	FileFunctions(ApplicationLogic app) {
 		this.app = app;
 		this.mongoFile = app.mongo.sdsd.getCollection("fileUploads");
-		this.mongoContent = app.mongo.sdsd.getCollection("fileContents");
+		
+		JSONObject compressionSettings = app.settings.optJSONObject("compression");
+		if(compressionSettings == null) compressionSettings = new JSONObject();
+		this.fileCodec = Codec.fromName(compressionSettings.optString("files", Codec.NONE.getName()));
+		this.telemetryCodec = Codec.fromName(compressionSettings.optString("telemetry", Codec.LZ4.getName()));
+		this.archiveCodec = Codec.fromName(compressionSettings.optString("archive", Codec.XZ.getName()));
+		this.archiveAfter = Duration.ofDays(compressionSettings.optLong("archiveAfterDays", 30));
+		
+		this.contents = new ChunkStore(app.mongo.sdsd.getCollection("fileContents"), app.mongo.sdsd.getCollection("fileChunks"));
+		this.timelogs = new SegmentLog(new ChunkStore(app.mongo.sdsd.getCollection("timelogSegments"), 
+				app.mongo.sdsd.getCollection("timelogSegmentChunks")), telemetryCodec);
+		this.uploadSessions = app.mongo.sdsd.getCollection("uploadSessions");
+		this.uploadSessions.createIndex(Indexes.ascending(UploadSession.USER));
 		this.deviceDescriptions = new DeviceDescriptions();
-		mongoContent.createIndex(Indexes.ascending(FileContent.FILEID), new IndexOptions().unique(true));
+		
+		JSONObject uploadSettings = app.settings.optJSONObject("upload");
+		if(uploadSettings == null) uploadSettings = new JSONObject();
+		this.maxUploadSize = uploadSettings.optLong("maxSize", 1L << 30);
+		this.uploadSessionDuration = Duration.ofHours(uploadSettings.optLong("sessionHours", 24));
 		
 		ZonedDateTime now = ZonedDateTime.now();
 		ZonedDateTime start = now.truncatedTo(ChronoUnit.DAYS).plusDays(1);
 		app.executor.scheduleAtFixedRate(new ExpireDaemon(), 
 				Duration.between(now, start).getSeconds(), 24*60*60, TimeUnit.SECONDS);
+		if(!archiveAfter.isZero())
+			app.executor.scheduleAtFixedRate(new RecompressDaemon(), 
+					Duration.between(now, start.plusHours(2)).getSeconds(), 24*60*60, TimeUnit.SECONDS);
 	}
 	
 	/**
@@ -135,23 +192,14 @@ public class FileFunctions {
 	@CheckForNull
 	public File storeFile(User user, String filename, byte[] content, Instant created, String source, @Nullable ARMessageType artype) {
 		SDSDType type = app.parser.determineType(content, filename, artype);
-		
-		try {
-			if(!type.getMimeType().isEmpty() && FilenameUtils.getExtension(filename).isEmpty()) {
-				String ext = TikaConfig.getDefaultConfig().getMimeRepository().forName(type.getMimeType()).getExtension();
-				if(!ext.isEmpty())
-					filename += ext;
-			}
-		} catch(MimeTypeException e) {
-			System.err.println(e.getMessage());
-		}
+		filename = addExtension(filename, type);
 		
 		Instant expires = checkStorageTasks(user, type.getUri(), source, created);
 		if(expires == null) return null; // no storage task
 		
 		Document create = File.create(user, filename, content.length, type.getUri(), created, source, expires);
 		File file = app.list.files.add(user, create);
-		mongoContent.insertOne(FileContent.create(file, content, false));
+		storeContent(file, content, fileCodec);
 
 		app.parser.parseFileAsync(user, file, content, true);
 		dataAdded.trigger(user, file);
@@ -159,6 +207,193 @@ public class FileFunctions {
 		return file;
 	}
 	
+	/** Size of the beginning of uploaded content, that is used to detect the mimetype. */
+	private static final int UPLOAD_HEAD_SIZE = 64 * 1024;
+	
+	/**
+	 * Store file from a stream.
+	 * The content is written to the chunks while it is read, so it is never completely held in memory.
+	 * The type is detected from the beginning of the content and the hash, 
+	 * the whole content is only read chunk by chunk if the parsers must test it.
+	 *
+	 * @param user the user
+	 * @param filename the filename
+	 * @param in the content
+	 * @param created the created
+	 * @param source the source
+	 * @return the file or null if there is no storage task for it
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws SDSDException if the content is bigger than the max upload size
+	 */
+	@CheckForNull
+	public File storeFile(User user, String filename, InputStream in, Instant created, String source) throws IOException, SDSDException {
+		byte[] head = new byte[UPLOAD_HEAD_SIZE];
+		int n = IOUtils.read(in, head);
+		if(n < head.length) head = Arrays.copyOf(head, n);
+		
+		File target = File.getDefault(user, new ObjectId());
+		uploading.add(target.getId());
+		try {
+			FileContent content = contents.store(target, new SequenceInputStream(new ByteArrayInputStream(head), in), fileCodec, maxUploadSize);
+			return createStoredFile(user, target, content, head, filename, created, source);
+		} finally {
+			uploading.remove(target.getId());
+		}
+	}
+	
+	/**
+	 * Creates the file for content, that is already stored in chunks.
+	 *
+	 * @param user the user
+	 * @param target the default file with the id of the new file
+	 * @param content the manifest of the stored content
+	 * @param head the beginning of the content
+	 * @param filename the filename
+	 * @param created the created
+	 * @param source the source
+	 * @return the file or null if there is no storage task for it, the content is deleted then
+	 */
+	@CheckForNull
+	private File createStoredFile(User user, File target, FileContent content, byte[] head, 
+			String filename, Instant created, String source) {
+		SDSDType type = app.parser.determineType(head, filename, null, contents.hash(content), () -> contents.open(content, 0));
+		filename = addExtension(filename, type);
+		
+		Instant expires = checkStorageTasks(user, type.getUri(), source, created);
+		if(expires == null) { // no storage task
+			contents.delete(content.filter(), target.getId());
+			return null;
+		}
+		
+		Document create = File.create(user, filename, content.getSize(), type.getUri(), created, source, expires);
+		create.put(File.ID, target.getId());
+		File file = app.list.files.add(user, create);
+		
+		app.parser.parseStoredAsync(user, file, content.getSize(), true);
+		dataAdded.trigger(user, file);
+		
+		return file;
+	}
+	
+	/**
+	 * Adds the file extension of the type, if the filename has none.
+	 *
+	 * @param filename the filename
+	 * @param type the type
+	 * @return the filename
+	 */
+	private static String addExtension(String filename, SDSDType type) {
+		try {
+			if(!type.getMimeType().isEmpty() && FilenameUtils.getExtension(filename).isEmpty()) {
+				String ext = TikaConfig.getDefaultConfig().getMimeRepository().forName(type.getMimeType()).getExtension();
+				if(!ext.isEmpty())
+					filename += ext;
+			}
+		} catch(MimeTypeException e) {
+			System.err.println(e.getMessage());
+		}
+		return filename;
+	}
+	
+	/**
+	 * Begins a resumable upload.
+	 * The content is uploaded in parts, the session expires if it isn't finished in time.
+	 *
+	 * @param user the user
+	 * @param filename the filename
+	 * @param created the creation date of the file
+	 * @return the upload session
+	 */
+	public UploadSession beginUpload(User user, String filename, Instant created) {
+		Document doc = UploadSession.create(user, filename, created, Instant.now().plus(uploadSessionDuration));
+		uploadSessions.insertOne(doc);
+		UploadSession session = new UploadSession(doc);
+		contents.store(File.getDefault(user, session.getId()), new byte[0], fileCodec);
+		return session;
+	}
+	
+	/**
+	 * Gets an upload session.
+	 *
+	 * @param user the user
+	 * @param id the id of the session
+	 * @return the upload session
+	 * @throws SDSDException if there is no such session
+	 */
+	public UploadSession getUpload(User user, ObjectId id) throws SDSDException {
+		Document doc = uploadSessions.find(UploadSession.filter(user, id)).first();
+		if(doc == null) throw new SDSDException("Upload session not found");
+		return new UploadSession(doc);
+	}
+	
+	/**
+	 * Appends a part to an upload.
+	 * Parts must be uploaded in order, the offset must be the count of already received bytes.
+	 * If a part is interrupted, the received bytes are kept and the upload can be resumed at the new offset.
+	 *
+	 * @param user the user
+	 * @param id the id of the session
+	 * @param offset the offset of the part in the content
+	 * @param in the part
+	 * @return the upload session with the new count of received bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws SDSDException if there is no such session, the offset is wrong or the content gets too big
+	 */
+	public UploadSession appendUpload(User user, ObjectId id, long offset, InputStream in) throws IOException, SDSDException {
+		synchronized (appendLock(File.getDefault(user, id))) {
+			UploadSession session = getUpload(user, id);
+			if(offset != session.getReceived())
+				throw new SDSDException("Wrong offset " + offset + ", expected " + session.getReceived());
+			File target = File.getDefault(user, id);
+			FileContent content = getContent(user, target);
+			try {
+				contents.append(content, target, in, maxUploadSize);
+			} finally {
+				uploadSessions.updateOne(session.filter(), session.setReceived(content.getSize()));
+			}
+			return session;
+		}
+	}
+	
+	/**
+	 * Finishes an upload and creates the file.
+	 *
+	 * @param user the user
+	 * @param id the id of the session
+	 * @return the file or null if there is no storage task for it
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws SDSDException if there is no such session
+	 */
+	@CheckForNull
+	public File finishUpload(User user, ObjectId id) throws IOException, SDSDException {
+		synchronized (appendLock(File.getDefault(user, id))) {
+			UploadSession session = getUpload(user, id);
+			File target = File.getDefault(user, id);
+			FileContent content = getContent(user, target);
+			byte[] head;
+			try (InputStream in = contents.open(content, 0)) {
+				head = IOUtils.toByteArray(in, Math.min(content.getSize(), UPLOAD_HEAD_SIZE));
+			}
+			File file = createStoredFile(user, target, content, head, session.getFilename(), session.getCreated(), File.SOURCE_USER_UPLOAD);
+			uploadSessions.deleteOne(session.filter());
+			return file;
+		}
+	}
+	
+	/**
+	 * Cancels an upload and deletes the received content.
+	 *
+	 * @param user the user
+	 * @param id the id of the session
+	 * @return true, if successful
+	 */
+	public boolean cancelUpload(User user, ObjectId id) {
+		synchronized (appendLock(File.getDefault(user, id))) {
+			contents.delete(FileContent.filter(user, id), id);
+			return uploadSessions.deleteOne(UploadSession.filter(user, id)).getDeletedCount() > 0;
+		}
+	}
+	
 	/**
 	 * Check storage tasks.
 	 *
@@ -194,10 +429,38 @@ public class FileFunctions {
 	 */
 	@Nonnull
 	protected FileContent getContent(User user, File file) throws FileNotFoundException {
-		Document doc = mongoContent.find(FileContent.filter(user, file.getId())).first();
-		if(doc == null) 
+		FileContent content = contents.find(FileContent.filter(user, file.getId()), file);
+		if(content == null) 
 			throw new FileNotFoundException("No content of file \"" + file.getFilename() + "\" found");
-		return new FileContent(doc);
+		return content;
+	}
+	
+	/**
+	 * Stores the content of the file and replaces existing content.
+	 *
+	 * @param file the file
+	 * @param content the content
+	 * @param codec the codec of the chunks
+	 */
+	private void storeContent(File file, byte[] content, Codec codec) {
+		contents.store(file, content, codec);
+	}
+	
+	/**
+	 * Opens the content of the file.
+	 * The content is read chunk by chunk.
+	 * Timelogs with appended messages are merged in memory.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 * @return the input stream, must be closed
+	 * @throws FileNotFoundException the file not found exception
+	 */
+	@Nonnull
+	public InputStream openFile(User user, File file) throws FileNotFoundException {
+		if(file.isTimeLog() && timelogs.getSize(file) > 0)
+			return new ByteArrayInputStream(downloadFile(user, file));
+		return contents.open(getContent(user, file), 0);
 	}
 	
 	/**
@@ -210,7 +473,139 @@ public class FileFunctions {
 	 */
 	@Nonnull
 	public byte[] downloadFile(User user, File file) throws FileNotFoundException {
-		return getContent(user, file).getContent();
+		FileContent content = getContent(user, file);
+		try {
+			byte[] data = readContent(content);
+			return file.isTimeLog() ? mergeTimeLog(file, data) : data;
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Reads the whole stored content.
+	 *
+	 * @param content the manifest of the content
+	 * @return the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] readContent(FileContent content) throws IOException {
+		try (InputStream in = contents.open(content, 0)) {
+			return IOUtils.toByteArray(in, content.getSize());
+		}
+	}
+	
+	/**
+	 * Prepares a download of the file content.
+	 * Timelogs with appended messages are merged in memory, all other contents are read chunk by chunk.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 * @return the download
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Nonnull
+	public Download download(User user, File file) throws IOException {
+		if(file.isTimeLog() && timelogs.getSize(file) > 0) {
+			byte[] merged = downloadFile(user, file);
+			return new Download(null, merged, DigestUtils.sha256Hex(merged));
+		}
+		FileContent content = getContent(user, file);
+		return new Download(content, null, contents.hash(content));
+	}
+	
+	/**
+	 * Content of a file, that is ready to download.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public class Download {
+		
+		/** The manifest of the stored content or null if the content is in memory. */
+		@CheckForNull
+		private final FileContent content;
+		
+		/** The content in memory or null if the content is read from the chunks. */
+		@CheckForNull
+		private final byte[] data;
+		
+		/** The hash. */
+		private final String hash;
+		
+		/**
+		 * Instantiates a new download.
+		 *
+		 * @param content the manifest of the stored content
+		 * @param data the content in memory
+		 * @param hash the SHA-256 hash of the content
+		 */
+		private Download(@Nullable FileContent content, @Nullable byte[] data, String hash) {
+			this.content = content;
+			this.data = data;
+			this.hash = hash;
+		}
+		
+		/**
+		 * Gets the size.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getSize() {
+			return data != null ? data.length : content.getSize();
+		}
+		
+		/**
+		 * Gets the SHA-256 hash of the content.
+		 *
+		 * @return the hex encoded hash
+		 */
+		public String getHash() {
+			return hash;
+		}
+		
+		/**
+		 * Opens the content at the given position.
+		 *
+		 * @param offset the position in the content
+		 * @return the input stream, must be closed
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public InputStream open(long offset) throws IOException {
+			if(data != null) 
+				return new ByteArrayInputStream(data, (int) Math.min(offset, data.length), data.length);
+			return contents.openAt(content, offset);
+		}
+	}
+	
+	/**
+	 * Merges the appended timelog messages into the EFDI zip.
+	 *
+	 * @param file the file
+	 * @param content the EFDI zip without the appended messages
+	 * @return the EFDI zip including all appended messages
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] mergeTimeLog(File file, byte[] content) throws IOException {
+		List<byte[]> records = timelogs.read(file, null);
+		if(records.isEmpty()) return content;
+		
+		EfdiTimeLog tlg = new EfdiTimeLog(content);
+		Optional<String> tlgname = tlg.getTimeLogNames().stream().findAny();
+		GrpcEfdi.TimeLog.Builder log = null;
+		if(tlgname.isPresent()) {
+			GrpcEfdi.TimeLog oldLog = tlg.getTimeLog(tlgname.get());
+			if(oldLog != null) log = oldLog.toBuilder();
+		} else
+			tlgname = Optional.of(tlg.getFreeTimeLogName());
+		
+		for(byte[] record : records) {
+			GrpcEfdi.TimeLog newLog = GrpcEfdi.TimeLog.parseFrom(record);
+			if(log == null) log = newLog.toBuilder();
+			else log.addAllTime(newLog.getTimeList());
+		}
+		return tlg.setTimeLog(tlgname.get(), log.build()).toZipByteArray();
 	}
 
 	/**
@@ -223,9 +618,11 @@ public class FileFunctions {
 	public boolean deleteFile(User user, File file) {
 		app.parser.removeFileDataAsync(user, file.getId().toHexString(), true);
 		
-		mongoContent.deleteOne(FileContent.filter(user, file.getId()));
+		contents.delete(FileContent.filter(user, file.getId()), file.getId());
+		timelogs.delete(file);
 		boolean ok = mongoFile.deleteOne(file.filter()).wasAcknowledged();
 		if(ok) {
+			app.service.permissions.fileDeleted(user, file);
 			fileAppended.unsetAllListener(file);
 			fileDeleted.trigger(user, file);
 		}
@@ -251,16 +648,13 @@ public class FileFunctions {
 	 * @param fileIds the file ids
 	 */
 	void tidyUp(Set<ObjectId> fileIds) {
-		Set<ObjectId> delete = new HashSet<>();
-		for(Document doc : mongoContent.find(Filters.nin(FileContent.FILEID, fileIds))) {
-			delete.add(doc.getObjectId(FileContent.FILEID));
+		Set<ObjectId> contentIds = new HashSet<>(fileIds);
+		contentIds.addAll(uploading);
+		for(Document doc : uploadSessions.find()) {
+			contentIds.add(doc.getObjectId(UploadSession.ID));
 		}
-		
-		System.out.println("Delete " + delete.size() + " file contents: " + delete.stream()
-				.map(ObjectId::toHexString).collect(Collectors.joining(", ")));
-		
-		if(delete.size() > 0)
-			System.out.println("Success: " + mongoContent.deleteMany(Filters.in(FileContent.FILEID, delete)).wasAcknowledged());
+		contents.tidyUp(contentIds);
+		timelogs.tidyUp(fileIds);
 	}
 	
 	/**
@@ -272,8 +666,9 @@ public class FileFunctions {
 	 * @throws FileNotFoundException the file not found exception
 	 */
 	public Future<Boolean> reparseFile(User user, File file) throws FileNotFoundException {
-		byte[] content = downloadFile(user, file);
-		return app.parser.deleteAndParseFileAsync(user, file, content, true);
+		FileContent content = getContent(user, file);
+		app.parser.removeFileDataAsync(user, file.getId().toHexString(), false);
+		return app.parser.parseStoredAsync(user, file, content.getSize(), true);
 	}
 	
 	/**
@@ -302,6 +697,47 @@ public class FileFunctions {
 					deleteFile(user, file);
 					app.logInfo(user, "File expired: " + file.getFilename());
 				}
+				for(Document d : uploadSessions.find(Filters.lt(UploadSession.EXPIRES, Date.from(Instant.now())))) {
+					UploadSession session = new UploadSession(d);
+					contents.delete(Filters.eq(FileContent.FILEID, session.getId()), session.getId());
+					uploadSessions.deleteOne(Filters.eq(session.getId()));
+					System.out.println("Upload expired: user(" + session.getUser() + ") file(" + session.getFilename() + ")");
+				}
+			} catch(Throwable e) {
+				e.printStackTrace();
+			}
+		}
+	};
+	
+	/**
+	 * Daemon for recompressing files with the archive codec, that weren't modified for a while.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class RecompressDaemon implements Runnable {
+		
+		/**
+		 * Run.
+		 */
+		@Override
+		public void run() {
+			try {
+				System.out.println("Running recompress daemon...");
+				Instant cold = Instant.now().minus(archiveAfter);
+				int count = 0;
+				long saved = 0;
+				for(Document d : mongoFile.find(Filters.lt(File.MODIFIED, Date.from(cold)))) {
+					File file = new File(d);
+					FileContent content = contents.find(Filters.and(FileContent.filter(file), 
+							Filters.ne(FileContent.CODEC, archiveCodec.id)), file);
+					if(content == null) continue;
+					synchronized(appendLock(file)) {
+						saved += contents.recompress(content, archiveCodec);
+					}
+					++count;
+				}
+				System.out.format("Recompressed %d files with %s: %s saved\n", count, archiveCodec.getName(), 
+						FileUtils.byteCountToDisplaySize(saved));
 			} catch(Throwable e) {
 				e.printStackTrace();
 			}
@@ -492,8 +928,8 @@ public class FileFunctions {
 	 */
 	private class DelayedTimelogParser extends DelayedParser {
 		
-		/** The tlg. */
-		private final GrpcEfdi.TimeLog.Builder tlg;
+		/** The timestamp of the first appended message, that isn't parsed yet. */
+		private final Instant since;
 		
 		/**
 		 * Instantiates a new delayed timelog parser.
@@ -503,11 +939,11 @@ public class FileFunctions {
 		 * @param delay the delay
 		 * @param unit the unit
 		 * @param log the log
-		 * @param tlg the tlg
+		 * @param since the timestamp of the first appended message
 		 */
-		public DelayedTimelogParser(User user, File file, long delay, TimeUnit unit, boolean log, GrpcEfdi.TimeLog tlg) {
+		public DelayedTimelogParser(User user, File file, long delay, TimeUnit unit, boolean log, Instant since) {
 			super(user, file, delay, unit, log);
-			this.tlg = tlg.toBuilder();
+			this.since = since;
 		}
 		
 		/**
@@ -515,22 +951,37 @@ public class FileFunctions {
 		 *
 		 * @param delay the delay
 		 * @param unit the unit
-		 * @param tlg the tlg
 		 * @return the delayed timelog parser
 		 */
-		public DelayedTimelogParser add(long delay, TimeUnit unit, GrpcEfdi.TimeLog tlg) {
-			this.tlg.addAllTime(tlg.getTimeList());
+		public DelayedTimelogParser add(long delay, TimeUnit unit) {
 			super.add(delay, unit);
 			return this;
 		}
 
 		/**
 		 * Run.
+		 * Reads the messages appended since the first pending one and merges them into the EFDI zip, if they got too large.
 		 */
 		@Override
 		public void run() {
-			if(parseTimer.remove(file.getId()) == null) return;
 			try {
+				List<byte[]> records;
+				synchronized(appendLock(file)) {
+					if(parseTimer.remove(file.getId()) == null) return;
+					records = timelogs.read(file, since);
+					if(timelogs.getSize(file) >= TIMELOG_COMPACT_SIZE) {
+						byte[] newcontent = downloadFile(user, file);
+						storeContent(file, newcontent, telemetryCodec);
+						timelogs.delete(file);
+						app.list.files.update(user, file, file.setSize(newcontent.length));
+					}
+				}
+				if(records.isEmpty()) return;
+				GrpcEfdi.TimeLog.Builder tlg = GrpcEfdi.TimeLog.parseFrom(records.get(0)).toBuilder();
+				for(int i = 1; i < records.size(); ++i) {
+					tlg.addAllTime(GrpcEfdi.TimeLog.parseFrom(records.get(i)).getTimeList());
+				}
+				
 				Var DLV=Var.alloc("dlv"), TLG=Var.alloc("tlg"), TLGNAME=Var.alloc("tlgname"),
 						DET=Var.alloc("det"), DETNUM=Var.alloc("detnum"), DDI=Var.alloc("ddi");
 				Query query = new SelectBuilder()
@@ -569,7 +1020,7 @@ public class FileFunctions {
 					zip.closeEntry();
 				}
 				
-				app.parser.parseFileAsync(user, file, out.toByteArray(), log);
+				app.parser.parseAppendedAsync(user, file, out.toByteArray(), log);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -622,7 +1073,7 @@ public class FileFunctions {
 		@Override
 		public void run() {
 			if(parseTimer.remove(file.getId()) == null) return;
-			app.parser.parseFileAsync(user, file, gps.build().toByteArray(), log);
+			app.parser.parseAppendedAsync(user, file, gps.build().toByteArray(), log);
 		}
 	}
 	
@@ -634,12 +1085,12 @@ public class FileFunctions {
 	 * @param delay the delay
 	 * @param unit the unit
 	 * @param log the log
-	 * @param tlg the tlg
+	 * @param since the timestamp of the first appended message
 	 */
-	private void parseDelayed(User user, File file, long delay, TimeUnit unit, boolean log, GrpcEfdi.TimeLog tlg) {
+	private void parseDelayed(User user, File file, long delay, TimeUnit unit, boolean log, Instant since) {
 		DelayedParser dp = parseTimer.get(file.getId());
-		if(dp == null) parseTimer.put(file.getId(), new DelayedTimelogParser(user, file, delay, unit, log, tlg));
-		else ((DelayedTimelogParser)dp).add(delay, unit, tlg);
+		if(dp == null) parseTimer.put(file.getId(), new DelayedTimelogParser(user, file, delay, unit, log, since));
+		else ((DelayedTimelogParser)dp).add(delay, unit);
 	}
 	
 	/**
@@ -661,6 +1112,26 @@ public class FileFunctions {
 	/** The Constant TIMELOG_PARSE_DELAY. */
 	private static final long TIMELOG_PARSE_DELAY = 60; // seconds
 	
+	/** The size of the appended timelog messages, at which they are merged into the EFDI zip. */
+	private static final long TIMELOG_COMPACT_SIZE = 16 * FileChunk.CHUNK_SIZE;
+	
+	/** The locks for appending to files. */
+	private final Object[] appendLocks = new Object[64];
+	{
+		for(int i = 0; i < appendLocks.length; ++i)
+			appendLocks[i] = new Object();
+	}
+	
+	/**
+	 * Gets the lock for appending to the file.
+	 *
+	 * @param file the file
+	 * @return the lock object
+	 */
+	private Object appendLock(File file) {
+		return appendLocks[Math.floorMod(file.getId().hashCode(), appendLocks.length)];
+	}
+	
 	/**
 	 * Store time log.
 	 *
@@ -675,7 +1146,7 @@ public class FileFunctions {
 	 */
 	@CheckForNull
 	public File storeTimeLog(User user, String contextId, byte[] content, Instant created, String source) throws InvalidProtocolBufferException, ARException {
-		GrpcEfdi.TimeLog log = GrpcEfdi.TimeLog.parseFrom(content);
+		GrpcEfdi.TimeLog.parseFrom(content); // validate
 
 		Document doc = mongoFile.find(Filters.and(File.filter(user), DeviceDescription.filter(contextId), 
 				Filters.gte(File.CREATED, Date.from(created.truncatedTo(ChronoUnit.DAYS))), 
@@ -683,38 +1154,24 @@ public class FileFunctions {
 		
 		if(doc != null) {
 			File file = new File(doc);
-			try {
-				FileContent fileContent = getContent(user, file);
-				EfdiTimeLog tlg = new EfdiTimeLog(fileContent.getContent());
-				
-				Optional<String> tlgname = tlg.getTimeLogNames().stream().findAny();
-				if(tlgname.isPresent()) {
-					GrpcEfdi.TimeLog oldLog = tlg.getTimeLog(tlgname.get());
-					if(oldLog != null) {
-						log = oldLog.toBuilder().addAllTime(log.getTimeList()).build();
-						tlg.setTimeLog(tlgname.get(), log);
-					} else
-						tlg.setTimeLog(tlgname.get(), content);
-				} else {
-					tlgname = Optional.of(tlg.getFreeTimeLogName());
-					tlg.setTimeLog(tlgname.get(), content);
+			synchronized(appendLock(file)) {
+				Instant received = Instant.now();
+				long size;
+				try {
+					size = getContent(user, file).getSize();
+				} catch(FileNotFoundException e) {
+					DeviceDescription deviceDescription = deviceDescriptions.get(contextId);
+					if(deviceDescription == null)
+						throw new ARException("Missing DeviceDescription for context " + contextId);
+					byte[] newcontent = new EfdiTimeLog(deviceDescription).toZipByteArray();
+					storeContent(file, newcontent, telemetryCodec);
+					timelogs.delete(file);
+					size = newcontent.length;
 				}
-				
-				byte[] newcontent = tlg.toZipByteArray();
-				if(!mongoContent.updateOne(fileContent.filter(), 
-						fileContent.setContent(newcontent, true)).wasAcknowledged()) return null;
-				app.list.files.update(user, file, file.setSize(newcontent.length));
-			} catch(FileNotFoundException e) {
-				DeviceDescription deviceDescription = deviceDescriptions.get(contextId);
-				if(deviceDescription == null)
-					throw new ARException("Missing DeviceDescription for context " + contextId);
-				byte[] newcontent = new EfdiTimeLog(deviceDescription)
-						.addTimeLog(content)
-						.toZipByteArray();
-				mongoContent.insertOne(FileContent.create(file, newcontent, false));
-				app.list.files.update(user, file, file.setSize(newcontent.length));
+				long logSize = timelogs.append(file, received, content);
+				app.list.files.update(user, file, file.setSize(size + logSize));
+				parseDelayed(user, file, TIMELOG_PARSE_DELAY, TimeUnit.SECONDS, false, received);
 			}
-			parseDelayed(user, file, TIMELOG_PARSE_DELAY, TimeUnit.SECONDS, false, log);
 			fileAppended.trigger(file, content);
 			dataAdded.trigger(user, file);
 			return file;
@@ -741,7 +1198,7 @@ public class FileFunctions {
 					File.TYPE_TIMELOG, created, source, expires);
 			create.put(DeviceDescription.CONTEXTID, contextId);
 			File file = app.list.files.add(user, create);
-			mongoContent.insertOne(FileContent.create(file, newcontent, false));
+			storeContent(file, newcontent, telemetryCodec);
 			app.parser.parseFileAsync(user, file, newcontent, false);
 			dataAdded.trigger(user, file);
 			return file;
@@ -782,17 +1239,11 @@ public class FileFunctions {
 		if(doc != null) {
 			File file = new File(doc);
 			try {
-				FileContent fileContent = getContent(user, file);
-				GPSList list = GPSList.parseFrom(fileContent.getContent());
-				
-				list = list.toBuilder().addAllGpsEntries(gps.getGpsEntriesList()).build();
-				
-				byte[] newcontent = list.toByteArray();
-				if(!mongoContent.updateOne(fileContent.filter(), 
-						fileContent.setContent(newcontent, true)).wasAcknowledged()) return null;
-				app.list.files.update(user, file, file.setSize(newcontent.length));
+				// concatenated protobuf messages are merged, so the new entries are appended to the list
+				long size = contents.append(getContent(user, file), file, content);
+				app.list.files.update(user, file, file.setSize(size));
 			} catch(FileNotFoundException e) {
-				mongoContent.insertOne(FileContent.create(file, content, false));
+				storeContent(file, content, telemetryCodec);
 				app.list.files.update(user, file, file.setSize(content.length));
 			}
 			parseDelayed(user, file, TIMELOG_PARSE_DELAY, TimeUnit.SECONDS, false, gps);
@@ -809,7 +1260,7 @@ public class FileFunctions {
 			Document create = File.create(user, filename, content.length, 
 					File.TYPE_GPSINFO, created, source, expires);
 			File file = app.list.files.add(user, create);
-			mongoContent.insertOne(FileContent.create(file, content, true));
+			storeContent(file, content, telemetryCodec);
 			app.parser.parseFileAsync(user, file, content, false);
 			dataAdded.trigger(user, file);
 			return file;
@@ -827,21 +1278,14 @@ public class FileFunctions {
 	@CheckForNull
 	public boolean appendFile(User user, File file, byte[] newContent) {
 		try {
-			FileContent fileContent = getContent(user, file);
-			byte[] existing = fileContent.getContent();
-			byte[] content = new byte[existing.length + newContent.length];
-			System.arraycopy(existing, 0, content, 0, existing.length);
-			System.arraycopy(newContent, 0, content, existing.length, newContent.length);
-			
-			if(!mongoContent.updateOne(fileContent.filter(), 
-					fileContent.setContent(content, fileContent.isCompressed())).wasAcknowledged()) return false;
-			app.list.files.update(user, file, file.setSize(content.length));
+			long size = contents.append(getContent(user, file), file, newContent);
+			app.list.files.update(user, file, file.setSize(size));
 		} catch (FileNotFoundException e) {
-			mongoContent.insertOne(FileContent.create(file, newContent, true));
+			storeContent(file, newContent, telemetryCodec);
 			app.list.files.update(user, file, file.setSize(newContent.length));
 		}
 		
-		app.parser.parseFileAsync(user, file, newContent, false);
+		app.parser.parseAppendedAsync(user, file, newContent, false);
 		fileAppended.trigger(file, newContent);
 		dataAdded.trigger(user, file);
 		
@@ -5,6 +5,9 @@ import static de.sdsd.projekt.prototype.data.GeoElement.GEOFIELD;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -12,6 +15,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import org.bson.Document;
@@ -44,6 +48,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.result.UpdateResult;
 
+import de.sdsd.projekt.prototype.applogic.TableFunctions.ElementKey;
 import de.sdsd.projekt.prototype.data.File;
 import de.sdsd.projekt.prototype.data.GeoElement;
 import de.sdsd.projekt.prototype.data.GeoElement.ElementType;
@@ -94,6 +99,37 @@ public class GeoFunctions {
 		else mongo.insertOne(GeoElement.create(file, uri, type, geoJsonFeature.toString(), Double.NaN, label, values));
 	}
 	
+	/**
+	 * Updates the element with the same uri and type or inserts it, if there is none.
+	 * Used for parser results of appended content, that may repeat elements, which were inserted before.
+	 *
+	 * @param file the file
+	 * @param uri the uri
+	 * @param type the type
+	 * @param geoJsonFeature the geo json feature
+	 * @param label the label
+	 * @param values the values
+	 * @return true, if the element was new or changed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean update(File file, String uri, ElementType type, JSONObject geoJsonFeature, String label, @Nullable MinMaxValues values) throws IOException {
+		if(type == ElementType.Field) {
+			insertField(file, uri, geoJsonFeature, label);
+			return true;
+		}
+		if(type == ElementType.TimeLog) throw new IllegalArgumentException("Use appendTlg for updating TimeLogs");
+		Document doc = GeoElement.create(file, uri, type, geoJsonFeature.toString(), Double.NaN, label, values);
+		Document old = uri != null ? mongo.find(GeoElement.filter(file, uri, type)).first() : null;
+		if(old == null) {
+			mongo.insertOne(doc);
+			return true;
+		}
+		doc.put(GeoElement.ID, old.getObjectId(GeoElement.ID));
+		if(doc.equals(old)) return false;
+		mongo.replaceOne(Filters.eq(old.getObjectId(GeoElement.ID)), doc);
+		return true;
+	}
+	
 	/**
 	 * Insert field.
 	 *
@@ -136,12 +172,52 @@ public class GeoFunctions {
 	 * @param uri the uri
 	 * @param tlgName the tlg name
 	 * @param coords the coords
+	 * @param until the time of the last imported entry or null if it is unknown
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	public void insertTlg(File file, String uri, String tlgName, Collection<Coordinate> coords) throws IOException {
+	public void insertTlg(File file, String uri, String tlgName, Collection<Coordinate> coords, @Nullable Instant until) throws IOException {
 		Coordinate[] points = coords.toArray(new Coordinate[coords.size()]);
 		String geo = toGeoJson(createFeature(simplify(points, 0.001), uri));
 		insertTlg(file, uri, tlgName, geo);
+		if(until != null)
+			mongo.updateOne(GeoElement.filterTlg(new ElementKey(file.getUser(), file.getURI(), tlgName)), GeoElement.setUntil(until));
+	}
+	
+	/**
+	 * Find the simplified line of a timelog.
+	 *
+	 * @param tlgKey the timelog key
+	 * @return the geo element or null if there is none
+	 */
+	@CheckForNull
+	public GeoElement findTlg(ElementKey tlgKey) {
+		Document doc = mongo.find(GeoElement.filterTlg(tlgKey)).first();
+		return doc != null ? new GeoElement(doc) : null;
+	}
+	
+	/**
+	 * Appends coordinates to the simplified line of a timelog and stores the time of the last imported entry.
+	 * The existing simplified line is extended, so the line is not rebuilt from all positions of the timelog.
+	 *
+	 * @param file the file
+	 * @param uri the uri
+	 * @param tlgName the tlg name
+	 * @param coords the new coordinates
+	 * @param until the time of the last imported entry
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void appendTlg(File file, String uri, String tlgName, Collection<Coordinate> coords, Instant until) throws IOException {
+		ElementKey tlgKey = new ElementKey(file.getUser(), file.getURI(), tlgName);
+		GeoElement old = findTlg(tlgKey);
+		List<Coordinate> points = new ArrayList<>();
+		if(old != null)
+			points.addAll(Arrays.asList(readGeoJson(old.getGeometry().toJson()).getCoordinates()));
+		points.addAll(coords);
+		if(!points.isEmpty()) {
+			String geo = toGeoJson(createFeature(simplify(points.toArray(new Coordinate[points.size()]), 0.001), uri));
+			insertTlg(file, uri, tlgName, geo);
+		}
+		mongo.updateOne(GeoElement.filterTlg(tlgKey), GeoElement.setUntil(until));
 	}
 	
 	/**
@@ -266,7 +342,7 @@ public class GeoFunctions {
 	 * @return the geometry
 	 */
 	public static Geometry simplify(Coordinate[] points, double distanceTolerance) {
-		if(points.length == 1) return geofactory.createPoint(points[1]);
+		if(points.length == 1) return geofactory.createPoint(points[0]);
 		Geometry simplified = DouglasPeuckerSimplifier.simplify(geofactory.createLineString(points), distanceTolerance);
 		if(simplified instanceof LineString && simplified.getNumPoints() == 2) {
 			if(simplified.getLength() < distanceTolerance) 
@@ -6,9 +6,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.ws.rs.NotSupportedException;
 
@@ -27,6 +29,7 @@ import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
 
 import de.sdsd.projekt.agrirouter.ARConfig;
+import de.sdsd.projekt.agrirouter.ARMessageType;
 import de.sdsd.projekt.agrirouter.request.AREndpoint;
 import de.sdsd.projekt.prototype.data.ARCaps;
 import de.sdsd.projekt.prototype.data.AREndpointStore;
@@ -660,6 +663,7 @@ public class ListFunctions {
 		public File add(User user, Document doc) {
 			File file = new File(doc);
 			mongo.insertOne(doc);
+			app.service.permissions.fileAdded(user, file);
 			trigger(user, file);
 			return file;
 		}
@@ -675,6 +679,7 @@ public class ListFunctions {
 		@Override
 		public boolean update(User user, File entry, Bson update) {
 			if(mongo.updateOne(entry.filter(), update).wasAcknowledged()) {
+				app.service.permissions.fileUpdated(user, entry);
 				trigger(user, entry);
 				return true;
 			}
@@ -970,6 +975,19 @@ public class ListFunctions {
 	 */
 	public final class TypeList extends ListFunction<SDSDType> {
 		
+		/** Milliseconds after that the cached types are read again, to notice changes from outside. */
+		private static final long CACHE_TTL = 5 * 60 * 1000;
+		
+		/** The cached type documents or null if they have to be read again. */
+		@CheckForNull
+		private volatile List<Document> cache = null;
+		
+		/** The time the cache was read. */
+		private volatile long cacheTime = 0;
+		
+		/** The version, incremented on every change of the types. */
+		private final AtomicLong version = new AtomicLong();
+		
 		/**
 		 * Instantiates a new type list.
 		 */
@@ -1042,6 +1060,13 @@ public class ListFunctions {
 		@Override
 		public SDSDType get(@Nullable User user, String id) {
 			Resource res = id.startsWith(TripleFunctions.NS_WIKI) ? ResourceFactory.createResource(id) : new TripleFunctions.WikiFormat(id);
+			if(user == null) {
+				for(Document doc : cached()) {
+					if(res.getURI().equals(doc.getString(SDSDType.URI)))
+						return new SDSDType(doc);
+				}
+				return SDSDType.getDefault(app.user.getUser("sdsd"), res.getURI());
+			}
 			Bson filter = SDSDType.filter(res);
 			if(user != null) filter = Filters.and(filter, SDSDType.filter(user));
 			Document doc = mongo.find(filter).first();
@@ -1078,7 +1103,11 @@ public class ListFunctions {
 		@Override
 		public SDSDType add(User user, Document doc) {
 			SDSDType type = new SDSDType(doc);
-			mongo.insertOne(doc);
+			try {
+				mongo.insertOne(doc);
+			} finally {
+				invalidate();
+			}
 			return type;
 		}
 		
@@ -1091,7 +1120,11 @@ public class ListFunctions {
 		 */
 		@Override
 		public boolean delete(User user, Bson filter) {
-			return mongo.deleteMany(Filters.and(SDSDType.filter(user), filter)).wasAcknowledged();
+			try {
+				return mongo.deleteMany(Filters.and(SDSDType.filter(user), filter)).wasAcknowledged();
+			} finally {
+				invalidate();
+			}
 		}
 		
 		/**
@@ -1104,7 +1137,67 @@ public class ListFunctions {
 		 */
 		@Override
 		public boolean update(User user, SDSDType entry, Bson update) {
-			return mongo.updateOne(Filters.and(SDSDType.filter(user), entry.filter()), update).wasAcknowledged();
+			try {
+				return mongo.updateOne(Filters.and(SDSDType.filter(user), entry.filter()), update).wasAcknowledged();
+			} finally {
+				invalidate();
+			}
+		}
+		
+		/**
+		 * Finds the types with the given mimetype and agrirouter message type in the cached types.
+		 *
+		 * @param mimetype the mimetype or null for any mimetype
+		 * @param artype the agrirouter message type or null for any type
+		 * @return the sorted types
+		 * @see SDSDType#filter(String, ARMessageType)
+		 */
+		public List<SDSDType> find(@Nullable String mimetype, @Nullable ARMessageType artype) {
+			if(mimetype == null && artype == null)
+				throw new IllegalArgumentException("At least one filter type must be non null");
+			String technicalType = artype != null ? artype.technicalMessageType() : null;
+			return cached().stream()
+					.filter(doc -> mimetype == null || mimetype.equals(doc.getString(SDSDType.MIME)))
+					.filter(doc -> technicalType == null || technicalType.equals(doc.getString(SDSDType.ARTYPE)))
+					.map(SDSDType::new)
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		
+		/**
+		 * Gets the version of the types, that changes whenever a type is added, updated or deleted.
+		 *
+		 * @return the version
+		 */
+		public long getVersion() {
+			return version.get();
+		}
+		
+		/**
+		 * Gets the cached type documents and reads them if necessary.
+		 *
+		 * @return the type documents
+		 */
+		private List<Document> cached() {
+			List<Document> docs = cache;
+			long now = System.currentTimeMillis();
+			if(docs == null || now - cacheTime > CACHE_TTL) {
+				long ver = version.get();
+				docs = Collections.unmodifiableList(mongo.find().into(new ArrayList<>()));
+				if(version.get() == ver) {
+					cache = docs;
+					cacheTime = now;
+				}
+			}
+			return docs;
+		}
+		
+		/**
+		 * Invalidates the cached types.
+		 */
+		private void invalidate() {
+			version.incrementAndGet();
+			cache = null;
 		}
 		
 		/**
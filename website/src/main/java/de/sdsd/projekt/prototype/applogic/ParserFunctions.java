@@ -2,46 +2,55 @@ package de.sdsd.projekt.prototype.applogic;
 
 import static de.sdsd.projekt.prototype.Main.DEBUG_MODE;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.tika.Tika;
 import org.bson.types.ObjectId;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
@@ -49,12 +58,16 @@ import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
 import com.mongodb.client.model.Updates;
 
 import de.sdsd.projekt.agrirouter.ARMessageType;
+import de.sdsd.projekt.api.BinaryTimeLog;
+import de.sdsd.projekt.api.ParserAPI;
 import de.sdsd.projekt.api.ParserAPI.Validation;
+import de.sdsd.projekt.api.ParserAPI.ValueInfo;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.ElementKey;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.FileKey;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.GridBatch;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.Key;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.PositionBatch;
+import de.sdsd.projekt.prototype.applogic.TableFunctions.RollupBatch;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.TimelogBatch;
 import de.sdsd.projekt.prototype.data.File;
 import de.sdsd.projekt.prototype.data.GeoElement;
@@ -64,14 +77,13 @@ import de.sdsd.projekt.prototype.data.GeoElement.MinMaxValues;
 import de.sdsd.projekt.prototype.data.SDSDException;
 import de.sdsd.projekt.prototype.data.SDSDType;
 import de.sdsd.projekt.prototype.data.User;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Provides access functions for parsing and deleting.
  * 
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
  */
-public class ParserFunctions {
+public class ParserFunctions implements Closeable {
 	
 	/** The app. */
 	private final ApplicationLogic app;
@@ -83,8 +95,36 @@ public class ParserFunctions {
 	 */
 	ParserFunctions(ApplicationLogic app) {
 		this.app = app;
+		JSONObject settings = app.settings.optJSONObject("parser");
+		if(settings == null) settings = new JSONObject();
+		this.jobScheduler = new JobScheduler(settings);
+		// the pool needs a worker entry point in every parser jar, so it must be enabled explicitly
+		JSONObject poolSettings = settings.optJSONObject("pool");
+		this.parserPool = poolSettings != null ? new ParserPool(app.executor, poolSettings, PARSE_TIMEOUT) : null;
+		JSONObject inProcessSettings = settings.optJSONObject("inProcess");
+		this.parseInProcess = inProcessSettings != null;
+		this.parserLoader = new ParserLoader(inProcessSettings != null ? inProcessSettings : new JSONObject(), PARSE_TIMEOUT);
+		JSONObject typeSettings = settings.optJSONObject("typeDetection");
+		if(typeSettings == null) typeSettings = new JSONObject();
+		this.typeDetector = new TypeDetector(app, typeSettings.optBoolean("inProcess", true) ? parserLoader : null, typeSettings);
 	}
 	
+	/** Seconds after that a parser gets killed. */
+	private static final int PARSE_TIMEOUT = 30;
+	
+	/** The parser worker pool or null if every file is parsed in a new process. */
+	@CheckForNull
+	private final ParserPool parserPool;
+	
+	/** The loader for in process parsers. */
+	private final ParserLoader parserLoader;
+	
+	/** Whether files are parsed in process if the parser supports it. */
+	private final boolean parseInProcess;
+	
+	/** The type detector. */
+	private final TypeDetector typeDetector;
+	
 	/** The Constant TYPE_UNKNOWN. */
 	public static final String TYPE_UNKNOWN = "https://app.sdsd-projekt.de/wikinormia.html?page=unknown";
 	
@@ -98,55 +138,43 @@ public class ParserFunctions {
 	 * @param filename the filename
 	 * @param artype the artype
 	 * @return the SDSD type
+	 * @see TypeDetector
 	 */
 	public SDSDType determineType(final byte[] content, String filename, @Nullable ARMessageType artype) {
-		String mimetype = new Tika().detect(content, filename);
-		List<SDSDType> possible = app.list.types.get(null, SDSDType.filter(mimetype, artype));
-		System.out.format("Test for artype(%s) and mimetype(%s): %s\n", artype, mimetype, 
-				possible.stream().map(SDSDType::getName).collect(Collectors.joining(", ")));
-		if(possible.size() == 1) return possible.get(0);
-		
-		Optional<SDSDType> foundType = possible.parallelStream()
-				.filter(type -> testType(type, content))
-				.findAny();
-		if(foundType.isPresent())
-			return foundType.get();
-		
-		return app.list.types.get(null, TYPE_UNKNOWN);
+		return typeDetector.detect(content, filename, artype);
 	}
 	
 	/**
-	 * Test type.
+	 * Determine type of stored content.
 	 *
-	 * @param type the type
-	 * @param content the content
-	 * @return true, if successful
+	 * @param head the beginning of the content
+	 * @param filename the filename
+	 * @param artype the artype
+	 * @param hash the SHA-256 hash of the content
+	 * @param content opens the whole content, only called if the candidate types must be tested
+	 * @return the SDSD type
 	 */
-	private boolean testType(SDSDType type, byte[] content) {
-		if(type.getTestCommand().isPresent()) {
-			System.out.println("testing for " + type.getName());
-			
-			try {
-				if(!Files.exists(Paths.get(type.getParser().get())))
-					throw new FileNotFoundException("Parser missing: " + type.getParser().get());
-				Process process = new ProcessBuilder(type.getTestCommand().get().split(" ")).start();
-				try (OutputStream processIn = process.getOutputStream()) {
-					IOUtils.copy(new ByteArrayInputStream(content), processIn);
-				} catch (IOException e) {}
-				if(process.waitFor(3, TimeUnit.SECONDS)) {
-					System.out.println("Tested for " + type.getName() + ": " + (process.exitValue() == 0));
-					if(process.exitValue() == 0)
-						return true;
-				}
-				else {
-					System.err.println("Testing for " + type.getName() + " timeouted");
-					process.destroyForcibly();
-				}
-			} catch (IOException | InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		return false;
+	public SDSDType determineType(byte[] head, String filename, @Nullable ARMessageType artype, String hash, Callable<InputStream> content) {
+		return typeDetector.detect(head, filename, artype, hash, content);
+	}
+	
+	/**
+	 * Type of a queued job.
+	 * 
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public static enum JobType {
+		PARSE, DELETE
+	}
+	
+	/**
+	 * Scheduling priority of a queued job.
+	 * Jobs with a lower ordinal are preferred.
+	 * 
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static enum JobPriority {
+		HIGH, NORMAL, LOW
 	}
 	
 	/**
@@ -154,7 +182,7 @@ public class ParserFunctions {
 	 * 
 	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
 	 */
-	private static class Job extends CompletableFuture<Boolean> {
+	private static abstract class Job extends CompletableFuture<Boolean> {
 		
 		/** The user. */
 		public final User user;
@@ -162,6 +190,9 @@ public class ParserFunctions {
 		/** The log. */
 		public final boolean log;
 		
+		/** The queued. */
+		private final long queued;
+		
 		/** The started. */
 		private long started;
 		
@@ -175,6 +206,34 @@ public class ParserFunctions {
 			super();
 			this.user = user;
 			this.log = log;
+			this.queued = System.nanoTime();
+		}
+		
+		/**
+		 * Gets the type.
+		 *
+		 * @return the type
+		 */
+		public abstract JobType getType();
+		
+		/**
+		 * Gets the base priority.
+		 *
+		 * @param smallFileSize maximum size of files that are considered small
+		 * @return the priority
+		 */
+		protected abstract JobPriority getBasePriority(int smallFileSize);
+		
+		/**
+		 * Gets the priority, raised to high if the job waited longer than the aging time.
+		 *
+		 * @param now the current nano time
+		 * @param smallFileSize maximum size of files that are considered small
+		 * @param agingNanos waiting time after that the job gets the highest priority
+		 * @return the priority
+		 */
+		public JobPriority getPriority(long now, int smallFileSize, long agingNanos) {
+			return now - queued >= agingNanos ? JobPriority.HIGH : getBasePriority(smallFileSize);
 		}
 
 		/**
@@ -184,6 +243,15 @@ public class ParserFunctions {
 			started = System.nanoTime();
 		}
 		
+		/**
+		 * Gets the queued.
+		 *
+		 * @return the queued
+		 */
+		public long getQueued() {
+			return queued;
+		}
+		
 		/**
 		 * Gets the started.
 		 *
@@ -204,8 +272,14 @@ public class ParserFunctions {
 		/** The file. */
 		public final File file;
 		
-		/** The content. */
-		public final byte[] content;
+		/** The size of the content. */
+		public final long size;
+		
+		/** Opens the content, called when the job starts, so queued jobs don't hold the content. */
+		private final Callable<InputStream> content;
+		
+		/** Whether the content was appended to an already parsed file. */
+		public final boolean incremental;
 		
 		/**
 		 * Instantiates a new parsing.
@@ -214,11 +288,60 @@ public class ParserFunctions {
 		 * @param file the file
 		 * @param content the content
 		 * @param log the log
+		 * @param incremental whether the content was appended to an already parsed file
+		 */
+		public Parsing(User user, File file, byte[] content, boolean log, boolean incremental) {
+			this(user, file, content.length, () -> new ByteArrayInputStream(content), log, incremental);
+		}
+		
+		/**
+		 * Instantiates a new parsing.
+		 *
+		 * @param user the user
+		 * @param file the file
+		 * @param size the size of the content
+		 * @param content opens the content
+		 * @param log the log
+		 * @param incremental whether the content was appended to an already parsed file
 		 */
-		public Parsing(User user, File file, byte[] content, boolean log) {
+		public Parsing(User user, File file, long size, Callable<InputStream> content, boolean log, boolean incremental) {
 			super(user, log);
 			this.file = file;
+			this.size = size;
 			this.content = content;
+			this.incremental = incremental;
+		}
+		
+		/**
+		 * Opens the content.
+		 *
+		 * @return the content, must be closed
+		 * @throws Exception if the content couldn't be opened
+		 */
+		public InputStream openContent() throws Exception {
+			return content.call();
+		}
+
+		/**
+		 * Gets the type.
+		 *
+		 * @return the type
+		 */
+		@Override
+		public JobType getType() {
+			return JobType.PARSE;
+		}
+
+		/**
+		 * Gets the base priority.
+		 * Small files are preferred, so they are not stuck behind huge parses.
+		 *
+		 * @param smallFileSize maximum size of files that are considered small
+		 * @return the priority
+		 */
+		@Override
+		protected JobPriority getBasePriority(int smallFileSize) {
+			return size <= smallFileSize ? JobPriority.NORMAL : JobPriority.LOW;
 		}
 	}
 	
@@ -243,20 +366,139 @@ public class ParserFunctions {
 			super(user, log);
 			this.fileid = fileid;
 		}
+
+		/**
+		 * Gets the type.
+		 *
+		 * @return the type
+		 */
+		@Override
+		public JobType getType() {
+			return JobType.DELETE;
+		}
+
+		/**
+		 * Gets the base priority.
+		 * Deletes are cheap compared to parsing and always preferred.
+		 *
+		 * @param smallFileSize maximum size of files that are considered small
+		 * @return the priority
+		 */
+		@Override
+		protected JobPriority getBasePriority(int smallFileSize) {
+			return JobPriority.HIGH;
+		}
+	}
+	
+	/**
+	 * Statistics about the jobs of one type.
+	 * 
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public static class JobStatistics {
+		
+		/** The failed. */
+		private final LongAdder submitted = new LongAdder(), rejected = new LongAdder(), 
+				started = new LongAdder(), completed = new LongAdder(), failed = new LongAdder();
+		
+		/** The run total. */
+		private final LongAdder waitTotal = new LongAdder(), runTotal = new LongAdder();
+		
+		/** The run max. */
+		private final AtomicLong waitMax = new AtomicLong(), runMax = new AtomicLong();
+		
+		/**
+		 * Called when a job is started.
+		 *
+		 * @param waitNanos the time the job waited in the queue
+		 */
+		void started(long waitNanos) {
+			started.increment();
+			waitTotal.add(waitNanos);
+			waitMax.accumulateAndGet(waitNanos, Math::max);
+		}
+		
+		/**
+		 * Called when a job is finished.
+		 *
+		 * @param runNanos the time the job was running
+		 * @param success the result of the job
+		 */
+		void finished(long runNanos, boolean success) {
+			(success ? completed : failed).increment();
+			runTotal.add(runNanos);
+			runMax.accumulateAndGet(runNanos, Math::max);
+		}
+		
+		/**
+		 * To json.
+		 *
+		 * @param queued the current number of queued jobs of this type
+		 * @param running the current number of running jobs of this type
+		 * @return the JSON object
+		 */
+		public JSONObject toJson(int queued, int running) {
+			long started = this.started.sum(), finished = completed.sum() + failed.sum();
+			return new JSONObject()
+					.put("queued", queued)
+					.put("running", running)
+					.put("submitted", submitted.sum())
+					.put("rejected", rejected.sum())
+					.put("completed", completed.sum())
+					.put("failed", failed.sum())
+					.put("avgWaitMs", started > 0 ? waitTotal.sum() / started / 1000000 : 0)
+					.put("maxWaitMs", waitMax.get() / 1000000)
+					.put("avgRunMs", finished > 0 ? runTotal.sum() / finished / 1000000 : 0)
+					.put("maxRunMs", runMax.get() / 1000000);
+		}
 	}
 	
 	/**
-	 * Job queue, because there are performance problems with parsing and storing multiple files at a time.
+	 * Job scheduler, because parsing and storing huge files of one user must not block the jobs of other users.
+	 * Jobs of the same user are executed in FIFO order, one at a time, so a delete followed by a parse keeps its order.
+	 * The users are served round-robin by a bounded pool of workers, preferring deletes and small files.
 	 * 
 	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
 	 */
-	private class JobQueue implements Runnable {
+	private class JobScheduler {
+		
+		/** The workers. */
+		private final ExecutorService workers;
+		
+		/** The max total queue. */
+		private final int workerCount, maxUserQueue, maxTotalQueue, smallFileSize;
+		
+		/** The aging nanos. */
+		private final long agingNanos;
 		
-		/** The queue. */
-		private final Queue<Job> queue = new LinkedList<>();
+		/** The queues of all users with pending jobs in round-robin order. */
+		private final LinkedHashMap<String, Queue<Job>> userQueues = new LinkedHashMap<>();
 		
-		/** The job executor. */
-		private Future<?> jobExecutor = null;
+		/** The users with a currently running job. */
+		private final Set<String> activeUsers = new HashSet<>();
+		
+		/** The running jobs per type. */
+		private final int[] queued = new int[JobType.values().length], running = new int[JobType.values().length];
+		
+		/** The statistics per type. */
+		private final Map<JobType, JobStatistics> statistics = new EnumMap<>(JobType.class);
+		
+		/**
+		 * Instantiates a new job scheduler.
+		 *
+		 * @param settings the parser settings
+		 */
+		public JobScheduler(JSONObject settings) {
+			this.workerCount = Math.max(1, settings.optInt("workers", 4));
+			this.maxUserQueue = settings.optInt("maxQueuedPerUser", 1000);
+			this.maxTotalQueue = settings.optInt("maxQueued", 10000);
+			this.smallFileSize = settings.optInt("smallFileSize", 1024 * 1024);
+			this.agingNanos = TimeUnit.SECONDS.toNanos(settings.optLong("agingSeconds", 300));
+			this.workers = Executors.newFixedThreadPool(workerCount);
+			for(JobType type : JobType.values()) {
+				statistics.put(type, new JobStatistics());
+			}
+		}
 		
 		/**
 		 * Offer.
@@ -265,42 +507,150 @@ public class ParserFunctions {
 		 * @return true, if successful
 		 */
 		public synchronized boolean offer(Job job) {
-			boolean ok = queue.offer(job);
-			if(ok && jobExecutor == null)
-				jobExecutor = app.executor.submit(this);
-			return ok;
+			JobStatistics stats = statistics.get(job.getType());
+			Queue<Job> queue = userQueues.get(job.user.getName());
+			if(IntStream.of(queued).sum() >= maxTotalQueue || (queue != null && queue.size() >= maxUserQueue)) {
+				stats.rejected.increment();
+				return false;
+			}
+			if(queue == null) 
+				userQueues.put(job.user.getName(), queue = new LinkedList<>());
+			queue.offer(job);
+			++queued[job.getType().ordinal()];
+			stats.submitted.increment();
+			dispatch();
+			return true;
+		}
+		
+		/**
+		 * Starts queued jobs as long as there are free workers.
+		 */
+		private void dispatch() {
+			Job job;
+			while(IntStream.of(running).sum() < workerCount && (job = next()) != null) {
+				final Job next = job;
+				--queued[next.getType().ordinal()];
+				++running[next.getType().ordinal()];
+				activeUsers.add(next.user.getName());
+				workers.execute(() -> run(next));
+			}
 		}
 		
 		/**
-		 * Poll.
+		 * Takes the next job from the queue of the user whose turn it is.
+		 * Users with a running job are skipped. 
+		 * Among the other users the one with the highest priority head job, which is served least recently, wins.
 		 *
-		 * @return the job
+		 * @return the next job or null if no job can be started
 		 */
-		protected synchronized Job poll() {
+		@CheckForNull
+		private Job next() {
+			long now = System.nanoTime();
+			String user = null;
+			JobPriority priority = null;
+			for(Entry<String, Queue<Job>> e : userQueues.entrySet()) {
+				if(activeUsers.contains(e.getKey())) continue;
+				JobPriority p = e.getValue().peek().getPriority(now, smallFileSize, agingNanos);
+				if(priority == null || p.compareTo(priority) < 0) {
+					user = e.getKey();
+					priority = p;
+					if(p == JobPriority.HIGH) break;
+				}
+			}
+			if(user == null) return null;
+			
+			// reinsert at the end for round-robin
+			Queue<Job> queue = userQueues.remove(user);
 			Job job = queue.poll();
-			if(job == null)
-				jobExecutor = null;
+			if(!queue.isEmpty())
+				userQueues.put(user, queue);
 			return job;
 		}
-
+		
 		/**
-		 * Run.
+		 * Runs the job in a worker thread.
+		 *
+		 * @param job the job
 		 */
-		@Override
-		public void run() {
-			Job job;
-			while((job = poll()) != null) {
+		private void run(Job job) {
+			JobStatistics stats = statistics.get(job.getType());
+			job.started();
+			stats.started(job.getStarted() - job.getQueued());
+			boolean result = false;
+			try {
 				if(job instanceof Parsing) {
-					job.complete(parseFile((Parsing)job));
+					result = parseFile((Parsing)job);
+					if(result)
+						app.table.getValueInfoCache().prefetch(((Parsing)job).file.getURI());
 				} else if(job instanceof Deleting) {
-					job.complete(unleverageFile((Deleting)job));
+					result = unleverageFile((Deleting)job);
+				}
+			} catch(Throwable e) {
+				e.printStackTrace();
+			} finally {
+				stats.finished(System.nanoTime() - job.getStarted(), result);
+				synchronized (this) {
+					--running[job.getType().ordinal()];
+					activeUsers.remove(job.user.getName());
+					dispatch();
 				}
 			}
+			job.complete(result);
+		}
+		
+		/**
+		 * Gets the statistics.
+		 *
+		 * @return the statistics
+		 */
+		public synchronized JSONObject getStatistics() {
+			JSONObject types = new JSONObject();
+			for(JobType type : JobType.values()) {
+				types.put(type.name().toLowerCase(), statistics.get(type)
+						.toJson(queued[type.ordinal()], running[type.ordinal()]));
+			}
+			return new JSONObject()
+					.put("workers", workerCount)
+					.put("running", IntStream.of(running).sum())
+					.put("queued", IntStream.of(queued).sum())
+					.put("waitingUsers", userQueues.size())
+					.put("types", types);
+		}
+		
+		/**
+		 * Stops the workers, running jobs are interrupted and queued jobs are dropped.
+		 */
+		public void shutdown() {
+			workers.shutdownNow();
 		}
 	}
 	
-	/** The job queue. */
-	private final JobQueue jobQueue = new JobQueue();
+	/** The job scheduler. */
+	private final JobScheduler jobScheduler;
+	
+	/**
+	 * Queues the job or rejects it if the queue is full.
+	 *
+	 * @param job the job
+	 * @param description description of the job for logging
+	 */
+	private void schedule(Job job, String description) {
+		if(!jobScheduler.offer(job)) {
+			System.err.format("%s: Job queue full, rejected %s\n", job.user.getName(), description);
+			if(job.log)
+				app.logError(job.user, "Too many pending jobs, rejected %s", description);
+			job.complete(false);
+		}
+	}
+	
+	/**
+	 * Gets the job statistics.
+	 *
+	 * @return queue length, wait time and run time per job type
+	 */
+	public JSONObject getJobStatistics() {
+		return jobScheduler.getStatistics();
+	}
 	
 	
 	/**
@@ -313,8 +663,41 @@ public class ParserFunctions {
 	 * @return the completable future
 	 */
 	public CompletableFuture<Boolean> parseFileAsync(User user, File file, byte[] content, boolean log) {
-		Parsing parse = new Parsing(user, file, content, log);
-		jobQueue.offer(parse);
+		Parsing parse = new Parsing(user, file, content, log, false);
+		schedule(parse, "parsing of " + file.getFilename());
+		return parse;
+	}
+	
+	/**
+	 * Parses the stored content of the file async.
+	 * The content is read chunk by chunk from the storage, when the job starts.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 * @param size the size of the content
+	 * @param log the log
+	 * @return the completable future
+	 */
+	public CompletableFuture<Boolean> parseStoredAsync(User user, File file, long size, boolean log) {
+		Parsing parse = new Parsing(user, file, size, () -> app.file.openFile(user, file), log, false);
+		schedule(parse, "parsing of " + file.getFilename());
+		return parse;
+	}
+	
+	/**
+	 * Parses content, that was appended to an already parsed file.
+	 * Only timelog entries after the last imported entry of each timelog are written, 
+	 * timelog lines are extended and geometries are updated instead of inserted again.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 * @param content the appended content
+	 * @param log the log
+	 * @return the completable future
+	 */
+	public CompletableFuture<Boolean> parseAppendedAsync(User user, File file, byte[] content, boolean log) {
+		Parsing parse = new Parsing(user, file, content, log, true);
+		schedule(parse, "parsing of appended " + file.getFilename());
 		return parse;
 	}
 	
@@ -328,7 +711,7 @@ public class ParserFunctions {
 	 */
 	public CompletableFuture<Boolean> removeFileDataAsync(User user, String fileid, boolean log) {
 		Deleting delete = new Deleting(user, fileid, log);
-		jobQueue.offer(delete);
+		schedule(delete, "deletion of data of file " + fileid);
 		return delete;
 	}
 	
@@ -353,22 +736,38 @@ public class ParserFunctions {
 	 * @return true, if successful
 	 */
 	private boolean parseFile(Parsing job) {
-		app.triple.updateFile(job.user, job.file);
+		if(!job.incremental) 
+			app.triple.updateFile(job.user, job.file);
 		SDSDType type = app.list.types.get(null, job.file.getType());
 		if(type.getParseCommand().isPresent()) {
-			job.started();
-			try {
+			try (InputStream content = job.openContent()) {
 				if(type.getUri().equals(TYPE_SERVICE_RESULT))
-					return readParserResult(job, new ByteArrayInputStream(job.content));
+					return readParserResult(job, content);
+				ParserPool.Command command = ParserPool.Command.parse(type.getParseCommand().get());
+				if(command != null && parseInProcess && parserLoader.supports(command)) {
+					DirectResult result = new DirectResult(job);
+					parserLoader.parse(command, content, result);
+					return result.insert();
+				}
+				else if(command != null && parserPool != null) {
+					try (InputStream result = parserPool.execute(command, content)) {
+						return readParserResult(job, result);
+					}
+				}
 				else {
 					Process process = new ProcessBuilder(type.getParseCommand().get().split(" ")).start();
-		
-					Future<Boolean> future = app.executor.submit(() -> readParserResult(job, process.getInputStream()));
-					try (OutputStream processIn = process.getOutputStream()) {
-						IOUtils.copy(new ByteArrayInputStream(job.content), processIn);
-					} catch (IOException e) {}
-					app.executor.schedule(process::destroyForcibly, 30, TimeUnit.SECONDS);
-					return future.get();
+					// only the time waiting for the parser counts, not the inserts while reading its result
+					ParserTimeoutInputStream output = new ParserTimeoutInputStream(process.getInputStream(), 
+							app.executor, PARSE_TIMEOUT, process::destroyForcibly);
+					try {
+						Future<Boolean> future = app.executor.submit(() -> readParserResult(job, output));
+						try (OutputStream processIn = process.getOutputStream()) {
+							IOUtils.copy(content, processIn);
+						} catch (IOException e) {}
+						return future.get();
+					} finally {
+						output.stop();
+					}
 				}
 			} catch(Throwable e) {
 				e.printStackTrace();
@@ -380,134 +779,88 @@ public class ParserFunctions {
 		return false;
 	}
 	
+	/** The Constant CSV_SEPARATOR. */
+	private static final String CSV_SEPARATOR = ";";
+	
 	/**
 	 * Read parser result.
+	 * The zip entries are processed in the order the parser writes them.
+	 * Timelogs and grids are inserted line by line while reading,
+	 * triples and geometries are inserted in the background while the next entries are read.
+	 * Timelogs are recognized by their binary format and grids by the extension {@link ParserAPI#GRID_EXTENSION}.
+	 * Csv entries of older parsers are kept until the meta information tells, if they are timelogs or grids.
 	 *
 	 * @param job the job
 	 * @param parserResultStream the parser result stream
 	 * @return true, if successful
 	 */
 	private boolean readParserResult(Parsing job, InputStream parserResultStream) {
+		List<Future<?>> inserters = new ArrayList<>();
 		try {
-			Map<String, byte[]> result = new HashMap<>();
 			JSONObject meta = null;
+			Set<String> entries = new HashSet<>();
+			Map<String, byte[]> legacyCsv = new HashMap<>();
 			try (ZipInputStream in = new ZipInputStream(parserResultStream)) {
 				ZipEntry entry;
 				while((entry = in.getNextEntry()) != null) {
 					if(entry.isDirectory()) continue;
-					if(entry.getName().equalsIgnoreCase("meta.json"))
-						meta = new JSONObject(IOUtils.toString(in, StandardCharsets.UTF_8));
+					String rname = entry.getName();
+					entries.add(rname);
+					// the entry streams are not closed, the zip stream continues with the next entry
+					BufferedInputStream data = new BufferedInputStream(new CloseShieldInputStream(in));
+					BufferedReader reader = new BufferedReader(new InputStreamReader(data, StandardCharsets.UTF_8));
+					int ext = rname.lastIndexOf('.');
+					String name = ext > 0 ? rname.substring(0, ext) : rname;
+					String extension = ext > 0 ? rname.substring(ext).toLowerCase() : "";
+					
+					if(rname.equalsIgnoreCase("meta.json"))
+						meta = new JSONObject(new JSONTokener(reader));
+					else if(extension.equals(".ttl")) {
+						Model model = readTriples(job, data);
+						if(model != null) inserters.add(app.executor.submit(() -> insertTriples(job, model)));
+					}
+					else if(extension.equals(".json")) {
+						JSONArray features = readGeo(job, reader);
+						if(features != null) inserters.add(app.executor.submit(() -> insertGeo(job, features)));
+					}
+					else if(BinaryTimeLog.isBinary(data))
+						insertTimelog(job, name, new BinaryTimeLog.Reader(data));
+					else if(rname.toLowerCase().endsWith(ParserAPI.GRID_EXTENSION))
+						insertGrid(job, rname.substring(0, rname.length() - ParserAPI.GRID_EXTENSION.length()), reader);
+					else if(extension.equals(".csv"))
+						legacyCsv.put(rname, IOUtils.toByteArray(data));
 					else
-						result.put(entry.getName(), IOUtils.toByteArray(in));
+						System.err.format("%s: %s: Unknown entry '%s' in parser result\n", 
+								job.file.getUser(), job.file.getFilename(), rname);
 				}
 			}
-			long t2 = System.nanoTime();
 			if(meta == null)
 				throw new FileNotFoundException("Parser result contains no 'meta.json'");
 			
-			if(meta.has("parseTime"))
-				System.out.format("%s: %s: Parsed in %dms\n", 
-						job.file.getUser(), job.file.getFilename(), meta.getInt("parseTime"));
-			
-			JSONObject errors = meta.optJSONObject("errors");
-			File.Validation vali;
-			if(errors != null) {
-				Validation val = Validation.fromJson(errors);
-				if(val.hasFatals()) vali = File.Validation.FATAL_ERRORS;
-				else if(val.hasErrors()) vali = File.Validation.ERRORS;
-				else if(val.hasWarnings()) vali = File.Validation.WARNINGS;
-				else vali = File.Validation.NO_ERROR;
-				
-				for(String err : val.fatals()) {
-					System.err.format("%s: %s: %s\n", 
-							job.file.getUser(), job.file.getFilename(), err);
-				}
-			}
-			else
-				vali = File.Validation.NO_ERROR;
-	
-			Future<?> tripleInserter = null, geoInserter = null, tlgInserter = null;
-			
 			String rname = meta.optString("triples", null);
-			if(rname != null) {
-				if(result.containsKey(rname)) {
-					final byte[] content = result.get(rname);
-					tripleInserter = app.executor.submit(() -> insertTriples(job, content));
-				}
-				else
-					System.err.format("%s: %s: Triples '%s' missing in parser result\n", 
-							job.file.getUser(), job.file.getFilename(), rname);
-			}
-			
+			if(rname != null && !entries.contains(rname))
+				System.err.format("%s: %s: Triples '%s' missing in parser result\n", 
+						job.file.getUser(), job.file.getFilename(), rname);
 			rname = meta.optString("geo", null);
-			if(rname != null) {
-				if(result.containsKey(rname)) {
-					byte[] content = result.get(rname);
-					geoInserter = app.executor.submit(() -> insertGeo(job, content));
-				}
-				else
-					System.err.format("%s: %s: Geometries '%s' missing in parser result\n", 
-							job.file.getUser(), job.file.getFilename(), rname);
-			}
-			
-			List<Entry<String, byte[]>> timelogs = new ArrayList<>(), grids = new ArrayList<>();
+			if(rname != null && !entries.contains(rname))
+				System.err.format("%s: %s: Geometries '%s' missing in parser result\n", 
+						job.file.getUser(), job.file.getFilename(), rname);
 			JSONArray rnames = meta.optJSONArray("timelogs");
-			if(rnames != null) {
-				for(int i = 0; i < rnames.length(); ++i) {
-					rname = rnames.optString(i);
-					if(rname != null && result.containsKey(rname)) {
-						int ext = rname.lastIndexOf('.');
-						timelogs.add(new SimpleEntry<>(ext > 0 ? rname.substring(0, ext) : rname, result.get(rname)));
-					}
-					else
-						System.err.format("%s: %s: Timelog '%s' missing in parser result\n", 
-								job.file.getUser(), job.file.getFilename(), rname);
-				}
+			for(int i = 0; rnames != null && i < rnames.length(); ++i) {
+				if(!entries.contains(rnames.optString(i)))
+					System.err.format("%s: %s: Timelog '%s' missing in parser result\n", 
+							job.file.getUser(), job.file.getFilename(), rnames.optString(i));
 			}
-			
 			rnames = meta.optJSONArray("grids");
-			if(rnames != null) {
-				for(int i = 0; i < rnames.length(); ++i) {
-					rname = rnames.optString(i);
-					if(rname != null && result.containsKey(rname)) {
-						int ext = rname.lastIndexOf('.');
-						grids.add(new SimpleEntry<>(ext > 0 ? rname.substring(0, ext) : rname, result.get(rname)));
-					}
-					else
-						System.err.format("%s: %s: Grid '%s' missing in parser result\n", 
-								job.file.getUser(), job.file.getFilename(), rname);
-				}
+			for(int i = 0; rnames != null && i < rnames.length(); ++i) {
+				if(!entries.contains(rnames.optString(i)))
+					System.err.format("%s: %s: Grid '%s' missing in parser result\n", 
+							job.file.getUser(), job.file.getFilename(), rnames.optString(i));
 			}
+			if(!legacyCsv.isEmpty())
+				insertLegacyCsv(job, meta, legacyCsv);
 			
-			if(timelogs.size() > 0 || grids.size() > 0) {
-				tlgInserter = app.executor.submit(() -> {
-					for(Entry<String, byte[]> tlg : timelogs) {
-						insertTimelog(job, tlg.getKey(), tlg.getValue());
-					}
-					for(Entry<String, byte[]> grd : grids) {
-						insertGrid(job, grd.getKey(), grd.getValue());
-					}
-				});
-			}
-			
-			try {
-				if(geoInserter != null) geoInserter.get();
-				if(tripleInserter != null) tripleInserter.get();
-				if(tlgInserter != null) tlgInserter.get();
-			} catch(ExecutionException e) {
-				throw e.getCause();
-			}
-			
-			app.dedup.findDuplicates(job.user, job.file);
-			
-			//change leveraged date
-			long t1 = job.getStarted();
-			long t3 = System.nanoTime();
-			System.out.format("%s: %s: File leverage completed in %d+%dms\n", job.user.getName(), job.file.getFilename(), (t2-t1)/1000000, (t3-t2)/1000000);
-			if(job.log)
-				app.logInfo(job.user, "File processing completed: %s", job.file.getFilename());
-			app.list.files.update(job.user, job.file, Updates.combine(job.file.setValidation(vali), job.file.setLeveraged(Instant.now())));
-			app.file.parserFinished.trigger(job.user, job.file);
+			insertParserResult(job, meta, inserters);
 			return true;
 		} catch(Throwable e) {
 			e.printStackTrace();
@@ -515,81 +868,456 @@ public class ParserFunctions {
 				app.logError(job.user, "Couldn't read file: " + job.file.getFilename());
 			System.err.println(job.user.getName() + ": File leverage failed: " + job.file.getFilename());
 			return false;
+		} finally {
+			// don't return before the background inserts finished
+			for(Future<?> inserter : inserters) {
+				try {
+					inserter.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {}
+			}
 		}
 	}
 	
 	/**
-	 * Insert triples.
+	 * Inserts the csv entries of older parsers, that are listed as timelogs or grids in the meta information.
 	 *
 	 * @param job the job
-	 * @param content the content
+	 * @param meta the meta information
+	 * @param csv the csv entries by entry name
 	 */
-	private void insertTriples(Parsing job, byte[] content) {
-		try {
-			long t1 = System.nanoTime();
-			Model model = ModelFactory.createDefaultModel().read(new ByteArrayInputStream(content), null, "TTL");
-			long t2 = System.nanoTime();
-			app.triple.insertData(model, job.file.getURI());
-			long t3 = System.nanoTime();
-			if(DEBUG_MODE) System.out.format("%s: %s: added %d statements to triplestore (%d+%dms)\n", 
-					job.file.getUser(), job.file.getFilename(), model.size(), (t2-t1)/1000000, (t3-t2)/1000000);
-		} catch (Throwable e) {
-			if(job.log)
-				app.logError(job.user, "Leverage error in file '%s': Couldn't read triples", 
-						job.file.getFilename());
-			System.err.format("%s: Leverage error in file '%s' insertTriples: %s\n", 
-					job.file.getUser(), job.file.getFilename(), e.getMessage());
+	private void insertLegacyCsv(Parsing job, JSONObject meta, Map<String, byte[]> csv) {
+		JSONArray timelogs = meta.optJSONArray("timelogs"), grids = meta.optJSONArray("grids");
+		for(Entry<String, byte[]> e : csv.entrySet()) {
+			String rname = e.getKey();
+			String name = rname.substring(0, rname.lastIndexOf('.'));
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new ByteArrayInputStream(e.getValue()), StandardCharsets.UTF_8));
+			if(timelogs != null && timelogs.toList().contains(rname))
+				insertTimelog(job, name, reader);
+			else if(grids != null && grids.toList().contains(rname))
+				insertGrid(job, name, reader);
+			else
+				System.err.format("%s: %s: Unknown entry '%s' in parser result\n", 
+						job.file.getUser(), job.file.getFilename(), rname);
 		}
 	}
 	
 	/**
-	 * Insert geo.
+	 * Evaluates the meta information of the parser result, waits for the inserters and marks the file as leveraged.
 	 *
 	 * @param job the job
-	 * @param content the content
+	 * @param meta the meta information of the parser result
+	 * @param inserters the running inserters
+	 * @throws Throwable the exception of a failed inserter
 	 */
-	private void insertGeo(Parsing job, byte[] content) {
-		try {
-			JSONObject collection = new JSONObject(new String(content, StandardCharsets.UTF_8));
-			JSONArray features = collection.optJSONArray("features");
-			int geometries = 0;
+	private void insertParserResult(Parsing job, JSONObject meta, List<Future<?>> inserters) throws Throwable {
+		long t2 = System.nanoTime();
+		if(meta.has("parseTime"))
+			System.out.format("%s: %s: Parsed in %dms\n", 
+					job.file.getUser(), job.file.getFilename(), meta.getInt("parseTime"));
+		
+		JSONObject errors = meta.optJSONObject("errors");
+		File.Validation vali;
+		if(errors != null) {
+			Validation val = Validation.fromJson(errors);
+			if(val.hasFatals()) vali = File.Validation.FATAL_ERRORS;
+			else if(val.hasErrors()) vali = File.Validation.ERRORS;
+			else if(val.hasWarnings()) vali = File.Validation.WARNINGS;
+			else vali = File.Validation.NO_ERROR;
 			
-			if(features != null) {
-				Map<String, MinMax> valueRanges = new HashMap<>();
-				for(int i = 0; i < features.length(); ++i) {
-					JSONObject prop = features.getJSONObject(i).optJSONObject("properties");
-					if(prop != null) {
-						for(String key : prop.keySet()) {
-							Object val = prop.get(key);
-							if(val instanceof Number) {
-								MinMax minMax = valueRanges.get(key);
-								if(minMax == null) valueRanges.put(key, minMax = new MinMax());
-								minMax.addValue(((Number)val).doubleValue());
-							}
+			for(String err : val.fatals()) {
+				System.err.format("%s: %s: %s\n", 
+						job.file.getUser(), job.file.getFilename(), err);
+			}
+		}
+		else
+			vali = File.Validation.NO_ERROR;
+		
+		try {
+			for(Future<?> inserter : inserters) {
+				inserter.get();
+			}
+		} catch(ExecutionException e) {
+			throw e.getCause();
+		}
+		
+		app.dedup.findDuplicates(job.user, job.file);
+		
+		//change leveraged date
+		long t1 = job.getStarted();
+		long t3 = System.nanoTime();
+		System.out.format("%s: %s: File leverage completed in %d+%dms\n", job.user.getName(), job.file.getFilename(), (t2-t1)/1000000, (t3-t2)/1000000);
+		if(job.log)
+			app.logInfo(job.user, "File processing completed: %s", job.file.getFilename());
+		app.list.files.update(job.user, job.file, Updates.combine(job.file.setValidation(vali), job.file.setLeveraged(Instant.now())));
+		app.file.parserFinished.trigger(job.user, job.file);
+	}
+	
+	/**
+	 * Handles the results of an in process parser.
+	 * It is called by the thread, that waits for the parser, so the inserts don't count against the parser limits.
+	 * Timelog entries and grid rows are inserted as they arrive, 
+	 * the triples and geo features are inserted after the parser finished, like the results of a parser process.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 * @see ParserLoader
+	 */
+	private class DirectResult implements ParserAPI.ResultHandler {
+		
+		/** The job. */
+		private final Parsing job;
+		
+		/** The triples. */
+		@CheckForNull
+		private Model triples = null;
+		
+		/** The geo features. */
+		private final JSONArray features = new JSONArray();
+		
+		/** The meta. */
+		@CheckForNull
+		private JSONObject meta = null;
+		
+		/** The name of the current timelog. */
+		@CheckForNull
+		private String timelogName = null;
+		
+		/** The insert of the current timelog, null if it failed. */
+		@CheckForNull
+		private TimelogInsert timelog = null;
+		
+		/** The current grid. */
+		@CheckForNull
+		private ParserAPI.Grid grid = null;
+		
+		/** The row and column count of the current grid. */
+		private int gridRows = 0, gridCols = 0;
+		
+		/** The insert of the current grid value, null if it failed or the grid is empty. */
+		@CheckForNull
+		private GridInsert gridValue = null;
+		
+		/** The next row of the current grid value, -1 if no value is started. */
+		private int gridRow = -1;
+		
+		/**
+		 * Instantiates a new direct result.
+		 *
+		 * @param job the job
+		 */
+		public DirectResult(Parsing job) {
+			this.job = job;
+		}
+
+		/**
+		 * Triples.
+		 *
+		 * @param model the model
+		 */
+		@Override
+		public void triples(Model model) {
+			if(triples == null) triples = model;
+			else triples.add(model);
+		}
+
+		/**
+		 * Geo feature.
+		 *
+		 * @param feature the feature
+		 */
+		@Override
+		public void geoFeature(JSONObject feature) {
+			features.put(feature);
+		}
+
+		/**
+		 * Start time log.
+		 *
+		 * @param timelog the timelog
+		 * @param valueInfos the value infos
+		 */
+		@Override
+		public void startTimeLog(ParserAPI.TimeLog timelog, List<? extends ValueInfo> valueInfos) {
+			endTimeLog();
+			this.timelogName = timelog.name;
+			try {
+				List<String> valueUris = valueInfos.stream().map(vi -> vi.valueUri).collect(Collectors.toList());
+				this.timelog = new TimelogInsert(job, timelog.name, timelog.uri, valueUris, Math.max(timelog.count, 0));
+			} catch (Throwable e) {
+				insertTimelogFailed(job, timelog.name, e);
+			}
+		}
+
+		/**
+		 * Time log entry.
+		 *
+		 * @param time the time
+		 * @param latitude the latitude
+		 * @param longitude the longitude
+		 * @param altitude the altitude
+		 * @param values the values
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void timeLogEntry(Instant time, double latitude, double longitude, double altitude, Long[] values) throws IOException {
+			if(timelogName == null) throw new IOException("No timelog started");
+			if(timelog == null) return;
+			try {
+				timelog.add(time.getEpochSecond(), latitude, longitude, altitude, values);
+			} catch (Throwable e) {
+				insertTimelogFailed(job, timelogName, e);
+				timelog = null;
+			}
+		}
+
+		/**
+		 * End time log.
+		 */
+		@Override
+		public void endTimeLog() {
+			if(timelog != null) {
+				try {
+					timelog.finish();
+				} catch (Throwable e) {
+					insertTimelogFailed(job, timelogName, e);
+				}
+			}
+			timelog = null;
+			timelogName = null;
+		}
+
+		/**
+		 * Start grid.
+		 *
+		 * @param grid the grid
+		 * @param rowCount the row count
+		 * @param columnCount the column count
+		 */
+		@Override
+		public void startGrid(ParserAPI.Grid grid, int rowCount, int columnCount) {
+			endGrid();
+			this.grid = grid;
+			this.gridRows = rowCount;
+			this.gridCols = columnCount;
+		}
+
+		/**
+		 * Start grid value.
+		 *
+		 * @param info the info
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void startGridValue(ValueInfo info) throws IOException {
+			if(grid == null) throw new IOException("No grid started");
+			endGridValue();
+			gridRow = 0;
+			if(gridRows == 0 || gridCols == 0) return;
+			try {
+				gridValue = new GridInsert(job, grid.name, info.valueUri, 
+						new Coordinate(grid.eastMin, grid.northMin), 
+						new Coordinate(grid.eastCellSize, grid.northCellSize), gridRows, gridCols);
+			} catch (Throwable e) {
+				insertGridFailed(job, grid.name, e);
+			}
+		}
+
+		/**
+		 * Grid row.
+		 *
+		 * @param values the values
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void gridRow(Long[] values) throws IOException {
+			if(grid == null || gridRow < 0) throw new IOException("No grid value started");
+			if(gridValue != null) {
+				try {
+					gridValue.addRow(gridRow, values);
+				} catch (Throwable e) {
+					insertGridFailed(job, grid.name, e);
+					gridValue = null;
+				}
+			}
+			++gridRow;
+		}
+		
+		/**
+		 * Finishes the insert of the current grid value.
+		 */
+		private void endGridValue() {
+			if(gridValue != null) {
+				try {
+					gridValue.finish();
+				} catch (Throwable e) {
+					insertGridFailed(job, grid.name, e);
+				}
+			}
+			gridValue = null;
+			gridRow = -1;
+		}
+
+		/**
+		 * End grid.
+		 */
+		@Override
+		public void endGrid() {
+			endGridValue();
+			grid = null;
+		}
+
+		/**
+		 * Finish.
+		 *
+		 * @param meta the meta
+		 */
+		@Override
+		public void finish(JSONObject meta) {
+			endTimeLog();
+			endGrid();
+			this.meta = meta;
+		}
+		
+		/**
+		 * Inserts the collected triples and geo features.
+		 *
+		 * @return true, if successful
+		 * @throws Throwable the exception of a failed inserter
+		 */
+		public boolean insert() throws Throwable {
+			if(meta == null)
+				throw new FileNotFoundException("Parser finished without meta information");
+			Model model = triples;
+			List<Future<?>> inserters = new ArrayList<>(2);
+			if(model != null)
+				inserters.add(app.executor.submit(() -> insertTriples(job, model)));
+			if(features.length() > 0)
+				inserters.add(app.executor.submit(() -> insertGeo(job, features)));
+			insertParserResult(job, meta, inserters);
+			return true;
+		}
+	}
+	
+	/**
+	 * Read triples.
+	 *
+	 * @param job the job
+	 * @param in the turtle input
+	 * @return the model or null if the triples couldn't be read
+	 */
+	@CheckForNull
+	private Model readTriples(Parsing job, InputStream in) {
+		try {
+			return ModelFactory.createDefaultModel().read(in, null, "TTL");
+		} catch (Throwable e) {
+			insertTriplesFailed(job, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Insert triples.
+	 *
+	 * @param job the job
+	 * @param model the model
+	 */
+	private void insertTriples(Parsing job, Model model) {
+		try {
+			long t1 = System.nanoTime();
+			app.triple.insertData(model, job.file.getURI());
+			long t2 = System.nanoTime();
+			if(DEBUG_MODE) System.out.format("%s: %s: added %d statements to triplestore (%dms)\n", 
+					job.file.getUser(), job.file.getFilename(), model.size(), (t2-t1)/1000000);
+		} catch (Throwable e) {
+			insertTriplesFailed(job, e);
+		}
+	}
+	
+	/**
+	 * Logs a failed triple insert.
+	 *
+	 * @param job the job
+	 * @param e the exception
+	 */
+	private void insertTriplesFailed(Parsing job, Throwable e) {
+		if(job.log)
+			app.logError(job.user, "Leverage error in file '%s': Couldn't read triples", 
+					job.file.getFilename());
+		System.err.format("%s: Leverage error in file '%s' insertTriples: %s\n", 
+				job.file.getUser(), job.file.getFilename(), e.getMessage());
+	}
+	
+	/**
+	 * Read geo.
+	 *
+	 * @param job the job
+	 * @param reader the GeoJSON input
+	 * @return the features or null if the geometries couldn't be read
+	 */
+	@CheckForNull
+	private JSONArray readGeo(Parsing job, Reader reader) {
+		try {
+			JSONObject collection = new JSONObject(new JSONTokener(reader));
+			JSONArray features = collection.optJSONArray("features");
+			return features != null ? features : new JSONArray().put(collection);
+		} catch (Throwable e) {
+			insertGeoFailed(job, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Insert geo.
+	 *
+	 * @param job the job
+	 * @param features the features
+	 */
+	private void insertGeo(Parsing job, JSONArray features) {
+		try {
+			int geometries = 0;
+			Map<String, MinMax> valueRanges = new HashMap<>();
+			for(int i = 0; i < features.length(); ++i) {
+				JSONObject prop = features.getJSONObject(i).optJSONObject("properties");
+				if(prop != null) {
+					for(String key : prop.keySet()) {
+						Object val = prop.get(key);
+						if(val instanceof Number) {
+							MinMax minMax = valueRanges.get(key);
+							if(minMax == null) valueRanges.put(key, minMax = new MinMax());
+							minMax.addValue(((Number)val).doubleValue());
 						}
 					}
 				}
-				for(int i = 0; i < features.length(); ++i) {
-					if(insertGeoFeature(job, features.getJSONObject(i), valueRanges))
-						++geometries;
-				}
 			}
-			else {
-				if(insertGeoFeature(job, collection, Collections.emptyMap()))
+			for(int i = 0; i < features.length(); ++i) {
+				if(insertGeoFeature(job, features.getJSONObject(i), valueRanges))
 					++geometries;
 			}
 			
 			if(DEBUG_MODE) System.out.format("%s: %s: added %d geometries to geostore\n", 
 					job.file.getUser(), job.file.getFilename(), geometries);
 		} catch (Throwable e) {
-			if(job.log)
-				app.logError(job.user, "Leverage error in file '%s': Couldn't read geometries", 
-						job.file.getFilename());
-			System.err.format("%s: Leverage error in file '%s' insertGeo: %s\n", 
-					job.file.getUser(), job.file.getFilename(), e.getMessage());
+			insertGeoFailed(job, e);
 		}
 	}
 	
+	/**
+	 * Logs a failed geo insert.
+	 *
+	 * @param job the job
+	 * @param e the exception
+	 */
+	private void insertGeoFailed(Parsing job, Throwable e) {
+		if(job.log)
+			app.logError(job.user, "Leverage error in file '%s': Couldn't read geometries", 
+					job.file.getFilename());
+		System.err.format("%s: Leverage error in file '%s' insertGeo: %s\n", 
+				job.file.getUser(), job.file.getFilename(), e.getMessage());
+	}
+	
 	/**
 	 * Insert geo feature.
 	 *
@@ -624,12 +1352,12 @@ public class ParserFunctions {
 			}
 			
 			try {
-				app.geo.insert(job.file, geoUri, geoType, feature, geoLabel, values);
+				insertGeoFeature(job, geoUri, geoType, feature, geoLabel, values);
 			} catch (Exception e) {
 				Geometry geom = GeoFunctions.readGeoJson(feature.getJSONObject("geometry").toString());
 				geom = DouglasPeuckerSimplifier.simplify(geom, 0.00001);
 				feature.put("geometry", new JSONObject(GeoFunctions.toGeoJson(geom)));
-				app.geo.insert(job.file, geoUri, geoType, feature, geoLabel, values);
+				insertGeoFeature(job, geoUri, geoType, feature, geoLabel, values);
 				if(job.log)
 					app.logError(job.user, "Geometry repaired in file '%s': %s", 
 							job.file.getFilename(), geoLabel);
@@ -645,98 +1373,323 @@ public class ParserFunctions {
 		}
 	}
 	
-	/** The Constant CSV_SEPARATOR. */
-	private static final String CSV_SEPARATOR = ";";
+	/**
+	 * Inserts a geo feature or updates it, if the content was appended.
+	 *
+	 * @param job the job
+	 * @param uri the uri
+	 * @param type the type
+	 * @param feature the feature
+	 * @param label the label
+	 * @param values the values
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void insertGeoFeature(Parsing job, String uri, ElementType type, JSONObject feature, String label, 
+			@Nullable MinMaxValues values) throws IOException {
+		if(job.incremental)
+			app.geo.update(job.file, uri, type, feature, label, values);
+		else
+			app.geo.insert(job.file, uri, type, feature, label, values);
+	}
 	
 	/**
 	 * Insert timelog.
 	 *
 	 * @param job the job
 	 * @param name the name
-	 * @param content the content
+	 * @param reader the csv input
 	 */
-	@SuppressFBWarnings(value="NP_DEREFERENCE_OF_READLINE_VALUE", justification="checked beforehand")
-	private void insertTimelog(Parsing job, String name, byte[] content) {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
-			int total = -2;
-			for(byte b : content) {
-				if(b == '\n') ++total;
-			}
-			if(total < 1) return;
-			
-			PositionBatch positionBatch = app.table.createPositionBatch(total);
-			ElementKey posKey = new ElementKey(job.user.getName(), job.file.getURI(), name);
-			
+	private void insertTimelog(Parsing job, String name, BufferedReader reader) {
+		try {
 			String tlgUri = reader.readLine();
-			String[] vuris = reader.readLine().split(CSV_SEPARATOR);
+			String header = reader.readLine();
+			if(tlgUri == null || header == null) return;
+			String[] vuris = header.split(CSV_SEPARATOR);
 			
 			if(vuris.length < 4) return;
 			
-			List<TimelogBatch> batches = new ArrayList<>(vuris.length-4);
-			for(int i = 4; i < vuris.length; ++i) {
-				batches.add(app.table.createTimelogBatch(total));
+			// the total is unknown while streaming
+			TimelogInsert insert = new TimelogInsert(job, name, tlgUri, 
+					Arrays.asList(vuris).subList(4, vuris.length), 0);
+			Long[] rowValues = new Long[vuris.length-4];
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) continue;
+				String[] values = line.split(CSV_SEPARATOR);
+				if(values.length < 3) {
+					insert.skip();
+					continue;
+				}
+				for(int i = 0; i < rowValues.length; ++i) {
+					rowValues[i] = i+4 >= values.length || values[i+4].isEmpty() ? null : Long.parseLong(values[i+4]);
+				}
+				insert.add(Long.parseLong(values[0]), 
+						values[1].isEmpty() ? Double.NaN : Double.parseDouble(values[1]), 
+						values[2].isEmpty() ? Double.NaN : Double.parseDouble(values[2]), 
+						values.length < 4 || values[3].isEmpty() ? Double.NaN : Double.parseDouble(values[3]), 
+						rowValues);
+			}
+			insert.finish();
+		} catch (Throwable e) {
+			insertTimelogFailed(job, name, e);
+		}
+	}
+	
+	/**
+	 * Insert timelog.
+	 *
+	 * @param job the job
+	 * @param name the name
+	 * @param reader the binary timelog input
+	 */
+	private void insertTimelog(Parsing job, String name, BinaryTimeLog.Reader reader) {
+		try {
+			int columns = reader.getValueUris().size();
+			// the total is unknown while streaming
+			TimelogInsert insert = new TimelogInsert(job, name, reader.getUri(), reader.getValueUris(), 0);
+			while(reader.nextBlock()) {
+				for(int r = 0; r < reader.rows(); ++r) {
+					insert.addPosition(Math.floorDiv(reader.time(r), 1000), reader.hasPosition(r), 
+							reader.latitude(r), reader.longitude(r), reader.hasAltitude(r) ? reader.altitude(r) : 0);
+					for(int c = 0; c < columns; ++c) {
+						if(reader.hasValue(c, r))
+							insert.addValue(c, reader.value(c, r));
+						else
+							insert.skipValue(c);
+					}
+				}
+			}
+			insert.finish();
+		} catch (Throwable e) {
+			insertTimelogFailed(job, name, e);
+		}
+	}
+	
+	/**
+	 * Logs a failed timelog insert.
+	 *
+	 * @param job the job
+	 * @param name the name
+	 * @param e the exception
+	 */
+	private void insertTimelogFailed(Parsing job, String name, Throwable e) {
+		if(job.log)
+			app.logError(job.user, "Leverage error in file '%s': Couldn't read timelog %s", 
+					job.file.getFilename(), name);
+		System.err.format("%s: Leverage error in file '%s' insertTimelog(%s): %s\n", 
+				job.file.getUser(), job.file.getFilename(), name, e.getMessage());
+	}
+	
+	/**
+	 * Inserts the entries of a timelog into cassandra and the simplified line into the geostore.
+	 * Skips entries with repeated times and wrong coordinates and repeated values.
+	 * For appended content, entries until the last imported entry of the timelog are skipped 
+	 * and the simplified line is extended.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class TimelogInsert {
+		
+		/** The job. */
+		private final Parsing job;
+		
+		/** The timelog uri. */
+		private final String tlgUri;
+		
+		/** The value uris. */
+		private final List<String> valueUris;
+		
+		/** The position key. */
+		private final ElementKey posKey;
+		
+		/** The position batch. */
+		private final PositionBatch positionBatch;
+		
+		/** The value batches. */
+		private final List<TimelogBatch> batches;
+		
+		/** The rollup batches of the values or null if there are no rollup tables. */
+		@CheckForNull
+		private final List<RollupBatch> rollups;
+		
+		/** The import of the positions and values. */
+		private final CassandraWriter.Import writes;
+		
+		/** The time set. */
+		private final Set<Long> timeSet = new HashSet<>();
+		
+		/** The last values. */
+		private final int[] lastValues;
+		
+		/** The coords. */
+		private final List<Coordinate> coords;
+		
+		/** The time of the current entry. */
+		private Instant time = Instant.EPOCH;
+		
+		/** Whether the current entry is kept. */
+		private boolean kept = false;
+		
+		/** The time of the last imported entry before this insert or null for a complete import. */
+		@CheckForNull
+		private final Instant mark;
+		
+		/** The time of the last kept entry. */
+		@CheckForNull
+		private Instant until = null;
+		
+		/**
+		 * Instantiates a new timelog insert.
+		 *
+		 * @param job the job
+		 * @param name the timelog name
+		 * @param tlgUri the timelog uri
+		 * @param valueUris the value uris
+		 * @param total the total number of entries
+		 */
+		public TimelogInsert(Parsing job, String name, String tlgUri, List<String> valueUris, int total) {
+			this.job = job;
+			this.tlgUri = tlgUri;
+			this.valueUris = valueUris;
+			this.posKey = new ElementKey(job.user.getName(), job.file.getURI(), name);
+			this.writes = app.table.beginImport();
+			this.positionBatch = app.table.createPositionBatch(writes, total);
+			this.batches = new ArrayList<>(valueUris.size());
+			for(int i = 0; i < valueUris.size(); ++i) {
+				batches.add(app.table.createTimelogBatch(writes, total));
 			}
+			if(job.incremental) {
+				GeoElement line = app.geo.findTlg(posKey);
+				this.mark = line != null ? line.getUntil() : null;
+			} else
+				this.mark = null;
+			List<RollupBatch> rollups = new ArrayList<>(valueUris.size());
+			for(String valueUri : valueUris) {
+				RollupBatch rollup = app.table.createRollupBatch(writes, new Key(posKey.user, posKey.file, name, valueUri), mark);
+				if(rollup == null) break;
+				rollups.add(rollup);
+			}
+			this.rollups = rollups.size() == valueUris.size() && !rollups.isEmpty() ? rollups : null;
+			this.lastValues = new int[valueUris.size()];
+			this.coords = new ArrayList<>(total);
+		}
+		
+		/**
+		 * Skips an unreadable entry.
+		 */
+		public void skip() {
+			positionBatch.decTotal();
+			for(TimelogBatch batch : batches) {
+				batch.decTotal();
+			}
+		}
+		
+		/**
+		 * Adds an entry.
+		 *
+		 * @param epochSeconds the epoch seconds
+		 * @param lat the latitude or NaN
+		 * @param lng the longitude or NaN
+		 * @param alt the altitude or NaN
+		 * @param values the values, null for missing values
+		 */
+		public void add(long epochSeconds, double lat, double lng, double alt, Long[] values) {
+			boolean valid = Double.isFinite(lat) && Double.isFinite(lng);
+			addPosition(epochSeconds, valid, valid ? TableFunctions.pos(lat) : 0, valid ? TableFunctions.pos(lng) : 0, 
+					Double.isFinite(alt) ? TableFunctions.alt(alt) : 0);
+			for(int i = 0; i < lastValues.length; ++i) {
+				if(i < values.length && values[i] != null)
+					addValue(i, values[i]);
+				else
+					skipValue(i);
+			}
+		}
+		
+		/**
+		 * Adds the position of an entry in the fixed-point representation of the position table.
+		 * The values of the entry must be added or skipped afterwards.
+		 *
+		 * @param epochSeconds the epoch seconds
+		 * @param valid whether the entry has a position
+		 * @param lat the fixed-point latitude
+		 * @param lng the fixed-point longitude
+		 * @param alt the fixed-point altitude
+		 * @return true, if the entry is kept, false if its values are skipped
+		 */
+		public boolean addPosition(long epochSeconds, boolean valid, int lat, int lng, int alt) {
+			boolean skip = !timeSet.add(epochSeconds);
+			time = Instant.ofEpochSecond(epochSeconds);
+			skip |= mark != null && !time.isAfter(mark); // already imported
+			double dlat = TableFunctions.pos(lat), dlng = TableFunctions.pos(lng);
 			
-			Set<Long> timeSet = new HashSet<>();
-			int[] lastValues = new int[batches.size()];
-			List<Coordinate> coords = new ArrayList<>(total);
+			skip |= !valid
+					|| (Math.abs(dlat) < 3. && Math.abs(dlng) <= 3.)
+					|| dlat <= 35 || dlat >= 90. //Removes wrong coordinates in Afrika
+					|| dlng < -180. || dlng > 180.;
 			
-			for(int log = 0; log < total; ++log) {
-				String[] values = reader.readLine().split(CSV_SEPARATOR);
-				boolean skip = values.length < 3;
-				long epochSeconds = skip ? 0 : Long.parseLong(values[0]);
-				skip |= !timeSet.add(epochSeconds);
-				Instant time = skip ? null : Instant.ofEpochSecond(epochSeconds);
+			if(!skip) {
+				Coordinate coord = new Coordinate(dlng, dlat);
+				skip |= coords.size() > 0 && coord.distance(coords.get(coords.size()-1)) > 1;
 				
-				skip |= values[1].isEmpty() || values[2].isEmpty();
 				if(!skip) {
-					double lat = Double.parseDouble(values[1]);
-					double lng = Double.parseDouble(values[2]);
-					skip |= !Double.isFinite(lat) || !Double.isFinite(lng)
-							|| (Math.abs(lat) < 3. && Math.abs(lng) <= 3.)
-							|| lat <= 35 || lat >= 90. //Removes wrong coordinates in Afrika
-							|| lng < -180. || lng > 180.;
-					
-					if(!skip) {
-						Coordinate coord = new Coordinate(lng, lat);
-						skip |= coords.size() > 0 && coord.distance(coords.get(coords.size()-1)) > 1;
-						
-						if(!skip) {
-							coords.add(coord);
-							double alt = values.length < 4 || values[3].isEmpty() ? 0. : Double.parseDouble(values[3]);
-							if(!Double.isFinite(alt)) alt = 0.;
-							positionBatch.add(posKey, time, lat, lng, alt);
-							if(positionBatch.executeIfFull()) {
-								if(DEBUG_MODE) System.out.format("%s: %s: %s: Positions: %3d%% added %d/%d to cassandra\n", 
-										posKey.user, posKey.file, posKey.name, 
-										positionBatch.getPercent(), positionBatch.getCount(), positionBatch.getTotal());
-							}
-						}
-					}
-				}
-				if(skip) positionBatch.decTotal();
-				
-				for(int i = 0; i < lastValues.length; ++i) {
-					int value;
-					TimelogBatch batch = batches.get(i);
-					if(skip || i+4 >= values.length 
-							|| values[i+4].isEmpty() 
-							|| (value = Integer.parseInt(values[i+4])) == lastValues[i]) { // skip repeated values
-						batch.decTotal();
-						continue;
-					}
-					lastValues[i] = value;
-					
-					Key key = new Key(posKey.user, posKey.file, posKey.name, vuris[i+4]);
-					batch.add(key, time, value);
-					if(batch.executeIfFull()) {
-						if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d timelogs to cassandra\n", 
-								key.user, key.file, key.name, key.valueUri,  
-								batch.getPercent(), batch.getCount(), batch.getTotal());
+					coords.add(coord);
+					if(until == null || time.isAfter(until)) until = time;
+					positionBatch.add(posKey, time, lat, lng, alt);
+					if(positionBatch.executeIfFull()) {
+						if(DEBUG_MODE) System.out.format("%s: %s: %s: Positions: %3d%% added %d/%d to cassandra\n", 
+								posKey.user, posKey.file, posKey.name, 
+								positionBatch.getPercent(), positionBatch.getCount(), positionBatch.getTotal());
 					}
 				}
 			}
+			if(skip) positionBatch.decTotal();
+			return kept = !skip;
+		}
+		
+		/**
+		 * Adds a value of the current entry.
+		 *
+		 * @param column the value column
+		 * @param v the value
+		 */
+		public void addValue(int column, long v) {
+			TimelogBatch batch = batches.get(column);
+			if(!kept) {
+				batch.decTotal();
+				return;
+			}
+			int value = Math.toIntExact(v);
+			if(rollups != null) 
+				rollups.get(column).add(time, value);
+			if(value == lastValues[column]) { // skip repeated values
+				batch.decTotal();
+				return;
+			}
+			lastValues[column] = value;
 			
+			Key key = new Key(posKey.user, posKey.file, posKey.name, valueUris.get(column));
+			batch.add(key, time, value);
+			if(batch.executeIfFull()) {
+				if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d timelogs to cassandra\n", 
+						key.user, key.file, key.name, key.valueUri,  
+						batch.getPercent(), batch.getCount(), batch.getTotal());
+			}
+		}
+		
+		/**
+		 * Skips a missing value of the current entry.
+		 *
+		 * @param column the value column
+		 */
+		public void skipValue(int column) {
+			batches.get(column).decTotal();
+		}
+		
+		/**
+		 * Executes the remaining batches, waits until all entries are written 
+		 * and inserts the simplified line into the geostore.
+		 */
+		public void finish() {
 			if(positionBatch.execute()) {
 				if(DEBUG_MODE) System.out.format("%s: %s: %s: Positions: %3d%% added %d/%d to cassandra\n", 
 						posKey.user, posKey.file, posKey.name, 
@@ -747,22 +1700,34 @@ public class ParserFunctions {
 				TimelogBatch batch = batches.get(i);
 				if(batch.execute()) {
 					if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d timelogs to cassandra\n", 
-							posKey.user, posKey.file, posKey.name, vuris[i+4], 
+							posKey.user, posKey.file, posKey.name, valueUris.get(i), 
 							batch.getPercent(), batch.getCount(), batch.getTotal());
 				}
 			}
 			
+			if(rollups != null) {
+				int dropped = 0;
+				for(RollupBatch rollup : rollups) {
+					rollup.execute();
+					dropped += rollup.getDropped();
+				}
+				if(dropped > 0) System.err.format("%s: %s: %s: %d values were too late for the timelog rollups\n", 
+						posKey.user, posKey.file, posKey.name, dropped);
+			}
+			
+			writes.finish().join();
+			System.out.format("%s: %s: %s: wrote %d positions and timelogs in %d ms (%.0f rows/s)\n", 
+					posKey.user, posKey.file, posKey.name, 
+					writes.getWritten(), writes.getMillis(), writes.getRowsPerSecond());
+			
 			if(coords.size() > 0) {
-				app.geo.insertTlg(job.file, tlgUri, name, coords);
+				if(job.incremental)
+					app.geo.appendTlg(job.file, tlgUri, posKey.name, coords, until);
+				else
+					app.geo.insertTlg(job.file, tlgUri, posKey.name, coords, until);
 				if(DEBUG_MODE) System.out.format("%s: %s: %s: added simlified line of timelogs to geostore\n", 
 						posKey.user, posKey.file, posKey.name);
 			}
-		} catch (Throwable e) {
-			if(job.log)
-				app.logError(job.user, "Leverage error in file '%s': Couldn't read timelog %s", 
-						job.file.getFilename(), name);
-			System.err.format("%s: Leverage error in file '%s' insertTimelog(%s): %s\n", 
-					job.file.getUser(), job.file.getFilename(), name, e.getMessage());
 		}
 	}
 	
@@ -771,10 +1736,10 @@ public class ParserFunctions {
 	 *
 	 * @param job the job
 	 * @param name the name
-	 * @param content the content
+	 * @param reader the csv input
 	 */
-	private void insertGrid(Parsing job, String name, byte[] content) {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+	private void insertGrid(Parsing job, String name, BufferedReader reader) {
+		try {
 			String line = reader.readLine();
 			if(line == null) return;
 			String[] values = line.split(CSV_SEPARATOR);
@@ -784,46 +1749,123 @@ public class ParserFunctions {
 			Coordinate spos = new Coordinate(Double.parseDouble(values[3]), Double.parseDouble(values[2]));
 			Coordinate size = new Coordinate(Double.parseDouble(values[5]), Double.parseDouble(values[4]));
 			
+			Long[] rowValues = new Long[cols];
 			while((line = reader.readLine()) != null && !line.isEmpty()) {
 				values = line.split(CSV_SEPARATOR);
-				Key key = new Key(job.user.getName(), job.file.getURI(), name, values[0]);
-				GridBatch batch = app.table.createGridBatch(rows*cols);
+				GridInsert insert = new GridInsert(job, name, values[0], spos, size, rows, cols);
 				
 				for(int r = 0; r < rows; ++r) {
 					line = reader.readLine();
 					if(line == null) throw new SDSDException("Unexpected end of file");
 					values = line.split(CSV_SEPARATOR);
 					for(int c = 0; c < cols; ++c) {
-						if(c >= values.length || values[c].isEmpty())
-							batch.decTotal();
-						else {
-							int value = Integer.parseInt(values[c]);
-							if(value == 0) // skip 0 values
-								batch.decTotal();
-							else {
-								batch.add(key, size, new Coordinate(spos.x + c * size.x, spos.y + r * size.y), value);
-								if(batch.executeIfFull()) {
-									if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d grid cells to cassandra\n", 
-											key.user, key.file, key.name, key.valueUri, 
-											batch.getPercent(), batch.getCount(), batch.getTotal());
-								}
-							}
-						}
+						rowValues[c] = c >= values.length || values[c].isEmpty() ? null : Long.parseLong(values[c]);
 					}
+					insert.addRow(r, rowValues);
 				}
-
-				if(batch.execute()) {
-					if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d grid cells to cassandra\n", 
-							key.user, key.file, key.name, key.valueUri, 
-							batch.getPercent(), batch.getCount(), batch.getTotal());
-				}
+				insert.finish();
 			}
 		} catch (Throwable e) {
-			if(job.log)
-				app.logError(job.user, "Leverage error in file '%s': Couldn't read grid %s", 
-						job.file.getFilename(), name);
-			System.err.format("%s: Leverage error in file '%s' insertGrid(%s): %s\n", 
-					job.file.getUser(), job.file.getFilename(), name, e.getMessage());
+			insertGridFailed(job, name, e);
+		}
+	}
+	
+	/**
+	 * Logs a failed grid insert.
+	 *
+	 * @param job the job
+	 * @param name the name
+	 * @param e the exception
+	 */
+	private void insertGridFailed(Parsing job, String name, Throwable e) {
+		if(job.log)
+			app.logError(job.user, "Leverage error in file '%s': Couldn't read grid %s", 
+					job.file.getFilename(), name);
+		System.err.format("%s: Leverage error in file '%s' insertGrid(%s): %s\n", 
+				job.file.getUser(), job.file.getFilename(), name, e.getMessage());
+	}
+	
+	/**
+	 * Inserts the cells of a grid value into cassandra. Skips missing and 0 values.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class GridInsert {
+		
+		/** The key. */
+		private final Key key;
+		
+		/** The cell size. */
+		private final Coordinate spos, size;
+		
+		/** The cols. */
+		private final int cols;
+		
+		/** The batch. */
+		private final GridBatch batch;
+		
+		/** The import. */
+		private final CassandraWriter.Import writes;
+		
+		/**
+		 * Instantiates a new grid insert.
+		 *
+		 * @param job the job
+		 * @param name the grid name
+		 * @param valueUri the value uri
+		 * @param spos the position of the first cell
+		 * @param size the cell size
+		 * @param rows the rows
+		 * @param cols the cols
+		 */
+		public GridInsert(Parsing job, String name, String valueUri, Coordinate spos, Coordinate size, int rows, int cols) {
+			this.key = new Key(job.user.getName(), job.file.getURI(), name, valueUri);
+			this.spos = spos;
+			this.size = size;
+			this.cols = cols;
+			this.writes = app.table.beginImport();
+			this.batch = app.table.createGridBatch(writes, rows*cols);
+		}
+		
+		/**
+		 * Adds a row.
+		 *
+		 * @param r the row index
+		 * @param values the values, null for missing values
+		 */
+		public void addRow(int r, Long[] values) {
+			for(int c = 0; c < cols; ++c) {
+				if(c >= values.length || values[c] == null)
+					batch.decTotal();
+				else {
+					int value = Math.toIntExact(values[c]);
+					if(value == 0) // skip 0 values
+						batch.decTotal();
+					else {
+						batch.add(key, size, new Coordinate(spos.x + c * size.x, spos.y + r * size.y), value);
+						if(batch.executeIfFull()) {
+							if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d grid cells to cassandra\n", 
+									key.user, key.file, key.name, key.valueUri, 
+									batch.getPercent(), batch.getCount(), batch.getTotal());
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Executes the remaining batch and waits until all grid cells are written.
+		 */
+		public void finish() {
+			if(batch.execute()) {
+				if(DEBUG_MODE) System.out.format("%s: %s: %s: %s: %3d%% added %d/%d grid cells to cassandra\n", 
+						key.user, key.file, key.name, key.valueUri, 
+						batch.getPercent(), batch.getCount(), batch.getTotal());
+			}
+			writes.finish().join();
+			System.out.format("%s: %s: %s: %s: wrote %d grid cells in %d ms (%.0f rows/s)\n", 
+					key.user, key.file, key.name, key.valueUri, 
+					writes.getWritten(), writes.getMillis(), writes.getRowsPerSecond());
 		}
 	}
 	
@@ -835,7 +1877,6 @@ public class ParserFunctions {
 	 */
 	private boolean unleverageFile(Deleting job) {
 		try {
-			job.started();
 			String fileUri = File.toURI(job.fileid);
 			ObjectId oid = new ObjectId(job.fileid);
 			FileKey fkey = new FileKey(job.user.getName(), fileUri);
@@ -865,6 +1906,7 @@ public class ParserFunctions {
 			
 			app.dedup.deleteFileRelations(job.user, fileUri);
 			app.triple.deleteFile(job.user, fileUri);
+			app.table.getValueInfoCache().invalidate(fileUri);
 			long t1 = job.getStarted();
 			long t2 = System.nanoTime();
 			
@@ -881,4 +1923,13 @@ public class ParserFunctions {
 		}
 	}
 	
+	/**
+	 * Close.
+	 */
+	@Override
+	public void close() {
+		jobScheduler.shutdown();
+		if(parserPool != null)
+			parserPool.close();
+	}
 }
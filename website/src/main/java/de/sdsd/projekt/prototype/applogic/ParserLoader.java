@@ -0,0 +1,646 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.jena.rdf.model.Model;
+import org.json.JSONObject;
+
+import de.sdsd.projekt.api.Parser;
+import de.sdsd.projekt.api.ParserAPI;
+import de.sdsd.projekt.api.ParserAPI.Grid;
+import de.sdsd.projekt.api.ParserAPI.ResultHandler;
+import de.sdsd.projekt.api.ParserAPI.TimeLog;
+import de.sdsd.projekt.api.ParserAPI.ValueInfo;
+
+/**
+ * Runs parsers inside the server process.
+ * Every parser jar gets its own class loader, that only shares the SDSD api, Jena and org.json with the server.
+ * A parser is cancelled if it exceeds its cpu time or allocation limit.
+ * The results of a parser are handled by the calling thread, so that their inserts don't count against the limits.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see Parser
+ */
+public class ParserLoader {
+
+	/** Packages that are always loaded by the server class loader. */
+	private static final String[] SHARED_PACKAGES = {
+			"java.", "javax.", "sun.", "com.sun.", "org.w3c.", "org.xml.",
+			"de.sdsd.projekt.api.", "org.apache.jena.", "org.json." };
+
+	/** Milliseconds between two checks of the limits. */
+	private static final long CHECK_INTERVAL = 200;
+
+	/** Milliseconds a cancelled parser gets to stop. */
+	private static final long CANCEL_GRACE = 5000;
+
+	/** The thread management. */
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/** The max count of results, a parser may be ahead of their handling. */
+	private static final int RESULT_QUEUE_SIZE = 1024;
+
+	/** The max cpu time in nanoseconds. */
+	private final long maxCpuTime;
+
+	/** The max allocated bytes. */
+	private final long maxAllocated;
+
+	/** The loaded parsers. */
+	private final ConcurrentMap<String, LoadedParser> parsers = new ConcurrentHashMap<>();
+
+	/**
+	 * Instantiates a new parser loader.
+	 *
+	 * @param settings the in process settings
+	 * @param timeoutSeconds default cpu seconds after that a parser gets cancelled
+	 */
+	public ParserLoader(JSONObject settings, int timeoutSeconds) {
+		this.maxCpuTime = TimeUnit.SECONDS.toNanos(settings.optLong("maxCpuSeconds", timeoutSeconds));
+		this.maxAllocated = settings.optLong("maxAllocatedMb", 4096) * 1024 * 1024;
+		if(threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled())
+			threads.setThreadCpuTimeEnabled(true);
+	}
+
+	/**
+	 * Class loader for a parser jar, that prefers the classes of the jar except for the shared packages.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class ParserClassLoader extends URLClassLoader {
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		/**
+		 * Instantiates a new parser class loader.
+		 *
+		 * @param jar the jar
+		 * @param parent the parent
+		 */
+		public ParserClassLoader(URL jar, ClassLoader parent) {
+			super(new URL[] { jar }, parent);
+		}
+
+		/**
+		 * Checks if the class is loaded by the server class loader.
+		 *
+		 * @param name the class name
+		 * @return true, if shared
+		 */
+		private static boolean isShared(String name) {
+			for(String pkg : SHARED_PACKAGES) {
+				if(name.startsWith(pkg)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Load class.
+		 *
+		 * @param name the name
+		 * @param resolve the resolve
+		 * @return the class
+		 * @throws ClassNotFoundException the class not found exception
+		 */
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if(isShared(name))
+				return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if(c == null) {
+					try {
+						c = findClass(name);
+					} catch (ClassNotFoundException e) {
+						return super.loadClass(name, resolve);
+					}
+				}
+				if(resolve) resolveClass(c);
+				return c;
+			}
+		}
+
+		/**
+		 * Gets the resource.
+		 *
+		 * @param name the name
+		 * @return the resource
+		 */
+		@Override
+		public URL getResource(String name) {
+			URL url = findResource(name);
+			return url != null ? url : super.getResource(name);
+		}
+	}
+
+	/**
+	 * A parser service loaded from a jar.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class LoadedParser {
+
+		/** The last modified time of the jar. */
+		public final long lastModified;
+
+		/** The class loader. */
+		public final ParserClassLoader loader;
+
+		/** The parser or empty if the jar contains no parser service. */
+		public final Optional<Parser> parser;
+		
+		/** The count of running calls of the parser, guarded by the parser loader. */
+		private int users = 0;
+		
+		/** Whether the parser was replaced by a newer version of the jar, guarded by the parser loader. */
+		private boolean replaced = false;
+
+		/**
+		 * Loads the parser service of the jar.
+		 *
+		 * @param jar the jar
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public LoadedParser(Path jar) throws IOException {
+			this.lastModified = Files.getLastModifiedTime(jar).toMillis();
+			this.loader = new ParserClassLoader(jar.toUri().toURL(), ParserLoader.class.getClassLoader());
+			Parser found = null;
+			try {
+				for(Parser p : ServiceLoader.load(Parser.class, loader)) {
+					// skip services of the server class path
+					if(p.getClass().getClassLoader() == loader) {
+						found = p;
+						break;
+					}
+				}
+			} catch (RuntimeException | Error e) {
+				close();
+				throw e;
+			}
+			this.parser = Optional.ofNullable(found);
+		}
+		
+		/**
+		 * Closes the class loader to release the jar.
+		 */
+		public void close() {
+			try {
+				loader.close();
+			} catch (IOException e) {
+				System.err.println("Couldn't close parser class loader: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the loaded parser of the jar, reloads it if the jar changed and marks it as in use.
+	 * The class loader of a replaced parser is closed, as soon as it isn't in use anymore.
+	 * Every call must be followed by a call of {@link #release(LoadedParser)}.
+	 *
+	 * @param jar the jar path
+	 * @return the loaded parser
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private synchronized LoadedParser acquire(String jar) throws IOException {
+		Path path = Paths.get(jar);
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+		LoadedParser loaded = parsers.get(jar);
+		if(loaded == null || loaded.lastModified != lastModified) {
+			LoadedParser old = loaded;
+			loaded = new LoadedParser(path);
+			parsers.put(jar, loaded);
+			if(old != null) {
+				old.replaced = true;
+				if(old.users == 0) old.close();
+			}
+		}
+		++loaded.users;
+		return loaded;
+	}
+	
+	/**
+	 * Marks the loaded parser as not in use anymore and closes its class loader if it was replaced.
+	 *
+	 * @param loaded the loaded parser
+	 */
+	private synchronized void release(LoadedParser loaded) {
+		if(--loaded.users == 0 && loaded.replaced)
+			loaded.close();
+	}
+
+	/**
+	 * Checks if the jar contains a parser service, that supports the command.
+	 *
+	 * @param command the command
+	 * @return true, if the command can be executed in process
+	 */
+	public boolean supports(ParserPool.Command command) {
+		try {
+			if(command.args.isEmpty()) return false;
+			LoadedParser loaded = acquire(command.jar);
+			try {
+				return loaded.parser.isPresent() && loaded.parser.get().supports(command.args.get(0));
+			} finally {
+				release(loaded);
+			}
+		} catch (IOException | RuntimeException | LinkageError | ServiceConfigurationError e) {
+			System.err.println("Couldn't load parser " + command.jar + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Parses the content in a separate thread and gives the results to the handler.
+	 * The handler is called by the calling thread, so only the parser counts against the limits.
+	 * The parser is cancelled if it exceeds one of the limits or the handler fails.
+	 *
+	 * @param command the command, must be {@link #supports(ParserPool.Command) supported}
+	 * @param content the content to parse, is read by the parser thread and isn't closed
+	 * @param handler the handler for the results
+	 * @throws IOException if the parser failed or was cancelled
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public void parse(ParserPool.Command command, InputStream content, ResultHandler handler) throws IOException, InterruptedException {
+		LoadedParser loaded = acquire(command.jar);
+		try {
+			if(!loaded.parser.isPresent())
+				throw new IOException("No parser service in " + command.jar);
+			Parser parser = loaded.parser.get();
+			String cmd = command.args.get(0);
+			QueuedResultHandler results = new QueuedResultHandler(handler);
+			ParserAPI api = new ParserAPI(results);
+	
+			run("parser " + Paths.get(command.jar).getFileName() + " " + cmd, () -> {
+				Thread.currentThread().setContextClassLoader(loaded.loader);
+				parser.parse(cmd, new CloseShieldInputStream(content), api);
+				return null;
+			}, 0, api, results);
+		} finally {
+			release(loaded);
+		}
+	}
+
+	/**
+	 * Tests the content with the parsers of the given commands one after another in a separate thread.
+	 * Stops at the first parser, that accepts the content.
+	 * Commands without parser service are skipped.
+	 *
+	 * @param commands the test commands
+	 * @param content opens the content to test, it is opened again for every parser
+	 * @param timeoutSeconds seconds after that the testing is cancelled
+	 * @return the index of the first matching command or -1
+	 * @throws IOException if the testing was cancelled or the content couldn't be opened
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public int test(List<ParserPool.Command> commands, Callable<InputStream> content, int timeoutSeconds) throws IOException, InterruptedException {
+		List<LoadedParser> loaded = new ArrayList<>(commands.size());
+		try {
+			for(ParserPool.Command command : commands) {
+				loaded.add(supports(command) ? acquire(command.jar) : null);
+			}
+	
+			return run("parser test", () -> {
+				for(int i = 0; i < loaded.size(); ++i) {
+					LoadedParser lp = loaded.get(i);
+					if(lp == null || !lp.parser.isPresent()) continue;
+					Thread.currentThread().setContextClassLoader(lp.loader);
+					try (InputStream input = content.call()) {
+						if(lp.parser.get().test(input))
+							return i;
+					} catch (RuntimeException e) {
+						System.err.println("Parser test " + commands.get(i) + " failed: " + e);
+					}
+					if(Thread.interrupted()) break;
+				}
+				return -1;
+			}, TimeUnit.SECONDS.toNanos(timeoutSeconds), null, null);
+		} finally {
+			for(LoadedParser lp : loaded) {
+				if(lp != null) release(lp);
+			}
+		}
+	}
+
+	/**
+	 * Runs the task in a separate thread, until it finishes or exceeds one of the limits.
+	 * Meanwhile the queued results of the task are handled by the calling thread.
+	 *
+	 * @param <T> the result type
+	 * @param name the thread name
+	 * @param call the task
+	 * @param timeout the timeout in nanoseconds or 0 to only limit the cpu time and allocations
+	 * @param api the api to cancel or null
+	 * @param results the queued results of the task or null
+	 * @return the result of the task
+	 * @throws IOException if the task or the handling of its results failed or the task was cancelled
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private <T> T run(String name, Callable<T> call, long timeout, @Nullable ParserAPI api, 
+			@Nullable QueuedResultHandler results) throws IOException, InterruptedException {
+		FutureTask<T> task = new FutureTask<>(call);
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+
+		long start = System.nanoTime();
+		thread.start();
+		try {
+			while(true) {
+				try {
+					if(results == null)
+						return task.get(CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+					results.handle(CHECK_INTERVAL);
+					T result = task.get(0, TimeUnit.MILLISECONDS);
+					// the finished task doesn't add results anymore
+					results.handleAll();
+					return result;
+				} catch (TimeoutException e) {
+					String exceeded = timeout > 0 && System.nanoTime() - start > timeout ? "timeout" : checkLimits(thread);
+					if(exceeded != null) {
+						cancel(thread, task, api);
+						throw new IOException("Parser cancelled: " + exceeded);
+					}
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+				}
+			}
+		} catch (InterruptedException | IOException | RuntimeException e) {
+			// stops the parser if handling its results failed
+			cancel(thread, task, api);
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks the cpu time and allocation limits of the parser thread.
+	 *
+	 * @param thread the parser thread
+	 * @return a description of the exceeded limit or null
+	 */
+	@CheckForNull
+	private String checkLimits(Thread thread) {
+		long cpuTime = threads.isThreadCpuTimeEnabled() ? threads.getThreadCpuTime(thread.getId()) : -1;
+		if(cpuTime > maxCpuTime)
+			return "cpu time limit";
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			long allocated = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread.getId());
+			if(allocated > maxAllocated)
+				return "allocation limit";
+		}
+		return null;
+	}
+
+	/**
+	 * Cancels the parser and waits for the thread to stop.
+	 *
+	 * @param thread the parser thread
+	 * @param task the task
+	 * @param api the api or null
+	 */
+	private static void cancel(Thread thread, FutureTask<?> task, @Nullable ParserAPI api) {
+		if(api != null)
+			api.cancel();
+		thread.interrupt();
+		try {
+			task.get(CANCEL_GRACE, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// threads can't be killed safely, let it run in the background
+			thread.setPriority(Thread.MIN_PRIORITY);
+			System.err.println("Parser thread '" + thread.getName() + "' doesn't stop");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {}
+	}
+
+	/**
+	 * A call of a result handler.
+	 */
+	@FunctionalInterface
+	private interface HandlerCall {
+		
+		/**
+		 * Calls the handler.
+		 *
+		 * @param handler the handler
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void call(ResultHandler handler) throws IOException;
+	}
+
+	/**
+	 * Result handler of the parser thread, that queues the results for the thread running the parser.
+	 * The parser blocks if it is too far ahead of the handling of its results.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class QueuedResultHandler implements ResultHandler {
+		
+		/** The handler of the results. */
+		private final ResultHandler handler;
+		
+		/** The queued results. */
+		private final BlockingQueue<HandlerCall> queue = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+
+		/**
+		 * Instantiates a new queued result handler.
+		 *
+		 * @param handler the handler of the results
+		 */
+		public QueuedResultHandler(ResultHandler handler) {
+			this.handler = handler;
+		}
+		
+		/**
+		 * Queues a result.
+		 *
+		 * @param call the call of the handler
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		private void put(HandlerCall call) throws IOException {
+			try {
+				queue.put(call);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Parser cancelled");
+			}
+		}
+		
+		/**
+		 * Handles the queued results for at most the given time.
+		 *
+		 * @param millis milliseconds to handle and wait for results
+		 * @throws IOException if the handler failed
+		 * @throws InterruptedException the interrupted exception
+		 */
+		public void handle(long millis) throws IOException, InterruptedException {
+			long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+			long remaining;
+			HandlerCall call;
+			while((remaining = end - System.nanoTime()) > 0 
+					&& (call = queue.poll(remaining, TimeUnit.NANOSECONDS)) != null) {
+				call.call(handler);
+			}
+		}
+		
+		/**
+		 * Handles the queued results without waiting.
+		 *
+		 * @throws IOException if the handler failed
+		 */
+		public void handleAll() throws IOException {
+			HandlerCall call;
+			while((call = queue.poll()) != null) {
+				call.call(handler);
+			}
+		}
+
+		/**
+		 * Triples.
+		 *
+		 * @param model the model
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void triples(Model model) throws IOException {
+			put(h -> h.triples(model));
+		}
+
+		/**
+		 * Geo feature.
+		 *
+		 * @param feature the feature
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void geoFeature(JSONObject feature) throws IOException {
+			put(h -> h.geoFeature(feature));
+		}
+
+		/**
+		 * Start time log.
+		 *
+		 * @param timelog the timelog
+		 * @param valueInfos the value infos
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void startTimeLog(TimeLog timelog, List<? extends ValueInfo> valueInfos) throws IOException {
+			put(h -> h.startTimeLog(timelog, valueInfos));
+		}
+
+		/**
+		 * Time log entry.
+		 *
+		 * @param time the time
+		 * @param latitude the latitude
+		 * @param longitude the longitude
+		 * @param altitude the altitude
+		 * @param values the values
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void timeLogEntry(Instant time, double latitude, double longitude, double altitude, Long[] values) throws IOException {
+			// parsers may reuse the array
+			Long[] copy = values.clone();
+			put(h -> h.timeLogEntry(time, latitude, longitude, altitude, copy));
+		}
+
+		/**
+		 * End time log.
+		 *
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void endTimeLog() throws IOException {
+			put(ResultHandler::endTimeLog);
+		}
+
+		/**
+		 * Start grid.
+		 *
+		 * @param grid the grid
+		 * @param rowCount the row count
+		 * @param columnCount the column count
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void startGrid(Grid grid, int rowCount, int columnCount) throws IOException {
+			put(h -> h.startGrid(grid, rowCount, columnCount));
+		}
+
+		/**
+		 * Start grid value.
+		 *
+		 * @param info the info
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void startGridValue(ValueInfo info) throws IOException {
+			put(h -> h.startGridValue(info));
+		}
+
+		/**
+		 * Grid row.
+		 *
+		 * @param values the values
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void gridRow(Long[] values) throws IOException {
+			Long[] copy = values.clone();
+			put(h -> h.gridRow(copy));
+		}
+
+		/**
+		 * End grid.
+		 *
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void endGrid() throws IOException {
+			put(ResultHandler::endGrid);
+		}
+
+		/**
+		 * Finish.
+		 *
+		 * @param meta the meta
+		 * @throws IOException if the parser was cancelled while waiting
+		 */
+		@Override
+		public void finish(JSONObject meta) throws IOException {
+			put(h -> h.finish(meta));
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.CheckForNull;
+
+import org.json.JSONObject;
+
+import de.sdsd.projekt.api.ParserWorker;
+
+/**
+ * Pool of long-lived parser worker processes, one set of workers per parser jar.
+ * Each worker executes one job at a time and is recycled after a number of jobs or when its heap gets too big.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see ParserWorker
+ */
+public class ParserPool implements Closeable {
+
+	/** The executor. */
+	private final ScheduledExecutorService executor;
+
+	/** The timeout seconds. */
+	private final int workersPerParser, maxJobs, timeoutSeconds;
+
+	/** The max heap. */
+	private final long maxHeap;
+
+	/** The worker sets. */
+	private final ConcurrentMap<String, WorkerSet> workerSets = new ConcurrentHashMap<>();
+
+	/**
+	 * Instantiates a new parser pool.
+	 *
+	 * @param executor executor for the job timeouts
+	 * @param settings the pool settings
+	 * @param timeoutSeconds seconds after that a job is killed
+	 */
+	public ParserPool(ScheduledExecutorService executor, JSONObject settings, int timeoutSeconds) {
+		this.executor = executor;
+		this.workersPerParser = Math.max(1, settings.optInt("workers", 2));
+		this.maxJobs = Math.max(1, settings.optInt("maxJobs", 100));
+		this.maxHeap = settings.optLong("maxHeapMb", 512) * 1024 * 1024;
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	/**
+	 * A parse command split into the worker command and the job arguments.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public static class Command {
+
+		/** The parser jar. */
+		public final String jar;
+
+		/** The worker command. */
+		public final List<String> workerCommand;
+
+		/** The args. */
+		public final List<String> args;
+
+		/**
+		 * Instantiates a new command.
+		 *
+		 * @param jar the parser jar
+		 * @param workerCommand the worker command
+		 * @param args the args
+		 */
+		private Command(String jar, List<String> workerCommand, List<String> args) {
+			this.jar = jar;
+			this.workerCommand = Collections.unmodifiableList(workerCommand);
+			this.args = Collections.unmodifiableList(args);
+		}
+
+		/**
+		 * Creates the worker command for parse commands of the form "java [options] -jar parser.jar args".
+		 *
+		 * @param command the parse command
+		 * @return the command or null if the parse command can't be executed in a worker
+		 */
+		@CheckForNull
+		public static Command parse(String command) {
+			List<String> tokens = Arrays.asList(command.trim().split(" +"));
+			int jar = tokens.indexOf("-jar");
+			if(jar < 1 || jar + 1 >= tokens.size()) return null;
+			String java = tokens.get(0);
+			if(!java.endsWith("java") && !java.endsWith("java.exe")) return null;
+
+			String jarPath = tokens.get(jar + 1);
+			List<String> worker = new ArrayList<>(tokens.subList(0, jar));
+			worker.add("-cp");
+			worker.add(jarPath);
+			worker.add(ParserWorker.class.getName());
+			worker.add(jarPath);
+			return new Command(jarPath, worker, tokens.subList(jar + 2, tokens.size()));
+		}
+
+		/**
+		 * Gets the key of the worker set.
+		 *
+		 * @return the key
+		 */
+		String key() {
+			return String.join(" ", workerCommand);
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 */
+		@Override
+		public String toString() {
+			return key() + " " + String.join(" ", args);
+		}
+	}
+
+	/**
+	 * A running worker process.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class Worker {
+
+		/** The process. */
+		private final Process process;
+
+		/** The in. */
+		private final DataOutputStream in;
+
+		/** The out. */
+		private final DataInputStream out;
+
+		/** The jobs. */
+		private int jobs = 0;
+
+		/**
+		 * Starts a new worker.
+		 *
+		 * @param command the worker command
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public Worker(List<String> command) throws IOException {
+			this.process = new ProcessBuilder(command).redirectError(Redirect.INHERIT).start();
+			this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		}
+
+		/**
+		 * Checks if is alive.
+		 *
+		 * @return true, if is alive
+		 */
+		public boolean isAlive() {
+			return process.isAlive();
+		}
+
+		/**
+		 * Kill.
+		 */
+		public void kill() {
+			process.destroyForcibly();
+		}
+
+		/**
+		 * Lets the worker exit after its current job.
+		 */
+		public void shutdown() {
+			try {
+				ParserWorker.writeShutdown(in);
+				in.close();
+			} catch (IOException e) {
+				kill();
+			}
+		}
+	}
+
+	/**
+	 * The workers of one parser jar.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class WorkerSet {
+
+		/** The command. */
+		private final List<String> command;
+
+		/** The idle workers. */
+		private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+
+		/** The permits for running jobs. */
+		private final Semaphore permits = new Semaphore(workersPerParser, true);
+
+		/**
+		 * Instantiates a new worker set.
+		 *
+		 * @param command the command
+		 */
+		public WorkerSet(List<String> command) {
+			this.command = command;
+		}
+
+		/**
+		 * Waits for a free slot and returns an idle or new worker.
+		 *
+		 * @return the worker
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 * @throws InterruptedException the interrupted exception
+		 */
+		public Worker acquire() throws IOException, InterruptedException {
+			permits.acquire();
+			try {
+				Worker worker;
+				while((worker = idle.poll()) != null) {
+					if(worker.isAlive()) return worker;
+				}
+				return new Worker(command);
+			} catch(IOException | RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the worker to the idle workers or terminates it.
+		 *
+		 * @param worker the worker
+		 * @param reuse whether the worker can be reused
+		 */
+		public void release(Worker worker, boolean reuse) {
+			if(reuse && worker.isAlive())
+				idle.offer(worker);
+			else if(worker.isAlive())
+				worker.shutdown();
+			permits.release();
+		}
+
+		/**
+		 * Terminates all idle workers.
+		 */
+		public void close() {
+			Worker worker;
+			while((worker = idle.poll()) != null) {
+				worker.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * The result of a job.
+	 * Closing the result gives the worker back to the pool.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class WorkerResult extends ParserWorker.ResultInputStream {
+
+		/** The worker set. */
+		private final WorkerSet set;
+
+		/** The worker. */
+		private final Worker worker;
+
+		/** The timeout. */
+		private final ParserTimeoutInputStream timeout;
+
+		/** The closed. */
+		private boolean closed = false;
+
+		/**
+		 * Instantiates a new worker result.
+		 *
+		 * @param set the set
+		 * @param worker the worker
+		 * @param timeout the output of the worker with the timeout
+		 */
+		public WorkerResult(WorkerSet set, Worker worker, ParserTimeoutInputStream timeout) {
+			super(new DataInputStream(timeout));
+			this.set = set;
+			this.worker = worker;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * Skips the rest of the result and gives the worker back to the pool.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		@Override
+		public void close() throws IOException {
+			if(closed) return;
+			closed = true;
+			boolean reuse = false;
+			try {
+				super.close();
+				if(getStatus() != ParserWorker.STATUS_OK)
+					System.err.println("Parser worker job failed: " + getError());
+				reuse = getStatus() != ParserWorker.STATUS_FATAL
+						&& ++worker.jobs < maxJobs
+						&& getUsedHeap() < maxHeap;
+			} finally {
+				timeout.stop();
+				if(!reuse && !isEnd())
+					worker.kill();
+				set.release(worker, reuse);
+			}
+		}
+	}
+
+	/**
+	 * Executes the parse job in a worker.
+	 * The job is killed if the reader waits longer than the timeout for the result in total.
+	 * The time the reader needs to process the result doesn't count.
+	 *
+	 * @param command the command
+	 * @param content the content to parse, is copied to the worker and isn't closed
+	 * @return the parser result, must be closed to give the worker back to the pool
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public InputStream execute(Command command, InputStream content) throws IOException, InterruptedException {
+		WorkerSet set = workerSets.computeIfAbsent(command.key(), k -> new WorkerSet(command.workerCommand));
+		Worker worker = set.acquire();
+		ParserTimeoutInputStream timeout = new ParserTimeoutInputStream(worker.out, executor, timeoutSeconds, worker::kill);
+		try {
+			ParserWorker.writeJob(worker.in, command.args, content);
+		} catch(IOException e) {
+			timeout.stop();
+			worker.kill();
+			set.release(worker, false);
+			throw e;
+		}
+		return new WorkerResult(set, worker, timeout);
+	}
+
+	/**
+	 * Terminates all idle workers.
+	 */
+	@Override
+	public void close() {
+		for(WorkerSet set : workerSets.values()) {
+			set.close();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output of a parser, that kills the parser if it needs too long to produce its result.
+ * Only the time, the reader waits for data of the parser, counts against the timeout.
+ * The time, the reader needs to insert the data it has read, doesn't count,
+ * so that a parser isn't killed because of the back pressure of slow inserts.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class ParserTimeoutInputStream extends FilterInputStream {
+
+	/** The timeout in nanoseconds. */
+	private final long timeout;
+
+	/** Kills the parser. */
+	private final Runnable kill;
+
+	/** The periodic timeout check. */
+	private final ScheduledFuture<?> watchdog;
+
+	/** The nanoseconds, the reader waited for data in completed reads. */
+	private volatile long waited = 0;
+
+	/** The start of the current read in nanoseconds, valid if reading. */
+	private volatile long readStart = 0;
+
+	/** Whether the reader currently waits for data. */
+	private volatile boolean reading = false;
+
+	/** Whether the parser was killed. */
+	private volatile boolean killed = false;
+
+	/**
+	 * Instantiates a new parser timeout input stream.
+	 *
+	 * @param in the output of the parser
+	 * @param executor executor for the timeout checks
+	 * @param timeoutSeconds seconds the reader may wait for data in total before the parser is killed
+	 * @param kill kills the parser
+	 */
+	public ParserTimeoutInputStream(InputStream in, ScheduledExecutorService executor, int timeoutSeconds, Runnable kill) {
+		super(in);
+		this.timeout = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		this.kill = kill;
+		this.watchdog = executor.scheduleWithFixedDelay(this::check, 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Kills the parser if the waiting time exceeds the timeout.
+	 */
+	private void check() {
+		long total = waited;
+		if(reading) total += System.nanoTime() - readStart;
+		if(total > timeout && !killed) {
+			killed = true;
+			System.err.println("Parser killed after waiting " + TimeUnit.NANOSECONDS.toSeconds(total) + "s for its result");
+			kill.run();
+			watchdog.cancel(false);
+		}
+	}
+
+	/**
+	 * Starts measuring a read.
+	 */
+	private void begin() {
+		readStart = System.nanoTime();
+		reading = true;
+	}
+
+	/**
+	 * Stops measuring a read.
+	 */
+	private void end() {
+		reading = false;
+		waited += System.nanoTime() - readStart;
+	}
+
+	/**
+	 * Read.
+	 *
+	 * @return the byte or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public int read() throws IOException {
+		begin();
+		try {
+			return super.read();
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Read.
+	 *
+	 * @param b the buffer
+	 * @param off the offset
+	 * @param len the max length
+	 * @return the count of read bytes or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		begin();
+		try {
+			return super.read(b, off, len);
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Skip.
+	 *
+	 * @param n the count of bytes to skip
+	 * @return the count of skipped bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		begin();
+		try {
+			return super.skip(n);
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Checks if the parser was killed because of the timeout.
+	 *
+	 * @return true, if the parser was killed
+	 */
+	public boolean isKilled() {
+		return killed;
+	}
+
+	/**
+	 * Stops the timeout checks without closing the stream.
+	 */
+	public void stop() {
+		watchdog.cancel(false);
+	}
+
+	/**
+	 * Stops the timeout checks and closes the stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		stop();
+		super.close();
+	}
+}
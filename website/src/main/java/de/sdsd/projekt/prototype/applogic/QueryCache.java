@@ -0,0 +1,545 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.expr.ExprWalker;
+import org.apache.jena.sparql.modify.request.Target;
+import org.apache.jena.sparql.modify.request.UpdateBinaryOp;
+import org.apache.jena.sparql.modify.request.UpdateCreate;
+import org.apache.jena.sparql.modify.request.UpdateData;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateDropClear;
+import org.apache.jena.sparql.modify.request.UpdateLoad;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.modify.request.UpdateMove;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementService;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+import org.json.JSONObject;
+
+/**
+ * Cache for the results of select queries to the triplestore.
+ * Results are keyed by the normalized query text and the endpoint and remember the named graphs the query reads.
+ * Every change of a graph gets a timestamp of a logical clock, a result is only valid,
+ * if none of its graphs changed since the query was sent.
+ * Queries, that read the default graph or variable graphs, depend on all graphs.
+ * The clock is kept even if the cache is disabled, so it can be used to validate other derived data.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class QueryCache {
+
+	/** The max count of cached results, 0 disables the cache. */
+	private final int maxEntries;
+
+	/** The max count of rows of a cached result, bigger results aren't cached. */
+	private final int maxRows;
+
+	/** The nanoseconds a result is cached at most. */
+	private final long ttlNanos;
+
+	/** The cached results in least recently used order. */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** The logical clock for graph changes. */
+	private final AtomicLong clock = new AtomicLong();
+
+	/** The time of the last change by graph. */
+	private final ConcurrentHashMap<String, Long> graphChanged = new ConcurrentHashMap<>();
+
+	/** The time of the last change of any graph. */
+	private final AtomicLong anyChanged = new AtomicLong();
+
+	/** The time of the last change, that may have touched every graph. */
+	private final AtomicLong allChanged = new AtomicLong();
+
+	/** The statistics. */
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), stores = new LongAdder(),
+			tooBig = new LongAdder(), evictions = new LongAdder(), invalidations = new LongAdder();
+
+	/**
+	 * Instantiates a new query cache.
+	 *
+	 * @param settings the cache settings
+	 */
+	public QueryCache(JSONObject settings) {
+		this.maxEntries = settings.optInt("maxEntries", 1000);
+		this.maxRows = settings.optInt("maxRows", 10000);
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(settings.optLong("ttlSeconds", 300));
+		this.entries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+			private static final long serialVersionUID = 3424917163489557398L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if(size() <= QueryCache.this.maxEntries) return false;
+				evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the cache is enabled.
+	 *
+	 * @return true, if is enabled
+	 */
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Creates the key of a query.
+	 * It must be created before the query is sent, because it remembers the time of the request.
+	 *
+	 * @param query the query
+	 * @param endpoint the sparql query endpoint
+	 * @param reasoning whether the endpoint uses reasoning, the schema may be in any graph
+	 * @return the key or null, if the results of the query can't be cached
+	 */
+	@CheckForNull
+	public Key key(Query query, String endpoint, boolean reasoning) {
+		if(!isEnabled() || !query.isSelectType()) return null;
+		GraphCollector graphs = new GraphCollector();
+		if(query.getQueryPattern() != null)
+			ElementWalker.walk(query.getQueryPattern(), graphs);
+		if(graphs.service) return null;
+
+		if(reasoning || query.getGraphURIs().isEmpty()) // reads the default graph of the store
+			graphs.any = true;
+		else
+			graphs.graphs.addAll(query.getGraphURIs());
+		if(!query.getNamedGraphURIs().isEmpty())
+			graphs.graphs.addAll(query.getNamedGraphURIs());
+		else if(graphs.variable)
+			graphs.any = true;
+		return new Key(endpoint + '\n' + query.serialize(), graphs.any ? null : graphs.graphs, clock.get());
+	}
+
+	/**
+	 * Gets the cached results of a query.
+	 *
+	 * @param key the key
+	 * @return the results or null, if there are no valid results
+	 */
+	@CheckForNull
+	public synchronized List<QuerySolution> get(Key key) {
+		Entry entry = entries.get(key.query);
+		if(entry != null && (System.nanoTime() - entry.created > ttlNanos || !isValid(entry.graphs, entry.time))) {
+			entries.remove(key.query);
+			entry = null;
+		}
+		if(entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.rows;
+	}
+
+	/**
+	 * Caches the results of a query.
+	 * Results of a query, that was sent before one of its graphs changed, are ignored.
+	 *
+	 * @param key the key, that was created before the query was sent
+	 * @param rows the results
+	 */
+	public synchronized void put(Key key, List<QuerySolution> rows) {
+		if(!isValid(key.graphs, key.time)) return;
+		entries.put(key.query, new Entry(Collections.unmodifiableList(rows), key.graphs, key.time));
+		stores.increment();
+	}
+
+	/**
+	 * Records the results while they are read and caches them, if they are read completely.
+	 *
+	 * @param key the key, that was created before the query was sent
+	 * @param results the results
+	 * @return the recording iterator
+	 */
+	public Iterator<QuerySolution> record(Key key, Iterator<QuerySolution> results) {
+		return new Iterator<QuerySolution>() {
+			private List<QuerySolution> rows = new ArrayList<>();
+
+			@Override
+			public boolean hasNext() {
+				boolean next = results.hasNext();
+				if(!next && rows != null) {
+					put(key, rows);
+					rows = null;
+				}
+				return next;
+			}
+
+			@Override
+			public QuerySolution next() {
+				QuerySolution qs = results.next();
+				if(rows != null) {
+					if(rows.size() < maxRows) {
+						qs = copy(qs);
+						rows.add(qs);
+					} else {
+						tooBig.increment();
+						rows = null;
+					}
+				}
+				return qs;
+			}
+		};
+	}
+
+	/**
+	 * Copies a solution, so it doesn't depend on the response it was parsed from.
+	 *
+	 * @param qs the solution
+	 * @return the copy
+	 */
+	private static QuerySolution copy(QuerySolution qs) {
+		QuerySolutionMap copy = new QuerySolutionMap();
+		Iterator<String> it = qs.varNames();
+		while(it.hasNext()) {
+			String var = it.next();
+			copy.add(var, qs.get(var));
+		}
+		return copy;
+	}
+
+	/**
+	 * Checks if results are still valid.
+	 *
+	 * @param graphs the graphs the query reads or null for all graphs
+	 * @param time the time the query was sent
+	 * @return true, if none of the graphs changed since the query was sent
+	 */
+	private boolean isValid(@Nullable Set<String> graphs, long time) {
+		return graphs != null ? !isChanged(graphs, time) : anyChanged.get() <= time;
+	}
+
+	/**
+	 * Gets the current time of the logical clock.
+	 * Must be read before the data, that depends on the graphs, is read.
+	 *
+	 * @return the time
+	 */
+	public long now() {
+		return clock.get();
+	}
+
+	/**
+	 * Checks if one of the graphs changed since the time.
+	 *
+	 * @param graphs the named graphs
+	 * @param time the time of the logical clock, when the data was read
+	 * @return true, if one of the graphs changed
+	 */
+	public boolean isChanged(Collection<String> graphs, long time) {
+		if(allChanged.get() > time) return true;
+		for(String g : graphs) {
+			if(graphChanged.getOrDefault(g, 0L) > time) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Invalidates the results, that depend on the graph.
+	 * Must be called after the change is completed.
+	 *
+	 * @param graphURI the changed graph
+	 */
+	public void invalidate(String graphURI) {
+		long time = clock.incrementAndGet();
+		graphChanged.merge(graphURI, time, Math::max);
+		anyChanged.accumulateAndGet(time, Math::max);
+		invalidations.increment();
+	}
+
+	/**
+	 * Invalidates the results, that depend on the graphs changed by the update.
+	 * Must be called after the update is completed.
+	 *
+	 * @param update the update
+	 */
+	public void invalidate(UpdateRequest update) {
+		Set<String> graphs = changedGraphs(update);
+		if(graphs == null)
+			invalidateAll();
+		else
+			graphs.forEach(this::invalidate);
+	}
+
+	/**
+	 * Invalidates all results.
+	 */
+	public void invalidateAll() {
+		long time = clock.incrementAndGet();
+		allChanged.accumulateAndGet(time, Math::max);
+		anyChanged.accumulateAndGet(time, Math::max);
+		invalidations.increment();
+	}
+
+	/**
+	 * Gets the named graphs, that are changed by the update.
+	 *
+	 * @param update the update
+	 * @return the graphs or null, if the update may change the default graph or any graph
+	 */
+	@CheckForNull
+	private static Set<String> changedGraphs(UpdateRequest update) {
+		Set<String> graphs = new HashSet<>();
+		for(Update op : update.getOperations()) {
+			if(op instanceof UpdateModify) {
+				UpdateModify modify = (UpdateModify) op;
+				List<Quad> quads = new ArrayList<>(modify.getDeleteQuads());
+				quads.addAll(modify.getInsertQuads());
+				if(!addGraphs(graphs, quads, modify.getWithIRI())) return null;
+			} else if(op instanceof UpdateData) {
+				if(!addGraphs(graphs, ((UpdateData) op).getQuads(), null)) return null;
+			} else if(op instanceof UpdateDeleteWhere) {
+				if(!addGraphs(graphs, ((UpdateDeleteWhere) op).getQuads(), null)) return null;
+			} else if(op instanceof UpdateDropClear) {
+				if(!addGraph(graphs, ((UpdateDropClear) op).getTarget())) return null;
+			} else if(op instanceof UpdateBinaryOp) {
+				UpdateBinaryOp binary = (UpdateBinaryOp) op;
+				if(!addGraph(graphs, binary.getDest())) return null;
+				if(op instanceof UpdateMove && !addGraph(graphs, binary.getSrc())) return null;
+			} else if(op instanceof UpdateLoad) {
+				if(!addGraph(graphs, ((UpdateLoad) op).getDest())) return null;
+			} else if(!(op instanceof UpdateCreate)) // creates an empty graph only
+				return null;
+		}
+		return graphs;
+	}
+
+	/**
+	 * Adds the graphs of the quads.
+	 *
+	 * @param graphs the graphs
+	 * @param quads the quads
+	 * @param with the graph of quads without a graph or null
+	 * @return false, if a quad is in the default graph or a variable graph
+	 */
+	private static boolean addGraphs(Set<String> graphs, List<Quad> quads, @Nullable Node with) {
+		for(Quad quad : quads) {
+			Node g = quad.getGraph();
+			if(g == null || Quad.isDefaultGraph(g))
+				g = with;
+			if(!addGraph(graphs, g)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the graph of the target.
+	 *
+	 * @param graphs the graphs
+	 * @param target the target
+	 * @return false, if the target is the default graph or all graphs
+	 */
+	private static boolean addGraph(Set<String> graphs, Target target) {
+		return target.isOneNamedGraph() && addGraph(graphs, target.getGraph());
+	}
+
+	/**
+	 * Adds the graph.
+	 *
+	 * @param graphs the graphs
+	 * @param graph the graph
+	 * @return false, if the graph isn't a named graph
+	 */
+	private static boolean addGraph(Set<String> graphs, @Nullable Node graph) {
+		if(graph == null || !graph.isURI() || Quad.isDefaultGraph(graph)) return false;
+		graphs.add(graph.getURI());
+		return true;
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Gets the statistics.
+	 *
+	 * @return the statistics
+	 */
+	public JSONObject getStatistics() {
+		long hits = this.hits.sum(), misses = this.misses.sum();
+		int size;
+		synchronized (this) {
+			size = entries.size();
+		}
+		return new JSONObject()
+				.put("enabled", isEnabled())
+				.put("size", size)
+				.put("maxEntries", maxEntries)
+				.put("hits", hits)
+				.put("misses", misses)
+				.put("hitRate", hits + misses > 0 ? hits / (double) (hits + misses) : 0.)
+				.put("stored", stores.sum())
+				.put("tooBig", tooBig.sum())
+				.put("evictions", evictions.sum())
+				.put("invalidations", invalidations.sum());
+	}
+
+	/**
+	 * The key of a query.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public static class Key {
+
+		/** The normalized query text with the endpoint. */
+		private final String query;
+
+		/** The graphs the query reads or null for all graphs. */
+		@CheckForNull
+		private final Set<String> graphs;
+
+		/** The time of the request. */
+		private final long time;
+
+		/**
+		 * Instantiates a new key.
+		 *
+		 * @param query the normalized query text with the endpoint
+		 * @param graphs the graphs the query reads or null for all graphs
+		 * @param time the time of the request
+		 */
+		private Key(String query, @Nullable Set<String> graphs, long time) {
+			this.query = query;
+			this.graphs = graphs;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * A cached result.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class Entry {
+
+		/** The rows. */
+		final List<QuerySolution> rows;
+
+		/** The graphs the query reads or null for all graphs. */
+		@CheckForNull
+		final Set<String> graphs;
+
+		/** The time of the request. */
+		final long time;
+
+		/** The creation time in nanoseconds. */
+		final long created = System.nanoTime();
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param rows the rows
+		 * @param graphs the graphs the query reads or null for all graphs
+		 * @param time the time of the request
+		 */
+		Entry(List<QuerySolution> rows, @Nullable Set<String> graphs, long time) {
+			this.rows = rows;
+			this.graphs = graphs;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Collects the graphs, that are read in graph patterns.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class GraphCollector extends ElementVisitorBase {
+
+		/** The named graphs. */
+		final Set<String> graphs = new HashSet<>();
+
+		/** Whether a graph pattern with a variable is used. */
+		boolean variable = false;
+
+		/** Whether the query reads the default graph. */
+		boolean any = false;
+
+		/** Whether the query calls a service, that can't be invalidated. */
+		boolean service = false;
+
+		@Override
+		public void visit(ElementNamedGraph el) {
+			if(el.getGraphNameNode().isURI())
+				graphs.add(el.getGraphNameNode().getURI());
+			else
+				variable = true;
+		}
+
+		@Override
+		public void visit(ElementService el) {
+			service = true;
+		}
+
+		@Override
+		public void visit(ElementSubQuery el) {
+			Element pattern = el.getQuery().getQueryPattern();
+			if(pattern != null)
+				ElementWalker.walk(pattern, this);
+		}
+
+		@Override
+		public void visit(ElementFilter el) {
+			walk(el.getExpr());
+		}
+
+		@Override
+		public void visit(ElementBind el) {
+			walk(el.getExpr());
+		}
+
+		/**
+		 * Walks into the patterns of EXISTS and NOT EXISTS.
+		 *
+		 * @param expr the expression
+		 */
+		private void walk(Expr expr) {
+			ExprWalker.walk(new ExprVisitorBase() {
+				@Override
+				public void visit(ExprFunctionOp funcOp) {
+					if(funcOp.getElement() != null)
+						ElementWalker.walk(funcOp.getElement(), GraphCollector.this);
+				}
+			}, expr);
+		}
+	}
+
+}
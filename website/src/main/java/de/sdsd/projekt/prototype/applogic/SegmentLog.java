@@ -0,0 +1,177 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+import de.sdsd.projekt.prototype.data.Codec;
+import de.sdsd.projekt.prototype.data.File;
+import de.sdsd.projekt.prototype.data.FileChunk;
+import de.sdsd.projekt.prototype.data.FileContent;
+
+/**
+ * Append-only log of messages per file, stored in a {@link ChunkStore}.
+ * Each message is one record of length, timestamp and payload.
+ * The manifest contains a sparse index with the first record of each chunk, to read the records since a timestamp.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+class SegmentLog {
+
+	/** The Constant TIME. */
+	private static final String INDEX = "index", CHUNK = "chunk", OFFSET = "offset", TIME = "time";
+
+	/** The size of the record header: payload length and timestamp. */
+	private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+	/** The store. */
+	private final ChunkStore store;
+
+	/** The codec of the chunks. */
+	private final Codec codec;
+
+	/**
+	 * Instantiates a new segment log.
+	 *
+	 * @param store the store
+	 * @param codec the codec of the chunks
+	 */
+	SegmentLog(ChunkStore store, Codec codec) {
+		this.store = store;
+		this.codec = codec;
+	}
+
+	/**
+	 * Appends a record.
+	 * The timestamps of the records must be ascending.
+	 *
+	 * @param file the file
+	 * @param time the timestamp
+	 * @param payload the payload
+	 * @return the size of the log
+	 */
+	long append(File file, Instant time, byte[] payload) {
+		FileContent content = store.find(FileContent.filter(file), file);
+		if(content == null)
+			content = store.store(file, new byte[0], codec);
+		long offset = content.getSize();
+
+		byte[] record = ByteBuffer.allocate(HEADER_SIZE + payload.length)
+				.putInt(payload.length)
+				.putLong(time.toEpochMilli())
+				.put(payload)
+				.array();
+		long size = store.append(content, file, record);
+
+		// index the first record, that starts in a chunk
+		int chunk = (int) (offset / FileChunk.CHUNK_SIZE);
+		store.manifests.updateOne(Filters.and(FileContent.filter(file), Filters.ne(INDEX + "." + CHUNK, chunk)),
+				Updates.push(INDEX, new Document(CHUNK, chunk)
+						.append(OFFSET, offset)
+						.append(TIME, Date.from(time))));
+		return size;
+	}
+
+	/**
+	 * Gets the size of the log.
+	 *
+	 * @param file the file
+	 * @return the size in bytes, 0 if there is no log
+	 */
+	long getSize(File file) {
+		FileContent content = store.find(FileContent.filter(file), file);
+		return content != null ? content.getSize() : 0;
+	}
+
+	/**
+	 * Reads the payloads of the records.
+	 * Uses the sparse index to skip the chunks before the given timestamp.
+	 *
+	 * @param file the file
+	 * @param since the min timestamp of the records or null for all records
+	 * @return the payloads in the order they were appended
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	List<byte[]> read(File file, @Nullable Instant since) throws IOException {
+		List<byte[]> payloads = new ArrayList<>();
+		Document doc = store.manifests.find(FileContent.filter(file)).first();
+		if(doc == null) return payloads;
+		FileContent content = new FileContent(doc);
+
+		int chunk = 0;
+		long offset = 0;
+		List<?> index = doc.get(INDEX, List.class);
+		if(since != null && index != null) {
+			for(Object o : index) {
+				Document entry = (Document) o;
+				if(!entry.getDate(TIME).toInstant().isBefore(since)) break;
+				chunk = entry.getInteger(CHUNK);
+				offset = ((Number) entry.get(OFFSET)).longValue();
+			}
+		}
+
+		try(DataInputStream in = new DataInputStream(store.open(content, chunk))) {
+			long skip = offset - (long) chunk * FileChunk.CHUNK_SIZE;
+			if(in.skip(skip) != skip) throw new EOFException("Segment log of file " + file.getId().toHexString() + " is truncated");
+			while(true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				Instant time = Instant.ofEpochMilli(in.readLong());
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				if(since == null || !time.isBefore(since))
+					payloads.add(payload);
+			}
+		}
+		return payloads;
+	}
+
+	/**
+	 * Opens the raw log.
+	 *
+	 * @param file the file
+	 * @return the input stream or null if there is no log
+	 */
+	@Nullable
+	InputStream open(File file) {
+		FileContent content = store.find(FileContent.filter(file), file);
+		return content != null ? store.open(content, 0) : null;
+	}
+
+	/**
+	 * Deletes the log.
+	 *
+	 * @param file the file
+	 */
+	void delete(File file) {
+		store.delete(FileContent.filter(file), file.getId());
+	}
+
+	/**
+	 * Tidy up.
+	 *
+	 * @param fileIds the file ids
+	 */
+	void tidyUp(Set<ObjectId> fileIds) {
+		store.tidyUp(fileIds);
+	}
+}
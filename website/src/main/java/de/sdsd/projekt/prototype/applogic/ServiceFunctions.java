@@ -17,6 +17,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 
+import de.sdsd.projekt.prototype.data.PermissionIndex;
 import de.sdsd.projekt.prototype.data.Permissions;
 import de.sdsd.projekt.prototype.data.SDSDException;
 import de.sdsd.projekt.prototype.data.Service;
@@ -41,6 +42,9 @@ public class ServiceFunctions {
 	public final SDSDEvent<Service, ServiceInstance> instanceChanged = new SDSDEvent<>(), 
 			instanceCanceled = new SDSDEvent<>(),
 			instanceStopped = new SDSDEvent<>();
+	
+	/** The index of the service permissions and the files they give access to. */
+	public final PermissionIndex permissions;
 
 	/**
 	 * Instantiates a new service functions.
@@ -49,6 +53,7 @@ public class ServiceFunctions {
 	 */
 	public ServiceFunctions(ApplicationLogic app) {
 		this.app = app;
+		this.permissions = new PermissionIndex(app);
 		this.services = app.mongo.sdsd.getCollection("services");
 		services.createIndex(Indexes.ascending(Service.TOKEN), new IndexOptions().unique(true));
 		services.createIndex(Indexes.ascending(Service.NAME), new IndexOptions().unique(true));
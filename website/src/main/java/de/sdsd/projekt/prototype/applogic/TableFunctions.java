@@ -3,13 +3,23 @@ package de.sdsd.projekt.prototype.applogic;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -17,12 +27,12 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import org.bson.types.ObjectId;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.locationtech.jts.geom.Coordinate;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
-import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BatchableStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
@@ -32,6 +42,7 @@ import de.sdsd.projekt.prototype.data.File;
 import de.sdsd.projekt.prototype.data.GridCell;
 import de.sdsd.projekt.prototype.data.Timelog;
 import de.sdsd.projekt.prototype.data.TimelogPosition;
+import de.sdsd.projekt.prototype.data.TimelogRollup;
 import de.sdsd.projekt.prototype.data.ValueInfo;
 
 /**
@@ -47,6 +58,20 @@ public class TableFunctions implements Closeable {
 	/** The cassandra. */
 	final CqlSession cassandra;
 	
+	/** The asynchronous writer. */
+	private final CassandraWriter writer;
+	
+	/** The time buckets of the timelog partitions or null if the partitions are not bucketed. */
+	@CheckForNull
+	private final TimeBuckets buckets;
+	
+	/** The rollups of the timelog values or null if there are no rollup tables. */
+	@CheckForNull
+	private final Rollups rollups;
+	
+	/** The cache of the value infos. */
+	private final ValueInfoCache valueInfoCache;
+	
 	/** The cassandra select grid keys. */
 	private final PreparedStatement cassandraSelectPositionKeys, cassandraSelectTimelogKeys, cassandraSelectGridKeys;
 	
@@ -85,6 +110,11 @@ public class TableFunctions implements Closeable {
 				.withAuthCredentials(cassandra.getString("user"), cassandra.getString("password"))
 				.withKeyspace(cassandra.getString("keyspace"))
 				.build();
+		JSONObject writerSettings = cassandra.optJSONObject("writer");
+		this.writer = new CassandraWriter(this.cassandra, app.executor, 
+				writerSettings != null ? writerSettings : new JSONObject(), MAX_BATCH_SIZE);
+		JSONObject valueInfoSettings = app.settings.optJSONObject("valueInfoCache");
+		this.valueInfoCache = new ValueInfoCache(app, valueInfoSettings != null ? valueInfoSettings : new JSONObject());
 		
 		cassandraSelectPositionKeys = this.cassandra.prepare("SELECT user, file, name FROM position_keys "
 				+ "WHERE user=? AND file=?");
@@ -135,6 +165,598 @@ public class TableFunctions implements Closeable {
 		cassandraDeletePosition = this.cassandra.prepare("DELETE FROM position_generic WHERE user=? AND file=? AND name=?");
 		cassandraDeleteTimelog = this.cassandra.prepare("DELETE FROM timelog_generic WHERE user=? AND file=? AND name=? AND value_uri=?");
 		cassandraDeleteGrid = this.cassandra.prepare("DELETE FROM grid_generic WHERE user=? AND file=? AND name=? AND value_uri=?");
+		
+		int bucketDays = cassandra.optInt("bucketDays", 0);
+		this.buckets = bucketDays > 0 ? new TimeBuckets(bucketDays, cassandra.optInt("bucketFanout", 8)) : null;
+		
+		JSONArray rollupSeconds = cassandra.optJSONArray("rollupSeconds");
+		this.rollups = rollupSeconds != null && rollupSeconds.length() > 0 ? new Rollups(rollupSeconds) : null;
+	}
+	
+	/**
+	 * Rollups of the timelog values in 'timelog_rollup'.
+	 * For every configured resolution, the values of each interval are aggregated to count, min, max, sum, 
+	 * first and last value.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class Rollups {
+		
+		/** The resolutions in seconds, finest first. */
+		final int[] resolutions;
+		
+		/** The cassandra insert rollup. */
+		final PreparedStatement insert;
+		
+		/** The cassandra delete rollup. */
+		private final PreparedStatement select, selectFiltered, selectSince, delete;
+		
+		/**
+		 * Instantiates new rollups.
+		 *
+		 * @param seconds the resolutions in seconds
+		 */
+		Rollups(JSONArray seconds) {
+			this.resolutions = new int[seconds.length()];
+			for(int i = 0; i < resolutions.length; ++i) {
+				resolutions[i] = seconds.getInt(i);
+				if(resolutions[i] <= 0) throw new IllegalArgumentException("Invalid rollup resolution: " + resolutions[i]);
+			}
+			Arrays.sort(resolutions);
+			
+			insert = cassandra.prepare("INSERT INTO timelog_rollup "
+					+ "(user,file,name,value_uri,resolution,time,value_count,value_min,value_max,value_sum,value_first,value_last,from_time,until_time) "
+					+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+			select = cassandra.prepare("SELECT time, value_count, value_min, value_max, value_sum, value_first, value_last, from_time, until_time "
+					+ "FROM timelog_rollup WHERE user=? AND file=? AND name=? AND value_uri=? AND resolution=? LIMIT ?");
+			selectFiltered = cassandra.prepare("SELECT time, value_count, value_min, value_max, value_sum, value_first, value_last, from_time, until_time "
+					+ "FROM timelog_rollup WHERE user=? AND file=? AND name=? AND value_uri=? AND resolution=? AND time>=? AND time<=? LIMIT ?");
+			selectSince = cassandra.prepare("SELECT time, value_count, value_min, value_max, value_sum, value_first, value_last, from_time, until_time "
+					+ "FROM timelog_rollup WHERE user=? AND file=? AND name=? AND value_uri=? AND resolution=? AND time>=?");
+			delete = cassandra.prepare("DELETE FROM timelog_rollup WHERE user=? AND file=? AND name=? AND value_uri=? AND resolution=?");
+		}
+		
+		/**
+		 * Gets the coarsest resolution.
+		 *
+		 * @return the resolution in seconds
+		 */
+		int coarsest() {
+			return resolutions[resolutions.length - 1];
+		}
+		
+		/**
+		 * Gets the rollups of a resolution, newest first.
+		 * The intervals that contain the start of the time filter are included.
+		 *
+		 * @param key the key
+		 * @param resolution the resolution
+		 * @param timefilter the timefilter
+		 * @param limit the limit
+		 * @return the rollups
+		 */
+		List<TimelogRollup> get(Key key, int resolution, @Nullable TimeInterval timefilter, int limit) {
+			BoundStatement query = timefilter != null
+					? selectFiltered.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, resolution)
+							.setInstant(5, Instant.ofEpochSecond(Math.floorDiv(timefilter.from().getEpochSecond(), resolution) * resolution))
+							.setInstant(6, timefilter.until())
+							.setInt(7, limit)
+					: select.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, resolution)
+							.setInt(5, limit);
+			
+			List<TimelogRollup> list = new ArrayList<>();
+			for(Row r : cassandra.execute(query)) {
+				list.add(new TimelogRollup(key, resolution, r.getInstant(0), r.getLong(1), r.getLong(2), r.getLong(3), 
+						r.getLong(4), r.getLong(5), r.getLong(6), r.getInstant(7), r.getInstant(8)));
+			}
+			return list;
+		}
+		
+		/**
+		 * Gets the stored aggregates of a resolution from the interval, that contains the given time, on.
+		 *
+		 * @param key the key
+		 * @param resolution the resolution
+		 * @param time the time
+		 * @return the aggregates by interval start in epoch seconds
+		 */
+		TreeMap<Long, Aggregate> since(Key key, int resolution, Instant time) {
+			long start = Math.floorDiv(time.getEpochSecond(), resolution) * resolution;
+			TreeMap<Long, Aggregate> map = new TreeMap<>();
+			for(Row r : cassandra.execute(selectSince.bind(key.user, key.file, key.name, key.valueUri)
+					.setInt(4, resolution)
+					.setInstant(5, Instant.ofEpochSecond(start)))) {
+				map.put(r.getInstant(0).getEpochSecond(), new Aggregate(r.getLong(1), r.getLong(2), r.getLong(3), 
+						r.getLong(4), r.getLong(5), r.getLong(6), r.getInstant(7), r.getInstant(8)));
+			}
+			return map;
+		}
+		
+		/**
+		 * Deletes the rollups of the timelog.
+		 *
+		 * @param key the key
+		 */
+		void delete(Key key) {
+			for(int resolution : resolutions) {
+				cassandra.execute(delete.bind(key.user, key.file, key.name, key.valueUri).setInt(4, resolution));
+			}
+		}
+	}
+	
+	/**
+	 * Aggregate of the values of an interval.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class Aggregate {
+		
+		/** The count. */
+		long count = 0;
+		
+		/** The last. */
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE, sum = 0, first = 0, last = 0;
+		
+		/** The until. */
+		Instant from = Instant.MAX, until = Instant.MIN;
+		
+		/**
+		 * Instantiates a new empty aggregate.
+		 */
+		Aggregate() {}
+		
+		/**
+		 * Instantiates a new aggregate from a stored rollup.
+		 *
+		 * @param count the count
+		 * @param min the min
+		 * @param max the max
+		 * @param sum the sum
+		 * @param first the first
+		 * @param last the last
+		 * @param from the from
+		 * @param until the until
+		 */
+		Aggregate(long count, long min, long max, long sum, long first, long last, Instant from, Instant until) {
+			this.count = count;
+			this.min = min;
+			this.max = max;
+			this.sum = sum;
+			this.first = first;
+			this.last = last;
+			this.from = from;
+			this.until = until;
+		}
+		
+		/**
+		 * Adds a value.
+		 *
+		 * @param time the time
+		 * @param value the value
+		 */
+		void add(Instant time, long value) {
+			if(time.isBefore(from)) {
+				from = time;
+				first = value;
+			}
+			if(!time.isBefore(until)) {
+				until = time;
+				last = value;
+			}
+			++count;
+			if(value < min) min = value;
+			if(value > max) max = value;
+			sum += value;
+		}
+		
+		/**
+		 * Converts to a timelog rollup.
+		 *
+		 * @param key the key
+		 * @param resolution the resolution
+		 * @param start the start of the interval in epoch seconds
+		 * @return the timelog rollup
+		 */
+		TimelogRollup toRollup(Key key, int resolution, long start) {
+			return new TimelogRollup(key, resolution, Instant.ofEpochSecond(start), count, min, max, sum, first, last, from, until);
+		}
+	}
+	
+	/**
+	 * Time-bucketed partitions for positions and timelogs.
+	 * The partitions of 'position_bucketed' and 'timelog_bucketed' contain the entries of one time bucket,
+	 * the existing buckets of a timelog are listed in 'position_buckets' and 'timelog_buckets'.
+	 * Queries only read the buckets of the requested time interval, in parallel and newest first.
+	 * Changing the bucket size requires to migrate the data again.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private class TimeBuckets {
+		
+		/** The bucket size. */
+		private final long bucketMillis;
+		
+		/** The max count of buckets queried in parallel. */
+		private final int fanout;
+		
+		/** The cassandra select timelog buckets filtered. */
+		private final PreparedStatement selectPositionBuckets, selectPositionBucketsFiltered, 
+				selectTimelogBuckets, selectTimelogBucketsFiltered;
+		
+		/** The cassandra select bucket positions info. */
+		private final PreparedStatement selectPositions, selectPositionsFiltered, selectPositionsInfo;
+		
+		/** The cassandra select bucket timelogs filtered. */
+		private final PreparedStatement selectTimelogs, selectTimelogsFiltered;
+		
+		/** The cassandra insert bucket timelog. */
+		final PreparedStatement insertPositionBucket, insertTimelogBucket, insertPosition, insertTimelog;
+		
+		/** The cassandra delete timelog buckets. */
+		private final PreparedStatement deletePosition, deleteTimelog, deletePositionBuckets, deleteTimelogBuckets;
+		
+		/**
+		 * Instantiates new time buckets.
+		 *
+		 * @param bucketDays the bucket size in days
+		 * @param fanout the max count of buckets queried in parallel
+		 */
+		TimeBuckets(int bucketDays, int fanout) {
+			this.bucketMillis = TimeUnit.DAYS.toMillis(bucketDays);
+			this.fanout = Math.max(1, fanout);
+			
+			selectPositionBuckets = cassandra.prepare("SELECT bucket FROM position_buckets "
+					+ "WHERE user=? AND file=? AND name=?");
+			selectPositionBucketsFiltered = cassandra.prepare("SELECT bucket FROM position_buckets "
+					+ "WHERE user=? AND file=? AND name=? AND bucket>=? AND bucket<=?");
+			selectTimelogBuckets = cassandra.prepare("SELECT bucket FROM timelog_buckets "
+					+ "WHERE user=? AND file=? AND name=? AND value_uri=?");
+			selectTimelogBucketsFiltered = cassandra.prepare("SELECT bucket FROM timelog_buckets "
+					+ "WHERE user=? AND file=? AND name=? AND value_uri=? AND bucket>=? AND bucket<=?");
+			
+			selectPositions = cassandra.prepare("SELECT time, latitude, longitude, altitude FROM position_bucketed "
+					+ "WHERE user=? AND file=? AND name=? AND bucket=? LIMIT ?");
+			selectPositionsFiltered = cassandra.prepare("SELECT time, latitude, longitude, altitude FROM position_bucketed "
+					+ "WHERE user=? AND file=? AND name=? AND bucket=? AND time>=? AND time<=? LIMIT ?");
+			selectPositionsInfo = cassandra.prepare("SELECT count(*), min(time), max(time) FROM position_bucketed "
+					+ "WHERE user=? AND file=? AND name=? AND bucket=?");
+			selectTimelogs = cassandra.prepare("SELECT time, value FROM timelog_bucketed "
+					+ "WHERE user=? AND file=? AND name=? AND value_uri=? AND bucket=? LIMIT ?");
+			selectTimelogsFiltered = cassandra.prepare("SELECT time, value FROM timelog_bucketed "
+					+ "WHERE user=? AND file=? AND name=? AND value_uri=? AND bucket=? AND time>=? AND time<=? LIMIT ?");
+			
+			insertPositionBucket = cassandra.prepare("INSERT INTO position_buckets "
+					+ "(user,file,name,bucket) "
+					+ "VALUES (?,?,?,?)");
+			insertTimelogBucket = cassandra.prepare("INSERT INTO timelog_buckets "
+					+ "(user,file,name,value_uri,bucket) "
+					+ "VALUES (?,?,?,?,?)");
+			insertPosition = cassandra.prepare("INSERT INTO position_bucketed "
+					+ "(user,file,name,bucket,time,latitude,longitude,altitude) "
+					+ "VALUES (?,?,?,?,?,?,?,?)");
+			insertTimelog = cassandra.prepare("INSERT INTO timelog_bucketed "
+					+ "(user,file,name,value_uri,bucket,time,value) "
+					+ "VALUES (?,?,?,?,?,?,?)");
+			
+			deletePosition = cassandra.prepare("DELETE FROM position_bucketed WHERE user=? AND file=? AND name=? AND bucket=?");
+			deleteTimelog = cassandra.prepare("DELETE FROM timelog_bucketed WHERE user=? AND file=? AND name=? AND value_uri=? AND bucket=?");
+			deletePositionBuckets = cassandra.prepare("DELETE FROM position_buckets WHERE user=? AND file=? AND name=?");
+			deleteTimelogBuckets = cassandra.prepare("DELETE FROM timelog_buckets WHERE user=? AND file=? AND name=? AND value_uri=?");
+		}
+		
+		/**
+		 * Gets the bucket of the time.
+		 *
+		 * @param time the time
+		 * @return the bucket
+		 */
+		int bucket(Instant time) {
+			return Math.toIntExact(Math.floorDiv(time.toEpochMilli(), bucketMillis));
+		}
+		
+		/**
+		 * Lists the buckets of the positions, newest first.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @return the buckets
+		 */
+		List<Integer> listBuckets(ElementKey key, @Nullable TimeInterval timefilter) {
+			BoundStatement query = timefilter != null
+					? selectPositionBucketsFiltered.bind(key.user, key.file, key.name)
+							.setInt(3, bucket(timefilter.from()))
+							.setInt(4, bucket(timefilter.until()))
+					: selectPositionBuckets.bind(key.user, key.file, key.name);
+			return listBuckets(query);
+		}
+		
+		/**
+		 * Lists the buckets of the timelog, newest first.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @return the buckets
+		 */
+		List<Integer> listBuckets(Key key, @Nullable TimeInterval timefilter) {
+			BoundStatement query = timefilter != null
+					? selectTimelogBucketsFiltered.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, bucket(timefilter.from()))
+							.setInt(5, bucket(timefilter.until()))
+					: selectTimelogBuckets.bind(key.user, key.file, key.name, key.valueUri);
+			return listBuckets(query);
+		}
+		
+		/**
+		 * Lists the buckets.
+		 *
+		 * @param query the query
+		 * @return the buckets
+		 */
+		private List<Integer> listBuckets(BoundStatement query) {
+			List<Integer> list = new ArrayList<>();
+			for(Row row : cassandra.execute(query)) {
+				list.add(row.getInt(0));
+			}
+			list.sort(Collections.reverseOrder());
+			return list;
+		}
+		
+		/**
+		 * Queries the buckets in parallel and concatenates the results in the order of the buckets.
+		 * The buckets are queried in waves until the limit is reached.
+		 *
+		 * @param <T> the result type
+		 * @param buckets the buckets, newest first
+		 * @param query creates the query for a bucket and the remaining limit
+		 * @param mapper maps the result rows
+		 * @param limit the max count of results
+		 * @return the results, newest first
+		 */
+		<T> List<T> query(List<Integer> buckets, BiFunction<Integer, Integer, BoundStatement> query, 
+				Function<Row, T> mapper, int limit) {
+			List<T> list = new ArrayList<>();
+			for(int i = 0; i < buckets.size() && list.size() < limit; i += fanout) {
+				int remaining = limit - list.size();
+				List<CompletableFuture<List<Row>>> wave = new ArrayList<>(fanout);
+				for(int j = i; j < buckets.size() && j < i + fanout; ++j) {
+					wave.add(fetchAll(cassandra.executeAsync(query.apply(buckets.get(j), remaining)), 
+							new ArrayList<>()).toCompletableFuture());
+				}
+				for(CompletableFuture<List<Row>> rows : wave) {
+					for(Row row : join(rows)) {
+						if(list.size() >= limit) break;
+						list.add(mapper.apply(row));
+					}
+				}
+			}
+			return list;
+		}
+		
+		/**
+		 * Reads a page from the buckets, starting at the bucket and paging state of the cursor.
+		 * A page can span several buckets, the continuation points to the bucket where the page ended.
+		 *
+		 * @param <T> the result type
+		 * @param buckets the buckets, newest first
+		 * @param query creates the query for a bucket and a limit
+		 * @param mapper maps the result rows
+		 * @param pageSize the page size
+		 * @param cursor the cursor
+		 * @return the page
+		 */
+		<T> Page<T> page(List<Integer> buckets, BiFunction<Integer, Integer, BoundStatement> query, 
+				Function<Row, T> mapper, int pageSize, Cursor cursor) {
+			List<T> list = new ArrayList<>(pageSize);
+			int i = 0;
+			if(cursor.isContinuation()) {
+				while(i < buckets.size() && buckets.get(i) > cursor.bucket) ++i;
+			}
+			for(; i < buckets.size(); ++i) {
+				int bucket = buckets.get(i);
+				if(list.size() >= pageSize)
+					return new Page<>(list, cursor.next(bucket, null));
+				ByteBuffer pagingState = cursor.isContinuation() && bucket == cursor.bucket ? cursor.pagingState : null;
+				AsyncResultSet rs = fetchPage(query.apply(bucket, Integer.MAX_VALUE), pagingState, pageSize - list.size());
+				for(Row row : rs.currentPage()) {
+					list.add(mapper.apply(row));
+				}
+				if(rs.hasMorePages())
+					return new Page<>(list, cursor.next(bucket, rs.getExecutionInfo().getPagingState()));
+			}
+			return new Page<>(list, null);
+		}
+		
+		/**
+		 * Gets the positions.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @param limit the limit
+		 * @return the positions
+		 */
+		List<TimelogPosition> getPositions(ElementKey key, @Nullable TimeInterval timefilter, int limit) {
+			return query(listBuckets(key, timefilter), positionQuery(key, timefilter), TableFunctions::toPosition, limit);
+		}
+		
+		/**
+		 * Gets a page of the positions.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @param pageSize the page size
+		 * @param cursor the cursor
+		 * @return the page
+		 */
+		Page<TimelogPosition> getPositionPage(ElementKey key, @Nullable TimeInterval timefilter, int pageSize, Cursor cursor) {
+			return page(listBuckets(key, timefilter), positionQuery(key, timefilter), TableFunctions::toPosition, pageSize, cursor);
+		}
+		
+		/**
+		 * Creates the query for the positions of a bucket.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @return the query for a bucket and a limit
+		 */
+		private BiFunction<Integer, Integer, BoundStatement> positionQuery(ElementKey key, @Nullable TimeInterval timefilter) {
+			return (bucket, limit) -> timefilter != null
+					? selectPositionsFiltered.bind(key.user, key.file, key.name)
+							.setInt(3, bucket)
+							.setInstant(4, timefilter.from())
+							.setInstant(5, timefilter.until())
+							.setInt(6, limit)
+					: selectPositions.bind(key.user, key.file, key.name)
+							.setInt(3, bucket)
+							.setInt(4, limit);
+		}
+		
+		/**
+		 * Gets the timelogs.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @param limit the limit
+		 * @return the timelogs
+		 */
+		List<Timelog> getTimelogs(Key key, @Nullable TimeInterval timefilter, int limit) {
+			return query(listBuckets(key, timefilter), timelogQuery(key, timefilter), 
+					r -> new Timelog(key, r.getInstant(0), r.getLong(1)), limit);
+		}
+		
+		/**
+		 * Gets a page of the timelogs.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @param pageSize the page size
+		 * @param cursor the cursor
+		 * @return the page
+		 */
+		Page<Timelog> getTimelogPage(Key key, @Nullable TimeInterval timefilter, int pageSize, Cursor cursor) {
+			return page(listBuckets(key, timefilter), timelogQuery(key, timefilter), 
+					r -> new Timelog(key, r.getInstant(0), r.getLong(1)), pageSize, cursor);
+		}
+		
+		/**
+		 * Creates the query for the timelogs of a bucket.
+		 *
+		 * @param key the key
+		 * @param timefilter the timefilter
+		 * @return the query for a bucket and a limit
+		 */
+		private BiFunction<Integer, Integer, BoundStatement> timelogQuery(Key key, @Nullable TimeInterval timefilter) {
+			return (bucket, limit) -> timefilter != null
+					? selectTimelogsFiltered.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, bucket)
+							.setInstant(5, timefilter.from())
+							.setInstant(6, timefilter.until())
+							.setInt(7, limit)
+					: selectTimelogs.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, bucket)
+							.setInt(5, limit);
+		}
+		
+		/**
+		 * Gets the timelog info.
+		 *
+		 * @param key the key
+		 * @return the timelog info
+		 */
+		TimelogInfo getTimelogInfo(ElementKey key) {
+			long count = 0;
+			Instant from = null, until = null;
+			for(Row row : query(listBuckets(key, null), 
+					(bucket, remaining) -> selectPositionsInfo.bind(key.user, key.file, key.name).setInt(3, bucket), 
+					Function.identity(), Integer.MAX_VALUE)) {
+				if(row.getLong(0) == 0) continue;
+				count += row.getLong(0);
+				if(from == null || row.getInstant(1).isBefore(from)) from = row.getInstant(1);
+				if(until == null || row.getInstant(2).isAfter(until)) until = row.getInstant(2);
+			}
+			return count == 0 ? new TimelogInfo(0, Instant.EPOCH, Instant.EPOCH) : new TimelogInfo(count, from, until);
+		}
+		
+		/**
+		 * Deletes the bucketed positions.
+		 *
+		 * @param key the key
+		 */
+		void deletePosition(ElementKey key) {
+			for(int bucket : listBuckets(key, null)) {
+				cassandra.execute(deletePosition.bind(key.user, key.file, key.name).setInt(3, bucket));
+			}
+			cassandra.execute(deletePositionBuckets.bind(key.user, key.file, key.name));
+		}
+		
+		/**
+		 * Deletes the bucketed timelog.
+		 *
+		 * @param key the key
+		 */
+		void deleteTimelog(Key key) {
+			for(int bucket : listBuckets(key, null)) {
+				cassandra.execute(deleteTimelog.bind(key.user, key.file, key.name, key.valueUri).setInt(4, bucket));
+			}
+			cassandra.execute(deleteTimelogBuckets.bind(key.user, key.file, key.name, key.valueUri));
+		}
+	}
+	
+	/**
+	 * Fetches all pages of a result.
+	 *
+	 * @param stage the result stage
+	 * @param rows the list to add the rows to
+	 * @return the rows
+	 */
+	private static CompletionStage<List<Row>> fetchAll(CompletionStage<AsyncResultSet> stage, List<Row> rows) {
+		return stage.thenCompose(rs -> {
+			for(Row row : rs.currentPage()) {
+				rows.add(row);
+			}
+			return rs.hasMorePages() ? fetchAll(rs.fetchNextPage(), rows) : CompletableFuture.completedFuture(rows);
+		});
+	}
+	
+	/**
+	 * Waits for the result and throws the original exception on failure.
+	 *
+	 * @param <T> the result type
+	 * @param future the future
+	 * @return the result
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Fetches one page of the result.
+	 *
+	 * @param query the query
+	 * @param pagingState the paging state to continue from or null to start
+	 * @param pageSize the page size
+	 * @return the result with the page
+	 */
+	private AsyncResultSet fetchPage(BoundStatement query, @Nullable ByteBuffer pagingState, int pageSize) {
+		return join(cassandra.executeAsync(query.setPageSize(pageSize).setPagingState(pagingState)).toCompletableFuture());
+	}
+	
+	/**
+	 * Converts a position row.
+	 *
+	 * @param row the row with time, latitude, longitude and altitude
+	 * @return the timelog position
+	 */
+	private static TimelogPosition toPosition(Row row) {
+		Coordinate pos = new Coordinate(pos(row.getInt(2)), pos(row.getInt(1)), alt(row.getInt(3)));
+		return new TimelogPosition(row.getInstant(0), pos);
 	}
 	
 	/**
@@ -598,12 +1220,38 @@ public class TableFunctions implements Closeable {
 	 * @return the timelog info
 	 */
 	public TimelogInfo getTimelogInfo(ElementKey key) {
+		if(buckets != null)
+			return buckets.getTimelogInfo(key);
 		Row result = cassandra.execute(cassandraSelectPositionsInfo.bind(key.user, key.file, key.name)).one();
 		return result.getLong(0) == 0 ? new TimelogInfo(0, Instant.EPOCH, Instant.EPOCH) 
 				: new TimelogInfo(result.getLong(0), 
 				result.getInstant(1), result.getInstant(2));
 	}
 	
+	/**
+	 * Gets the timelog info of the values of a timelog.
+	 * Uses the coarsest rollup if available, otherwise the info of the positions of the timelog.
+	 *
+	 * @param key the key
+	 * @return the timelog info
+	 */
+	public TimelogInfo getTimelogInfo(Key key) {
+		if(rollups != null) {
+			List<TimelogRollup> overview = rollups.get(key, rollups.coarsest(), null, Integer.MAX_VALUE);
+			if(!overview.isEmpty()) {
+				long count = 0;
+				Instant from = Instant.MAX, until = Instant.MIN;
+				for(TimelogRollup r : overview) {
+					count += r.count;
+					if(r.from.isBefore(from)) from = r.from;
+					if(r.until.isAfter(until)) until = r.until;
+				}
+				return new TimelogInfo(count, from, until);
+			}
+		}
+		return getTimelogInfo(key.toElementKey());
+	}
+	
 	/**
 	 * Represents a range in time.
 	 * Both 'from' and 'until' are inclusive.
@@ -701,21 +1349,222 @@ public class TableFunctions implements Closeable {
 	public List<TimelogPosition> getPositions(ElementKey key, @Nullable TimeInterval timefilter, int limit) {
 		if(limit == 0) return Collections.emptyList();
 		if(limit < 0) limit = OUTPUT_MAX;
+		if(buckets != null)
+			return buckets.getPositions(key, timefilter, limit);
 		
-		BoundStatement query = timefilter != null 
+		ArrayList<TimelogPosition> list = new ArrayList<>();
+		for(Row row : cassandra.execute(positionQuery(key, timefilter, limit))) {
+			list.add(toPosition(row));
+		}
+		return list;
+	}
+	
+	/**
+	 * Creates the query for the positions.
+	 *
+	 * @param key the key
+	 * @param timefilter the timefilter
+	 * @param limit the limit
+	 * @return the query
+	 */
+	private BoundStatement positionQuery(ElementKey key, @Nullable TimeInterval timefilter, int limit) {
+		return timefilter != null 
 				? cassandraSelectPositionsFiltered.bind(key.user, key.file, key.name)
 						.setInstant(3, timefilter.from())
 						.setInstant(4, timefilter.until())
 						.setInt(5, limit)
 				: cassandraSelectPositions.bind(key.user, key.file, key.name)
 						.setInt(3, limit);
+	}
+	
+	/** The max page size. */
+	public static final int PAGE_MAX = 10000;
+	
+	/**
+	 * Gets a page of the positions, newest first.
+	 * The pages are read using the cassandra paging state, so there is no limit for the count of all positions.
+	 *
+	 * @param key the key
+	 * @param timefilter the timefilter
+	 * @param pageSize the page size, at most {@link #PAGE_MAX}
+	 * @param continuation the continuation token of the previous page or null for the first page
+	 * @return the page
+	 * @throws IllegalArgumentException if the continuation token doesn't belong to this query
+	 */
+	public Page<TimelogPosition> getPositionPage(ElementKey key, @Nullable TimeInterval timefilter, int pageSize, 
+			@Nullable String continuation) throws IllegalArgumentException {
+		pageSize = pageSize > 0 ? Math.min(pageSize, PAGE_MAX) : PAGE_MAX;
+		Cursor cursor = new Cursor(Objects.hash("positions", key.user, key.file, key.name, 
+				timefilter != null ? timefilter.from : null, timefilter != null ? timefilter.until : null, buckets != null), 
+				continuation);
+		if(buckets != null)
+			return buckets.getPositionPage(key, timefilter, pageSize, cursor);
 		
-		ArrayList<TimelogPosition> list = new ArrayList<>();
-		for(Row row : cassandra.execute(query)) {
-			Coordinate pos = new Coordinate(pos(row.getInt(2)), pos(row.getInt(1)), alt(row.getInt(3)));
-			list.add(new TimelogPosition(row.getInstant(0), pos));
+		AsyncResultSet rs = fetchPage(positionQuery(key, timefilter, Integer.MAX_VALUE), cursor.pagingState, pageSize);
+		List<TimelogPosition> list = new ArrayList<>(rs.remaining());
+		for(Row row : rs.currentPage()) {
+			list.add(toPosition(row));
+		}
+		return new Page<>(list, rs.hasMorePages() ? cursor.next(0, rs.getExecutionInfo().getPagingState()) : null);
+	}
+	
+	/**
+	 * Gets a page of the timelogs, newest first.
+	 * The pages are read using the cassandra paging state, so there is no limit for the count of all timelogs.
+	 *
+	 * @param key the key
+	 * @param timefilter the timefilter
+	 * @param pageSize the page size, at most {@link #PAGE_MAX}
+	 * @param continuation the continuation token of the previous page or null for the first page
+	 * @return the page
+	 * @throws IllegalArgumentException if the continuation token doesn't belong to this query
+	 */
+	public Page<Timelog> getTimelogPage(Key key, @Nullable TimeInterval timefilter, int pageSize, 
+			@Nullable String continuation) throws IllegalArgumentException {
+		pageSize = pageSize > 0 ? Math.min(pageSize, PAGE_MAX) : PAGE_MAX;
+		Cursor cursor = new Cursor(Objects.hash("timelogs", key.user, key.file, key.name, key.valueUri, 
+				timefilter != null ? timefilter.from : null, timefilter != null ? timefilter.until : null, buckets != null), 
+				continuation);
+		if(buckets != null)
+			return buckets.getTimelogPage(key, timefilter, pageSize, cursor);
+		
+		AsyncResultSet rs = fetchPage(timelogQuery(key, timefilter, Integer.MAX_VALUE), cursor.pagingState, pageSize);
+		List<Timelog> list = new ArrayList<>(rs.remaining());
+		for(Row r : rs.currentPage()) {
+			list.add(new Timelog(key, r.getInstant(0), r.getLong(1)));
+		}
+		return new Page<>(list, rs.hasMorePages() ? cursor.next(0, rs.getExecutionInfo().getPagingState()) : null);
+	}
+	
+	/**
+	 * A page of a paged read.
+	 *
+	 * @param <T> the result type
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public static class Page<T> {
+		
+		/** The items. */
+		public final List<T> items;
+		
+		/** The continuation token for the next page or null if this is the last page. */
+		@CheckForNull
+		public final String next;
+		
+		/**
+		 * Instantiates a new page.
+		 *
+		 * @param items the items
+		 * @param next the continuation token for the next page
+		 */
+		public Page(List<T> items, @Nullable String next) {
+			this.items = items;
+			this.next = next;
+		}
+		
+		/**
+		 * Gets the items.
+		 *
+		 * @return the items
+		 */
+		public List<T> getItems() {
+			return items;
+		}
+		
+		/**
+		 * Gets the continuation token for the next page.
+		 *
+		 * @return the continuation token or null if this is the last page
+		 */
+		@CheckForNull
+		public String getNext() {
+			return next;
+		}
+		
+		/**
+		 * Checks for a next page.
+		 *
+		 * @return true, if there is a next page
+		 */
+		public boolean hasNext() {
+			return next != null;
+		}
+	}
+	
+	/**
+	 * Position of a paged read, encoded as opaque continuation token.
+	 * The token contains a hash of the query, the current bucket and the cassandra paging state.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class Cursor {
+		
+		/** The token version. */
+		private static final byte VERSION = 1;
+		
+		/** The hash of the query. */
+		final int query;
+		
+		/** The bucket. */
+		final int bucket;
+		
+		/** The paging state or null to start at the beginning of the bucket. */
+		@CheckForNull
+		final ByteBuffer pagingState;
+		
+		/** Whether the cursor continues a previous page. */
+		private final boolean continuation;
+		
+		/**
+		 * Instantiates a new cursor from the given continuation token.
+		 *
+		 * @param query the hash of the query
+		 * @param token the continuation token or null for the first page
+		 * @throws IllegalArgumentException if the token is invalid or doesn't belong to the query
+		 */
+		Cursor(int query, @Nullable String token) throws IllegalArgumentException {
+			this.query = query;
+			this.continuation = token != null && !token.isEmpty();
+			if(!continuation) {
+				this.bucket = 0;
+				this.pagingState = null;
+				return;
+			}
+			ByteBuffer buf;
+			try {
+				buf = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+			} catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid continuation token", e);
+			}
+			if(buf.remaining() < 9 || buf.get() != VERSION || buf.getInt() != query)
+				throw new IllegalArgumentException("Invalid continuation token");
+			this.bucket = buf.getInt();
+			this.pagingState = buf.hasRemaining() ? buf.slice() : null;
+		}
+		
+		/**
+		 * Checks if the cursor continues a previous page.
+		 *
+		 * @return true, if this is not the first page
+		 */
+		boolean isContinuation() {
+			return continuation;
+		}
+		
+		/**
+		 * Creates the continuation token for the next page.
+		 *
+		 * @param bucket the bucket to continue in
+		 * @param pagingState the paging state in the bucket or null to start at the beginning of the bucket
+		 * @return the continuation token
+		 */
+		String next(int bucket, @Nullable ByteBuffer pagingState) {
+			int size = pagingState != null ? pagingState.remaining() : 0;
+			ByteBuffer buf = ByteBuffer.allocate(9 + size);
+			buf.put(VERSION).putInt(query).putInt(bucket);
+			if(pagingState != null) buf.put(pagingState.duplicate());
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
 		}
-		return list;
 	}
 	
 	/**
@@ -726,7 +1575,7 @@ public class TableFunctions implements Closeable {
 	 * @return the value infos
 	 */
 	public List<ValueInfo> getValueInfos(String fileUri, List<String> valueUris) {
-		return ValueInfo.getValueInfos(app, fileUri, valueUris);
+		return valueInfoCache.get(fileUri, valueUris);
 	}
 	
 	/**
@@ -737,7 +1586,16 @@ public class TableFunctions implements Closeable {
 	 * @return the value info
 	 */
 	public ValueInfo getValueInfo(String fileUri, String valueUri) {
-		return ValueInfo.getValueInfo(app, fileUri, valueUri);
+		return valueInfoCache.get(fileUri, Collections.singletonList(valueUri)).get(0);
+	}
+	
+	/**
+	 * Gets the value info cache.
+	 *
+	 * @return the value info cache
+	 */
+	public ValueInfoCache getValueInfoCache() {
+		return valueInfoCache;
 	}
 	
 	/**
@@ -751,20 +1609,235 @@ public class TableFunctions implements Closeable {
 	public List<Timelog> getTimelogs(Key key, @Nullable TimeInterval timefilter, int limit) {
 		if(limit == 0) return Collections.emptyList();
 		if(limit < 0) limit = OUTPUT_MAX;
+		if(buckets != null)
+			return buckets.getTimelogs(key, timefilter, limit);
 		
-		BoundStatement query = timefilter != null
+		List<Timelog> list = new ArrayList<>();
+		for(Row r : cassandra.execute(timelogQuery(key, timefilter, limit))) {
+			list.add(new Timelog(key, r.getInstant(0), r.getLong(1)));
+		}
+		return list;
+	}
+	
+	/**
+	 * Creates the query for the timelogs.
+	 *
+	 * @param key the key
+	 * @param timefilter the timefilter
+	 * @param limit the limit
+	 * @return the query
+	 */
+	private BoundStatement timelogQuery(Key key, @Nullable TimeInterval timefilter, int limit) {
+		return timefilter != null
 				? cassandraSelectTimelogsFiltered.bind(key.user, key.file, key.name, key.valueUri)
 						.setInstant(4, timefilter.from())
 						.setInstant(5, timefilter.until())
 						.setInt(6, limit)
 				: cassandraSelectTimelogs.bind(key.user, key.file, key.name, key.valueUri)
 						.setInt(4, limit);
+	}
+	
+	/**
+	 * Gets the aggregated timelog values, newest first.
+	 * Uses the finest rollup resolution, that needs at most the given count of points for the time interval.
+	 * Without rollup tables, all values of the time interval are read page by page and aggregated.
+	 *
+	 * @param key the key
+	 * @param timefilter the timefilter
+	 * @param maxPoints the point budget
+	 * @return the rollups
+	 */
+	public List<TimelogRollup> getTimelogRollup(Key key, @Nullable TimeInterval timefilter, int maxPoints) {
+		if(maxPoints == 0) return Collections.emptyList();
+		if(maxPoints < 0) maxPoints = OUTPUT_MAX;
 		
-		List<Timelog> list = new ArrayList<>();
-		for(Row r : cassandra.execute(query)) {
-			list.add(new Timelog(key, r.getInstant(0), r.getLong(1)));
+		if(rollups == null) {
+			Page<Timelog> page = getTimelogPage(key, timefilter, PAGE_MAX, null);
+			if(page.items.isEmpty()) return Collections.emptyList();
+			Instant from;
+			if(timefilter != null && timefilter.isFrom()) 
+				from = timefilter.from();
+			else if(page.next == null) 
+				from = page.items.get(page.items.size()-1).time;
+			else // the oldest value is on the last page
+				from = getTimelogInfo(key.toElementKey()).from;
+			Instant until = timefilter != null && timefilter.isUntil() ? timefilter.until() : page.items.get(0).time;
+			long span = Math.max(1, until.getEpochSecond() - from.getEpochSecond() + 1);
+			int resolution = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (span + maxPoints - 1) / maxPoints));
+			
+			TreeMap<Long, Aggregate> aggregates = new TreeMap<>(Collections.reverseOrder());
+			while(true) {
+				for(Timelog tl : page.items) {
+					long start = Math.floorDiv(tl.time.getEpochSecond(), resolution) * resolution;
+					aggregates.computeIfAbsent(start, s -> new Aggregate()).add(tl.time, tl.value);
+				}
+				if(page.next == null) break;
+				page = getTimelogPage(key, timefilter, PAGE_MAX, page.next);
+			}
+			List<TimelogRollup> list = new ArrayList<>(aggregates.size());
+			for(Entry<Long, Aggregate> e : aggregates.entrySet()) {
+				list.add(e.getValue().toRollup(key, resolution, e.getKey()));
+			}
+			return list;
+		}
+		
+		List<TimelogRollup> overview = rollups.get(key, rollups.coarsest(), timefilter, OUTPUT_MAX);
+		if(overview.isEmpty()) return overview;
+		Instant from = timefilter != null && timefilter.isFrom() ? timefilter.from() : overview.get(overview.size()-1).from;
+		Instant until = timefilter != null && timefilter.isUntil() ? timefilter.until() : overview.get(0).until;
+		long span = Math.max(1, until.getEpochSecond() - from.getEpochSecond() + 1);
+		for(int resolution : rollups.resolutions) {
+			if(resolution == rollups.coarsest()) break;
+			if((span + resolution - 1) / resolution <= maxPoints)
+				return rollups.get(key, resolution, new TimeInterval(from, until), maxPoints);
+		}
+		return overview.size() > maxPoints ? overview.subList(0, maxPoints) : overview;
+	}
+	
+	/**
+	 * Creates the rollup batch.
+	 * For an incremental import, the stored intervals from the one containing the mark on are continued,
+	 * so that the values of earlier imports are kept in the rollups.
+	 *
+	 * @param writes the import
+	 * @param key the key
+	 * @param mark the time of the last imported value or null for a complete import
+	 * @return the rollup batch or null if there are no rollup tables
+	 */
+	@CheckForNull
+	public RollupBatch createRollupBatch(CassandraWriter.Import writes, Key key, @Nullable Instant mark) {
+		return rollups != null ? new RollupBatch(rollups, writes, key, mark) : null;
+	}
+	
+	/** The max count of open intervals per resolution of a rollup batch. */
+	private static final int MAX_OPEN_ROLLUPS = 64;
+	
+	/**
+	 * Aggregates the values of a timelog into rollups while inserting.
+	 * Intervals are written when newer intervals are started, so the values should be added in chronological order.
+	 * Values older than the open intervals are not included in the rollups.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	public class RollupBatch {
+		
+		/** The rollups. */
+		private final Rollups rollups;
+		
+		/** The import. */
+		private final CassandraWriter.Import writes;
+		
+		/** The key. */
+		private final Key key;
+		
+		/** The open intervals by start per resolution. */
+		private final List<TreeMap<Long, Aggregate>> open;
+		
+		/** The stored intervals of earlier imports by start per resolution, that are continued. */
+		private final List<TreeMap<Long, Aggregate>> stored;
+		
+		/** The start of the last written interval per resolution. */
+		private final long[] written;
+		
+		/** The dropped values. */
+		private int dropped = 0;
+		
+		/**
+		 * Instantiates a new rollup batch.
+		 *
+		 * @param rollups the rollups
+		 * @param writes the import
+		 * @param key the key
+		 * @param mark the time of the last imported value or null for a complete import
+		 */
+		private RollupBatch(Rollups rollups, CassandraWriter.Import writes, Key key, @Nullable Instant mark) {
+			this.rollups = rollups;
+			this.writes = writes;
+			this.key = key;
+			this.open = new ArrayList<>(rollups.resolutions.length);
+			this.stored = new ArrayList<>(rollups.resolutions.length);
+			this.written = new long[rollups.resolutions.length];
+			for(int i = 0; i < rollups.resolutions.length; ++i) {
+				open.add(new TreeMap<>());
+				stored.add(mark != null ? rollups.since(key, rollups.resolutions[i], mark) : new TreeMap<>());
+				written[i] = Long.MIN_VALUE;
+			}
+		}
+		
+		/**
+		 * Adds a value.
+		 *
+		 * @param time the time
+		 * @param value the value
+		 */
+		public void add(Instant time, long value) {
+			long seconds = time.getEpochSecond();
+			boolean drop = false;
+			for(int i = 0; i < rollups.resolutions.length; ++i) {
+				int resolution = rollups.resolutions[i];
+				long start = Math.floorDiv(seconds, resolution) * resolution;
+				if(start <= written[i]) {
+					drop = true;
+					continue;
+				}
+				TreeMap<Long, Aggregate> intervals = open.get(i);
+				TreeMap<Long, Aggregate> continued = stored.get(i);
+				intervals.computeIfAbsent(start, s -> {
+					Aggregate aggregate = continued.remove(s);
+					return aggregate != null ? aggregate : new Aggregate();
+				}).add(time, value);
+				while(intervals.size() > MAX_OPEN_ROLLUPS) {
+					Entry<Long, Aggregate> e = intervals.pollFirstEntry();
+					write(i, e.getKey(), e.getValue());
+				}
+			}
+			if(drop) ++dropped;
+		}
+		
+		/**
+		 * Writes an interval.
+		 *
+		 * @param i the resolution index
+		 * @param start the start of the interval
+		 * @param aggregate the aggregate
+		 */
+		private void write(int i, long start, Aggregate aggregate) {
+			int resolution = rollups.resolutions[i];
+			writes.add(Arrays.asList("timelog_rollup", key, resolution), 
+					rollups.insert.bind(key.user, key.file, key.name, key.valueUri)
+							.setInt(4, resolution)
+							.setInstant(5, Instant.ofEpochSecond(start))
+							.setLong(6, aggregate.count)
+							.setLong(7, aggregate.min)
+							.setLong(8, aggregate.max)
+							.setLong(9, aggregate.sum)
+							.setLong(10, aggregate.first)
+							.setLong(11, aggregate.last)
+							.setInstant(12, aggregate.from)
+							.setInstant(13, aggregate.until));
+			if(start > written[i]) written[i] = start;
+		}
+		
+		/**
+		 * Writes all open intervals.
+		 */
+		public void execute() {
+			for(int i = 0; i < open.size(); ++i) {
+				Entry<Long, Aggregate> e;
+				while((e = open.get(i).pollFirstEntry()) != null) {
+					write(i, e.getKey(), e.getValue());
+				}
+			}
+		}
+		
+		/**
+		 * Gets the count of values, that were too late for at least one resolution.
+		 *
+		 * @return the dropped values
+		 */
+		public int getDropped() {
+			return dropped;
 		}
-		return list;
 	}
 	
 	/**
@@ -790,11 +1863,12 @@ public class TableFunctions implements Closeable {
 	/**
 	 * Creates the position batch.
 	 *
+	 * @param writes the import
 	 * @param total the total
 	 * @return the position batch
 	 */
-	public PositionBatch createPositionBatch(int total) {
-		return new PositionBatch(total);
+	public PositionBatch createPositionBatch(CassandraWriter.Import writes, int total) {
+		return new PositionBatch(writes, total);
 	}
 	
 	/**
@@ -808,13 +1882,19 @@ public class TableFunctions implements Closeable {
 		private final Function<ElementKey, BatchableStatement<?>> keyInserter = 
 				key -> cassandraInsertPositionKey.bind(key.user, key.file, key.name);
 		
+		/** The bucket inserter. */
+		private final BiFunction<ElementKey, Integer, BatchableStatement<?>> bucketInserter = 
+				(key, bucket) -> buckets.insertPositionBucket.bind(key.user, key.file, key.name).setInt(3, bucket);
+		
 		/**
 		 * Instantiates a new position batch.
 		 *
+		 * @param writes the import
 		 * @param total the total
 		 */
-		private PositionBatch(int total) {
-			super(total);
+		private PositionBatch(CassandraWriter.Import writes, int total) {
+			super(buckets != null ? "position_bucketed" : "position_generic", "position_keys", 
+					buckets != null ? "position_buckets" : null, writes, total);
 		}
 		
 		/**
@@ -828,22 +1908,47 @@ public class TableFunctions implements Closeable {
 		 */
 		//user,file,timelog,time,latitude,longitude,altitude
 		public void add(ElementKey key, Instant time, double latitude, double longitude, double altitude) {
-			super.add(key, keyInserter, cassandraInsertPosition.bind(key.user, key.file, key.name)
+			add(key, time, pos(latitude), pos(longitude), alt(altitude));
+		}
+		
+		/**
+		 * Adds a position in the fixed-point representation of the table.
+		 *
+		 * @param key the key
+		 * @param time the time
+		 * @param latitude the fixed-point latitude
+		 * @param longitude the fixed-point longitude
+		 * @param altitude the fixed-point altitude
+		 * @see TableFunctions#pos(int)
+		 * @see TableFunctions#alt(int)
+		 */
+		public void add(ElementKey key, Instant time, int latitude, int longitude, int altitude) {
+			if(buckets != null) {
+				int bucket = buckets.bucket(time);
+				super.add(key, keyInserter, bucket, bucketInserter, buckets.insertPosition.bind(key.user, key.file, key.name)
+						.setInt(3, bucket)
+						.setInstant(4, time)
+						.setInt(5, latitude)
+						.setInt(6, longitude)
+						.setInt(7, altitude));
+			}
+			else super.add(key, keyInserter, cassandraInsertPosition.bind(key.user, key.file, key.name)
 					.setInstant(3, time)
-					.setInt(4, pos(latitude))
-					.setInt(5, pos(longitude))
-					.setInt(6, alt(altitude)));
+					.setInt(4, latitude)
+					.setInt(5, longitude)
+					.setInt(6, altitude));
 		}
 	}
 	
 	/**
 	 * Creates the timelog batch.
 	 *
+	 * @param writes the import
 	 * @param total the total
 	 * @return the timelog batch
 	 */
-	public TimelogBatch createTimelogBatch(int total) {
-		return new TimelogBatch(total);
+	public TimelogBatch createTimelogBatch(CassandraWriter.Import writes, int total) {
+		return new TimelogBatch(writes, total);
 	}
 	
 	/**
@@ -856,14 +1961,20 @@ public class TableFunctions implements Closeable {
 		/** The key inserter. */
 		private final Function<Key, BatchableStatement<?>> keyInserter = 
 				key -> cassandraInsertTimelogKey.bind(key.user, key.file, key.name, key.valueUri);
+		
+		/** The bucket inserter. */
+		private final BiFunction<Key, Integer, BatchableStatement<?>> bucketInserter = 
+				(key, bucket) -> buckets.insertTimelogBucket.bind(key.user, key.file, key.name, key.valueUri).setInt(4, bucket);
 
 		/**
 		 * Instantiates a new timelog batch.
 		 *
+		 * @param writes the import
 		 * @param total the total
 		 */
-		private TimelogBatch(int total) {
-			super(total);
+		private TimelogBatch(CassandraWriter.Import writes, int total) {
+			super(buckets != null ? "timelog_bucketed" : "timelog_generic", "timelog_keys", 
+					buckets != null ? "timelog_buckets" : null, writes, total);
 		}
 		
 		/**
@@ -875,7 +1986,14 @@ public class TableFunctions implements Closeable {
 		 */
 		//user,file,name,uri,time,value
 		public void add(Key key, Instant time, long value) {
-			super.add(key, keyInserter, cassandraInsertTimelog.bind(key.user, key.file, key.name, key.valueUri)
+			if(buckets != null) {
+				int bucket = buckets.bucket(time);
+				super.add(key, keyInserter, bucket, bucketInserter, buckets.insertTimelog.bind(key.user, key.file, key.name, key.valueUri)
+						.setInt(4, bucket)
+						.setInstant(5, time)
+						.setLong(6, value));
+			}
+			else super.add(key, keyInserter, cassandraInsertTimelog.bind(key.user, key.file, key.name, key.valueUri)
 					.setInstant(4, time)
 					.setLong(5, value));
 		}
@@ -884,11 +2002,12 @@ public class TableFunctions implements Closeable {
 	/**
 	 * Creates the grid batch.
 	 *
+	 * @param writes the import
 	 * @param total the total
 	 * @return the grid batch
 	 */
-	public GridBatch createGridBatch(int total) {
-		return new GridBatch(total);
+	public GridBatch createGridBatch(CassandraWriter.Import writes, int total) {
+		return new GridBatch(writes, total);
 	}
 	
 	/**
@@ -905,10 +2024,11 @@ public class TableFunctions implements Closeable {
 		/**
 		 * Instantiates a new grid batch.
 		 *
+		 * @param writes the import
 		 * @param total the total
 		 */
-		private GridBatch(int total) {
-			super(total);
+		private GridBatch(CassandraWriter.Import writes, int total) {
+			super("grid_generic", "grid_keys", null, writes, total);
 		}
 		
 		/**
@@ -936,6 +2056,8 @@ public class TableFunctions implements Closeable {
 	 * @param key the key
 	 */
 	public void deletePosition(ElementKey key) {
+		if(buckets != null)
+			buckets.deletePosition(key);
 		cassandra.execute(cassandraDeletePosition.bind(key.user, key.file, key.name));
 		cassandra.execute(cassandraDeletePositionKey.bind(key.user, key.file, key.name));
 	}
@@ -946,6 +2068,10 @@ public class TableFunctions implements Closeable {
 	 * @param key the key
 	 */
 	public void deleteTimelog(Key key) {
+		if(buckets != null)
+			buckets.deleteTimelog(key);
+		if(rollups != null)
+			rollups.delete(key);
 		cassandra.execute(cassandraDeleteTimelog.bind(key.user, key.file, key.name, key.valueUri));
 		cassandra.execute(cassandraDeleteTimelogKey.bind(key.user, key.file, key.name, key.valueUri));
 	}
@@ -1029,28 +2155,106 @@ public class TableFunctions implements Closeable {
 		}
 	}
 	
+	/**
+	 * Copies the positions and timelogs from the unbucketed tables into the time-bucketed tables.
+	 * Requires the 'bucketDays' setting and the bucketed tables.
+	 * Already copied entries are overwritten, so the migration can be repeated after an abort.
+	 *
+	 * @param deleteOld whether to delete the unbucketed partitions after they are copied
+	 */
+	void migrateToBuckets(boolean deleteOld) {
+		if(buckets == null)
+			throw new IllegalStateException("Time buckets are not configured");
+		
+		List<ElementKey> positionKeys = listPositionKeys();
+		int i = 0;
+		for(ElementKey key : positionKeys) {
+			System.out.format("Migrating Position %2d/%2d: %s...", ++i, positionKeys.size(), key.toString());
+			try {
+				CassandraWriter.Import writes = writer.begin();
+				PositionBatch batch = createPositionBatch(writes, 0);
+				for(Row row : cassandra.execute(cassandraSelectPositions.bind(key.user, key.file, key.name)
+						.setInt(3, Integer.MAX_VALUE))) {
+					batch.add(key, row.getInstant(0), row.getInt(1), row.getInt(2), row.getInt(3));
+				}
+				batch.execute();
+				writes.finish().join();
+				if(deleteOld)
+					cassandra.execute(cassandraDeletePosition.bind(key.user, key.file, key.name));
+				System.out.format("OK (%d rows, %.0f rows/s)\n", writes.getWritten(), writes.getRowsPerSecond());
+			} catch(Throwable e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		
+		List<Key> timelogKeys = listTimelogKeys();
+		i = 0;
+		for(Key key : timelogKeys) {
+			System.out.format("Migrating Timelog %2d/%2d: %s...", ++i, timelogKeys.size(), key.toString());
+			try {
+				CassandraWriter.Import writes = writer.begin();
+				TimelogBatch batch = createTimelogBatch(writes, 0);
+				for(Row row : cassandra.execute(cassandraSelectTimelogs.bind(key.user, key.file, key.name, key.valueUri)
+						.setInt(4, Integer.MAX_VALUE))) {
+					batch.add(key, row.getInstant(0), row.getLong(1));
+				}
+				batch.execute();
+				writes.finish().join();
+				if(deleteOld)
+					cassandra.execute(cassandraDeleteTimelog.bind(key.user, key.file, key.name, key.valueUri));
+				System.out.format("OK (%d rows, %.0f rows/s)\n", writes.getWritten(), writes.getRowsPerSecond());
+			} catch(Throwable e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+	
 	/** The Constant MAX_BATCH_SIZE. */
 	private static final int MAX_BATCH_SIZE = 0xFFF;
+	
+	/**
+	 * Starts a new asynchronous import.
+	 * The batches of an import are executed asynchronously and complete with {@link CassandraWriter.Import#finish()}.
+	 *
+	 * @return the import
+	 */
+	public CassandraWriter.Import beginImport() {
+		return writer.begin();
+	}
+	
 	/**
 	 * Base class for counted batches.
+	 * The statements are grouped by partition and written asynchronously by the import.
 	 * 
 	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
 	 */
 	public class CountBatch {
 		
-		/** The batch. */
-		private final BatchStatementBuilder batch;
+		/** The table. */
+		private final String table;
+		
+		/** The import. */
+		protected final CassandraWriter.Import writes;
+		
+		/** The partitions with pending statements. */
+		private final Set<List<Object>> partitions = new HashSet<>();
 		
 		/** The total. */
 		private int count, total;
 		
+		/** Whether a batch was executed since the last check. */
+		private boolean executed = false;
+		
 		/**
 		 * Instantiates a new count batch.
 		 *
-		 * @param total the total
+		 * @param table the table
+		 * @param writes the import
+		 * @param total the total or 0 if unknown
 		 */
-		protected CountBatch(int total) {
-			this.batch = new BatchStatementBuilder(BatchType.UNLOGGED);
+		protected CountBatch(String table, CassandraWriter.Import writes, int total) {
+			this.table = table;
+			this.writes = writes;
 			this.count = 0;
 			this.total = total;
 		}
@@ -1058,52 +2262,46 @@ public class TableFunctions implements Closeable {
 		/**
 		 * Adds the.
 		 *
+		 * @param key the partition key
 		 * @param statement the statement
 		 */
-		protected void add(BatchableStatement<?> statement) {
-			batch.addStatement(statement);
-		}
-		
-		/**
-		 * Do execute.
-		 */
-		private void doExecute() {
-			cassandra.execute(batch.build());
-			count += batch.getStatementsCount();
-			batch.clearStatements();
+		protected void add(Object key, BatchableStatement<?> statement) {
+			List<Object> partition = Arrays.asList(table, key);
+			partitions.add(partition);
+			++count;
+			executed |= writes.add(partition, statement);
 		}
 		
 		/**
-		 * Execute.
+		 * Executes the pending statements asynchronously.
 		 *
-		 * @return true, if successful
+		 * @return true, if a batch was executed
 		 */
 		public boolean execute() {
-			if(batch.getStatementsCount() > 0) {
-				doExecute();
-				return true;
+			boolean executed = executeIfFull();
+			for(List<Object> partition : partitions) {
+				executed |= writes.flush(partition) > 0;
 			}
-			return false;
+			partitions.clear();
+			return executed;
 		}
 		
 		/**
-		 * Execute if full.
+		 * Checks if a full batch was executed since the last check.
 		 *
 		 * @return true, if successful
 		 */
 		public boolean executeIfFull() {
-			if(batch.getStatementsCount() >= MAX_BATCH_SIZE) {
-				doExecute();
-				return true;
-			}
-			return false;
+			boolean executed = this.executed;
+			this.executed = false;
+			return executed;
 		}
 		
 		/**
 		 * Dec total.
 		 */
 		public void decTotal() {
-			--total;
+			if(total > 0) --total;
 		}
 		
 		/**
@@ -1112,7 +2310,8 @@ public class TableFunctions implements Closeable {
 		 * @return the percent
 		 */
 		public int getPercent() {
-			return (count * 100) / total;
+			int total = getTotal();
+			return total > 0 ? (int)((count * 100L) / total) : 100;
 		}
 		
 		/**
@@ -1121,16 +2320,16 @@ public class TableFunctions implements Closeable {
 		 * @return the count
 		 */
 		public int getCount() {
-			return count + batch.getStatementsCount();
+			return count;
 		}
 		
 		/**
 		 * Gets the total.
 		 *
-		 * @return the total
+		 * @return the total or the current count if the total is unknown
 		 */
 		public int getTotal() {
-			return total;
+			return total > 0 ? total : getCount();
 		}
 	}
 	
@@ -1146,15 +2345,29 @@ public class TableFunctions implements Closeable {
 		private final HashSet<T> keys = new HashSet<>();
 		
 		/** The key batch. */
-		private final CountBatch keyBatch = new CountBatch(0);
+		private final CountBatch keyBatch;
+		
+		/** The keys and buckets. */
+		private final HashSet<List<Object>> keyBuckets = new HashSet<>();
+		
+		/** The bucket batch or null if the table is not bucketed. */
+		@CheckForNull
+		private final CountBatch bucketBatch;
 
 		/**
 		 * Instantiates a new count key batch.
 		 *
+		 * @param table the table
+		 * @param keyTable the key table
+		 * @param bucketTable the bucket table or null if the table is not bucketed
+		 * @param writes the import
 		 * @param total the total
 		 */
-		protected CountKeyBatch(int total) {
-			super(total);
+		protected CountKeyBatch(String table, String keyTable, @Nullable String bucketTable, 
+				CassandraWriter.Import writes, int total) {
+			super(table, writes, total);
+			this.keyBatch = new CountBatch(keyTable, writes, 0);
+			this.bucketBatch = bucketTable != null ? new CountBatch(bucketTable, writes, 0) : null;
 		}
 		
 		/**
@@ -1166,30 +2379,42 @@ public class TableFunctions implements Closeable {
 		 */
 		protected void add(T key, Function<T, BatchableStatement<?>> keyInserter, BatchableStatement<?> statement) {
 			if(keys.add(key))
-				keyBatch.add(keyInserter.apply(key));
-			super.add(statement);
+				keyBatch.add(new FileKey(key.user, key.file), keyInserter.apply(key));
+			super.add(key, statement);
 		}
 		
 		/**
-		 * Execute.
+		 * Adds a statement for a time-bucketed partition.
 		 *
-		 * @return true, if successful
+		 * @param key the key
+		 * @param keyInserter the key inserter
+		 * @param bucket the bucket
+		 * @param bucketInserter the bucket inserter
+		 * @param statement the statement
 		 */
-		@Override
-		public boolean execute() {
-			keyBatch.execute();
-			return super.execute();
+		protected void add(T key, Function<T, BatchableStatement<?>> keyInserter, 
+				int bucket, BiFunction<T, Integer, BatchableStatement<?>> bucketInserter, BatchableStatement<?> statement) {
+			if(bucketBatch == null)
+				throw new IllegalStateException("Batch is not bucketed");
+			if(keys.add(key))
+				keyBatch.add(new FileKey(key.user, key.file), keyInserter.apply(key));
+			List<Object> partition = Arrays.asList(key, bucket);
+			if(keyBuckets.add(partition))
+				bucketBatch.add(key, bucketInserter.apply(key, bucket));
+			super.add(partition, statement);
 		}
 		
 		/**
-		 * Execute if full.
+		 * Execute.
 		 *
 		 * @return true, if successful
 		 */
 		@Override
-		public boolean executeIfFull() {
-			keyBatch.executeIfFull();
-			return super.executeIfFull();
+		public boolean execute() {
+			keyBatch.execute();
+			if(bucketBatch != null)
+				bucketBatch.execute();
+			return super.execute();
 		}
 		
 	}
@@ -1,12 +1,15 @@
 package de.sdsd.projekt.prototype.applogic;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
@@ -19,6 +22,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -32,22 +41,34 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.StatusLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.arq.querybuilder.UpdateBuilder;
 import org.apache.jena.arq.querybuilder.WhereBuilder;
+import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecutionFactory;
@@ -65,8 +86,16 @@ import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.impl.PropertyImpl;
 import org.apache.jena.rdf.model.impl.ResourceImpl;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprAggregator;
 import org.apache.jena.sparql.expr.ExprVar;
@@ -77,6 +106,7 @@ import org.apache.jena.update.Update;
 import org.apache.jena.update.UpdateExecutionFactory;
 import org.apache.jena.update.UpdateFactory;
 import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDF;
@@ -105,6 +135,32 @@ public class TripleFunctions implements Closeable {
 	/** The sparql update endpoint. */
 	private final String sparqlUpdateEndpoint;
 	
+	/** The accepted content type of select results, it should be a format that can be parsed while reading. */
+	private final String selectContentType;
+	
+	/** The cache for select results. */
+	private final QueryCache queryCache;
+	
+	/** The graph store protocol endpoint or null if triples are only inserted with sparql updates. */
+	@CheckForNull
+	private final String graphStoreEndpoint;
+	
+	/** Whether the graph store endpoint accepted triples, it's disabled if the store doesn't support it. */
+	private volatile boolean graphStoreSupported = true;
+	
+	/** The count of triples per bulk load request. */
+	private final int bulkChunkSize;
+	
+	/** The count of parallel bulk load requests. */
+	private final int bulkParallel;
+	
+	/** Whether bulk loads are staged in a temporary graph, so either all or no triples are inserted. */
+	private final boolean bulkAtomic;
+	
+	/** The executor for parallel bulk load requests or null if there is no graph store endpoint. */
+	@CheckForNull
+	private final ExecutorService bulkExecutor;
+	
 	/** The credentials provider. */
 	private final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
 	
@@ -139,6 +195,15 @@ public class TripleFunctions implements Closeable {
 		JSONObject stardog = app.settings.getJSONObject("stardog");
 		this.sparqlQueryEndpoint = stardog.getString("query");
 		this.sparqlUpdateEndpoint = stardog.getString("update");
+		this.selectContentType = stardog.optString("selectContentType", WebContent.contentTypeResultsXML);
+		JSONObject cacheSettings = stardog.optJSONObject("cache");
+		if(cacheSettings == null) cacheSettings = new JSONObject();
+		this.queryCache = new QueryCache(cacheSettings);
+		this.graphStoreEndpoint = stardog.optString("graphStore", null);
+		this.bulkChunkSize = stardog.optInt("bulkChunkSize", 50000);
+		this.bulkParallel = stardog.optInt("bulkParallel", 4);
+		this.bulkAtomic = stardog.optBoolean("bulkAtomic", false);
+		this.bulkExecutor = graphStoreEndpoint != null ? Executors.newFixedThreadPool(bulkParallel) : null;
 		Credentials credentials = new UsernamePasswordCredentials(stardog.getString("user"), stardog.getString("password"));
 		credentialsProvider.setCredentials(AuthScope.ANY, credentials);
 		recreateClient();
@@ -159,6 +224,8 @@ public class TripleFunctions implements Closeable {
 		client = HttpClients.custom()
 				.setDefaultCredentialsProvider(credentialsProvider)
 				.addInterceptorFirst(ENCODING_FIXER)
+				.setMaxConnPerRoute(bulkParallel + 2)
+				.setMaxConnTotal(2 * bulkParallel + 4)
 				.build();
 	}
 	
@@ -250,11 +317,31 @@ public class TripleFunctions implements Closeable {
 	
 	/**
 	 * Insert data.
+	 * Uses a bulk load through the graph store endpoint if configured, otherwise a sparql update.
 	 *
 	 * @param model the model
 	 * @param graphURI the graph URI
 	 */
 	public void insertData(Model model, String graphURI) {
+		if(graphStoreEndpoint != null && graphStoreSupported) {
+			try {
+				if(bulkLoad(model, graphURI, bulkAtomic)) return;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				queryCache.invalidate(graphURI); // chunks may be inserted even if the bulk load failed
+			}
+		}
+		insertDataSparql(model, graphURI);
+	}
+	
+	/**
+	 * Insert data with a single sparql INSERT DATA update.
+	 *
+	 * @param model the model
+	 * @param graphURI the graph URI
+	 */
+	public void insertDataSparql(Model model, String graphURI) {
 		for(String prefix : model.getNsPrefixMap().keySet()) {
 			model.removeNsPrefix(prefix);
 		}
@@ -264,6 +351,167 @@ public class TripleFunctions implements Closeable {
 		sw.write("\n\n}}");
 		UpdateRequest update = UpdateFactory.create(sw.toString());
 		UpdateExecutionFactory.createRemote(update, sparqlUpdateEndpoint, client).execute();
+		queryCache.invalidate(graphURI);
+	}
+	
+	/** Graph store responses, that show that the store doesn't support the graph store protocol. */
+	private static final Set<Integer> GRAPH_STORE_UNSUPPORTED = new HashSet<>(Arrays.asList(404, 405, 415, 501));
+	
+	/**
+	 * Loads the triples in chunks through the graph store endpoint.
+	 * The chunks are serialized as N-Triples while the previous chunks are uploaded in parallel.
+	 * Triples with blank nodes are sent in the last chunk together, because blank node labels are scoped to a request.
+	 *
+	 * @param model the model
+	 * @param graphURI the graph URI
+	 * @param atomic whether to stage the triples in a temporary graph, that is added to the graph at the end
+	 * @return false, if the store doesn't support the graph store protocol and nothing was inserted
+	 * @throws IOException if a request failed, in non-atomic mode the chunks before are already inserted
+	 */
+	private boolean bulkLoad(Model model, String graphURI, boolean atomic) throws IOException {
+		String target = atomic ? "urn:sdsd:staging:" + UUID.randomUUID() : graphURI;
+		List<Triple> blank = new ArrayList<>();
+		List<Future<?>> uploads = new ArrayList<>();
+		Semaphore pending = new Semaphore(2 * bulkParallel); // bounds the serialized chunks in memory
+		boolean first = true, staged = false;
+		try {
+			ExtendedIterator<Triple> it = GraphUtil.findAll(model.getGraph());
+			try {
+				List<Triple> chunk = new ArrayList<>(Math.min(bulkChunkSize, model.getGraph().size()));
+				while(it.hasNext()) {
+					Triple t = it.next();
+					if(t.getSubject().isBlank() || t.getObject().isBlank())
+						blank.add(t);
+					else
+						chunk.add(t);
+					if(chunk.size() >= bulkChunkSize || !it.hasNext()) {
+						if(chunk.isEmpty()) break;
+						byte[] ntriples = toNTriples(chunk);
+						chunk = new ArrayList<>(bulkChunkSize);
+						if(first) { // the first chunk is sent alone to check for graph store support
+							first = false;
+							if(!postFirstChunk(target, ntriples)) return false;
+							staged = atomic;
+						} else
+							uploads.add(submitChunk(target, ntriples, pending));
+					}
+				}
+			} finally {
+				it.close();
+			}
+			if(!blank.isEmpty()) {
+				byte[] ntriples = toNTriples(blank);
+				if(first) {
+					first = false;
+					if(!postFirstChunk(target, ntriples)) return false;
+					staged = atomic;
+				} else
+					uploads.add(submitChunk(target, ntriples, pending));
+			}
+			for(Future<?> upload : uploads) {
+				upload.get();
+			}
+			if(staged) {
+				update(UpdateFactory.create("ADD GRAPH <" + target + "> TO GRAPH <" + graphURI + ">; DROP SILENT GRAPH <" + target + ">"));
+				staged = false;
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Bulk load interrupted", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			for(Future<?> upload : uploads) {
+				upload.cancel(false);
+			}
+			if(staged) {
+				try {
+					deleteGraph(target);
+				} catch (Exception e) {
+					System.err.println("Couldn't drop staging graph " + target + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sends the first chunk of a bulk load.
+	 * Disables the graph store endpoint, if the store doesn't support it.
+	 *
+	 * @param graphURI the graph URI
+	 * @param ntriples the N-Triples
+	 * @return false, if the store doesn't support the graph store protocol
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean postFirstChunk(String graphURI, byte[] ntriples) throws IOException {
+		try {
+			postTriples(graphURI, ntriples);
+			return true;
+		} catch (HttpResponseException e) {
+			if(!GRAPH_STORE_UNSUPPORTED.contains(e.getStatusCode())) throw e;
+			System.err.println("Graph store endpoint not supported (" + e.getStatusCode() + "), using sparql updates");
+			graphStoreSupported = false;
+			return false;
+		}
+	}
+	
+	/**
+	 * Submits the upload of a chunk.
+	 * Waits if too many serialized chunks are pending.
+	 *
+	 * @param graphURI the graph URI
+	 * @param ntriples the N-Triples
+	 * @param pending the permits for pending chunks
+	 * @return the future
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private Future<?> submitChunk(String graphURI, byte[] ntriples, Semaphore pending) throws InterruptedException {
+		pending.acquire();
+		return bulkExecutor.submit(() -> {
+			try {
+				postTriples(graphURI, ntriples);
+			} finally {
+				pending.release();
+			}
+			return null;
+		});
+	}
+	
+	/**
+	 * Serializes the triples as N-Triples.
+	 * Non-ASCII characters are escaped, so the encoding fixer doesn't change them.
+	 *
+	 * @param triples the triples
+	 * @return the N-Triples
+	 */
+	private static byte[] toNTriples(List<Triple> triples) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(triples.size() * 128);
+		StreamRDF writer = StreamRDFWriter.getWriterStream(out, RDFFormat.NTRIPLES_ASCII);
+		writer.start();
+		for(Triple t : triples) {
+			writer.triple(t);
+		}
+		writer.finish();
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Adds the triples to the graph with a POST to the graph store endpoint.
+	 *
+	 * @param graphURI the graph URI
+	 * @param ntriples the N-Triples
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void postTriples(String graphURI, byte[] ntriples) throws IOException {
+		HttpPost post = new HttpPost(graphStoreEndpoint + "?graph=" + URLEncoder.encode(graphURI, "UTF-8"));
+		post.setEntity(new ByteArrayEntity(ntriples, ContentType.create("application/n-triples")));
+		try (CloseableHttpResponse response = client.execute(post)) {
+			StatusLine status = response.getStatusLine();
+			EntityUtils.consumeQuietly(response.getEntity());
+			if(status.getStatusCode() / 100 != 2)
+				throw new HttpResponseException(status.getStatusCode(), "Graph store: " + status.getReasonPhrase());
+		}
 	}
 	
 	/**
@@ -347,7 +595,11 @@ public class TripleFunctions implements Closeable {
 	 */
 	private void deleteGraph(String graphURI) {
 		UpdateRequest update = UpdateFactory.create("DROP SILENT GRAPH <" + graphURI + ">");
-		UpdateExecutionFactory.createRemote(update, sparqlUpdateEndpoint, client).execute();
+		try {
+			UpdateExecutionFactory.createRemote(update, sparqlUpdateEndpoint, client).execute();
+		} finally {
+			queryCache.invalidate(graphURI);
+		}
 	}
 	
 	/**
@@ -440,7 +692,17 @@ public class TripleFunctions implements Closeable {
 	 * @return the query result
 	 */
 	public QueryResult query(Query query, boolean reasoning) {
-		return new QueryResult(QueryExecutionFactory.createServiceRequest(sparqlQueryEndpoint + (reasoning ? "/reasoning" : ""), query, client));
+		String endpoint = sparqlQueryEndpoint + (reasoning ? "/reasoning" : "");
+		return new QueryResult(client, endpoint, query, selectContentType, queryCache.key(query, endpoint, reasoning), queryCache);
+	}
+	
+	/**
+	 * Gets the cache for select results.
+	 *
+	 * @return the query cache
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
 	}
 	
 	/**
@@ -458,7 +720,11 @@ public class TripleFunctions implements Closeable {
 	 * @param update the update
 	 */
 	public void update(UpdateRequest update) {
-		UpdateExecutionFactory.createRemote(update, sparqlUpdateEndpoint, client).execute();
+		try {
+			UpdateExecutionFactory.createRemote(update, sparqlUpdateEndpoint, client).execute();
+		} finally {
+			queryCache.invalidate(update);
+		}
 	}
 	
 	/** The Constant NS_INTERN. */
@@ -1440,6 +1706,8 @@ public class TripleFunctions implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
+		if(bulkExecutor != null)
+			bulkExecutor.shutdownNow();
 		client.close();
 	}
 
@@ -1451,16 +1719,71 @@ public class TripleFunctions implements Closeable {
 	 */
 	public static class QueryResult implements AutoCloseable {
 		
-		/** The qe. */
-		private final QueryEngineHTTP qe;
+		/** The client. */
+		private final CloseableHttpClient client;
+		
+		/** The sparql query endpoint. */
+		private final String endpoint;
+		
+		/** The query. */
+		private final Query query;
+		
+		/** The accepted content type of select results. */
+		private final String selectContentType;
+		
+		/** The cache key of a select query or null if the results aren't cached. */
+		@CheckForNull
+		private final QueryCache.Key cacheKey;
+		
+		/** The query cache. */
+		private final QueryCache cache;
+		
+		/** The query engine for ask and construct queries or null if not used yet. */
+		@CheckForNull
+		private QueryEngineHTTP qe = null;
+		
+		/** The running select request or null if there is none. */
+		@CheckForNull
+		private HttpPost request = null;
+		
+		/** The response of the running select request or null if there is none. */
+		@CheckForNull
+		private CloseableHttpResponse response = null;
+		
+		/** The results of the running select request or null if there is none. */
+		@CheckForNull
+		private Iterator<QuerySolution> results = null;
 		
 		/**
 		 * Instantiates a new query result.
+		 * The query is sent, when the results are requested.
+		 *
+		 * @param client the client
+		 * @param endpoint the sparql query endpoint
+		 * @param query the query
+		 * @param selectContentType the accepted content type of select results
+		 * @param cacheKey the cache key of a select query or null if the results aren't cached
+		 * @param cache the query cache
+		 */
+		QueryResult(CloseableHttpClient client, String endpoint, Query query, String selectContentType, 
+				@Nullable QueryCache.Key cacheKey, QueryCache cache) {
+			this.client = client;
+			this.endpoint = endpoint;
+			this.query = query;
+			this.selectContentType = selectContentType;
+			this.cacheKey = cacheKey;
+			this.cache = cache;
+		}
+		
+		/**
+		 * Gets the query engine for ask and construct queries.
 		 *
-		 * @param qe the qe
+		 * @return the query engine
 		 */
-		public QueryResult(QueryEngineHTTP qe) {
-			this.qe = qe;
+		private QueryEngineHTTP engine() {
+			if(qe == null)
+				qe = QueryExecutionFactory.createServiceRequest(endpoint, query, client);
+			return qe;
 		}
 		
 		/**
@@ -1469,7 +1792,7 @@ public class TripleFunctions implements Closeable {
 		 * @return true, if successful
 		 */
 		public boolean ask() {
-			return qe.execAsk();
+			return engine().execAsk();
 		}
 		
 		/**
@@ -1478,20 +1801,82 @@ public class TripleFunctions implements Closeable {
 		 * @return the model
 		 */
 		public Model construct() {
-			return qe.execConstruct();
+			return engine().execConstruct();
+		}
+		
+		/**
+		 * Sends the select query and parses the results while they arrive.
+		 * Cached results are returned without a request, completely read results are cached.
+		 * A running select request of this result is cancelled.
+		 *
+		 * @return the results
+		 * @throws QueryExceptionHTTP if the request failed
+		 */
+		private Iterator<QuerySolution> execSelect() {
+			abort();
+			if(cacheKey != null) {
+				List<QuerySolution> cached = cache.get(cacheKey);
+				if(cached != null) return cached.iterator();
+			}
+			HttpPost post = new HttpPost(endpoint);
+			post.setHeader(HttpHeaders.ACCEPT, selectContentType);
+			post.setEntity(new UrlEncodedFormEntity(Collections.singletonList(
+					new BasicNameValuePair("query", query.toString())), StandardCharsets.UTF_8));
+			try {
+				request = post;
+				response = client.execute(post);
+				HttpEntity entity = response.getEntity();
+				int status = response.getStatusLine().getStatusCode();
+				if(status != 200) {
+					String message = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : null;
+					close();
+					throw new QueryExceptionHTTP(status, message);
+				}
+				String mimeType = ContentType.getOrDefault(entity).getMimeType();
+				ResultSet rs = ResultSetMgr.read(entity.getContent(), resultSetLang(mimeType));
+				results = cacheKey != null ? cache.record(cacheKey, rs) : rs;
+				return results;
+			} catch (IOException e) {
+				close();
+				throw new QueryExceptionHTTP(e);
+			}
+		}
+		
+		/**
+		 * Gets the result set language of a content type.
+		 * XML, TSV and Thrift results are parsed while reading, JSON results are read completely.
+		 *
+		 * @param mimeType the content type of the response
+		 * @return the result set language
+		 */
+		private static Lang resultSetLang(String mimeType) {
+			switch(mimeType) {
+			case WebContent.contentTypeResultsThrift:
+				return ResultSetLang.SPARQLResultSetThrift;
+			case WebContent.contentTypeResultsJSON:
+				return ResultSetLang.SPARQLResultSetJSON;
+			case WebContent.contentTypeTextTSV:
+				return ResultSetLang.SPARQLResultSetTSV;
+			case WebContent.contentTypeTextCSV:
+				return ResultSetLang.SPARQLResultSetCSV;
+			default:
+				return ResultSetLang.SPARQLResultSetXML;
+			}
 		}
 		
 		/**
 		 * First.
+		 * Only the first solution is read, the rest of the response is cancelled.
 		 *
 		 * @return the optional
 		 */
 		public Optional<UtilQuerySolution> first() {
-			ResultSet rs = qe.execSelect();
-			if(rs.hasNext())
-				return Optional.of(new UtilQuerySolution(rs.next()));
-			else
-				return Optional.empty();
+			Iterator<QuerySolution> rs = execSelect();
+			Optional<UtilQuerySolution> first = rs.hasNext() 
+					? Optional.of(materialize(new UtilQuerySolution(rs.next()))) 
+					: Optional.empty();
+			abort();
+			return first;
 		}
 		
 		/**
@@ -1500,7 +1885,7 @@ public class TripleFunctions implements Closeable {
 		 * @return the stream
 		 */
 		public Stream<UtilQuerySolution> stream() {
-			return Util.iteratorStream(qe.execSelect())
+			return Util.iteratorStream(execSelect())
 					.map(UtilQuerySolution::new);
 		}
 		
@@ -1510,7 +1895,7 @@ public class TripleFunctions implements Closeable {
 		 * @return the iterable
 		 */
 		public Iterable<UtilQuerySolution> iterate() {
-			return () -> new ResultIterator(qe.execSelect());
+			return () -> new ResultIterator(execSelect());
 		}
 		
 		/**
@@ -1519,14 +1904,14 @@ public class TripleFunctions implements Closeable {
 		private class ResultIterator implements Iterator<UtilQuerySolution> {
 			
 			/** The rs. */
-			private final ResultSet rs;
+			private final Iterator<QuerySolution> rs;
 			
 			/**
 			 * Instantiates a new result iterator.
 			 *
 			 * @param rs the rs
 			 */
-			public ResultIterator(ResultSet rs) {
+			public ResultIterator(Iterator<QuerySolution> rs) {
 				this.rs = rs;
 			}
 
@@ -1576,13 +1961,41 @@ public class TripleFunctions implements Closeable {
 			}
 			return qs;
 		}
+		
+		/**
+		 * Cancels the running select request.
+		 * The connection is aborted instead of reading the rest of the response.
+		 */
+		private void abort() {
+			if(request != null) {
+				boolean finished;
+				try {
+					finished = results != null && !results.hasNext();
+				} catch (RuntimeException e) {
+					finished = false;
+				}
+				if(!finished)
+					request.abort();
+				request = null;
+			}
+			if(response != null) {
+				try {
+					response.close();
+				} catch (IOException e) {}
+				response = null;
+			}
+			results = null;
+		}
 
 		/**
 		 * Close.
+		 * Cancels the request, if the results weren't read completely.
 		 */
 		@Override
 		public void close() {
-			qe.close();
+			abort();
+			if(qe != null)
+				qe.close();
 		}
 		
 	}
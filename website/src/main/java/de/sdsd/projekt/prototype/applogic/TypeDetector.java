@@ -0,0 +1,244 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.Tika;
+import org.json.JSONObject;
+
+import de.sdsd.projekt.agrirouter.ARMessageType;
+import de.sdsd.projekt.prototype.data.SDSDType;
+
+/**
+ * Determines the SDSD type of file contents.
+ * Candidate types are found by mimetype and agrirouter message type and tested by their parsers.
+ * Results are remembered by content hash until the types change.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class TypeDetector {
+
+	/** Seconds after that a type test is cancelled. */
+	private static final int TEST_TIMEOUT = 3;
+
+	/** The app. */
+	private final ApplicationLogic app;
+
+	/** The tika instance, thread safe. */
+	private final Tika tika = new Tika();
+
+	/** The loader for in process type tests or null if every test runs in a new process. */
+	@CheckForNull
+	private final ParserLoader loader;
+
+	/** The max count of remembered results. */
+	private final int memoSize;
+
+	/** The remembered type uris by mimetype, agrirouter message type and content hash. */
+	private final LinkedHashMap<String, String> memo;
+
+	/** The type list version of the remembered results. */
+	private long memoVersion;
+
+	/**
+	 * Instantiates a new type detector.
+	 *
+	 * @param app the app
+	 * @param loader the loader for in process type tests or null
+	 * @param settings the type detection settings
+	 */
+	TypeDetector(ApplicationLogic app, @Nullable ParserLoader loader, JSONObject settings) {
+		this.app = app;
+		this.loader = loader;
+		this.memoSize = settings.optInt("memoSize", 1000);
+		this.memo = new LinkedHashMap<>(64, 0.75f, true);
+		this.memoVersion = app.list.types.getVersion();
+	}
+
+	/**
+	 * Determine type.
+	 *
+	 * @param content the content
+	 * @param filename the filename
+	 * @param artype the artype
+	 * @return the SDSD type
+	 */
+	public SDSDType detect(final byte[] content, String filename, @Nullable ARMessageType artype) {
+		return detect(tika.detect(content, filename), artype, () -> DigestUtils.sha256Hex(content), 
+				() -> new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Determine type of stored content.
+	 * The mimetype is detected from the beginning of the content,
+	 * the whole content is only read if the candidate types must be tested.
+	 *
+	 * @param head the beginning of the content
+	 * @param filename the filename
+	 * @param artype the artype
+	 * @param hash the SHA-256 hash of the content
+	 * @param content opens the whole content, is called for every tested candidate
+	 * @return the SDSD type
+	 */
+	public SDSDType detect(byte[] head, String filename, @Nullable ARMessageType artype, String hash, Callable<InputStream> content) {
+		return detect(tika.detect(head, filename), artype, () -> hash, content);
+	}
+
+	/**
+	 * Determine type.
+	 *
+	 * @param mimetype the detected mimetype
+	 * @param artype the artype
+	 * @param hash the supplier of the SHA-256 hash of the content
+	 * @param content opens the whole content
+	 * @return the SDSD type
+	 */
+	private SDSDType detect(String mimetype, @Nullable ARMessageType artype, Supplier<String> hash, Callable<InputStream> content) {
+		List<SDSDType> possible = app.list.types.find(mimetype, artype);
+		System.out.format("Test for artype(%s) and mimetype(%s): %s\n", artype, mimetype,
+				possible.stream().map(SDSDType::getName).collect(Collectors.joining(", ")));
+		if(possible.size() == 1) return possible.get(0);
+		if(possible.isEmpty()) return app.list.types.get(null, ParserFunctions.TYPE_UNKNOWN);
+
+		long version = app.list.types.getVersion();
+		String key = mimetype + '|' + (artype != null ? artype.technicalMessageType() : "") + '|' + hash.get();
+		String typeUri = getMemo(key, version);
+		if(typeUri == null) {
+			Optional<SDSDType> foundType = test(possible, content);
+			typeUri = foundType.isPresent() ? foundType.get().getUri() : ParserFunctions.TYPE_UNKNOWN;
+			putMemo(key, typeUri, version);
+		}
+		return app.list.types.get(null, typeUri);
+	}
+
+	/**
+	 * Gets a remembered result.
+	 *
+	 * @param key the key
+	 * @param version the current type list version
+	 * @return the type uri or null
+	 */
+	@CheckForNull
+	private synchronized String getMemo(String key, long version) {
+		if(version != memoVersion) {
+			memo.clear();
+			memoVersion = version;
+		}
+		return memo.get(key);
+	}
+
+	/**
+	 * Remembers a result.
+	 *
+	 * @param key the key
+	 * @param typeUri the type uri
+	 * @param version the type list version the result is based on
+	 */
+	private synchronized void putMemo(String key, String typeUri, long version) {
+		if(version != memoVersion || memoSize <= 0) return;
+		memo.put(key, typeUri);
+		while(memo.size() > memoSize) {
+			memo.remove(memo.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Tests the content with the parsers of the candidate types.
+	 * All candidates with a parser service are tested in a single in process call,
+	 * the others in parallel processes.
+	 *
+	 * @param candidates the candidate types
+	 * @param content opens the content
+	 * @return the first matching type
+	 */
+	private Optional<SDSDType> test(List<SDSDType> candidates, Callable<InputStream> content) {
+		List<SDSDType> processTests = new ArrayList<>(candidates.size());
+		if(loader != null) {
+			List<SDSDType> types = new ArrayList<>(candidates.size());
+			List<ParserPool.Command> commands = new ArrayList<>(candidates.size());
+			for(SDSDType type : candidates) {
+				if(!type.getTestCommand().isPresent()) continue;
+				ParserPool.Command command = ParserPool.Command.parse(type.getTestCommand().get());
+				if(command != null && loader.supports(command)) {
+					types.add(type);
+					commands.add(command);
+				}
+				else
+					processTests.add(type);
+			}
+			if(commands.size() > 0) {
+				try {
+					int found = loader.test(commands, content, TEST_TIMEOUT * commands.size());
+					System.out.println("Tested in process for " + types.stream().map(SDSDType::getName)
+							.collect(Collectors.joining(", ")) + ": " + (found >= 0 ? types.get(found).getName() : "none"));
+					if(found >= 0) return Optional.of(types.get(found));
+				} catch (IOException e) {
+					System.err.println("Testing in process " + e.getMessage());
+					processTests.addAll(types);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return Optional.empty();
+				}
+			}
+		}
+		else
+			processTests.addAll(candidates);
+
+		return processTests.parallelStream()
+				.filter(type -> testProcess(type, content))
+				.findAny();
+	}
+
+	/**
+	 * Tests the content in a new process of the parser of the type.
+	 *
+	 * @param type the type
+	 * @param content opens the content
+	 * @return true, if successful
+	 */
+	private boolean testProcess(SDSDType type, Callable<InputStream> content) {
+		if(type.getTestCommand().isPresent()) {
+			System.out.println("testing for " + type.getName());
+
+			try {
+				if(!Files.exists(Paths.get(type.getParser().get())))
+					throw new FileNotFoundException("Parser missing: " + type.getParser().get());
+				Process process = new ProcessBuilder(type.getTestCommand().get().split(" ")).start();
+				try (OutputStream processIn = process.getOutputStream(); InputStream in = content.call()) {
+					IOUtils.copy(in, processIn);
+				} catch (IOException e) {}
+				if(process.waitFor(TEST_TIMEOUT, TimeUnit.SECONDS)) {
+					System.out.println("Tested for " + type.getName() + ": " + (process.exitValue() == 0));
+					if(process.exitValue() == 0)
+						return true;
+				}
+				else {
+					System.err.println("Testing for " + type.getName() + " timeouted");
+					process.destroyForcibly();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,218 @@
+package de.sdsd.projekt.prototype.applogic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import de.sdsd.projekt.prototype.data.ValueInfo;
+
+/**
+ * Cache for the value infos of the files, that are used to present timelog values.
+ * All value infos of a file are read with one query, when the file is parsed or first read.
+ * Value uris without presentation information are read on demand and unknown value uris are remembered.
+ * The value infos of a file are read again, if the graph of the file changed.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see ValueInfo
+ */
+public class ValueInfoCache {
+
+	/** The app. */
+	private final ApplicationLogic app;
+
+	/** The max count of cached files. */
+	private final int maxFiles;
+
+	/** The value infos by file uri in least recently used order. */
+	private final LinkedHashMap<String, FileValueInfos> files;
+
+	/** The statistics. */
+	private final LongAdder hits = new LongAdder(), negativeHits = new LongAdder(), misses = new LongAdder(),
+			prefetches = new LongAdder(), invalidations = new LongAdder();
+
+	/**
+	 * Instantiates a new value info cache.
+	 *
+	 * @param app the app
+	 * @param settings the cache settings
+	 */
+	ValueInfoCache(ApplicationLogic app, JSONObject settings) {
+		this.app = app;
+		this.maxFiles = settings.optInt("maxFiles", 500);
+		this.files = new LinkedHashMap<>(64, 0.75f, true);
+	}
+
+	/**
+	 * Gets the value infos.
+	 * Unknown value uris are left out like in {@link ValueInfo#getValueInfos(ApplicationLogic, String, List)}.
+	 *
+	 * @param fileUri the file uri
+	 * @param valueUris the value uris or null for all value uris of the file
+	 * @return the value infos
+	 */
+	public List<ValueInfo> get(String fileUri, @Nullable List<String> valueUris) {
+		if(maxFiles <= 0 || valueUris == null) return ValueInfo.getValueInfos(app, fileUri, valueUris);
+		FileValueInfos file = file(fileUri);
+		List<String> missing = new ArrayList<>();
+		for(String uri : valueUris) {
+			if(!file.infos.containsKey(uri))
+				missing.add(uri);
+		}
+		if(!missing.isEmpty()) {
+			misses.add(missing.size());
+			for(ValueInfo info : ValueInfo.getValueInfos(app, fileUri, missing)) {
+				file.infos.put(info.valueUri, Optional.of(info));
+			}
+			for(String uri : missing) {
+				file.infos.putIfAbsent(uri, Optional.empty());
+			}
+		}
+
+		List<ValueInfo> list = new ArrayList<>(valueUris.size());
+		for(String uri : valueUris) {
+			Optional<ValueInfo> info = file.infos.get(uri);
+			if(info == null) continue;
+			if(info.isPresent())
+				list.add(info.get());
+			else if(!missing.contains(uri))
+				negativeHits.increment();
+		}
+		hits.add(valueUris.size() - missing.size());
+		return list;
+	}
+
+	/**
+	 * Reads all value infos of a parsed file into the cache.
+	 * Errors are only logged, because the value infos are read on demand again.
+	 *
+	 * @param fileUri the file uri
+	 */
+	public void prefetch(String fileUri) {
+		if(maxFiles <= 0) return;
+		try {
+			FileValueInfos file = load(fileUri);
+			synchronized (this) {
+				put(fileUri, file);
+			}
+		} catch (Throwable e) {
+			System.err.println("Couldn't prefetch value infos of " + fileUri + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes the value infos of a file.
+	 *
+	 * @param fileUri the file uri
+	 */
+	public synchronized void invalidate(String fileUri) {
+		if(files.remove(fileUri) != null)
+			invalidations.increment();
+	}
+
+	/**
+	 * Gets the cached value infos of a file.
+	 * They are read, if they aren't cached or the graph of the file changed.
+	 *
+	 * @param fileUri the file uri
+	 * @return the value infos of the file
+	 */
+	private FileValueInfos file(String fileUri) {
+		synchronized (this) {
+			FileValueInfos file = files.get(fileUri);
+			if(file != null) {
+				if(!app.triple.getQueryCache().isChanged(Collections.singleton(fileUri), file.time))
+					return file;
+				files.remove(fileUri);
+				invalidations.increment();
+			}
+		}
+		FileValueInfos file = load(fileUri);
+		synchronized (this) {
+			FileValueInfos other = files.get(fileUri);
+			if(other != null && other.time >= file.time)
+				return other;
+			put(fileUri, file);
+		}
+		return file;
+	}
+
+	/**
+	 * Reads all value infos of a file with presentation information.
+	 *
+	 * @param fileUri the file uri
+	 * @return the value infos of the file
+	 */
+	private FileValueInfos load(String fileUri) {
+		FileValueInfos file = new FileValueInfos(app.triple.getQueryCache().now());
+		for(ValueInfo info : ValueInfo.getAllValueInfos(app, fileUri)) {
+			file.infos.put(info.valueUri, Optional.of(info));
+		}
+		prefetches.increment();
+		return file;
+	}
+
+	/**
+	 * Caches the value infos of a file and removes the least recently used files.
+	 *
+	 * @param fileUri the file uri
+	 * @param file the value infos of the file
+	 */
+	private void put(String fileUri, FileValueInfos file) {
+		files.put(fileUri, file);
+		while(files.size() > maxFiles) {
+			files.remove(files.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Gets the statistics.
+	 *
+	 * @return the statistics
+	 */
+	public JSONObject getStatistics() {
+		int size;
+		synchronized (this) {
+			size = files.size();
+		}
+		return new JSONObject()
+				.put("files", size)
+				.put("maxFiles", maxFiles)
+				.put("hits", hits.sum())
+				.put("negativeHits", negativeHits.sum())
+				.put("misses", misses.sum())
+				.put("prefetches", prefetches.sum())
+				.put("invalidations", invalidations.sum());
+	}
+
+	/**
+	 * The value infos of a file.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	private static class FileValueInfos {
+
+		/** The time of the graph change clock, when the value infos were read. */
+		final long time;
+
+		/** The value infos by value uri, empty for unknown value uris. */
+		final Map<String, Optional<ValueInfo>> infos = new ConcurrentHashMap<>();
+
+		/**
+		 * Instantiates new value infos of a file.
+		 *
+		 * @param time the time of the graph change clock, when the value infos were read
+		 */
+		FileValueInfos(long time) {
+			this.time = time;
+		}
+	}
+}
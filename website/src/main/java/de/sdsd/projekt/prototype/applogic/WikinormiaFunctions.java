@@ -1,11 +1,15 @@
 package de.sdsd.projekt.prototype.applogic;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.jena.arq.querybuilder.ConstructBuilder;
 import org.apache.jena.arq.querybuilder.ExprFactory;
@@ -28,8 +32,11 @@ import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.bson.types.ObjectId;
+import org.json.JSONObject;
 
 import de.sdsd.projekt.agrirouter.ARException;
+import de.sdsd.projekt.api.DdiSnapshot;
+import de.sdsd.projekt.api.ServiceResult;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.QueryResult;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.UtilQuerySolution;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.WikiInst;
@@ -63,6 +70,47 @@ public class WikinormiaFunctions {
 	 */
 	public WikinormiaFunctions(ApplicationLogic app) {
 		this.app = app;
+		
+		JSONObject ddiSettings = app.settings.optJSONObject("ddiSnapshot");
+		if(ddiSettings == null) ddiSettings = new JSONObject();
+		long refresh = ddiSettings.optLong("refreshSeconds", 60);
+		if(refresh > 0)
+			app.executor.scheduleWithFixedDelay(new DdiSnapshotDaemon(), 10, refresh, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Writes the DDI snapshot for the parsers, when the DDIs of the wikinormia changed.
+	 * 
+	 * @see DdiSnapshot
+	 */
+	private class DdiSnapshotDaemon implements Runnable {
+		
+		/** The time of the graph change clock, when the snapshot was written. */
+		private long written = -1;
+		
+		/**
+		 * Run.
+		 */
+		@Override
+		public void run() {
+			try {
+				Path file = DdiSnapshot.path();
+				QueryCache clock = app.triple.getQueryCache();
+				if(written >= 0 && Files.isRegularFile(file) 
+						&& !clock.isChanged(Collections.singleton(TripleFunctions.TBOX), written))
+					return;
+				long time = clock.now();
+				Map<String, ServiceResult.WikiInstance> ddis = new HashMap<>();
+				for(WikiEntry ddi : getInstances(DdiSnapshot.DDI, true, Sorting.NONE, 0, 0)) {
+					ddis.put(ddi.getIdentifier(), new ServiceResult.WikiInstance(ddi.getUri(), ddi.getLabel()));
+				}
+				DdiSnapshot.write(file, ddis);
+				written = time;
+				System.out.format("Wrote DDI snapshot with %d DDIs to %s\n", ddis.size(), file);
+			} catch(Throwable e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	/**
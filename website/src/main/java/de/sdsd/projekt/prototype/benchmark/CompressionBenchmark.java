@@ -0,0 +1,116 @@
+package de.sdsd.projekt.prototype.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import de.sdsd.projekt.prototype.data.Codec;
+import de.sdsd.projekt.prototype.data.FileChunk;
+
+/**
+ * Compares the compression ratio and throughput of the codecs for stored file contents.
+ * Every sample set is split into chunks like stored files, each chunk is compressed on its own.
+ * A sample set is a file or a directory, e.g. ISOXML, EFDI and shapefile samples.
+ *
+ * <pre>
+ * java -cp website.jar de.sdsd.projekt.prototype.benchmark.CompressionBenchmark [-i iterations] isoxml/ efdi/ shape/
+ * </pre>
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class CompressionBenchmark {
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int iterations = 5;
+		List<String> samples = new ArrayList<>();
+		for(int i = 0; i < args.length; ++i) {
+			if(args[i].equals("-i") && i + 1 < args.length)
+				iterations = Integer.parseInt(args[++i]);
+			else
+				samples.add(args[i]);
+		}
+		if(samples.isEmpty()) {
+			System.err.println("USAGE: CompressionBenchmark [-i iterations] samples...");
+			return;
+		}
+
+		for(String sample : samples) {
+			List<byte[]> chunks = readChunks(new File(sample));
+			long size = chunks.stream().mapToLong(c -> c.length).sum();
+			System.out.format("%s (%d chunks, %s, %d iterations)\n", sample, chunks.size(),
+					FileUtils.byteCountToDisplaySize(size), iterations);
+			for(Codec codec : Codec.values()) {
+				run(codec, chunks, size, iterations);
+			}
+		}
+	}
+
+	/**
+	 * Reads the sample files and splits them into chunks.
+	 *
+	 * @param sample the sample file or directory
+	 * @return the chunks
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static List<byte[]> readChunks(File sample) throws IOException {
+		Collection<File> files = sample.isDirectory()
+				? FileUtils.listFiles(sample, null, true)
+				: Arrays.asList(sample);
+		List<byte[]> chunks = new ArrayList<>();
+		for(File file : files) {
+			byte[] content = FileUtils.readFileToByteArray(file);
+			for(int offset = 0; offset < content.length; offset += FileChunk.CHUNK_SIZE) {
+				chunks.add(Arrays.copyOfRange(content, offset, Math.min(offset + FileChunk.CHUNK_SIZE, content.length)));
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Runs the benchmark for one codec.
+	 * The first iteration is a warm up and isn't measured.
+	 *
+	 * @param codec the codec
+	 * @param chunks the chunks
+	 * @param size the total size of the chunks
+	 * @param iterations the iterations
+	 */
+	private static void run(Codec codec, List<byte[]> chunks, long size, int iterations) {
+		long stored = 0, compressNanos = 0, decompressNanos = 0;
+		for(int i = 0; i <= iterations; ++i) {
+			long compressed = 0, c = 0, d = 0;
+			for(byte[] chunk : chunks) {
+				long t1 = System.nanoTime();
+				byte[] data = codec.compress(chunk, 0, chunk.length);
+				long t2 = System.nanoTime();
+				byte[] restored = codec.decompress(data, chunk.length);
+				long t3 = System.nanoTime();
+				if(!Arrays.equals(restored, chunk))
+					throw new IllegalStateException(codec.getName() + " restored a chunk with wrong content");
+				// chunks are stored uncompressed, if compression doesn't make them smaller
+				compressed += Math.min(data.length, chunk.length);
+				c += t2 - t1;
+				d += t3 - t2;
+			}
+			if(i == 0) continue;
+			stored = compressed;
+			compressNanos += c;
+			decompressNanos += d;
+		}
+		double mb = size * (double) iterations / (1024 * 1024);
+		System.out.format("  %-8s ratio %6.3f  stored %10s  compress %8.1f MB/s  decompress %8.1f MB/s\n", codec.getName(),
+				stored / (double) size, FileUtils.byteCountToDisplaySize(stored),
+				mb / (compressNanos / 1e9), mb / (decompressNanos / 1e9));
+	}
+}
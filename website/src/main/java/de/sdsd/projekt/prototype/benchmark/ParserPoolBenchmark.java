@@ -0,0 +1,120 @@
+package de.sdsd.projekt.prototype.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+
+import de.sdsd.projekt.prototype.applogic.ParserPool;
+
+/**
+ * Compares the parse latency of a new parser process per file with the latency of the warm parser worker pool.
+ * Uses the bundled IsoxmlParser and EFDIParser jars.
+ * 
+ * <pre>
+ * java -cp website.jar de.sdsd.projekt.prototype.benchmark.ParserPoolBenchmark parserDir isoxml.zip efdi.zip [iterations]
+ * </pre>
+ * 
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ */
+public class ParserPoolBenchmark {
+	
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3) {
+			System.err.println("USAGE: ParserPoolBenchmark parserDir isoxml.zip efdi.zip [iterations]");
+			return;
+		}
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+		try (ParserPool pool = new ParserPool(executor, new JSONObject().put("workers", 1), 30)) {
+			run(executor, pool, "java -jar " + new File(args[0], "isoxml.jar").getPath() + " parse", 
+					FileUtils.readFileToByteArray(new File(args[1])), iterations);
+			run(executor, pool, "java -jar " + new File(args[0], "efdiTimelog.jar").getPath() + " parse", 
+					FileUtils.readFileToByteArray(new File(args[2])), iterations);
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Runs the benchmark for one parser.
+	 *
+	 * @param executor the executor
+	 * @param pool the pool
+	 * @param command the parse command
+	 * @param content the content to parse
+	 * @param iterations the iterations
+	 * @throws Exception the exception
+	 */
+	private static void run(ScheduledExecutorService executor, ParserPool pool, 
+			String command, byte[] content, int iterations) throws Exception {
+		ParserPool.Command pooled = ParserPool.Command.parse(command);
+		if(pooled == null) throw new IllegalArgumentException("Can't run in worker: " + command);
+		
+		long[] cold = new long[iterations], warm = new long[iterations];
+		long size = 0;
+		for(int i = 0; i < iterations; ++i) {
+			long t1 = System.nanoTime();
+			Process process = new ProcessBuilder(command.split(" ")).redirectError(Redirect.INHERIT).start();
+			Future<?> writer = executor.submit(() -> {
+				try (OutputStream processIn = process.getOutputStream()) {
+					processIn.write(content);
+				}
+				return null;
+			});
+			try (InputStream in = process.getInputStream()) {
+				size = IOUtils.consume(in);
+			}
+			writer.get();
+			process.waitFor();
+			cold[i] = System.nanoTime() - t1;
+		}
+		
+		// first job starts the worker
+		try (InputStream in = pool.execute(pooled, new ByteArrayInputStream(content))) {
+			IOUtils.consume(in);
+		}
+		for(int i = 0; i < iterations; ++i) {
+			long t1 = System.nanoTime();
+			try (InputStream in = pool.execute(pooled, new ByteArrayInputStream(content))) {
+				if(IOUtils.consume(in) != size)
+					throw new IOException("Different result size in worker");
+			}
+			warm[i] = System.nanoTime() - t1;
+		}
+		
+		System.out.format("%s (%d bytes in, %d bytes out, %d iterations)\n", command, content.length, size, iterations);
+		print("cold process", cold);
+		print("warm pool", warm);
+	}
+	
+	/**
+	 * Prints the statistics of the measured times.
+	 *
+	 * @param name the name
+	 * @param nanos the measured times
+	 */
+	private static void print(String name, long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		System.out.format("  %-12s min %6.1fms  median %6.1fms  avg %6.1fms  max %6.1fms\n", name, 
+				sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6, 
+				Arrays.stream(sorted).average().orElse(0) / 1e6, sorted[sorted.length - 1] / 1e6);
+	}
+}
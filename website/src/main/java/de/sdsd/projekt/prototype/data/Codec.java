@@ -0,0 +1,175 @@
+package de.sdsd.projekt.prototype.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Compression codecs for stored file contents.
+ * The id of the codec is stored with every chunk, so chunks with different codecs can be read.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see FileChunk
+ */
+public enum Codec {
+
+	/** Stores the content as it is. */
+	NONE(0) {
+		@Override
+		public byte[] compress(byte[] content, int offset, int length) {
+			return Arrays.copyOfRange(content, offset, offset + length);
+		}
+
+		@Override
+		public byte[] decompress(byte[] data, int size) {
+			return data;
+		}
+	},
+
+	/** Deflate, the codec of all contents stored before codecs were selectable. */
+	DEFLATE(1) {
+		@Override
+		public byte[] compress(byte[] content, int offset, int length) {
+			ByteArrayInputStream in = new ByteArrayInputStream(content, offset, length);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+			try (DeflaterOutputStream compressor = new DeflaterOutputStream(out)) {
+				IOUtils.copy(in, compressor);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return out.toByteArray();
+		}
+
+		@Override
+		public byte[] decompress(byte[] data, int size) {
+			ByteArrayInputStream in = new ByteArrayInputStream(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+			try (InflaterOutputStream decompressor = new InflaterOutputStream(out)) {
+				IOUtils.copy(in, decompressor);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return out.toByteArray();
+		}
+	},
+
+	/** LZ4 block format, fast compression for hot telemetry. */
+	LZ4(2) {
+		@Override
+		public byte[] compress(byte[] content, int offset, int length) {
+			return Lz4.compress(content, offset, length);
+		}
+
+		@Override
+		public byte[] decompress(byte[] data, int size) {
+			return Lz4.decompress(data, size);
+		}
+	},
+
+	/** XZ with LZMA2, slow but high ratio compression for archived files. */
+	XZ(3) {
+		@Override
+		public byte[] compress(byte[] content, int offset, int length) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4);
+			try {
+				LZMA2Options options = new LZMA2Options();
+				options.setDictSize(Math.max(LZMA2Options.DICT_SIZE_MIN, FileChunk.CHUNK_SIZE)); // a chunk is compressed on its own
+				try (XZOutputStream compressor = new XZOutputStream(out, options, org.tukaani.xz.XZ.CHECK_NONE)) {
+					compressor.write(content, offset, length);
+				}
+			} catch (UnsupportedOptionsException e) {
+				throw new IllegalStateException(e);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return out.toByteArray();
+		}
+
+		@Override
+		public byte[] decompress(byte[] data, int size) {
+			byte[] out = new byte[size];
+			try (XZInputStream decompressor = new XZInputStream(new ByteArrayInputStream(data))) {
+				IOUtils.readFully(decompressor, out);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return out;
+		}
+	};
+
+	/** The id, that is stored with the compressed data. */
+	public final int id;
+
+	/**
+	 * Instantiates a new codec.
+	 *
+	 * @param id the id
+	 */
+	private Codec(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Compresses the content.
+	 *
+	 * @param content the content
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the compressed data
+	 */
+	public abstract byte[] compress(byte[] content, int offset, int length);
+
+	/**
+	 * Decompresses the data.
+	 *
+	 * @param data the compressed data
+	 * @param size the uncompressed size
+	 * @return the content
+	 */
+	public abstract byte[] decompress(byte[] data, int size);
+
+	/**
+	 * Gets the name, that is used in the settings.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Gets the codec by its stored id.
+	 *
+	 * @param id the id
+	 * @return the codec
+	 * @throws IllegalArgumentException if the id is unknown
+	 */
+	public static Codec fromId(int id) {
+		for(Codec codec : values()) {
+			if(codec.id == id) return codec;
+		}
+		throw new IllegalArgumentException("Unknown codec id " + id);
+	}
+
+	/**
+	 * Gets the codec by its name in the settings.
+	 *
+	 * @param name the name
+	 * @return the codec
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static Codec fromName(String name) {
+		return valueOf(name.toUpperCase(Locale.ROOT));
+	}
+
+}
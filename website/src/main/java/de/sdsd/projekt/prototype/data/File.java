@@ -123,7 +123,7 @@ public class File implements Serializable, Comparable<File> {
 	 * @param expires the expires
 	 * @return the document
 	 */
-	public static Document create(User user, String filename, int size, String type, 
+	public static Document create(User user, String filename, long size, String type, 
 			Instant created, String source, @Nullable Instant expires) {
 		Document doc = new Document()
 				.append(ID, new ObjectId())
@@ -177,7 +177,7 @@ public class File implements Serializable, Comparable<File> {
 	private String filename;
 	
 	/** The size. */
-	private int size;
+	private long size;
 	
 	/** The type. */
 	private String type;
@@ -218,7 +218,8 @@ public class File implements Serializable, Comparable<File> {
 		this.id = doc.getObjectId(ID);
 		this.user = doc.getString(USER);
 		this.filename = doc.getString(NAME);
-		this.size = doc.getInteger(SIZE, 0);
+		Number size = doc.get(SIZE, Number.class);
+		this.size = size != null ? size.longValue() : 0;
 		this.type = doc.getString(TYPE);
 		String vali = doc.getString(VALIDATION);
 		this.validation = vali == null || vali.isEmpty() ? 
@@ -396,7 +397,7 @@ public class File implements Serializable, Comparable<File> {
 	 *
 	 * @return the size
 	 */
-	public int getSize() {
+	public long getSize() {
 		return size;
 	}
 	
@@ -406,7 +407,7 @@ public class File implements Serializable, Comparable<File> {
 	 * @param bytes the bytes
 	 * @return the bson
 	 */
-	public Bson setSize(int bytes) {
+	public Bson setSize(long bytes) {
 		this.size = bytes;
 		return Updates.combine(
 				Updates.set(SIZE, bytes), 
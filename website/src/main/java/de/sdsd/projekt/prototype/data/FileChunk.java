@@ -0,0 +1,183 @@
+package de.sdsd.projekt.prototype.data;
+
+import java.time.Instant;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+
+/**
+ * Represents a chunk of the file contents, stored in MongoDB.
+ * All chunks of a file except the last one have the size {@link #CHUNK_SIZE}.
+ * Each chunk is compressed on its own and stores the id of its codec.
+ * Chunks without a codec id are Deflate compressed if they have an uncompressed size, otherwise uncompressed.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see FileContent
+ */
+public class FileChunk {
+
+	/** The Constant EXPIRES. */
+	public static final String FILEID = "file", INDEX = "n", DATA = "data", UNCOMPRESSED = "uncompressed", 
+			CODEC = "codec", EXPIRES = "expires";
+
+	/** The uncompressed size of a full chunk. */
+	public static final int CHUNK_SIZE = 255 * 1024;
+
+	/**
+	 * Filter for all chunks of the file.
+	 *
+	 * @param fileid the fileid
+	 * @return the bson
+	 */
+	public static Bson filter(ObjectId fileid) {
+		return Filters.eq(FILEID, fileid);
+	}
+
+	/**
+	 * Filter for one chunk of the file.
+	 *
+	 * @param fileid the fileid
+	 * @param index the chunk index
+	 * @return the bson
+	 */
+	public static Bson filter(ObjectId fileid, int index) {
+		return Filters.and(Filters.eq(FILEID, fileid), Filters.eq(INDEX, index));
+	}
+
+	/**
+	 * Creates the.
+	 * The data is only stored compressed, if that makes it smaller.
+	 *
+	 * @param file the file
+	 * @param index the chunk index
+	 * @param content the content
+	 * @param offset the offset of the chunk in the content
+	 * @param length the length of the chunk
+	 * @param codec the codec
+	 * @return the document
+	 */
+	public static Document create(File file, int index, byte[] content, int offset, int length, Codec codec) {
+		return create(file.getId(), file.getExpires(), index, content, offset, length, codec);
+	}
+
+	/**
+	 * Creates the.
+	 * The data is only stored compressed, if that makes it smaller.
+	 *
+	 * @param fileid the fileid
+	 * @param expires the expires
+	 * @param index the chunk index
+	 * @param content the content
+	 * @param offset the offset of the chunk in the content
+	 * @param length the length of the chunk
+	 * @param codec the codec
+	 * @return the document
+	 */
+	public static Document create(ObjectId fileid, @Nullable Instant expires, int index, 
+			byte[] content, int offset, int length, Codec codec) {
+		Document doc = new Document()
+				.append(FILEID, fileid)
+				.append(INDEX, index);
+		byte[] compressed = codec != Codec.NONE ? codec.compress(content, offset, length) : null;
+		if(compressed != null && compressed.length < length)
+			doc.append(CODEC, codec.id)
+					.append(UNCOMPRESSED, length)
+					.append(DATA, new Binary(compressed));
+		else {
+			byte[] data = new byte[length];
+			System.arraycopy(content, offset, data, 0, length);
+			doc.append(CODEC, Codec.NONE.id)
+					.append(DATA, new Binary(data));
+		}
+		if(expires != null)
+			doc.append(EXPIRES, Date.from(expires));
+		return doc;
+	}
+
+	/** The index. */
+	private final int index;
+
+	/** The data. */
+	private final byte[] data;
+
+	/** The uncompressed. */
+	private final int uncompressed;
+
+	/** The codec. */
+	private final Codec codec;
+
+	/**
+	 * Instantiates a new file chunk.
+	 *
+	 * @param doc the doc
+	 */
+	public FileChunk(Document doc) {
+		this.index = doc.getInteger(INDEX);
+		this.data = doc.get(DATA, Binary.class).getData();
+		this.uncompressed = doc.getInteger(UNCOMPRESSED, -1);
+		Integer codec = doc.getInteger(CODEC);
+		this.codec = codec != null ? Codec.fromId(codec) : uncompressed >= 0 ? Codec.DEFLATE : Codec.NONE;
+	}
+
+	/**
+	 * Gets the index.
+	 *
+	 * @return the index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Checks if is compressed.
+	 *
+	 * @return true, if is compressed
+	 */
+	public boolean isCompressed() {
+		return codec != Codec.NONE;
+	}
+
+	/**
+	 * Gets the codec.
+	 *
+	 * @return the codec
+	 */
+	public Codec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Gets the size of the stored data.
+	 *
+	 * @return the stored size
+	 */
+	public int getStoredSize() {
+		return data.length;
+	}
+
+	/**
+	 * Gets the uncompressed size.
+	 *
+	 * @return the size
+	 */
+	public int getSize() {
+		return uncompressed < 0 ? data.length : uncompressed;
+	}
+
+	/**
+	 * Gets the uncompressed data.
+	 *
+	 * @return the data
+	 */
+	public byte[] getData() {
+		return codec == Codec.NONE ? data : codec.decompress(data, uncompressed);
+	}
+
+}
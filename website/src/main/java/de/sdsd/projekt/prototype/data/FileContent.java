@@ -1,13 +1,9 @@
 package de.sdsd.projekt.prototype.data;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.Date;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
 
-import org.apache.commons.io.IOUtils;
+import javax.annotation.CheckForNull;
+
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.Binary;
@@ -17,16 +13,19 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
 
 /**
- * Represents the file contents, stored in MongoDB.
+ * Represents the manifest of the file contents, stored in MongoDB.
+ * The contents are stored in chunks, see {@link FileChunk}.
+ * Older documents contain the whole content in one blob, until they are migrated to chunks.
  *
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
  * @See File
  */
 public class FileContent {
-	
+
 	/** The Constant EXPIRES. */
-	public static final String FILEID = "file", USER = "user", CONTENT = "content", UNCOMPRESSED = "uncompressed", EXPIRES = "expires";
-	
+	public static final String FILEID = "file", USER = "user", CONTENT = "content", UNCOMPRESSED = "uncompressed", EXPIRES = "expires",
+			SIZE = "size", CHUNKS = "chunks", COMPRESS = "compress", CODEC = "codec", HASH = "sha256";
+
 	/**
 	 * Filter.
 	 *
@@ -37,41 +36,64 @@ public class FileContent {
 	public static Bson filter(User user, ObjectId fileid) {
 		return Filters.and(Filters.eq(USER, user.getName()), Filters.eq(FILEID, fileid));
 	}
-	
+
+	/**
+	 * Filter.
+	 *
+	 * @param file the file
+	 * @return the bson
+	 */
+	public static Bson filter(File file) {
+		return Filters.and(Filters.eq(USER, file.getUser()), Filters.eq(FILEID, file.getId()));
+	}
+
 	/**
 	 * Creates the.
 	 *
 	 * @param file the file
-	 * @param content the content
-	 * @param compress the compress
+	 * @param size the size of the content
+	 * @param chunks the count of chunks
+	 * @param codec the codec of new chunks
 	 * @return the document
 	 */
-	public static Document create(File file, byte[] content, boolean compress) {
+	public static Document create(File file, long size, int chunks, Codec codec) {
 		Document doc = new Document()
 				.append(FILEID, file.getId())
-				.append(USER, file.getUser());
-		if(compress)
-			doc.append(UNCOMPRESSED, content.length)
-					.append(CONTENT, new Binary(compress(content)));
-		else
-			doc.append(CONTENT, new Binary(content));
+				.append(USER, file.getUser())
+				.append(SIZE, size)
+				.append(CHUNKS, chunks)
+				.append(CODEC, codec.id);
 		if(file.getExpires() != null)
 			doc.append(EXPIRES, Date.from(file.getExpires()));
 		return doc;
 	}
-	
+
 	/** The file. */
 	private final ObjectId file;
-	
+
 	/** The user. */
 	private final String user;
+
+	/** The size. */
+	private long size;
+
+	/** The chunks. */
+	private int chunks;
+
+	/** The codec of new chunks. */
+	private Codec codec;
+
+	/** The SHA-256 hash of the content or null if it isn't computed yet. */
+	@CheckForNull
+	private String hash;
 	
-	/** The content. */
-	private byte[] content;
-	
-	/** The uncompressed. */
+	/** The content of a document, that isn't migrated to chunks yet. */
+	@CheckForNull
+	private byte[] legacy;
+
+	/** The uncompressed size of the legacy content. */
 	private int uncompressed;
-	
+
 	/**
 	 * Instantiates a new file content.
 	 *
@@ -80,10 +102,24 @@ public class FileContent {
 	public FileContent(Document doc) {
 		this.file = doc.getObjectId(FILEID);
 		this.user = doc.getString(USER);
-		this.content = doc.get(CONTENT, Binary.class).getData();
-		this.uncompressed = doc.getInteger(UNCOMPRESSED, -1);
+		Binary content = doc.get(CONTENT, Binary.class);
+		if(content != null) {
+			this.legacy = content.getData();
+			this.uncompressed = doc.getInteger(UNCOMPRESSED, -1);
+			this.size = uncompressed < 0 ? legacy.length : uncompressed;
+			this.chunks = 0;
+			this.codec = uncompressed >= 0 ? Codec.DEFLATE : Codec.NONE;
+		} else {
+			this.legacy = null;
+			this.uncompressed = -1;
+			this.size = ((Number) doc.get(SIZE)).longValue();
+			this.chunks = doc.getInteger(CHUNKS);
+			Integer codec = doc.getInteger(CODEC);
+			this.codec = codec != null ? Codec.fromId(codec) : doc.getBoolean(COMPRESS, false) ? Codec.DEFLATE : Codec.NONE;
+		}
+		this.hash = doc.getString(HASH);
 	}
-	
+
 	/**
 	 * Filter.
 	 *
@@ -110,86 +146,103 @@ public class FileContent {
 	public String getUser() {
 		return user;
 	}
-	
+
 	/**
-	 * Checks if is compressed.
+	 * Gets the codec of new chunks.
+	 * Existing chunks store their own codec.
 	 *
-	 * @return true, if is compressed
+	 * @return the codec
 	 */
-	public boolean isCompressed() {
-		return uncompressed >= 0;
+	public Codec getCodec() {
+		return codec;
 	}
-	
+
+	/**
+	 * Sets the codec of new chunks.
+	 *
+	 * @param codec the codec
+	 * @return the bson
+	 */
+	public Bson setCodec(Codec codec) {
+		this.codec = codec;
+		return Updates.combine(Updates.set(CODEC, codec.id), Updates.unset(COMPRESS));
+	}
+
 	/**
 	 * Gets the size.
 	 *
 	 * @return the size
 	 */
-	public int getSize() {
-		return uncompressed < 0 ? content.length : uncompressed;
+	public long getSize() {
+		return size;
 	}
 
 	/**
-	 * Gets the content.
+	 * Gets the count of chunks.
 	 *
-	 * @return the content
+	 * @return the chunks
 	 */
-	public byte[] getContent() {
-		return uncompressed < 0 ? content : decompress(content, uncompressed);
+	public int getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Gets the SHA-256 hash of the content.
+	 *
+	 * @return the hex encoded hash or null if it isn't computed yet
+	 */
+	@CheckForNull
+	public String getHash() {
+		return hash;
 	}
 	
 	/**
-	 * Sets the content.
+	 * Sets the SHA-256 hash of the content.
 	 *
-	 * @param content the content
-	 * @param compress the compress
+	 * @param hash the hex encoded hash
 	 * @return the bson
 	 */
-	public Bson setContent(byte[] content, boolean compress) {
-		if(compress) {
-			this.uncompressed = content.length;
-			this.content = compress(content);
-			return Updates.combine(Updates.set(CONTENT, new Binary(this.content)), Updates.set(UNCOMPRESSED, uncompressed));
-		} else {
-			this.uncompressed = -1;
-			this.content = content;
-			return Updates.combine(Updates.set(CONTENT, new Binary(this.content)), Updates.unset(UNCOMPRESSED));
-		}
+	public Bson setHash(String hash) {
+		this.hash = hash;
+		return Updates.set(HASH, hash);
 	}
 	
 	/**
-	 * Compress.
+	 * Checks if the content is still stored in one blob.
 	 *
-	 * @param content the content
-	 * @return the byte[]
+	 * @return true, if the content isn't migrated to chunks yet
 	 */
-	private static byte[] compress(byte[] content) {
-		ByteArrayInputStream in = new ByteArrayInputStream(content);
-		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
-		try (DeflaterOutputStream compressor = new DeflaterOutputStream(out)) {
-			IOUtils.copy(in, compressor);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		return out.toByteArray();
+	public boolean isLegacy() {
+		return legacy != null;
 	}
-	
+
 	/**
-	 * Decompress.
+	 * Gets the content of a document, that isn't migrated to chunks yet.
 	 *
-	 * @param content the content
-	 * @param size the size
-	 * @return the byte[]
+	 * @return the content
+	 * @throws IllegalStateException if the content is stored in chunks
 	 */
-	private static byte[] decompress(byte[] content, int size) {
-		ByteArrayInputStream in = new ByteArrayInputStream(content);
-		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
-		try (InflaterOutputStream decompressor = new InflaterOutputStream(out)) {
-			IOUtils.copy(in, decompressor);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		return out.toByteArray();
+	public byte[] getLegacyContent() {
+		if(legacy == null) throw new IllegalStateException("File content is stored in chunks");
+		return uncompressed < 0 ? legacy : Codec.DEFLATE.decompress(legacy, uncompressed);
+	}
+
+	/**
+	 * Sets the chunks.
+	 * Removes the legacy content and the hash.
+	 *
+	 * @param size the size of the content
+	 * @param chunks the count of chunks
+	 * @return the bson
+	 */
+	public Bson setChunks(long size, int chunks) {
+		this.size = size;
+		this.chunks = chunks;
+		this.legacy = null;
+		this.uncompressed = -1;
+		this.hash = null;
+		return Updates.combine(Updates.set(SIZE, size), Updates.set(CHUNKS, chunks), Updates.set(CODEC, codec.id),
+				Updates.unset(COMPRESS), Updates.unset(CONTENT), Updates.unset(UNCOMPRESSED), Updates.unset(HASH));
 	}
 
 }
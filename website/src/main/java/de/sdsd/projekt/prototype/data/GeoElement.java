@@ -1,7 +1,9 @@
 package de.sdsd.projekt.prototype.data;
 
+import java.time.Instant;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
@@ -32,7 +34,7 @@ public class GeoElement {
 	/** The Constant MINMAX. */
 	public static final String ID = "_id", URI = "uri", TLG = "tlg", USER = "user", FILE = "file", 
 			TYPE = "type", LABEL = "label", AREA = "area",
-			FEATURE = "feature", GEOMETRY = "geometry", MINMAX = "minmax";
+			FEATURE = "feature", GEOMETRY = "geometry", MINMAX = "minmax", UNTIL = "until";
 	
 	/** The Constant GEOFIELD. */
 	public static final String GEOFIELD = FEATURE + '.' + GEOMETRY;
@@ -291,6 +293,16 @@ public class GeoElement {
 				.append(TLG, tlgName);
 	}
 	
+	/**
+	 * Sets the time of the last imported timelog entry.
+	 *
+	 * @param until the time of the last imported entry
+	 * @return the bson
+	 */
+	public static Bson setUntil(Instant until) {
+		return Updates.max(UNTIL, Date.from(until));
+	}
+	
 	/**
 	 * Update.
 	 *
@@ -346,6 +358,10 @@ public class GeoElement {
 	/** The values. */
 	@CheckForNull
 	private final MinMaxValues values;
+	
+	/** The time of the last imported timelog entry. */
+	@CheckForNull
+	private final Instant until;
 
 	/**
 	 * Instantiates a new geo element.
@@ -364,6 +380,8 @@ public class GeoElement {
 		Double area = doc.getDouble(AREA);
 		this.area = area != null ? area : Double.NaN;
 		this.values = MinMaxValues.read(doc.get(MINMAX, Document.class));
+		Date until = doc.getDate(UNTIL);
+		this.until = until != null ? until.toInstant() : null;
 	}
 	
 	/**
@@ -506,6 +524,16 @@ public class GeoElement {
 		return values;
 	}
 	
+	/**
+	 * Gets the time of the last imported timelog entry.
+	 *
+	 * @return the time or null if it is unknown
+	 */
+	@CheckForNull
+	public Instant getUntil() {
+		return until;
+	}
+	
 	/**
 	 * Gets the full label.
 	 *
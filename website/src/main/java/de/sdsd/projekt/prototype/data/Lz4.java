@@ -0,0 +1,224 @@
+package de.sdsd.projekt.prototype.data;
+
+/**
+ * Compressor for the LZ4 block format.
+ * Favors speed over ratio, so it's used for telemetry, that is appended often.
+ * The uncompressed size isn't part of the block, it must be stored next to it.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see Codec#LZ4
+ */
+final class Lz4 {
+
+	/** The min length of a match. */
+	private static final int MIN_MATCH = 4;
+
+	/** The last bytes of a block, that are always literals. */
+	private static final int LAST_LITERALS = 5;
+
+	/** The last match must start at least this count of bytes before the end of the block. */
+	private static final int MF_LIMIT = 12;
+
+	/** The max distance of a match. */
+	private static final int MAX_DISTANCE = 0xFFFF;
+
+	/** The log2 of the hash table size. */
+	private static final int HASH_LOG = 14;
+
+	/**
+	 * Instantiates a new lz4.
+	 */
+	private Lz4() {}
+
+	/**
+	 * Gets the max size of a compressed block.
+	 *
+	 * @param length the uncompressed length
+	 * @return the max compressed length
+	 */
+	static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Compresses the content to an LZ4 block.
+	 *
+	 * @param src the content
+	 * @param off the offset
+	 * @param len the length
+	 * @return the compressed block
+	 */
+	static byte[] compress(byte[] src, int off, int len) {
+		byte[] dst = new byte[maxCompressedLength(len)];
+		int end = off + len, anchor = off, ip = off, op = 0;
+
+		if(len >= MF_LIMIT + 1) {
+			int[] table = new int[1 << HASH_LOG]; // position + 1, 0 is empty
+			int mflimit = end - MF_LIMIT, matchlimit = end - LAST_LITERALS;
+			while(ip <= mflimit) {
+				int seq = readInt(src, ip);
+				int h = hash(seq);
+				int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if(ref < off || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+					ip += 1 + ((ip - anchor) >>> 6); // skip faster through incompressible data
+					continue;
+				}
+
+				while(ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+					--ip;
+					--ref;
+				}
+				int matchLen = MIN_MATCH;
+				while(ip + matchLen < matchlimit && src[ip + matchLen] == src[ref + matchLen]) {
+					++matchLen;
+				}
+
+				op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLen);
+				ip += matchLen;
+				anchor = ip;
+			}
+		}
+
+		op = writeLiterals(dst, op, src, anchor, end - anchor, 0);
+		byte[] out = new byte[op];
+		System.arraycopy(dst, 0, out, 0, op);
+		return out;
+	}
+
+	/**
+	 * Decompresses an LZ4 block.
+	 *
+	 * @param src the compressed block
+	 * @param size the uncompressed size
+	 * @return the content
+	 * @throws IllegalArgumentException if the block is corrupt
+	 */
+	static byte[] decompress(byte[] src, int size) {
+		byte[] dst = new byte[size];
+		int ip = 0, op = 0;
+		try {
+			while(ip < src.length) {
+				int token = src[ip++] & 0xFF;
+				int literals = token >>> 4;
+				if(literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while(b == 255);
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if(ip >= src.length) break; // last sequence has no match
+
+				int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+				int matchLen = token & 0x0F;
+				if(matchLen == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLen += b;
+					} while(b == 255);
+				}
+				matchLen += MIN_MATCH;
+				int ref = op - offset;
+				if(offset == 0 || ref < 0 || op + matchLen > size)
+					throw new IllegalArgumentException("Corrupt LZ4 block");
+				if(offset >= matchLen)
+					System.arraycopy(dst, ref, dst, op, matchLen);
+				else { // overlapping match repeats the last bytes
+					for(int i = 0; i < matchLen; ++i) {
+						dst[op + i] = dst[ref + i];
+					}
+				}
+				op += matchLen;
+			}
+		} catch(IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Corrupt LZ4 block", e);
+		}
+		if(op != size) throw new IllegalArgumentException("Corrupt LZ4 block");
+		return dst;
+	}
+
+	/**
+	 * Writes a sequence of literals and a match.
+	 *
+	 * @param dst the destination
+	 * @param op the position in the destination
+	 * @param src the source
+	 * @param literalStart the start of the literals in the source
+	 * @param literals the count of literals
+	 * @param offset the distance of the match
+	 * @param matchLen the length of the match
+	 * @return the new position in the destination
+	 */
+	private static int writeSequence(byte[] dst, int op, byte[] src, int literalStart, int literals, int offset, int matchLen) {
+		int ml = matchLen - MIN_MATCH;
+		op = writeLiterals(dst, op, src, literalStart, literals, Math.min(ml, 15));
+		dst[op++] = (byte) offset;
+		dst[op++] = (byte) (offset >>> 8);
+		if(ml >= 15)
+			op = writeLength(dst, op, ml - 15);
+		return op;
+	}
+
+	/**
+	 * Writes the token and the literals of a sequence.
+	 *
+	 * @param dst the destination
+	 * @param op the position in the destination
+	 * @param src the source
+	 * @param literalStart the start of the literals in the source
+	 * @param literals the count of literals
+	 * @param matchToken the low bits of the token
+	 * @return the new position in the destination
+	 */
+	private static int writeLiterals(byte[] dst, int op, byte[] src, int literalStart, int literals, int matchToken) {
+		dst[op++] = (byte) (Math.min(literals, 15) << 4 | matchToken);
+		if(literals >= 15)
+			op = writeLength(dst, op, literals - 15);
+		System.arraycopy(src, literalStart, dst, op, literals);
+		return op + literals;
+	}
+
+	/**
+	 * Writes the extension bytes of a length.
+	 *
+	 * @param dst the destination
+	 * @param op the position in the destination
+	 * @param length the remaining length
+	 * @return the new position in the destination
+	 */
+	private static int writeLength(byte[] dst, int op, int length) {
+		while(length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	/**
+	 * Reads 4 bytes in little endian order.
+	 *
+	 * @param src the source
+	 * @param pos the position
+	 * @return the int
+	 */
+	private static int readInt(byte[] src, int pos) {
+		return (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8 | (src[pos + 2] & 0xFF) << 16 | (src[pos + 3] & 0xFF) << 24;
+	}
+
+	/**
+	 * Hashes 4 bytes to a position in the hash table.
+	 *
+	 * @param seq the 4 bytes
+	 * @return the hash
+	 */
+	private static int hash(int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+}
@@ -0,0 +1,288 @@
+package de.sdsd.projekt.prototype.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.jena.arq.querybuilder.SelectBuilder;
+import org.apache.jena.query.Query;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.sparql.core.Var;
+import org.bson.types.ObjectId;
+import org.json.JSONObject;
+
+import de.sdsd.projekt.prototype.applogic.ApplicationLogic;
+import de.sdsd.projekt.prototype.applogic.TripleFunctions;
+import de.sdsd.projekt.prototype.applogic.TripleFunctions.QueryResult;
+import de.sdsd.projekt.prototype.data.Permissions.Permission;
+
+/**
+ * In memory index of the service permissions and the files of the users, shared by all requests.
+ * The grants of a service instance are read once and kept until the user graph or the wikinormia changes.
+ * The files of a user are read once and updated with every added, updated or deleted file.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see Permissions
+ */
+public class PermissionIndex {
+
+	/** The app. */
+	private final ApplicationLogic app;
+
+	/** The grants by service instance id. */
+	private final ConcurrentHashMap<ObjectId, Grants> grants = new ConcurrentHashMap<>();
+
+	/** The files by user name, ordered by id like the file list. */
+	private final ConcurrentHashMap<String, Map<ObjectId, File>> files = new ConcurrentHashMap<>();
+
+	/** The statistics. */
+	private final LongAdder grantHits = new LongAdder(), grantLoads = new LongAdder(),
+			fileHits = new LongAdder(), fileLoads = new LongAdder(), fileUpdates = new LongAdder();
+
+	/**
+	 * Instantiates a new permission index.
+	 *
+	 * @param app the app
+	 */
+	public PermissionIndex(ApplicationLogic app) {
+		this.app = app;
+	}
+
+	/**
+	 * Gets the grants of a service instance.
+	 * They are read again, if the user graph or the wikinormia changed.
+	 *
+	 * @param user the user of the service instance
+	 * @param instanceId the service instance id
+	 * @param instanceRes the service instance resource
+	 * @return the grants
+	 */
+	Grants getGrants(User user, ObjectId instanceId, Resource instanceRes) {
+		Grants g = grants.get(instanceId);
+		if(g != null && !app.triple.getQueryCache().isChanged(g.graphs, g.time)) {
+			grantHits.increment();
+			return g;
+		}
+		g = new Grants(user.getGraphUri(), instanceRes);
+		grants.put(instanceId, g);
+		grantLoads.increment();
+		return g;
+	}
+
+	/**
+	 * Removes the grants of a service instance.
+	 *
+	 * @param instanceId the service instance id
+	 */
+	void invalidate(ObjectId instanceId) {
+		grants.remove(instanceId);
+	}
+
+	/**
+	 * Gets the files of a user.
+	 *
+	 * @param user the user
+	 * @return the files by id, must not be modified
+	 */
+	private Map<ObjectId, File> files(User user) {
+		Map<ObjectId, File> userFiles = files.get(user.getName());
+		if(userFiles != null) {
+			fileHits.increment();
+			return userFiles;
+		}
+		return files.computeIfAbsent(user.getName(), name -> {
+			fileLoads.increment();
+			Map<ObjectId, File> map = new ConcurrentSkipListMap<>();
+			for(File f : app.list.files.getList(user)) {
+				map.put(f.getId(), f);
+			}
+			return map;
+		});
+	}
+
+	/**
+	 * Gets all files of a user.
+	 *
+	 * @param user the user
+	 * @return the files
+	 */
+	List<File> getFiles(User user) {
+		return new ArrayList<>(files(user).values());
+	}
+
+	/**
+	 * Gets the files of a user with the given type.
+	 *
+	 * @param user the user
+	 * @param type the sdsd type uri
+	 * @return the files
+	 */
+	List<File> getFiles(User user, String type) {
+		return files(user).values().stream()
+				.filter(f -> type.equals(f.getType()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Gets a file of a user.
+	 *
+	 * @param user the user
+	 * @param id the file id
+	 * @return the file or null if the user has no such file
+	 */
+	@CheckForNull
+	File getFile(User user, ObjectId id) {
+		return files(user).get(id);
+	}
+
+	/**
+	 * Adds a new file to the index of its user.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 */
+	public void fileAdded(User user, File file) {
+		files.computeIfPresent(user.getName(), (name, map) -> {
+			map.put(file.getId(), file);
+			return map;
+		});
+		fileUpdates.increment();
+	}
+
+	/**
+	 * Reads an updated file into the index of its user.
+	 * The file is read while the index of the user is locked, 
+	 * so that concurrent updates of the user's files are stored in order.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 */
+	public void fileUpdated(User user, File file) {
+		files.computeIfPresent(user.getName(), (name, map) -> {
+			List<File> current = app.list.files.get(user, file.filter());
+			if(current.isEmpty())
+				map.remove(file.getId());
+			else
+				map.put(file.getId(), current.get(0));
+			return map;
+		});
+		fileUpdates.increment();
+	}
+
+	/**
+	 * Removes a deleted file from the index of its user.
+	 *
+	 * @param user the user
+	 * @param file the file
+	 */
+	public void fileDeleted(User user, File file) {
+		files.computeIfPresent(user.getName(), (name, map) -> {
+			map.remove(file.getId());
+			return map;
+		});
+		fileUpdates.increment();
+	}
+
+	/**
+	 * Removes all indexed data.
+	 */
+	public void clear() {
+		grants.clear();
+		files.clear();
+	}
+
+	/**
+	 * Gets the statistics.
+	 *
+	 * @return the statistics
+	 */
+	public JSONObject getStatistics() {
+		return new JSONObject()
+				.put("instances", grants.size())
+				.put("grantHits", grantHits.sum())
+				.put("grantLoads", grantLoads.sum())
+				.put("users", files.size())
+				.put("fileHits", fileHits.sum())
+				.put("fileLoads", fileLoads.sum())
+				.put("fileUpdates", fileUpdates.sum());
+	}
+
+	/** The Constant TYPE. */
+	private static final Var PERM = Var.alloc("perm"), ALLOW = Var.alloc("allow"), TYPE = Var.alloc("type");
+
+	/**
+	 * The permissions of a service instance and the wikinormia types, they allow to access.
+	 *
+	 * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+	 */
+	class Grants {
+
+		/** The graphs, the grants are read from. */
+		final List<String> graphs;
+
+		/** The time of the graph change clock, when the grants were read. */
+		final long time;
+
+		/** The permissions. */
+		final List<Permission> permissions;
+
+		/** The allowed types including all their subclasses. */
+		final Set<String> allowed;
+
+		/** The permitted objects by permission type. */
+		final Map<String, Set<Resource>> objects;
+
+		/**
+		 * Reads the grants of a service instance.
+		 *
+		 * @param userGraphUri the user graph uri
+		 * @param instanceRes the service instance resource
+		 */
+		private Grants(String userGraphUri, Resource instanceRes) {
+			this.graphs = Arrays.asList(userGraphUri, TripleFunctions.TBOX);
+			this.time = app.triple.getQueryCache().now();
+
+			try(QueryResult qr = app.triple.query(Permission.createQuery(userGraphUri, instanceRes))) {
+				this.permissions = Collections.unmodifiableList(qr.stream()
+						.filter(Permission::canRead)
+						.map(Permission::new)
+						.collect(Collectors.toList()));
+			}
+
+			Query query = new SelectBuilder()
+					.setDistinct(true)
+					.addVar(TYPE)
+					.from(userGraphUri).from(TripleFunctions.TBOX)
+					.addWhere(instanceRes, Permissions.Pperm, PERM)
+					.addWhere(PERM, Permissions.Pallow, ALLOW)
+					.addWhere(PERM, TripleFunctions.baseclass(Permissions.Pabout), TYPE)
+					.build();
+			try(QueryResult qr = app.triple.query(query)) {
+				this.allowed = Collections.unmodifiableSet(qr.stream()
+						.map(qs -> qs.getUri(TYPE))
+						.collect(Collectors.toSet()));
+			}
+
+			Map<String, Set<Resource>> objects = new HashMap<>();
+			for(Permission p : permissions) {
+				Set<Resource> objs = objects.computeIfAbsent(p.getType(), t -> new HashSet<>());
+				for(String o : p.getObjects()) {
+					objs.add(ResourceFactory.createResource(o));
+				}
+			}
+			this.objects = objects;
+		}
+	}
+}
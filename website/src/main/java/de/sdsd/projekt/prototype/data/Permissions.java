@@ -7,16 +7,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
-import org.apache.jena.arq.querybuilder.AskBuilder;
 import org.apache.jena.arq.querybuilder.ExprFactory;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.graph.Node;
-import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
 import org.apache.jena.rdf.model.Literal;
@@ -33,8 +29,6 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.bson.conversions.Bson;
 
-import com.mongodb.client.model.Filters;
-
 import de.sdsd.projekt.prototype.applogic.ApplicationLogic;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions.QueryResult;
@@ -42,6 +36,7 @@ import de.sdsd.projekt.prototype.applogic.TripleFunctions.UtilQuerySolution;
 
 /**
  * Helper for saving and retrieving service permissions from/to the triplestore.
+ * Permission checks and file listings are answered by the shared {@link PermissionIndex}.
  * 
  * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
  */
@@ -104,37 +99,6 @@ public class Permissions {
 					.build();
 		}
 		
-		/**
-		 * Creates the object query.
-		 *
-		 * @param userGraphUri the user graph uri
-		 * @param instance the instance
-		 * @param type the type
-		 * @return the query
-		 */
-		static Query createObjectQuery(String userGraphUri, Resource instance, String type) {
-			Node uri = NodeFactory.createURI(type);
-			return new SelectBuilder()
-					.addVar(OBJ)
-					.from(userGraphUri)
-					.addWhere(instance, Pperm, ID)
-					.addWhere(ID, Pabout, uri)
-					.addWhere(ID, Pobject, OBJ)
-					.build();
-		}
-		
-		/**
-		 * Read objects.
-		 *
-		 * @param stream the stream
-		 * @return the sets the
-		 */
-		static Set<Resource> readObjects(Stream<UtilQuerySolution> stream) {
-			return stream
-					.map(qs -> qs.getResource(OBJ))
-					.collect(Collectors.toSet());
-		}
-		
 		/** The id. */
 		private final String id;
 		
@@ -258,6 +222,9 @@ public class Permissions {
 	/** The user. */
 	private final User user;
 	
+	/** The index. */
+	private final PermissionIndex index;
+	
 	/**
 	 * Instantiates a new permissions.
 	 *
@@ -269,6 +236,16 @@ public class Permissions {
 		this.instance = instance;
 		this.instanceRes = ResourceFactory.createResource("serviceInst:" + instance.getId().toHexString());
 		this.user = app.user.getUser(instance.getUser());
+		this.index = app.service.permissions;
+	}
+	
+	/**
+	 * Gets the grants of the service instance from the index.
+	 *
+	 * @return the grants
+	 */
+	private PermissionIndex.Grants grants() {
+		return index.getGrants(user, instance.getId(), instanceRes);
 	}
 	
 	/**
@@ -295,6 +272,7 @@ public class Permissions {
 		
 		//we will add to users graph
 		app.triple.insertData(model, user.getGraphUri());
+		index.invalidate(instance.getId());
 	}
 	
 	/**
@@ -316,6 +294,7 @@ public class Permissions {
 		pss.setParam("?inst", instanceRes);
 		
 		app.triple.update(pss.asUpdate());
+		index.invalidate(instance.getId());
 	}
 	
 	/**
@@ -324,12 +303,7 @@ public class Permissions {
 	 * @return the permissions
 	 */
 	public List<Permission> getPermissions() {
-		try(QueryResult qr = app.triple.query(Permission.createQuery(user.getGraphUri(), instanceRes))) {
-			return qr.stream()
-					.filter(Permission::canRead)
-					.map(Permission::new)
-					.collect(Collectors.toList());
-		}
+		return new ArrayList<>(grants().permissions);
 	}
 	
 	/**
@@ -339,21 +313,40 @@ public class Permissions {
 	 * @return the permission objects
 	 */
 	public Set<Resource> getPermissionObjects(String accessTypeUri) {
-		Query query = Permission.createObjectQuery(user.getGraphUri(), instanceRes, accessTypeUri);
-		try(QueryResult qr = app.triple.query(query)) {
-			return Permission.readObjects(qr.stream());
-		}
+		return new HashSet<>(grants().objects.getOrDefault(accessTypeUri, Collections.emptySet()));
 	}
 	
 	/**
 	 * Gets the files.
+	 * Files without a filter are listed from the index, filtered files are read from the database.
 	 *
 	 * @param filter the filter
 	 * @return the files
 	 * @throws SDSDException the SDSD exception
 	 */
 	public List<File> getFiles(@Nullable Bson filter) throws SDSDException {
-		List<File> files = filter == null ? app.list.files.getList(user) : app.list.files.get(user, filter);
+		return permitted(filter == null ? index.getFiles(user) : app.list.files.get(user, filter));
+	}
+	
+	/**
+	 * Gets the files with the given type from the index.
+	 *
+	 * @param sdsdtype the sdsd type uri
+	 * @return the files
+	 * @throws SDSDException the SDSD exception
+	 */
+	public List<File> getFilesOfType(String sdsdtype) throws SDSDException {
+		return permitted(index.getFiles(user, sdsdtype));
+	}
+	
+	/**
+	 * Filters the files by the time permission of the service instance.
+	 *
+	 * @param files the files
+	 * @return the permitted files
+	 * @throws SDSDException if none of the files is permitted
+	 */
+	private List<File> permitted(List<File> files) throws SDSDException {
 		if(files.isEmpty()) return files;
 		if(instance.hasTimePermission()) {
 			List<File> permitted = new ArrayList<>(files.size());
@@ -391,7 +384,9 @@ public class Permissions {
 	 * @throws SDSDException the SDSD exception
 	 */
 	public List<File> getFiles(@Nullable String fileUri) throws SDSDException {
-		return getFiles(fileUri != null ? Filters.eq(File.toID(fileUri)) : null);
+		if(fileUri == null) return getFiles();
+		File file = index.getFile(user, File.toID(fileUri));
+		return permitted(file != null ? Collections.singletonList(file) : Collections.emptyList());
 	}
 	
 	/**
@@ -482,16 +477,7 @@ public class Permissions {
 	 * @return true, if is allowed
 	 */
 	public boolean isAllowed(String accessTypeUri) {
-		Query query = new AskBuilder()
-				.from(user.getGraphUri())
-				.from(TripleFunctions.TBOX)
-				.addWhere(instanceRes, Pperm, Vperm)
-				.addWhere(Vperm, Pallow, Vallow)
-				.addWhere(Vperm, TripleFunctions.baseclass(Pabout), NodeFactory.createURI(accessTypeUri))
-				.build();
-		try(QueryResult qr = app.triple.query(query)) {
-			return qr.ask();
-		}
+		return grants().allowed.contains(accessTypeUri);
 	}
 	
 	/** The Constant FILE. */
@@ -533,6 +519,7 @@ public class Permissions {
 		pss.setParam("?inst", instanceRes);
 		
 		app.triple.update(pss.asUpdate());
+		index.invalidate(instance.getId());
 	}
 	
 	/**
@@ -574,6 +561,7 @@ public class Permissions {
 		pss.setIri("?per", permissionId);
 		
 		app.triple.update(pss.asUpdate());
+		index.invalidate(instance.getId());
 	}
 	
 }
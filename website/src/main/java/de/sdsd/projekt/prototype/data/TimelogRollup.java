@@ -0,0 +1,171 @@
+package de.sdsd.projekt.prototype.data;
+
+import java.time.Instant;
+
+import de.sdsd.projekt.prototype.applogic.TableFunctions.Key;
+
+/**
+ * Represents the aggregated timelog values of a time interval from cassandra.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see Timelog
+ */
+public class TimelogRollup {
+
+	/** The key. */
+	public final Key key;
+
+	/** The resolution in seconds. */
+	public final int resolution;
+
+	/** The start of the interval. */
+	public final Instant time;
+
+	/** The count. */
+	public final long count;
+
+	/** The last. */
+	public final long min, max, sum, first, last;
+
+	/** The time of the first and last value. */
+	public final Instant from, until;
+
+	/**
+	 * Instantiates a new timelog rollup.
+	 *
+	 * @param key the key
+	 * @param resolution the resolution in seconds
+	 * @param time the start of the interval
+	 * @param count the count
+	 * @param min the min
+	 * @param max the max
+	 * @param sum the sum
+	 * @param first the first value
+	 * @param last the last value
+	 * @param from the time of the first value
+	 * @param until the time of the last value
+	 */
+	public TimelogRollup(Key key, int resolution, Instant time, long count, long min, long max, long sum,
+			long first, long last, Instant from, Instant until) {
+		this.key = key;
+		this.resolution = resolution;
+		this.time = time;
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.first = first;
+		this.last = last;
+		this.from = from;
+		this.until = until;
+	}
+
+	/**
+	 * Gets the key.
+	 *
+	 * @return the key
+	 */
+	public Key getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the resolution.
+	 *
+	 * @return the resolution in seconds
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Gets the time.
+	 *
+	 * @return the start of the interval
+	 */
+	public Instant getTime() {
+		return time;
+	}
+
+	/**
+	 * Gets the count.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the min.
+	 *
+	 * @return the min
+	 */
+	public long getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the max.
+	 *
+	 * @return the max
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets the sum.
+	 *
+	 * @return the sum
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Gets the average.
+	 *
+	 * @return the average
+	 */
+	public double getAvg() {
+		return count > 0 ? (double) sum / count : 0.;
+	}
+
+	/**
+	 * Gets the first value.
+	 *
+	 * @return the first value
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets the last value.
+	 *
+	 * @return the last value
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * Gets the time of the first value.
+	 *
+	 * @return the from
+	 */
+	public Instant getFrom() {
+		return from;
+	}
+
+	/**
+	 * Gets the time of the last value.
+	 *
+	 * @return the until
+	 */
+	public Instant getUntil() {
+		return until;
+	}
+
+}
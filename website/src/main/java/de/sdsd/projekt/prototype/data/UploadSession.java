@@ -0,0 +1,164 @@
+package de.sdsd.projekt.prototype.data;
+
+import java.time.Instant;
+import java.util.Date;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Represents a resumable upload, stored in MongoDB.
+ * The received content is stored in chunks with the session id as file id,
+ * so the finished upload becomes the file without copying the content.
+ *
+ * @author <a href="mailto:48514372+julianklose@users.noreply.github.com">Julian Klose</a>
+ * @see FileContent
+ */
+public class UploadSession {
+
+	/** The Constant EXPIRES. */
+	public static final String ID = "_id", USER = "user", NAME = "filename", CREATED = "created",
+			RECEIVED = "received", EXPIRES = "expires";
+
+	/**
+	 * Filter.
+	 *
+	 * @param user the user
+	 * @param id the id
+	 * @return the bson
+	 */
+	public static Bson filter(User user, ObjectId id) {
+		return Filters.and(Filters.eq(USER, user.getName()), Filters.eq(id));
+	}
+
+	/**
+	 * Creates the.
+	 *
+	 * @param user the user
+	 * @param filename the filename
+	 * @param created the creation date of the file
+	 * @param expires the expiration of the session
+	 * @return the document
+	 */
+	public static Document create(User user, String filename, Instant created, Instant expires) {
+		return new Document()
+				.append(ID, new ObjectId())
+				.append(USER, user.getName())
+				.append(NAME, filename)
+				.append(CREATED, Date.from(created))
+				.append(RECEIVED, 0L)
+				.append(EXPIRES, Date.from(expires));
+	}
+
+	/** The id. */
+	private final ObjectId id;
+
+	/** The user. */
+	private final String user;
+
+	/** The filename. */
+	private final String filename;
+
+	/** The created. */
+	private final Instant created;
+
+	/** The received. */
+	private long received;
+
+	/** The expires. */
+	private final Instant expires;
+
+	/**
+	 * Instantiates a new upload session.
+	 *
+	 * @param doc the doc
+	 */
+	public UploadSession(Document doc) {
+		this.id = doc.getObjectId(ID);
+		this.user = doc.getString(USER);
+		this.filename = doc.getString(NAME);
+		this.created = doc.getDate(CREATED).toInstant();
+		this.received = doc.get(RECEIVED, Number.class).longValue();
+		this.expires = doc.getDate(EXPIRES).toInstant();
+	}
+
+	/**
+	 * Filter.
+	 *
+	 * @return the bson
+	 */
+	public Bson filter() {
+		return Filters.and(Filters.eq(USER, user), Filters.eq(id));
+	}
+
+	/**
+	 * Gets the id, that is also the id of the resulting file.
+	 *
+	 * @return the id
+	 */
+	public ObjectId getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the user.
+	 *
+	 * @return the user
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Gets the filename.
+	 *
+	 * @return the filename
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * Gets the creation date of the file.
+	 *
+	 * @return the created
+	 */
+	public Instant getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the count of received bytes.
+	 * The next part of the upload must start at this offset.
+	 *
+	 * @return the received bytes
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Sets the count of received bytes.
+	 *
+	 * @param received the received bytes
+	 * @return the bson
+	 */
+	public Bson setReceived(long received) {
+		this.received = received;
+		return Updates.set(RECEIVED, received);
+	}
+
+	/**
+	 * Gets the expiration of the session.
+	 *
+	 * @return the expires
+	 */
+	public Instant getExpires() {
+		return expires;
+	}
+
+}
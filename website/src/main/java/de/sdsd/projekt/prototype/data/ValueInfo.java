@@ -12,6 +12,7 @@ import java.util.Objects;
 
 import javax.annotation.Nullable;
 
+import org.apache.jena.arq.querybuilder.ExprFactory;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.core.Var;
@@ -33,6 +34,9 @@ public class ValueInfo {
 	private static final Var VURI = Var.alloc("vuri"), DESIG = Var.alloc("desig"), 
 			OFFSET = Var.alloc("offset"), SCALE = Var.alloc("scale"), NOD = Var.alloc("nod"), UNIT = Var.alloc("unit");
 	
+	/** The Constant EXPR. */
+	private static final ExprFactory EXPR = new ExprFactory();
+	
 	/**
 	 * Gets the value infos.
 	 *
@@ -43,7 +47,36 @@ public class ValueInfo {
 	 */
 	public static List<ValueInfo> getValueInfos(ApplicationLogic app, String fileUri, @Nullable List<String> valueUris) {
 		if(valueUris != null && valueUris.isEmpty()) return Collections.emptyList();
-		SelectBuilder query = new SelectBuilder()
+		SelectBuilder query = createQuery(fileUri);
+		if(valueUris != null)
+			query.addValueVar(VURI, valueUris.stream().map(NodeFactory::createURI).toArray());
+		return read(app, query, valueUris != null ? valueUris.size() : 10);
+	}
+	
+	/**
+	 * Gets all value infos of a file, that have at least one presentation information.
+	 * Used to fill the value info cache with a single query.
+	 *
+	 * @param app the app
+	 * @param fileUri the file uri
+	 * @return the value infos
+	 */
+	public static List<ValueInfo> getAllValueInfos(ApplicationLogic app, String fileUri) {
+		SelectBuilder query = createQuery(fileUri)
+				.setDistinct(true)
+				.addFilter(EXPR.or(EXPR.or(EXPR.bound(DESIG), EXPR.bound(OFFSET)), 
+						EXPR.or(EXPR.or(EXPR.bound(SCALE), EXPR.bound(NOD)), EXPR.bound(UNIT))));
+		return read(app, query, 64);
+	}
+	
+	/**
+	 * Creates the query.
+	 *
+	 * @param fileUri the file uri
+	 * @return the select builder
+	 */
+	private static SelectBuilder createQuery(String fileUri) {
+		return new SelectBuilder()
 				.addVar(VURI).addVar(DESIG).addVar(OFFSET).addVar(SCALE).addVar(NOD).addVar(UNIT)
 				.from(fileUri)
 				.addWhere(VURI, RDF.type, Var.ANON)
@@ -52,9 +85,18 @@ public class ValueInfo {
 				.addOptional(VURI, VALUEINFO.prop("scale"), SCALE)
 				.addOptional(VURI, VALUEINFO.prop("numberOfDecimals"), NOD)
 				.addOptional(VURI, VALUEINFO.prop("unit"), UNIT);
-		if(valueUris != null)
-			query.addValueVar(VURI, valueUris.stream().map(NodeFactory::createURI).toArray());
-		List<ValueInfo> list = new ArrayList<>(valueUris != null ? valueUris.size() : 10);
+	}
+	
+	/**
+	 * Reads the value infos.
+	 *
+	 * @param app the app
+	 * @param query the query
+	 * @param expected the expected count
+	 * @return the value infos
+	 */
+	private static List<ValueInfo> read(ApplicationLogic app, SelectBuilder query, int expected) {
+		List<ValueInfo> list = new ArrayList<>(expected);
 		try(QueryResult qr = app.triple.query(query.build())) {
 			for(UtilQuerySolution qs : qr.iterate()) {
 				list.add(new ValueInfo(qs));
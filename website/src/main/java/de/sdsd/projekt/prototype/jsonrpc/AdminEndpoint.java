@@ -231,4 +231,80 @@ public class AdminEndpoint extends JsonRpcEndpoint {
 			throw createError(null, e);
 		}
 	}
+	
+	/**
+	 * Returns statistics about the parser job scheduler.
+	 *
+	 * @param req http servlet request including userdata
+	 * @return JSON object including queue length, wait time and run time per job type
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject adminParserStatistics(HttpServletRequest req) throws JsonRpcException {
+		try {
+			String sessionId = getSessionId(req);
+			if(!application.user.isAdmin(sessionId))
+				throw new NoLoginException();
+			else
+				return application.parser.getJobStatistics();
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
+	/**
+	 * Returns statistics about the cache for select results of the triplestore.
+	 *
+	 * @param req http servlet request including userdata
+	 * @return JSON object including size, hits, misses, hit rate, evictions and invalidations
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject adminQueryCacheStatistics(HttpServletRequest req) throws JsonRpcException {
+		try {
+			String sessionId = getSessionId(req);
+			if(!application.user.isAdmin(sessionId))
+				throw new NoLoginException();
+			else
+				return application.triple.getQueryCache().getStatistics();
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
+	/**
+	 * Returns statistics about the cache of value infos.
+	 *
+	 * @param req http servlet request including userdata
+	 * @return JSON object including the cached files, hits, negative hits, misses and prefetches
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject adminValueInfoCacheStatistics(HttpServletRequest req) throws JsonRpcException {
+		try {
+			String sessionId = getSessionId(req);
+			if(!application.user.isAdmin(sessionId))
+				throw new NoLoginException();
+			else
+				return application.table.getValueInfoCache().getStatistics();
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
+	/**
+	 * Returns statistics about the index of service permissions and files.
+	 *
+	 * @param req http servlet request including userdata
+	 * @return JSON object including hits, loads and updates of the grants and file listings
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject adminPermissionStatistics(HttpServletRequest req) throws JsonRpcException {
+		try {
+			String sessionId = getSessionId(req);
+			if(!application.user.isAdmin(sessionId))
+				throw new NoLoginException();
+			else
+				return application.service.permissions.getStatistics();
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
 }
@@ -49,6 +49,7 @@ import de.sdsd.projekt.prototype.applogic.TableFunctions;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.ElementKey;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.FileKey;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.Key;
+import de.sdsd.projekt.prototype.applogic.TableFunctions.Page;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.TimeInterval;
 import de.sdsd.projekt.prototype.applogic.TableFunctions.TimelogInfo;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions;
@@ -67,6 +68,7 @@ import de.sdsd.projekt.prototype.data.Service;
 import de.sdsd.projekt.prototype.data.ServiceInstance;
 import de.sdsd.projekt.prototype.data.Timelog;
 import de.sdsd.projekt.prototype.data.TimelogPosition;
+import de.sdsd.projekt.prototype.data.TimelogRollup;
 import de.sdsd.projekt.prototype.data.User;
 import de.sdsd.projekt.prototype.data.Util;
 import de.sdsd.projekt.prototype.data.ValueInfo;
@@ -811,11 +813,10 @@ public class ApiEndpoint extends JsonRpcEndpoint {
 			try(QueryResult qr = application.triple.query(query.build())) {
 				for(UtilQuerySolution qs : qr.iterate()) {
 					Key key = new Key(user.getName(), qs.getUri(G), qs.getString(TLGNAME), qs.getUri(DLV));
-					ElementKey tlgKey = key.toElementKey();
 					
 					JSONObject tlg = getOrCreate(getOrCreate(out, key.file), key.name);
 					if(tlg.length() == 0) {
-						TimelogInfo tlgInfo = application.table.getTimelogInfo(tlgKey);
+						TimelogInfo tlgInfo = application.table.getTimelogInfo(key);
 						tlg.put("count", tlgInfo.count)
 								.put("from", isoUTC(tlgInfo.from))
 								.put("until", isoUTC(tlgInfo.until));
@@ -969,13 +970,11 @@ public class ApiEndpoint extends JsonRpcEndpoint {
 			JSONObject out = new JSONObject();
 			for(Entry<String, Map<String, Integer>> e : valueUris.entrySet()) {
 				JSONObject fileKey = getOrCreate(out, e.getKey());
-				Map<String, TimelogInfo> tlInfos = filter != null ? new HashMap<>() : null;
 				for(Key k : application.table.listTimelogKeys(new FileKey(context.getUser(), e.getKey()))) {
 					Integer ddi = e.getValue().get(k.valueUri);
 					if(ddi != null) {
 						if(filter != null) {
-							TimelogInfo info = tlInfos.get(k.name);
-							if(info == null) tlInfos.put(k.name, info = application.table.getTimelogInfo(k));
+							TimelogInfo info = application.table.getTimelogInfo(k);
 							if(filter.isFrom() && info.until.isBefore(filter.from())) continue;
 							if(filter.isUntil() && info.from.isAfter(filter.until())) continue;
 						}
@@ -1068,6 +1067,59 @@ public class ApiEndpoint extends JsonRpcEndpoint {
 		}
 	}
 	
+	/**
+	 * Gets the aggregated time log values.
+	 *
+	 * @param req the req
+	 * @param fileUri the file uri
+	 * @param name the name
+	 * @param valueUri the value uri
+	 * @param timeFilter the time filter
+	 * @param maxPoints the max count of intervals
+	 * @return the resolution and the intervals
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject getTimeLogRollup(HttpServletRequest req, String fileUri, String name, String valueUri, 
+			JSONObject timeFilter, int maxPoints) throws JsonRpcException {
+		try {
+			ServiceInstance context = getContext(req);
+			System.out.format("getTimeLogRollup: user(%s) service(%s) fileUri(%s) name(%s) valueUri(%s) timeFilter(%s) maxPoints(%d)\n",
+					context.getUser(), context.getServiceName(), fileUri, name, valueUri, timeFilter, maxPoints);
+			
+			User user = application.user.getUser(context.getUser());
+			if(user == null) throw new SDSDException("Service instance belongs to an unknown user");
+
+			Permissions permissions = context.getPermissions(application);
+			List<String> graphs = permissions.getGraphs(fileUri);
+			
+			Node accessUri = NodeFactory.createURI(valueUri);
+			if(permissions.filterAllowed(graphs, accessUri).isEmpty())
+				throw ACCESS_DENIED;
+			
+			TableFunctions.Key timelogKey = new TableFunctions.Key(context.getUser(), fileUri, name, valueUri);
+			
+			List<TimelogRollup> rollups = application.table.getTimelogRollup(timelogKey, TimeInterval.from(timeFilter), maxPoints);
+
+			JSONArray rollup = new JSONArray();
+			for (TimelogRollup r : rollups) {
+				rollup.put(new JSONObject()
+					.put("time", JsonRpcEndpoint.isoUTC(r.time))
+					.put("count", r.count)
+					.put("min", r.min)
+					.put("max", r.max)
+					.put("avg", r.getAvg())
+					.put("first", r.first)
+					.put("last", r.last));
+			}
+
+			return new JSONObject()
+					.put("resolution", rollups.isEmpty() ? 0 : rollups.get(0).resolution)
+					.put("rollup", rollup);
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
 	/**
 	 * Gets the positions.
 	 *
@@ -1110,6 +1162,113 @@ public class ApiEndpoint extends JsonRpcEndpoint {
 		}
 	}
 	
+	/**
+	 * Gets a page of the time log.
+	 *
+	 * @param req the req
+	 * @param fileUri the file uri
+	 * @param name the name
+	 * @param valueUri the value uri
+	 * @param timeFilter the time filter
+	 * @param pageSize the page size
+	 * @param next the continuation token of the previous page or null for the first page
+	 * @return the time log page and the continuation token for the next page
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject getTimeLogPage(HttpServletRequest req, String fileUri, String name, String valueUri, 
+			JSONObject timeFilter, int pageSize, String next) throws JsonRpcException {
+		try {
+			ServiceInstance context = getContext(req);
+			System.out.format("getTimeLogPage: user(%s) service(%s) fileUri(%s) name(%s) valueUri(%s) timeFilter(%s) pageSize(%d)\n",
+					context.getUser(), context.getServiceName(), fileUri, name, valueUri, timeFilter, pageSize);
+			
+			User user = application.user.getUser(context.getUser());
+			if(user == null) throw new SDSDException("Service instance belongs to an unknown user");
+
+			Permissions permissions = context.getPermissions(application);
+			List<String> graphs = permissions.getGraphs(fileUri);
+			
+			Node accessUri = NodeFactory.createURI(valueUri);
+			if(permissions.filterAllowed(graphs, accessUri).isEmpty())
+				throw ACCESS_DENIED;
+			
+			TableFunctions.Key timelogKey = new TableFunctions.Key(context.getUser(), fileUri, name, valueUri);
+			
+			Page<Timelog> page;
+			try {
+				page = application.table.getTimelogPage(timelogKey, TimeInterval.from(timeFilter), pageSize, next);
+			} catch (IllegalArgumentException e) {
+				throw new SDSDException(e.getMessage());
+			}
+
+			JSONArray timelog = new JSONArray();
+			for (Timelog tl : page.items) {
+				timelog.put(new JSONObject()
+					.put("time", JsonRpcEndpoint.isoUTC(tl.time))
+					.put("value", tl.value));
+			}
+
+			return new JSONObject()
+					.put("timelog", timelog)
+					.put("next", page.next);
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
+	/**
+	 * Gets a page of the positions.
+	 *
+	 * @param req the req
+	 * @param fileUri the file uri
+	 * @param timelog the timelog
+	 * @param timeFilter the time filter
+	 * @param pageSize the page size
+	 * @param next the continuation token of the previous page or null for the first page
+	 * @return the positions page and the continuation token for the next page
+	 * @throws JsonRpcException the json rpc exception
+	 */
+	public JSONObject getPositionPage(HttpServletRequest req, String fileUri, String timelog, JSONObject timeFilter, 
+			int pageSize, String next) throws JsonRpcException {
+		try {
+			ServiceInstance context = getContext(req);
+			System.out.format("getPositionPage: user(%s) service(%s) fileUri(%s) timelog(%s) timeFilter(%s) pageSize(%d)\n",
+					context.getUser(), context.getServiceName(), fileUri, timelog, timeFilter, pageSize);
+			
+			User user = application.user.getUser(context.getUser());
+			if(user == null) throw new SDSDException("Service instance belongs to an unknown user");
+
+			Permissions permissions = context.getPermissions(application);
+			permissions.getGraphs(fileUri);
+			if(!permissions.isGPSAllowed())
+				throw ACCESS_DENIED;
+			
+			ElementKey positionKey = new ElementKey(context.getUser(), fileUri, timelog);
+			
+			Page<TimelogPosition> page;
+			try {
+				page = application.table.getPositionPage(positionKey, TimeInterval.from(timeFilter), pageSize, next);
+			} catch (IllegalArgumentException e) {
+				throw new SDSDException(e.getMessage());
+			}
+
+			JSONArray positions = new JSONArray();
+			for (TimelogPosition pos : page.items) {
+				positions.put(new JSONObject()
+					.put("time", JsonRpcEndpoint.isoUTC(pos.time))
+					.put("latitude", pos.pos.y)
+					.put("longitude", pos.pos.x)
+					.put("altitude", Double.isNaN(pos.pos.getZ()) ? null : pos.pos.getZ()));
+			}
+
+			return new JSONObject()
+					.put("positions", positions)
+					.put("next", page.next);
+		} catch (Throwable e) {
+			throw createError(null, e);
+		}
+	}
+	
 	/**
 	 * Gets the value info.
 	 *
@@ -1188,7 +1347,7 @@ public class ApiEndpoint extends JsonRpcEndpoint {
 			if(!permissions.isFileAllowed())
 				throw ACCESS_DENIED;
 
-			List<File> files = permissions.getFiles(File.filterType(sdsdtype));
+			List<File> files = permissions.getFilesOfType(sdsdtype);
 			return new JSONObject().put("files", files.stream()
 					.map(ApiEndpoint::printFile)
 					.collect(Util.toJSONArray()));
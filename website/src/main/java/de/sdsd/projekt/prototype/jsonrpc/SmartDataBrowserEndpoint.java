@@ -49,6 +49,7 @@ public class SmartDataBrowserEndpoint extends JsonRpcEndpoint {
         String password = stardog.getString("password");
 
         smartDataBrowser = SmartDataBrowser.serverLess(sparqlQueryEndpoint, user, password, serverAddress, 100);
+        smartDataBrowser.setQueryCache(application.triple.getQueryCache());
     }
 
     /**
@@ -1,19 +1,23 @@
 package de.sdsd.projekt.prototype.rest;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -21,16 +25,21 @@ import javax.inject.Inject;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
@@ -39,18 +48,21 @@ import org.bson.types.ObjectId;
 import org.glassfish.jersey.media.multipart.ContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.json.JSONObject;
 
 import com.google.protobuf.Timestamp;
 import com.google.protobuf.util.Timestamps;
 
 import de.sdsd.projekt.agrirouter.ARException;
 import de.sdsd.projekt.prototype.applogic.ApplicationLogic;
+import de.sdsd.projekt.prototype.applogic.FileFunctions;
 import de.sdsd.projekt.prototype.applogic.TripleFunctions;
 import de.sdsd.projekt.prototype.data.ARConn;
 import de.sdsd.projekt.prototype.data.EfdiTimeLog;
 import de.sdsd.projekt.prototype.data.File;
 import de.sdsd.projekt.prototype.data.SDSDException;
 import de.sdsd.projekt.prototype.data.SDSDType;
+import de.sdsd.projekt.prototype.data.UploadSession;
 import de.sdsd.projekt.prototype.data.User;
 import de.sdsd.projekt.prototype.jsonrpc.SimulatorEndpoint;
 import efdi.GrpcEfdi.ISO11783_TaskData;
@@ -120,6 +132,138 @@ public class RestResource {
 		}
 		return null;
 	}
+	
+	/** The size of the buffer per streamed download. */
+	private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Checks if the If-None-Match header matches the entity tag.
+	 *
+	 * @param request the request
+	 * @param etag the quoted entity tag
+	 * @return true, if the client has the current version
+	 */
+	private static boolean isNotModified(HttpServletRequest request, String etag) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch == null) return false;
+		String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+		for(String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if(tag.startsWith("W/")) tag = tag.substring(2);
+			if(tag.equals("*") || tag.equals(opaque)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Parses a single byte range of the Range header.
+	 *
+	 * @param range the value of the Range header
+	 * @param size the size of the content
+	 * @return the first and last byte position, an empty array if the range is not satisfiable 
+	 * 		or null if the header is ignored and the whole content is sent
+	 */
+	private static long[] parseRange(String range, long size) {
+		if(!range.startsWith("bytes=") || range.indexOf(',') >= 0) return null; // multiple ranges are not supported
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if(dash < 0) return null;
+		try {
+			long first, last;
+			if(dash == 0) { // suffix range
+				long suffix = Long.parseLong(spec.substring(1));
+				if(suffix <= 0) return new long[0];
+				first = Math.max(size - suffix, 0);
+				last = size - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash));
+				if(dash + 1 < spec.length()) {
+					last = Long.parseLong(spec.substring(dash + 1));
+					if(last < first) return null; // invalid range
+					last = Math.min(last, size - 1);
+				} else
+					last = size - 1;
+			}
+			if(first >= size) return new long[0];
+			return new long[] { first, last };
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Streams the content of a download with support for byte ranges and conditional requests.
+	 * The content is copied with a fixed-size buffer, so only the current chunk is held in memory.
+	 *
+	 * @param request the request
+	 * @param download the download
+	 * @param mimeType the mime type
+	 * @param filename the filename
+	 * @return the response
+	 */
+	private static Response streamDownload(HttpServletRequest request, FileFunctions.Download download, 
+			String mimeType, String filename) {
+		String etag = '"' + download.getHash() + '"';
+		if(isNotModified(request, etag))
+			return Response.notModified().header("ETag", etag).build();
+		
+		long size = download.getSize();
+		long first = 0, last = size - 1;
+		boolean partial = false;
+		String range = request.getHeader("Range");
+		String ifRange = request.getHeader("If-Range");
+		if(range != null && (ifRange == null || ifRange.equals(etag))) {
+			long[] r = parseRange(range, size);
+			if(r != null && r.length == 0) {
+				return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+						.header("Content-Range", "bytes */" + size)
+						.header("ETag", etag)
+						.build();
+			}
+			if(r != null) {
+				first = r[0];
+				last = r[1];
+				partial = true;
+			}
+		}
+		
+		final long offset = first, length = last - first + 1;
+		StreamingOutput body = out -> {
+			try(InputStream in = download.open(offset)) {
+				IOUtils.copyLarge(in, out, 0, length, new byte[DOWNLOAD_BUFFER_SIZE]);
+			}
+		};
+		ResponseBuilder response = partial 
+				? Response.status(Status.PARTIAL_CONTENT).header("Content-Range", "bytes " + first + "-" + last + "/" + size)
+				: Response.ok();
+		return response.entity(body)
+				.type(mimeType)
+				.header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+				.header("Content-Length", length)
+				.header("Accept-Ranges", "bytes")
+				.header("ETag", etag)
+				.build();
+	}
+	
+	/**
+	 * Streams generated content, that depends on a stored file.
+	 * Conditional requests are supported with a weak entity tag, byte ranges are not supported.
+	 *
+	 * @param request the request
+	 * @param etag the weak entity tag of the generated content
+	 * @param body the generated content
+	 * @param filename the filename
+	 * @return the response
+	 */
+	private static Response streamGenerated(HttpServletRequest request, String etag, StreamingOutput body, String filename) {
+		if(isNotModified(request, etag))
+			return Response.notModified().header("ETag", etag).build();
+		return Response.ok(body, "application/zip")
+				.header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+				.header("Accept-Ranges", "none")
+				.header("ETag", etag)
+				.build();
+	}
 
 	/**
 	 * Upload file.
@@ -150,20 +294,24 @@ public class RestResource {
 				if(date == null)
 					date = new Date();
 				
-				byte[] content = IOUtils.toByteArray(part.getEntityAs(InputStream.class));
+				PushbackInputStream content = new PushbackInputStream(part.getEntityAs(InputStream.class));
 				
 				System.out.println("storeFile: user(" + user.getName() + ") filename(" + filename + ")");
-				if(content.length == 0) {
+				int first = content.read();
+				if(first < 0) {
 					errors.add(filename + ": Uploaded file is empty.");
 					continue;
 				}
-				if(content.length > 10485760) {
-					errors.add(filename + ": Uploaded file is too big (max. 10 MB)");
+				content.unread(first);
+
+				File file;
+				try {
+					file = application.file.storeFile(user, filename, content, 
+							date.toInstant(), File.SOURCE_USER_UPLOAD);
+				} catch(SDSDException e) {
+					errors.add(filename + ": " + e.getMessage());
 					continue;
 				}
-
-				File file = application.file.storeFile(user, filename, content, 
-						date.toInstant(), File.SOURCE_USER_UPLOAD, null);
 				
 				if(file == null) {
 					errors.add(filename + ": No storage task for this file");
@@ -182,6 +330,165 @@ public class RestResource {
 		}
 	}
 	
+	/**
+	 * Upload session response.
+	 *
+	 * @param session the upload session
+	 * @return the response with the id of the session and the offset of the next part
+	 */
+	private static Response uploadSessionResponse(UploadSession session) {
+		return Response.ok(new JSONObject()
+						.put("id", session.getId().toHexString())
+						.put("offset", session.getReceived())
+						.toString(), MediaType.APPLICATION_JSON)
+				.build();
+	}
+	
+	/**
+	 * Begins a resumable upload.
+	 *
+	 * @param filename the filename
+	 * @param request the request
+	 * @return the response
+	 */
+	//curl -X POST "http://localhost:8081/rest/upload/session?filename=test.zip"
+	@POST
+	@Path("/upload/session")
+	public Response beginUpload(
+			@QueryParam("filename") String filename,
+			@Context HttpServletRequest request) {
+		User user = null;
+		try {
+			user = application.getUser(getSessionId(request));
+			if(user == null)
+				return noLoginError();
+			if(filename == null || filename.isEmpty())
+				return Response.status(Status.BAD_REQUEST).entity("Missing filename").build();
+			
+			System.out.println("beginUpload: user(" + user.getName() + ") filename(" + filename + ")");
+			return uploadSessionResponse(application.file.beginUpload(user, filename, Instant.now()));
+		} catch (Throwable e) {
+			return internalError(user, e);
+		}
+	}
+	
+	/**
+	 * Gets the state of a resumable upload.
+	 *
+	 * @param id the id of the session
+	 * @param request the request
+	 * @return the response
+	 */
+	@GET
+	@Path("/upload/session/{id : [a-fA-F0-9]{24}}")
+	public Response getUpload(
+			@PathParam("id") String id,
+			@Context HttpServletRequest request) {
+		User user = null;
+		try {
+			user = application.getUser(getSessionId(request));
+			if(user == null)
+				return noLoginError();
+			return uploadSessionResponse(application.file.getUpload(user, new ObjectId(id)));
+		} catch (SDSDException e) {
+			return Response.status(Status.NOT_FOUND).entity(e.getMessage()).build();
+		} catch (Throwable e) {
+			return internalError(user, e);
+		}
+	}
+	
+	/**
+	 * Uploads the next part of a resumable upload.
+	 * If the part is interrupted, the upload is resumed at the offset returned by {@link #getUpload(String, HttpServletRequest)}.
+	 *
+	 * @param id the id of the session
+	 * @param offset the offset of the part in the file
+	 * @param content the part
+	 * @param request the request
+	 * @return the response
+	 */
+	//curl -X PUT -H "Content-Type: application/octet-stream" --data-binary @part1 "http://localhost:8081/rest/upload/session/<id>?offset=0"
+	@PUT
+	@Path("/upload/session/{id : [a-fA-F0-9]{24}}")
+	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
+	public Response appendUpload(
+			@PathParam("id") String id,
+			@QueryParam("offset") long offset,
+			InputStream content,
+			@Context HttpServletRequest request) {
+		User user = null;
+		try {
+			user = application.getUser(getSessionId(request));
+			if(user == null)
+				return noLoginError();
+			return uploadSessionResponse(application.file.appendUpload(user, new ObjectId(id), offset, content));
+		} catch (SDSDException e) {
+			return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
+		} catch (Throwable e) {
+			return internalError(user, e);
+		}
+	}
+	
+	/**
+	 * Finishes a resumable upload and stores the file.
+	 *
+	 * @param id the id of the session
+	 * @param request the request
+	 * @return the response with the id of the file
+	 */
+	@POST
+	@Path("/upload/session/{id : [a-fA-F0-9]{24}}/finish")
+	public Response finishUpload(
+			@PathParam("id") String id,
+			@Context HttpServletRequest request) {
+		User user = null;
+		try {
+			user = application.getUser(getSessionId(request));
+			if(user == null)
+				return noLoginError();
+			
+			File file = application.file.finishUpload(user, new ObjectId(id));
+			if(file == null)
+				return Response.status(Status.CONFLICT).entity("No storage task for this file").build();
+			
+			application.logInfo(user, String.format("Uploaded file \"%s\" (%s)", file.getFilename(), FileUtils.byteCountToDisplaySize(file.getSize())));
+			return Response.ok(new JSONObject()
+							.put("id", file.getId().toHexString())
+							.put("filename", file.getFilename())
+							.toString(), MediaType.APPLICATION_JSON)
+					.build();
+		} catch (SDSDException e) {
+			return Response.status(Status.NOT_FOUND).entity(e.getMessage()).build();
+		} catch (Throwable e) {
+			return internalError(user, e);
+		}
+	}
+	
+	/**
+	 * Cancels a resumable upload.
+	 *
+	 * @param id the id of the session
+	 * @param request the request
+	 * @return the response
+	 */
+	@DELETE
+	@Path("/upload/session/{id : [a-fA-F0-9]{24}}")
+	public Response cancelUpload(
+			@PathParam("id") String id,
+			@Context HttpServletRequest request) {
+		User user = null;
+		try {
+			user = application.getUser(getSessionId(request));
+			if(user == null)
+				return noLoginError();
+			return application.file.cancelUpload(user, new ObjectId(id)) 
+					? Response.noContent().build()
+					: Response.status(Status.NOT_FOUND).entity("Upload session not found").build();
+		} catch (Throwable e) {
+			return internalError(user, e);
+		}
+	}
+	
 	/**
 	 * Download file.
 	 *
@@ -208,13 +515,11 @@ public class RestResource {
 			File file = application.list.files.get(user, fid);
 			System.out.println("downloadFile: user(" + user.getName() + ") file(" + file.getFilename() + ")");
 			
-			application.logInfo(user, "Downloaded file \"" + file.getFilename() + "\"");
+			if(request.getHeader("Range") == null)
+				application.logInfo(user, "Downloaded file \"" + file.getFilename() + "\"");
 			SDSDType type = application.list.types.get(null, file.getType());
 			
-			return Response.ok(application.file.downloadFile(user, file), type.getMimeType())
-					.header("Content-Disposition", "attachment; filename=\"" + file.getFilename() + "\"")
-					.header("Content-Length", file.getSize())
-					.build();
+			return streamDownload(request, application.file.download(user, file), type.getMimeType(), file.getFilename());
 		} catch (Throwable e) {
 			return internalError(user, e);
 		}
@@ -375,12 +680,23 @@ public class RestResource {
 			Timestamp rTime = replaceTime == null || replaceTime.isEmpty() ? null : Timestamps.parse(replaceTime);
 			if(skip < 0) skip = 0;
 			
-			byte[] content = application.file.downloadFile(user, file);
-			EfdiTimeLog efdi = file.isTimeLog() ? new EfdiTimeLog(content) : SimulatorEndpoint.isoxmlToEfdi(content);
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			FileFunctions.Download download = application.file.download(user, file);
+			String etag = String.format("W/\"%s-%s\"", download.getHash(), 
+					DigestUtils.md5Hex(name + '|' + skip + '|' + (rTime != null ? replaceTime : "")));
+			if(isNotModified(request, etag))
+				return Response.notModified().header("ETag", etag).build();
+			
+			EfdiTimeLog efdi;
+			if(file.isTimeLog()) {
+				try(InputStream in = download.open(0)) {
+					efdi = new EfdiTimeLog(in);
+				}
+			} else
+				efdi = convertIsoxmlToEfdi(download);
+			StreamingOutput body;
 			
 			if(rTime == null && name.isEmpty()) {
-				out.write(efdi.toZipByteArray());
+				body = efdi::writeToZip;
 			} 
 			else {
 				ISO11783_TaskData deviceDescription = efdi.getDeviceDescription();
@@ -403,35 +719,11 @@ public class RestResource {
 					SimulatorEndpoint.trimDeviceDescription(deviceDescription, timelogs.get(0));
 				}
 				
-				try(ZipOutputStream zip = new ZipOutputStream(out, Charset.forName("Cp437"))) {
-					zip.putNextEntry(new ZipEntry("DeviceDescription.bin"));
-					deviceDescription.writeTo(zip);
-					zip.closeEntry();
-					
-					for(TimeLog log : timelogs) {
-						if(skip < log.getTimeCount()) {
-							if(rTime != null) {
-								TimeLog.Builder times = TimeLog.newBuilder();
-								for(int i = skip; i < log.getTimeCount(); ++i) {
-									times.addTime(SimulatorEndpoint.replaceTime(log, skip, log.getTime(i), rTime));
-								}
-								log = times.build();
-								rTime = log.getTime(log.getTimeCount()-1).getStart();
-							}
-	
-							zip.putNextEntry(new ZipEntry(log.getFilename() + ".bin"));
-							log.writeTo(zip);
-							zip.closeEntry();
-						}
-						skip = Math.max(skip - log.getTimeCount(), 0);
-					}
-				}
+				int skipTimes = skip;
+				body = out -> writeEfdi(out, deviceDescription, timelogs, skipTimes, rTime);
 			}
 			
-			return Response.ok(out.toByteArray(), "application/zip")
-					.header("Content-Disposition", "attachment; filename=\"" + file.getFilename() + "\"")
-					.header("Content-Length", out.size())
-					.build();
+			return streamGenerated(request, etag, body, file.getFilename());
 			
 		} catch (IOException | ParseException e) {
 			return appError(user, e);
@@ -440,6 +732,43 @@ public class RestResource {
 		}
 	}
 	
+	/**
+	 * Writes the timelogs as EFDI zip.
+	 *
+	 * @param out the output
+	 * @param deviceDescription the device description
+	 * @param timelogs the timelogs
+	 * @param skip the count of time entries to skip
+	 * @param rTime the start time of the first written entry or null to keep the times
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeEfdi(OutputStream out, ISO11783_TaskData deviceDescription, List<TimeLog> timelogs, 
+			int skip, Timestamp rTime) throws IOException {
+		try(ZipOutputStream zip = new ZipOutputStream(out, Charset.forName("Cp437"))) {
+			zip.putNextEntry(new ZipEntry("DeviceDescription.bin"));
+			deviceDescription.writeTo(zip);
+			zip.closeEntry();
+			
+			for(TimeLog log : timelogs) {
+				if(skip < log.getTimeCount()) {
+					if(rTime != null) {
+						TimeLog.Builder times = TimeLog.newBuilder();
+						for(int i = skip; i < log.getTimeCount(); ++i) {
+							times.addTime(SimulatorEndpoint.replaceTime(log, skip, log.getTime(i), rTime));
+						}
+						log = times.build();
+						rTime = log.getTime(log.getTimeCount()-1).getStart();
+					}
+
+					zip.putNextEntry(new ZipEntry(log.getFilename() + ".bin"));
+					log.writeTo(zip);
+					zip.closeEntry();
+				}
+				skip = Math.max(skip - log.getTimeCount(), 0);
+			}
+		}
+	}
+	
 	/**
 	 * Download efdi as isoxml.
 	 *
@@ -467,19 +796,17 @@ public class RestResource {
 			System.out.println("efdiToIsoxml: user(" + user.getName() + ") file(" + file.getFilename() + ")");
 			if(!file.isTimeLog()) throw new IOException("File is no EFDI TimeLog");
 			
-			byte[] content = application.file.downloadFile(user, file);
-			Process process = new ProcessBuilder("java", "-jar", "parser/efdiTimelog.jar", "isoxml").start();
-			try (OutputStream processIn = process.getOutputStream()) {
-				IOUtils.copy(new ByteArrayInputStream(content), processIn);
-			}
-			byte[] out = IOUtils.toByteArray(process.getInputStream());
+			FileFunctions.Download download = application.file.download(user, file);
+			String etag = "W/\"" + download.getHash() + "-isoxml\"";
+			if(isNotModified(request, etag))
+				return Response.notModified().header("ETag", etag).build();
+			
+			// the converter is only started, when the response is written
+			StreamingOutput body = out -> convertEfdiToIsoxml(download, out);
 			
 			application.logInfo(user, "Downloaded file \"" + file.getFilename() + "\" as ISOXML TaskData");
 			
-			return Response.ok(out, "application/zip")
-					.header("Content-Disposition", "attachment; filename=\"taskdata_" + file.getFilename() + "\"")
-					.header("Content-Length", out.length)
-					.build();
+			return streamGenerated(request, etag, body, "taskdata_" + file.getFilename());
 			
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -490,6 +817,81 @@ public class RestResource {
 		}
 	}
 	
+	/** Seconds to wait for the converter to exit after its output was read. */
+	private static final int CONVERT_EXIT_TIMEOUT = 10;
+	
+	/**
+	 * Converts an isoxml file to efdi with the converter process.
+	 * The stored chunks are piped into the converter in the background, so the file is never held in memory as a whole.
+	 *
+	 * @param download the isoxml file
+	 * @return the efdi timelog
+	 * @throws IOException if the converter couldn't be started
+	 */
+	private EfdiTimeLog convertIsoxmlToEfdi(FileFunctions.Download download) throws IOException {
+		Process process = new ProcessBuilder("java", "-jar", "parser/isoxml.jar", "efdi").start();
+		application.executor.submit(() -> {
+			try (InputStream in = download.open(0); OutputStream processIn = process.getOutputStream()) {
+				IOUtils.copyLarge(in, processIn, new byte[DOWNLOAD_BUFFER_SIZE]);
+			} catch (IOException e) {
+				System.err.println("isoxmlToEfdi: " + e.getMessage());
+			}
+		});
+		try (InputStream processOut = process.getInputStream()) {
+			return new EfdiTimeLog(processOut);
+		} finally {
+			process.destroy();
+		}
+	}
+	
+	/**
+	 * Converts an efdi timelog to isoxml with the converter process and writes the result.
+	 * The converter is killed when writing fails, e.g. because the client disconnected.
+	 *
+	 * @param download the efdi timelog
+	 * @param out the output for the isoxml zip
+	 * @throws IOException if writing fails or the converter failed
+	 */
+	private void convertEfdiToIsoxml(FileFunctions.Download download, OutputStream out) throws IOException {
+		Process process = new ProcessBuilder("java", "-jar", "parser/efdiTimelog.jar", "isoxml").start();
+		try {
+			// the input is written and the errors are read in the background, so the converter never blocks on a full pipe
+			application.executor.submit(() -> {
+				try (InputStream in = download.open(0); OutputStream processIn = process.getOutputStream()) {
+					IOUtils.copyLarge(in, processIn, new byte[DOWNLOAD_BUFFER_SIZE]);
+				} catch (IOException e) {
+					System.err.println("efdiToIsoxml: " + e.getMessage());
+				}
+			});
+			Future<String> errors = application.executor.submit(() -> {
+				try (InputStream processErr = process.getErrorStream()) {
+					return IOUtils.toString(processErr, StandardCharsets.UTF_8);
+				}
+			});
+			
+			try (InputStream processOut = process.getInputStream()) {
+				IOUtils.copyLarge(processOut, out, new byte[DOWNLOAD_BUFFER_SIZE]);
+			}
+			if(!process.waitFor(CONVERT_EXIT_TIMEOUT, TimeUnit.SECONDS))
+				throw new IOException("efdiToIsoxml: Converter didn't exit");
+			if(process.exitValue() != 0) {
+				String stderr;
+				try {
+					stderr = errors.get(CONVERT_EXIT_TIMEOUT, TimeUnit.SECONDS).trim();
+				} catch (ExecutionException | TimeoutException e) {
+					stderr = "";
+				}
+				// fails the response instead of completing it with a truncated zip
+				throw new IOException("efdiToIsoxml: Converter failed with exit code " + process.exitValue() + ": " + stderr);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("efdiToIsoxml: Interrupted", e);
+		} finally {
+			process.destroyForcibly();
+		}
+	}
+	
 	/**
 	 * Upload parser.
 	 *
@@ -1,5 +1,6 @@
 package de.sdsd.projekt.prototype.smartdatabrowser;
 
+import de.sdsd.projekt.prototype.applogic.QueryCache;
 import freemarker.cache.FileTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateExceptionHandler;
@@ -148,6 +149,9 @@ public class SmartDataBrowser {
     /** The dataset. */
     private Dataset dataset;
 
+    /** The cache for select results or null. */
+    private QueryCache queryCache;
+
     //all logged in users
     /**
      * Instantiates a new smart data browser.
@@ -194,6 +198,16 @@ public class SmartDataBrowser {
         });
     }
 
+    /**
+     * Sets the cache for select results of the sparql service.
+     * The cache must be invalidated by the application that changes the data.
+     *
+     * @param queryCache the query cache or null to disable caching
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
     //==========================================================================
     
     //inits
@@ -920,8 +934,26 @@ public class SmartDataBrowser {
             System.out.println(query.toString().trim());
         }
         
+        String endpoint = sparqlService + (reasoning ? "/reasoning" : "");
+        QueryCache.Key key = queryCache != null && sparqlService != null 
+                ? queryCache.key(query, endpoint, reasoning) : null;
+        List<QuerySolution> cached = key != null ? queryCache.get(key) : null;
+        if (cached != null) {
+            if (debugSparql) {
+                System.out.println(cached.size() + " cached results");
+                System.out.println();
+            }
+            return new ArrayList<>(cached);
+        }
+        
         QueryExecution qe = queryExec(query, reasoning);
-        List<QuerySolution> qss = ResultSetFormatter.toList(qe.execSelect());
+        List<QuerySolution> qss;
+        if (key != null) {
+            qss = new ArrayList<>();
+            queryCache.record(key, qe.execSelect()).forEachRemaining(qss::add);
+        } else {
+            qss = ResultSetFormatter.toList(qe.execSelect());
+        }
 
         long end = System.currentTimeMillis();
         if (debugSparql) {